@@ -1,14 +1,44 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Aggregator operator that computes an aggregate (e.g., sum, avg, max,
  * min).  Note that we only support aggregates over a single column, grouped
  * by a single column.
+ * <p>
+ * An Aggregate over a MorselSource merges in parallel: each of its workers,
+ * threads of a pool the operator keeps, takes morsels from the source and
+ * merges their tuples into an Aggregator of its own, and the workers'
+ * Aggregators are combined at the end, so the workers share no state.
+ * <p>
+ * Together the workers' groups are limited to a MemoryBudget, as a
+ * HashAggregate's are, and each worker has an equal share of it.  Once a
+ * worker's Aggregator is full, tuples of its groups are still merged, and
+ * tuples of other groups are written to a SpillFile of the worker's own.
+ * After the Aggregators are combined, the spilled tuples of groups in the
+ * combined Aggregator are merged into it, and the rest are aggregated by a
+ * HashAggregate with what is left of the budget, whose groups are returned
+ * after the combined ones.
+ *
+ * @see HashAggregate
  */
 public class Aggregate extends AbstractDbIterator {
     private DbIterator child;
+    private MorselSource morsels;
+    private int parallelism;
+    private int memoryPages;
+    private ExecutorService workers;
+    // set if the groups did not fit, for those not in the combined Aggregator
+    private HashAggregate spilledGroups;
+    private TupleDesc childTd;
     private int aggFieldIdx;
     private int groupByFieldIdx;
     private Aggregator.Op aggOp;
@@ -29,6 +59,42 @@ public class Aggregate extends AbstractDbIterator {
      */
     public Aggregate(DbIterator child, int afield, int gfield, Aggregator.Op aop) {
         this.child = child;
+        this.childTd = child.getTupleDesc();
+        this.aggFieldIdx = afield;
+        this.groupByFieldIdx = gfield;
+        this.aggOp = aop;
+        this.aggregateIterator = null;
+        this.aggregator = null;
+    }
+
+    /**
+     * Constructor for an aggregate that merges in parallel, under the
+     * default MemoryBudget.
+     *
+     * @param morsels The source of the tuples, in morsels
+     * @param afield The column over which we are computing an aggregate.
+     * @param gfield The column over which we are grouping the result, or -1 if there is no grouping
+     * @param aop The aggregation operator to use
+     * @param parallelism the number of workers
+     */
+    public Aggregate(MorselSource morsels, int afield, int gfield, Aggregator.Op aop, int parallelism) {
+        this(morsels, afield, gfield, aop, parallelism, MemoryBudget.getDefaultPages());
+    }
+
+    /**
+     * Constructor for an aggregate that merges in parallel under its own
+     * memory budget.
+     *
+     * @param memoryPages the number of pages the groups of all the workers
+     *   may take before the aggregate spills to disk
+     * @see #Aggregate(MorselSource, int, int, Aggregator.Op, int)
+     */
+    public Aggregate(MorselSource morsels, int afield, int gfield, Aggregator.Op aop, int parallelism,
+                     int memoryPages) {
+        this.morsels = morsels;
+        this.parallelism = Math.max(1, parallelism);
+        this.memoryPages = memoryPages;
+        this.childTd = morsels.getTupleDesc();
         this.aggFieldIdx = afield;
         this.groupByFieldIdx = gfield;
         this.aggOp = aop;
@@ -55,11 +121,23 @@ public class Aggregate extends AbstractDbIterator {
     public void open()
         throws NoSuchElementException, DbException, TransactionAbortedException {
         if (this.aggregateIterator == null) {
-            this.aggregator = this.createAggregator(this.child.getTupleDesc());
-            this.populateAggregator();
+            if (this.morsels != null) {
+                this.aggregator = this.mergeInParallel();
+            } else {
+                this.aggregator = this.createAggregator(this.childTd);
+                this.populateAggregator();
+            }
             this.aggregateIterator = this.aggregator.iterator();
         }
         this.aggregateIterator.open();
+        if (this.spilledGroups != null) {
+            this.spilledGroups.open();
+        }
+    }
+
+    /** @return true if the workers' groups did not fit in memory */
+    public boolean spilled() {
+        return this.spilledGroups != null;
     }
 
     /**
@@ -73,6 +151,8 @@ public class Aggregate extends AbstractDbIterator {
     protected Tuple readNext() throws TransactionAbortedException, DbException {
         if (this.aggregateIterator.hasNext()) {
             return this.aggregateIterator.next();
+        } else if (this.spilledGroups != null && this.spilledGroups.hasNext()) {
+            return this.spilledGroups.next();
         } else {
             return null;
         }
@@ -110,9 +190,203 @@ public class Aggregate extends AbstractDbIterator {
         }
     }
 
+    /**
+     * Runs the workers on the operator's pool, and combines their
+     * Aggregators in worker order.  If any worker spilled, the groups that
+     * are not in the combined Aggregator are aggregated into spilledGroups.
+     *
+     * @return the combined Aggregator
+     */
+    private Aggregator mergeInParallel() throws DbException, TransactionAbortedException {
+        this.morsels.rewind();
+        int[] gfields = this.groupByFieldIdx == Aggregator.NO_GROUPING
+                ? new int[0] : new int[] { this.groupByFieldIdx };
+        Aggregator.Op[] aops = new Aggregator.Op[] { this.aggOp };
+        long maxGroups = HashAggregate.maxGroups(this.memoryPages, this.childTd, gfields, aops);
+        // each worker has a share of the budget for its own groups
+        long workerGroups = Math.max(1, maxGroups / this.parallelism);
+
+        List<Future<Partial>> tasks = new ArrayList<Future<Partial>>();
+        for (int i = 0; i < this.parallelism; i++) {
+            tasks.add(this.workers().submit(() -> this.mergeMorsels(workerGroups)));
+        }
+        List<Partial> partials = new ArrayList<Partial>();
+        Throwable failure = null;
+        for (Future<Partial> task : tasks) {
+            // keep waiting after a failure, so that no worker is still
+            // reading when the transaction completes
+            while (true) {
+                try {
+                    partials.add(task.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = e.getCause();
+                } catch (InterruptedException e) {
+                    if (failure == null) failure = e;
+                    continue;
+                }
+                break;
+            }
+        }
+        if (failure != null) {
+            for (Partial partial : partials) {
+                if (partial.spill != null) partial.spill.delete();
+            }
+        }
+        if (failure instanceof TransactionAbortedException) throw (TransactionAbortedException) failure;
+        if (failure instanceof DbException) throw (DbException) failure;
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure != null) throw new DbException("aggregate worker failed: " + failure);
+
+        Aggregator aggregator = partials.get(0).aggregator;
+        List<SpillFile> spills = new ArrayList<SpillFile>();
+        for (Partial partial : partials) {
+            if (partial != partials.get(0)) aggregator.combine(partial.aggregator);
+            if (partial.spill != null) spills.add(partial.spill);
+        }
+        if (!spills.isEmpty()) {
+            // the combined groups take their share of the budget, and the
+            // spilled groups get the rest
+            int usedPages = (int) (aggregator.numGroups() * (long) this.memoryPages / maxGroups);
+            this.spilledGroups = new HashAggregate(new SpillScan(spills, aggregator), gfields,
+                    new int[] { this.aggFieldIdx }, aops, Math.max(1, this.memoryPages - usedPages));
+            try {
+                // reads the spill files, and merges their tuples of the
+                // combined groups before the combined results are read
+                this.spilledGroups.open();
+            } finally {
+                for (SpillFile spill : spills) {
+                    spill.delete();
+                }
+            }
+        }
+        return aggregator;
+    }
+
+    /**
+     * @return the operator's pool of parallelism worker threads; idle
+     *   threads exit after a few seconds, so it is never shut down
+     */
+    private synchronized ExecutorService workers() {
+        if (this.workers == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(this.parallelism, this.parallelism,
+                    5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "simpledb-aggregate");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            this.workers = executor;
+        }
+        return this.workers;
+    }
+
+    /** A worker's Aggregator, and the tuples that did not fit in it. */
+    private static class Partial {
+        private final Aggregator aggregator;
+        private final SpillFile spill;
+
+        Partial(Aggregator aggregator, SpillFile spill) {
+            this.aggregator = aggregator;
+            this.spill = spill;
+        }
+    }
+
+    /**
+     * Merges morsels into a new Aggregator until there are none left.  Once
+     * the Aggregator has maxGroups groups, tuples of other groups are
+     * spilled.
+     */
+    private Partial mergeMorsels(long maxGroups) throws DbException, TransactionAbortedException {
+        Aggregator partial = this.createAggregator(this.childTd);
+        SpillFile spill = null;
+        try {
+            DbIterator morsel;
+            while ((morsel = this.morsels.nextMorsel()) != null) {
+                morsel.open();
+                try {
+                    while (morsel.hasNext()) {
+                        Tuple t = morsel.next();
+                        if (partial.numGroups() < maxGroups) {
+                            partial.merge(t);
+                        } else if (!partial.mergeExisting(t)) {
+                            if (spill == null) spill = new SpillFile(this.childTd);
+                            spill.add(t);
+                        }
+                    }
+                } finally {
+                    morsel.close();
+                }
+            }
+            if (spill != null) spill.finish();
+        } catch (IOException e) {
+            if (spill != null) spill.delete();
+            throw new DbException("could not spill aggregate input: " + e.getMessage());
+        } catch (DbException | TransactionAbortedException | RuntimeException e) {
+            if (spill != null) spill.delete();
+            throw e;
+        }
+        return new Partial(partial, spill);
+    }
+
+    /**
+     * Reads the workers' spill files one after another.  Tuples of groups
+     * in the combined Aggregator are merged into it; the others are
+     * returned.
+     */
+    private static class SpillScan extends AbstractDbIterator {
+        private final List<SpillFile> spills;
+        private final Aggregator aggregator;
+        private int next;
+        private DbIterator spill;
+
+        SpillScan(List<SpillFile> spills, Aggregator aggregator) {
+            this.spills = spills;
+            this.aggregator = aggregator;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return this.spills.get(0).getTupleDesc();
+        }
+
+        public void open() {
+            this.next = 0;
+        }
+
+        public void rewind() {
+            throw new UnsupportedOperationException("spilled tuples are read once");
+        }
+
+        public void close() {
+            super.close();
+            if (this.spill != null) {
+                this.spill.close();
+                this.spill = null;
+            }
+        }
+
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            while (true) {
+                if (this.spill == null) {
+                    if (this.next == this.spills.size()) return null;
+                    this.spill = this.spills.get(this.next++).iterator();
+                    this.spill.open();
+                }
+                while (this.spill.hasNext()) {
+                    Tuple t = this.spill.next();
+                    if (!this.aggregator.mergeExisting(t)) return t;
+                }
+                this.spill.close();
+                this.spill = null;
+            }
+        }
+    }
+
     public void rewind() throws DbException, TransactionAbortedException {
         this.aggregateIterator = this.aggregator.iterator();
         this.aggregateIterator.open();
+        if (this.spilledGroups != null) {
+            this.spilledGroups.rewind();
+        }
     }
 
     /**
@@ -128,21 +402,21 @@ public class Aggregate extends AbstractDbIterator {
      */
     public TupleDesc getTupleDesc() {
         String aggFieldName = Aggregate.aggName(this.aggOp) + " (" +
-                this.child.getTupleDesc().getFieldName(this.aggFieldIdx) + ")";
+                this.childTd.getFieldName(this.aggFieldIdx) + ")";
 
         if (this.groupByFieldIdx == Aggregator.NO_GROUPING) {
             return new TupleDesc(
-                    new Type[]{this.child.getTupleDesc().getType(this.aggFieldIdx)},
+                    new Type[]{this.childTd.getType(this.aggFieldIdx)},
                     new String[]{aggFieldName}
             );
         } else {
             return new TupleDesc(
                     new Type[]{
-                            this.child.getTupleDesc().getType(this.groupByFieldIdx),
-                            this.child.getTupleDesc().getType(this.aggFieldIdx)
+                            this.childTd.getType(this.groupByFieldIdx),
+                            this.childTd.getType(this.aggFieldIdx)
                     },
                     new String[]{
-                            this.child.getTupleDesc().getFieldName(this.groupByFieldIdx),
+                            this.childTd.getFieldName(this.groupByFieldIdx),
                             aggFieldName
                     }
             );
@@ -152,9 +426,17 @@ public class Aggregate extends AbstractDbIterator {
 
     public void close() {
         super.close();
-        this.child.close();
-        this.aggregateIterator.close();
+        if (this.child != null) {
+            this.child.close();
+        }
+        if (this.aggregateIterator != null) {
+            this.aggregateIterator.close();
+        }
+        if (this.spilledGroups != null) {
+            this.spilledGroups.close();
+        }
         this.aggregateIterator = null;
         this.aggregator = null;
+        this.spilledGroups = null;
     }
 }
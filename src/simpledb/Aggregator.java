@@ -40,6 +40,31 @@ public interface Aggregator {
      */
     public void merge(Tuple tup);
 
+    /**
+     * Merges a tuple into the aggregate of its group if the group has been
+     * encountered, and otherwise leaves the aggregator unchanged.
+     *
+     * @param tup the Tuple containing an aggregate field and a group-by field
+     * @return true if the tuple's group existed and the tuple was merged
+     */
+    public boolean mergeExisting(Tuple tup);
+
+    /**
+     * Adds the groups of another aggregator, built with the same fields and
+     * operator, that merged other tuples, as if they had been merged into
+     * this one.  Aggregators that merge parts of the same input in parallel
+     * are combined this way at the end.
+     *
+     * @param other an aggregator of the same class, fields and operator
+     * @throws IllegalArgumentException if other is of another class
+     */
+    public void combine(Aggregator other);
+
+    /**
+     * @return the number of groups merged so far
+     */
+    public int numGroups();
+
     /**
      * Create a DbIterator over group aggregate results.
      * @see simpledb.TupleIterator for a possible helper
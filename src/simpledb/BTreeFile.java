@@ -0,0 +1,466 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * BTreeFile is a DbFile that keeps its tuples in a B+tree, sorted by one key
+ * field, so that equality and range predicates on the key read a path from
+ * the root to a leaf and then only the leaves that hold matching tuples.
+ * <p>
+ * Page 0 is a BTreeHeaderPage that points to the root.  Internal pages hold
+ * keys and child pointers, and leaves hold the tuples and are linked to
+ * their right sibling.  All pages go through the BufferPool and are logged
+ * like heap pages, so the tree is recovered and rolled back with the rest of
+ * the database.  Duplicate keys are allowed.
+ * <p>
+ * Readers lock the pages on their path shared.  An insert locks the leaf it
+ * goes to exclusively, and the internal pages above it only if the leaf
+ * splits.  Deletes leave underfull pages as they are; pages are never
+ * merged or freed.
+ *
+ * @see BTreeHeaderPage
+ * @see BTreeInternalPage
+ * @see BTreeLeafPage
+ */
+public class BTreeFile implements IndexFile {
+    private final File file;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int tableid;
+    private int numPages;
+    private FileChannel channel;
+
+    private static final ThreadLocal<ByteBuffer> pageBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BufferPool.PAGE_SIZE));
+
+    /**
+     * Constructs a B+tree file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this file
+     * @param keyField the index of the field the tuples are sorted by
+     * @param td the tuple descriptor of the tuples in the file
+     */
+    public BTreeFile(File f, int keyField, TupleDesc td) {
+        this.file = f;
+        this.td = td;
+        this.keyField = keyField;
+        this.tableid = f.getAbsoluteFile().hashCode();
+        this.numPages = Math.max(1, (int) (f.length() / BufferPool.PAGE_SIZE));
+    }
+
+    /**
+     * Returns the File backing this BTreeFile on disk.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this BTreeFile: the hash code of
+     * the absolute file name, as for HeapFile.
+     */
+    public int getId() {
+        return this.tableid;
+    }
+
+    /**
+     * Returns the TupleDesc of the table stored in this DbFile.
+     */
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    // see IndexFile.java for javadocs
+    public int keyField() {
+        return this.keyField;
+    }
+
+    /**
+     * Returns the number of pages in this file, including the header page
+     * and pages allocated by transactions that have not written them yet.
+     */
+    public synchronized int numPages() {
+        return this.numPages;
+    }
+
+    /** @return the id of the header page */
+    BTreePageId headerId() {
+        return new BTreePageId(this.tableid, 0, BTreePageId.HEADER);
+    }
+
+    // see DbFile.java for javadocs
+    // Pages past the end of the file have been allocated but not written
+    // yet, and are read as empty pages.
+    public Page readPage(PageId pid) throws NoSuchElementException {
+        try {
+            return this.createPage((BTreePageId) pid, this.readPageData(pid.pageno()));
+        } catch (IOException e) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    private byte[] readPageData(int pageno) throws IOException {
+        long pageOffset = (long) pageno * BufferPool.PAGE_SIZE;
+        FileChannel channel = this.channel();
+        ByteBuffer buffer = pageBuffer.get();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pageOffset + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        buffer.get(data, 0, buffer.remaining());
+        return data;
+    }
+
+    /**
+     * Builds the page of the kind the page id names from its bytes.
+     */
+    BTreePage createPage(BTreePageId pid, byte[] data) {
+        switch (pid.category()) {
+        case BTreePageId.HEADER:
+            return new BTreeHeaderPage(this, pid, data);
+        case BTreePageId.INTERNAL:
+            return new BTreeInternalPage(this, pid, data);
+        case BTreePageId.LEAF:
+            return new BTreeLeafPage(this, pid, data);
+        default:
+            throw new IllegalArgumentException("unknown page category in " + pid);
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        long pageOffset = (long) page.getId().pageno() * BufferPool.PAGE_SIZE;
+        FileChannel channel = this.channel();
+        ByteBuffer buffer = pageBuffer.get();
+        buffer.clear();
+        buffer.put(page.getPageData());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, pageOffset + buffer.position());
+        }
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (this.channel == null || !this.channel.isOpen()) {
+            this.channel = FileChannel.open(this.file.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return this.channel;
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    private BTreePage getPage(TransactionId tid, BTreePageId pid, Permissions perm)
+        throws DbException, TransactionAbortedException {
+        return (BTreePage) Database.getBufferPool().getPage(tid, pid, perm);
+    }
+
+    /**
+     * Allocates a page at the end of the file and locks it exclusively.
+     * The page is empty; it reaches the disk when the transaction commits.
+     */
+    private BTreePage newPage(TransactionId tid, int category)
+        throws DbException, TransactionAbortedException {
+        int pageno = this.allocatePages(1);
+        return getPage(tid, new BTreePageId(this.tableid, pageno, category), Permissions.READ_WRITE);
+    }
+
+    /**
+     * Descends from the root to the leftmost leaf that may hold the key.
+     *
+     * @param key the key to look for, or null for the leftmost leaf
+     * @param perm the permissions to lock the leaf with
+     * @return the leaf, or null if the tree is empty
+     */
+    BTreeLeafPage findLeaf(TransactionId tid, Field key, Permissions perm)
+        throws DbException, TransactionAbortedException {
+        BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, headerId(), Permissions.READ_ONLY);
+        BTreePageId pid = header.getRootId();
+        if (pid == null) return null;
+        while (pid.category() == BTreePageId.INTERNAL) {
+            BTreeInternalPage page = (BTreeInternalPage) getPage(tid, pid, Permissions.READ_ONLY);
+            pid = page.getChildId(page.findChild(key));
+        }
+        return (BTreeLeafPage) getPage(tid, pid, perm);
+    }
+
+    /**
+     * The pages an insert went through: the internal pages from the root
+     * down, the leaf, and the range of keys that go to that leaf.  A batch
+     * of inserts keeps using the path while the keys stay in the range and
+     * no page on it splits.
+     */
+    private static class InsertPath {
+        final ArrayList<BTreePageId> internal = new ArrayList<BTreePageId>();
+        BTreePageId leaf;
+        // keys k with lower <= k < upper go to the leaf; null is unbounded
+        Field lower;
+        Field upper;
+
+        boolean covers(Field key) {
+            return (this.lower == null || BTreePage.compare(key, this.lower) >= 0)
+                && (this.upper == null || BTreePage.compare(key, this.upper) < 0);
+        }
+    }
+
+    /**
+     * Finds the leaf a new tuple with the given key goes to, creating the
+     * root leaf if the tree is empty.
+     */
+    private InsertPath findInsertPath(TransactionId tid, Field key, Collection<Page> dirtied)
+        throws DbException, TransactionAbortedException {
+        BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, headerId(), Permissions.READ_ONLY);
+        if (header.getRootId() == null) {
+            header = (BTreeHeaderPage) getPage(tid, headerId(), Permissions.READ_WRITE);
+            if (header.getRootId() == null) {
+                header.setRootId(newPage(tid, BTreePageId.LEAF).getId());
+                dirtied.add(header);
+            }
+        }
+
+        InsertPath path = new InsertPath();
+        BTreePageId pid = header.getRootId();
+        while (pid.category() == BTreePageId.INTERNAL) {
+            BTreeInternalPage page = (BTreeInternalPage) getPage(tid, pid, Permissions.READ_ONLY);
+            path.internal.add(pid);
+            int child = page.findChildForInsert(key);
+            if (child > 0) path.lower = page.getKey(child - 1);
+            if (child < page.numKeys()) path.upper = page.getKey(child);
+            pid = page.getChildId(child);
+        }
+        path.leaf = pid;
+        return path;
+    }
+
+    /**
+     * Inserts a tuple into the leaf at the end of the path, splitting pages
+     * up the path as needed.
+     *
+     * @return true if a page split, which makes the path stale
+     */
+    private boolean insert(TransactionId tid, Tuple t, InsertPath path, Collection<Page> dirtied)
+        throws DbException, TransactionAbortedException {
+        BTreeLeafPage leaf = (BTreeLeafPage) getPage(tid, path.leaf, Permissions.READ_WRITE);
+        int slot = leaf.insertTuple(t);
+        dirtied.add(leaf);
+        t.setRecordId(new RecordId(leaf.getId(), slot));
+        if (!leaf.isOverflowing()) return false;
+
+        BTreeLeafPage rightLeaf = (BTreeLeafPage) newPage(tid, BTreePageId.LEAF);
+        Field separator = leaf.splitInto(rightLeaf);
+        dirtied.add(rightLeaf);
+        if (slot >= leaf.numTuples()) {
+            t.setRecordId(new RecordId(rightLeaf.getId(), slot - leaf.numTuples()));
+        }
+
+        // insert the separator into the parent, splitting it in turn if needed
+        BTreePageId left = leaf.getId();
+        BTreePageId right = rightLeaf.getId();
+        for (int i = path.internal.size() - 1; i >= 0; i--) {
+            BTreeInternalPage parent = (BTreeInternalPage) getPage(tid, path.internal.get(i), Permissions.READ_WRITE);
+            parent.insertEntry(left, separator, right);
+            dirtied.add(parent);
+            if (!parent.isOverflowing()) return true;
+
+            BTreeInternalPage rightParent = (BTreeInternalPage) newPage(tid, BTreePageId.INTERNAL);
+            separator = parent.splitInto(rightParent);
+            dirtied.add(rightParent);
+            left = parent.getId();
+            right = rightParent.getId();
+        }
+
+        // the root split: grow the tree by one level
+        BTreeInternalPage root = (BTreeInternalPage) newPage(tid, BTreePageId.INTERNAL);
+        root.initRoot(left, separator, right);
+        dirtied.add(root);
+        BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, headerId(), Permissions.READ_WRITE);
+        header.setRootId(root.getId());
+        dirtied.add(header);
+        return true;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> addTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(this.td)) {
+            throw new DbException("tuple does not match the schema of the file");
+        }
+        LinkedHashSet<Page> dirtied = new LinkedHashSet<Page>();
+        InsertPath path = findInsertPath(tid, t.getField(this.keyField), dirtied);
+        insert(tid, t, path, dirtied);
+        return new ArrayList<Page>(dirtied);
+    }
+
+    // see IndexFile.java for javadocs
+    // Consecutive tuples that go to the same leaf are inserted without
+    // descending from the root again.
+    public ArrayList<Page> addTuples(TransactionId tid, List<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        LinkedHashSet<Page> dirtied = new LinkedHashSet<Page>();
+        InsertPath path = null;
+        for (Tuple t : tuples) {
+            if (!t.getTupleDesc().equals(this.td)) {
+                throw new DbException("tuple does not match the schema of the file");
+            }
+            Field key = t.getField(this.keyField);
+            if (path == null || !path.covers(key)) {
+                path = findInsertPath(tid, key, dirtied);
+            }
+            if (insert(tid, t, path, dirtied)) {
+                path = null;
+            }
+        }
+        return new ArrayList<Page>(dirtied);
+    }
+
+    // see DbFile.java for javadocs
+    // Into an empty tree, the tuples are sorted and the tree is built
+    // bottom up: full leaves, then each level of internal pages, are
+    // written straight to the end of the file, and the new root is
+    // published by updating the header page through the BufferPool.  Until
+    // the transaction commits, the tree on disk still has its old root, and
+    // an abort leaves the written pages unreferenced.  Into a tree that
+    // already has tuples, the sorted tuples are inserted with addTuples.
+    public int bulkInsert(TransactionId tid, DbIterator tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        ArrayList<Tuple> sorted = new ArrayList<Tuple>();
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            if (!t.getTupleDesc().equals(this.td)) {
+                throw new DbException("tuple does not match the schema of the file");
+            }
+            sorted.add(t);
+        }
+        if (sorted.isEmpty()) return 0;
+        sorted.sort((a, b) -> BTreePage.compare(a.getField(this.keyField), b.getField(this.keyField)));
+
+        BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, headerId(), Permissions.READ_WRITE);
+        if (header.getRootId() != null) {
+            for (Page page : this.addTuples(tid, sorted)) {
+                page.markDirty(true, tid);
+            }
+            return sorted.size();
+        }
+
+        // the leaves, each with the smallest key below it
+        ArrayList<BTreePage> level = new ArrayList<BTreePage>();
+        ArrayList<Field> minKeys = new ArrayList<Field>();
+        int perLeaf = BTreeLeafPage.getMaxTuples(this.td);
+        int firstLeaf = this.allocatePages((sorted.size() + perLeaf - 1) / perLeaf);
+        for (int i = 0; i < sorted.size(); i += perLeaf) {
+            BTreeLeafPage leaf = (BTreeLeafPage) this.createPage(new BTreePageId(this.tableid,
+                    firstLeaf + level.size(), BTreePageId.LEAF), new byte[BufferPool.PAGE_SIZE]);
+            for (Tuple t : sorted.subList(i, Math.min(i + perLeaf, sorted.size()))) {
+                leaf.insertTuple(t);
+            }
+            if (!level.isEmpty()) {
+                ((BTreeLeafPage) level.get(level.size() - 1)).setRightSiblingId(leaf.getId());
+            }
+            level.add(leaf);
+            minKeys.add(leaf.getKey(0));
+        }
+
+        // one level of internal pages at a time, until a single root is left
+        int perInternal = BTreeInternalPage.getMaxKeys(this.td.getType(this.keyField)) + 1;
+        ArrayList<BTreePage> written = new ArrayList<BTreePage>(level);
+        while (level.size() > 1) {
+            ArrayList<BTreePage> parents = new ArrayList<BTreePage>();
+            ArrayList<Field> parentMinKeys = new ArrayList<Field>();
+            int firstParent = this.allocatePages((level.size() + perInternal - 1) / perInternal);
+            for (int i = 0; i < level.size(); i += perInternal) {
+                int end = Math.min(i + perInternal, level.size());
+                BTreeInternalPage parent = (BTreeInternalPage) this.createPage(new BTreePageId(this.tableid,
+                        firstParent + parents.size(), BTreePageId.INTERNAL), new byte[BufferPool.PAGE_SIZE]);
+                parent.setEntries(level.subList(i, end), minKeys.subList(i + 1, end));
+                parents.add(parent);
+                parentMinKeys.add(minKeys.get(i));
+            }
+            written.addAll(parents);
+            level = parents;
+            minKeys = parentMinKeys;
+        }
+
+        BufferPool bufferPool = Database.getBufferPool();
+        for (BTreePage page : written) {
+            this.writePage(page);
+            // an aborted transaction may have left an empty copy in the pool
+            bufferPool.discardPage(page.getId());
+        }
+        this.force();
+        header.setRootId(level.get(0).getId());
+        header.markDirty(true, tid);
+        return sorted.size();
+    }
+
+    /**
+     * Allocates a run of pages at the end of the file.
+     *
+     * @return the number of the first page of the run
+     */
+    private synchronized int allocatePages(int count) {
+        int first = this.numPages;
+        this.numPages += count;
+        return first;
+    }
+
+    /**
+     * Forces the pages written so far to disk.
+     */
+    public void force() throws IOException {
+        this.channel().force(false);
+    }
+
+    // see DbFile.java for javadocs
+    // The tuple is found by its key and its field values; its record id may
+    // be stale, since tuples move within and between leaves.
+    public Page deleteTuple(TransactionId tid, Tuple t)
+        throws DbException, TransactionAbortedException {
+        Field key = t.getField(this.keyField);
+        BTreeLeafPage leaf = findLeaf(tid, key, Permissions.READ_WRITE);
+        while (leaf != null) {
+            for (int i = leaf.lowerBound(key); i < leaf.numTuples(); i++) {
+                if (BTreePage.compare(leaf.getKey(i), key) > 0) {
+                    throw new DbException("tuple is not in the file");
+                }
+                if (sameFields(leaf.getTuple(i), t)) {
+                    leaf.deleteTuple(i);
+                    return leaf;
+                }
+            }
+            BTreePageId next = leaf.getRightSiblingId();
+            leaf = next == null ? null : (BTreeLeafPage) getPage(tid, next, Permissions.READ_WRITE);
+        }
+        throw new DbException("tuple is not in the file");
+    }
+
+    private static boolean sameFields(Tuple a, Tuple b) {
+        for (int i = 0; i < a.numFields(); i++) {
+            if (!a.getField(i).equals(b.getField(i))) return false;
+        }
+        return true;
+    }
+
+    // see DbFile.java for javadocs
+    // Returns the tuples in key order.
+    public DbFileIterator iterator(TransactionId tid) {
+        return new BTreeFileIterator(this, tid, null);
+    }
+
+    // see IndexFile.java for javadocs
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        return new BTreeFileIterator(this, tid, ipred);
+    }
+}
@@ -0,0 +1,108 @@
+package simpledb;
+
+/**
+ * BTreeFileIterator returns the tuples of a BTreeFile in key order, either
+ * all of them or those whose key satisfies an IndexPredicate.  A predicate
+ * that bounds the key from below starts the scan at the first leaf that may
+ * hold a match instead of the leftmost one, and one that bounds it from
+ * above ends the scan at the first key past the bound.
+ */
+public class BTreeFileIterator extends AbstractDbFileIterator {
+    private BTreeFile file;
+    private TransactionId tid;
+    private IndexPredicate ipred;
+    private BTreeLeafPage leaf;
+    private int position;
+
+    /**
+     * @param ipred the predicate on the key field, or null to return every
+     *   tuple
+     */
+    public BTreeFileIterator(BTreeFile file, TransactionId tid, IndexPredicate ipred) {
+        this.file = file;
+        this.tid = tid;
+        this.ipred = ipred;
+    }
+
+    /**
+     * Opens the iterator, positioned before the first matching tuple.
+     */
+    public void open()
+        throws DbException, TransactionAbortedException {
+        Field start = null;
+        if (this.ipred != null) {
+            switch (this.ipred.getOp()) {
+            case EQUALS:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQ:
+                start = this.ipred.getField();
+                break;
+            default:
+                break;
+            }
+        }
+        this.leaf = this.file.findLeaf(this.tid, start, Permissions.READ_ONLY);
+        if (this.leaf == null || start == null) {
+            this.position = 0;
+        } else if (this.ipred.getOp() == Predicate.Op.GREATER_THAN) {
+            this.position = this.leaf.upperBound(start);
+        } else {
+            this.position = this.leaf.lowerBound(start);
+        }
+    }
+
+    /**
+     * Resets the iterator to the start.
+     */
+    public void rewind()
+        throws DbException, TransactionAbortedException {
+        this.close();
+        this.open();
+    }
+
+    /**
+     * Closes the iterator.
+     */
+    public void close() {
+        super.close();
+        this.leaf = null;
+        this.position = 0;
+    }
+
+    protected Tuple readNext()
+            throws DbException, TransactionAbortedException {
+        while (this.leaf != null) {
+            if (this.position >= this.leaf.numTuples()) {
+                BTreePageId next = this.leaf.getRightSiblingId();
+                this.leaf = next == null ? null
+                        : (BTreeLeafPage) Database.getBufferPool().getPage(this.tid, next, Permissions.READ_ONLY);
+                this.position = 0;
+                continue;
+            }
+
+            Tuple t = this.leaf.getTuple(this.position++);
+            if (this.ipred == null) return t;
+            Field key = t.getField(this.file.keyField());
+            if (this.pastEnd(key)) {
+                this.leaf = null;
+                return null;
+            }
+            if (this.ipred.matches(key)) return t;
+        }
+        return null;
+    }
+
+    /** @return true if no key from here on can satisfy the predicate */
+    private boolean pastEnd(Field key) {
+        Field bound = this.ipred.getField();
+        switch (this.ipred.getOp()) {
+        case EQUALS:
+        case LESS_THAN_OR_EQ:
+            return BTreePage.compare(key, bound) > 0;
+        case LESS_THAN:
+            return BTreePage.compare(key, bound) >= 0;
+        default:
+            return false;
+        }
+    }
+}
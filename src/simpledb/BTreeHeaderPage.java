@@ -0,0 +1,50 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * BTreeHeaderPage is page 0 of every BTreeFile.  It records where the root
+ * of the tree is: the root's page number, and whether the root is a leaf or
+ * an internal page.  A root page number of 0 means the tree is empty.
+ *
+ * @see BTreeFile
+ */
+public class BTreeHeaderPage extends BTreePage {
+    private int rootPageNo;
+    private int rootCategory;
+
+    /**
+     * Create a header page from a set of bytes of data read from disk.
+     * The format is two integers: the root page number and the root
+     * category (BTreePageId.INTERNAL or BTreePageId.LEAF).
+     */
+    public BTreeHeaderPage(BTreePageId id, byte[] data) {
+        this(fileOf(id), id, data);
+    }
+
+    BTreeHeaderPage(BTreeFile file, BTreePageId id, byte[] data) {
+        super(file, id, data);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        this.rootPageNo = buffer.getInt();
+        this.rootCategory = buffer.getInt();
+    }
+
+    /** @return the id of the root page, or null if the tree is empty */
+    public BTreePageId getRootId() {
+        if (this.rootPageNo == 0) return null;
+        return new BTreePageId(this.pid.getTableId(), this.rootPageNo, this.rootCategory);
+    }
+
+    /** Makes the given page the root of the tree. */
+    public void setRootId(BTreePageId root) {
+        this.rootPageNo = root.pageno();
+        this.rootCategory = root.category();
+    }
+
+    public byte[] getPageData() {
+        return encode(dos -> {
+            dos.writeInt(this.rootPageNo);
+            dos.writeInt(this.rootCategory);
+        });
+    }
+}
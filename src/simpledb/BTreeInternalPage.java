@@ -0,0 +1,185 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BTreeInternalPage holds keys and child pointers of a BTreeFile.  A page
+ * with n keys has n + 1 children; the subtree of child i holds the keys
+ * between key i - 1 and key i, inclusive on both sides, because equal keys
+ * may end up on both sides of a split.  All children of a page are of the
+ * same kind: either all leaves or all internal pages.
+ * <p>
+ * The page format is the category of the children, the number of keys,
+ * the child page numbers, and then the keys.
+ *
+ * @see BTreeFile
+ */
+public class BTreeInternalPage extends BTreePage {
+    private final Type keyType;
+    private final int maxKeys;
+    private int childCategory;
+    private ArrayList<Integer> children;
+    private ArrayList<Field> keys;
+
+    /**
+     * Create an internal page from a set of bytes of data read from disk.
+     */
+    public BTreeInternalPage(BTreePageId id, byte[] data) {
+        this(fileOf(id), id, data);
+    }
+
+    BTreeInternalPage(BTreeFile file, BTreePageId id, byte[] data) {
+        super(file, id, data);
+        this.keyType = file.getTupleDesc().getType(file.keyField());
+        this.maxKeys = getMaxKeys(this.keyType);
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        this.childCategory = buffer.getInt();
+        int numKeys = buffer.getInt();
+        this.children = new ArrayList<Integer>(numKeys + 2);
+        this.keys = new ArrayList<Field>(numKeys + 1);
+        for (int i = 0; i <= numKeys; i++) {
+            this.children.add(buffer.getInt());
+        }
+        for (int i = 0; i < numKeys; i++) {
+            this.keys.add(this.keyType.parse(buffer));
+        }
+    }
+
+    /** @return the number of keys that fit on an internal page */
+    static int getMaxKeys(Type keyType) {
+        return (BufferPool.PAGE_SIZE - 12) / (keyType.getLen() + 4);
+    }
+
+    /** @return the number of keys on this page */
+    public int numKeys() {
+        return this.keys.size();
+    }
+
+    /** @return the i-th key of this page */
+    public Field getKey(int i) {
+        return this.keys.get(i);
+    }
+
+    /** @return the id of the i-th child of this page */
+    public BTreePageId getChildId(int i) {
+        return new BTreePageId(this.pid.getTableId(), this.children.get(i), this.childCategory);
+    }
+
+    /**
+     * @return the index of the leftmost child that may hold key, or 0 if
+     *   key is null
+     */
+    public int findChild(Field key) {
+        if (key == null) return 0;
+        int lo = 0, hi = this.keys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(this.keys.get(mid), key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the child a new tuple with the given key goes
+     *   to: the rightmost child that may hold key
+     */
+    public int findChildForInsert(Field key) {
+        int lo = 0, hi = this.keys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(this.keys.get(mid), key) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Turns this page into a new root with two children.
+     *
+     * @param left the old root, now the left child
+     * @param key the key separating the two children
+     * @param right the page split off the old root
+     */
+    public void initRoot(BTreePageId left, Field key, BTreePageId right) {
+        this.childCategory = left.category();
+        this.children = new ArrayList<Integer>();
+        this.keys = new ArrayList<Field>();
+        this.children.add(left.pageno());
+        this.children.add(right.pageno());
+        this.keys.add(key);
+    }
+
+    /**
+     * Replaces the contents of this page; used to build a tree bottom up.
+     *
+     * @param children the children, all of the same category
+     * @param keys the keys separating the children: key i is the smallest
+     *   key under child i + 1
+     */
+    void setEntries(List<? extends BTreePage> children, List<Field> keys) {
+        this.childCategory = children.get(0).getId().category();
+        this.children = new ArrayList<Integer>(children.size());
+        for (BTreePage child : children) {
+            this.children.add(child.getId().pageno());
+        }
+        this.keys = new ArrayList<Field>(keys);
+    }
+
+    /**
+     * Records that a child of this page was split.  The page may hold one
+     * key more than fits on disk until it is split; see isOverflowing.
+     *
+     * @param left the child that was split
+     * @param key the key separating the child from the new page
+     * @param right the new page, which goes right after left
+     * @throws DbException if left is not a child of this page
+     */
+    public void insertEntry(BTreePageId left, Field key, BTreePageId right) throws DbException {
+        int i = this.children.indexOf(left.pageno());
+        if (i < 0) {
+            throw new DbException("page " + left.pageno() + " is not a child of " + this.pid);
+        }
+        this.keys.add(i, key);
+        this.children.add(i + 1, right.pageno());
+    }
+
+    /** @return true if the page holds more keys than fit on disk */
+    public boolean isOverflowing() {
+        return this.keys.size() > this.maxKeys;
+    }
+
+    /**
+     * Moves the upper half of this page's keys and children to an empty
+     * page.  The middle key moves up to the parent and is removed from both
+     * pages.
+     *
+     * @return the middle key, which separates the two pages in their parent
+     */
+    public Field splitInto(BTreeInternalPage right) {
+        int middle = this.keys.size() / 2;
+        Field key = this.keys.get(middle);
+        right.childCategory = this.childCategory;
+        right.keys = new ArrayList<Field>(this.keys.subList(middle + 1, this.keys.size()));
+        right.children = new ArrayList<Integer>(this.children.subList(middle + 1, this.children.size()));
+        this.keys = new ArrayList<Field>(this.keys.subList(0, middle));
+        this.children = new ArrayList<Integer>(this.children.subList(0, middle + 1));
+        return key;
+    }
+
+    public byte[] getPageData() {
+        return encode(dos -> {
+            dos.writeInt(this.childCategory);
+            dos.writeInt(this.keys.size());
+            for (int child : this.children) {
+                dos.writeInt(child);
+            }
+            for (Field key : this.keys) {
+                key.serialize(dos);
+            }
+        });
+    }
+}
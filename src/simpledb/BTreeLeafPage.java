@@ -0,0 +1,167 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * BTreeLeafPage holds the tuples of a BTreeFile, sorted by the key field.
+ * Leaves are linked left to right, so that a range scan can walk from one
+ * leaf to the next without going back through the internal pages.
+ * <p>
+ * The page format is the page number of the right sibling (0 if this is the
+ * rightmost leaf), the number of tuples, and then the tuples themselves,
+ * packed in key order.
+ *
+ * @see BTreeFile
+ */
+public class BTreeLeafPage extends BTreePage {
+    private final TupleDesc td;
+    private final int keyField;
+    private final int maxTuples;
+    private int rightSibling;
+    private ArrayList<Tuple> tuples;
+
+    /**
+     * Create a leaf page from a set of bytes of data read from disk.
+     */
+    public BTreeLeafPage(BTreePageId id, byte[] data) {
+        this(fileOf(id), id, data);
+    }
+
+    BTreeLeafPage(BTreeFile file, BTreePageId id, byte[] data) {
+        super(file, id, data);
+        this.td = file.getTupleDesc();
+        this.keyField = file.keyField();
+        this.maxTuples = getMaxTuples(this.td);
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        this.rightSibling = buffer.getInt();
+        int numTuples = buffer.getInt();
+        this.tuples = new ArrayList<Tuple>(numTuples + 1);
+        for (int i = 0; i < numTuples; i++) {
+            Tuple t = new Tuple(this.td);
+            for (int j = 0; j < this.td.numFields(); j++) {
+                t.setField(j, this.td.getType(j).parse(buffer));
+            }
+            this.tuples.add(t);
+        }
+    }
+
+    /** @return the number of tuples that fit on a leaf page */
+    static int getMaxTuples(TupleDesc td) {
+        return (BufferPool.PAGE_SIZE - 8) / td.getSize();
+    }
+
+    /** @return the number of tuples on this page */
+    public int numTuples() {
+        return this.tuples.size();
+    }
+
+    /**
+     * @return a copy of the i-th tuple of this page, with its record id set.
+     *   The record id is only valid until the page is next modified.
+     */
+    public Tuple getTuple(int i) {
+        Tuple stored = this.tuples.get(i);
+        Tuple t = new Tuple(this.td);
+        for (int j = 0; j < this.td.numFields(); j++) {
+            t.setField(j, stored.getField(j));
+        }
+        t.setRecordId(new RecordId(this.pid, i));
+        return t;
+    }
+
+    /** @return the key of the i-th tuple of this page */
+    public Field getKey(int i) {
+        return this.tuples.get(i).getField(this.keyField);
+    }
+
+    /**
+     * @return the index of the first tuple whose key is not less than key,
+     *   or numTuples() if there is none
+     */
+    public int lowerBound(Field key) {
+        int lo = 0, hi = this.tuples.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(getKey(mid), key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the first tuple whose key is greater than key,
+     *   or numTuples() if there is none
+     */
+    public int upperBound(Field key) {
+        int lo = 0, hi = this.tuples.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(getKey(mid), key) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Inserts a tuple after the tuples with the same key.  The page may hold
+     * one tuple more than fits on disk until it is split; see isOverflowing.
+     *
+     * @return the index the tuple was inserted at
+     */
+    public int insertTuple(Tuple t) {
+        int i = upperBound(t.getField(this.keyField));
+        this.tuples.add(i, t);
+        return i;
+    }
+
+    /** Removes the i-th tuple of this page. */
+    public void deleteTuple(int i) {
+        this.tuples.remove(i);
+    }
+
+    /** @return true if the page holds more tuples than fit on disk */
+    public boolean isOverflowing() {
+        return this.tuples.size() > this.maxTuples;
+    }
+
+    /**
+     * Moves the upper half of this page's tuples to an empty page that
+     * becomes this page's right sibling.
+     *
+     * @return the key of the first tuple of the right page, which separates
+     *   the two pages in their parent
+     */
+    public Field splitInto(BTreeLeafPage right) {
+        int half = this.tuples.size() / 2;
+        right.tuples = new ArrayList<Tuple>(this.tuples.subList(half, this.tuples.size()));
+        this.tuples = new ArrayList<Tuple>(this.tuples.subList(0, half));
+        right.rightSibling = this.rightSibling;
+        this.rightSibling = right.pid.pageno();
+        return right.getKey(0);
+    }
+
+    /** @return the id of the right sibling, or null for the rightmost leaf */
+    public BTreePageId getRightSiblingId() {
+        if (this.rightSibling == 0) return null;
+        return new BTreePageId(this.pid.getTableId(), this.rightSibling, BTreePageId.LEAF);
+    }
+
+    /** Links this leaf to its right sibling; used to build a tree bottom up. */
+    void setRightSiblingId(BTreePageId right) {
+        this.rightSibling = right.pageno();
+    }
+
+    public byte[] getPageData() {
+        return encode(dos -> {
+            dos.writeInt(this.rightSibling);
+            dos.writeInt(this.tuples.size());
+            for (Tuple t : this.tuples) {
+                for (int j = 0; j < this.td.numFields(); j++) {
+                    t.getField(j).serialize(dos);
+                }
+            }
+        });
+    }
+}
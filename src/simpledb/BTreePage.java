@@ -0,0 +1,93 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * BTreePage holds what the header, internal and leaf pages of a BTreeFile
+ * have in common: the page id, the dirty state and the before image.  Each
+ * kind of page decodes its contents when it is read and encodes them again
+ * in getPageData.
+ *
+ * @see BTreeFile
+ */
+public abstract class BTreePage implements Page {
+    protected final BTreeFile file;
+    protected final BTreePageId pid;
+    private volatile TransactionId dirtier;
+    private volatile byte[] oldData;
+
+    BTreePage(BTreeFile file, BTreePageId pid, byte[] data) {
+        this.file = file;
+        this.pid = pid;
+        this.oldData = data.clone();
+    }
+
+    /**
+     * @return the file a page read back from the log belongs to
+     */
+    static BTreeFile fileOf(PageId pid) {
+        return (BTreeFile) Database.getCatalog().getDbFile(pid.getTableId());
+    }
+
+    /**
+     * @return the id of this page
+     */
+    public BTreePageId getId() {
+        return this.pid;
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirtier = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return this.dirtier;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public Page getBeforeImage() {
+        return this.file.createPage(this.pid, this.oldData);
+    }
+
+    public void setBeforeImage() {
+        this.oldData = this.getPageData();
+    }
+
+    /**
+     * Encodes the page with the given writer into a zero padded byte array
+     * of PAGE_SIZE bytes.
+     */
+    interface Encoder {
+        void write(DataOutputStream dos) throws IOException;
+    }
+
+    static byte[] encode(Encoder encoder) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            encoder.write(dos);
+            dos.flush();
+        } catch (IOException e) {
+            // writing to a byte array cannot fail
+            throw new RuntimeException(e);
+        }
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        System.arraycopy(baos.toByteArray(), 0, data, 0, baos.size());
+        return data;
+    }
+
+    /** Orders two fields of the same type. */
+    static int compare(Field a, Field b) {
+        if (a.compare(Predicate.Op.LESS_THAN, b)) return -1;
+        if (a.compare(Predicate.Op.GREATER_THAN, b)) return 1;
+        return 0;
+    }
+}
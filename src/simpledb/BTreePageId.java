@@ -0,0 +1,92 @@
+package simpledb;
+
+/** Unique identifier for the pages of a BTreeFile. */
+public class BTreePageId implements PageId {
+    /** The header page, page 0 of every BTreeFile. */
+    public static final int HEADER = 0;
+    public static final int INTERNAL = 1;
+    public static final int LEAF = 2;
+
+    private int tableId;
+    private int pageno;
+    private int category;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific B+tree file.
+     *
+     * @param tableId The B+tree file that is being referenced
+     * @param pageno The page number in that file.
+     * @param category The kind of page: HEADER, INTERNAL or LEAF
+     */
+    public BTreePageId(int tableId, int pageno, int category) {
+        this.tableId = tableId;
+        this.pageno = pageno;
+        this.category = category;
+    }
+
+    /** @return the B+tree file associated with this PageId */
+    public int getTableId() {
+        return this.tableId;
+    }
+
+    /**
+     * @return the page number in the file getTableId() associated with
+     *   this PageId
+     */
+    public int pageno() {
+        return this.pageno;
+    }
+
+    /** @return the kind of page: HEADER, INTERNAL or LEAF */
+    public int category() {
+        return this.category;
+    }
+
+    /**
+     * @return a hash code for this page, represented by the concatenation of
+     *   the table number and the page number (needed if a PageId is used as a
+     *   key in a hash table in the BufferPool, for example.)
+     * @see BufferPool
+     */
+    public int hashCode() {
+        return this.getTableId() * 10000 + this.pageno();
+    }
+
+    /**
+     * Compares one PageId to another.  The category is not compared: a page
+     * number identifies a page of the file.
+     *
+     * @param o The object to compare against (must be a PageId)
+     * @return true if the objects are equal (e.g., page numbers and table
+     *   ids are the same)
+     */
+    public boolean equals(Object o) {
+        boolean result = false;
+        if (o instanceof PageId) {
+            PageId that = (PageId) o;
+            result = (this.getTableId() == that.getTableId() && this.pageno() == that.pageno());
+        }
+        return result;
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.  Size of returned array must contain
+     *  number of integers that corresponds to number of args to one of the
+     *  constructors.
+     */
+    public int[] serialize() {
+        int data[] = new int[3];
+
+        data[0] = getTableId();
+        data[1] = pageno();
+        data[2] = category();
+
+        return data;
+    }
+
+    public String toString() {
+        return "BTreePageId(" + this.tableId + ", " + this.pageno + ", " + this.category + ")";
+    }
+}
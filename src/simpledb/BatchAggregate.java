@@ -0,0 +1,257 @@
+package simpledb;
+
+import java.util.Arrays;
+
+/**
+ * BatchAggregate is the batch counterpart of HashAggregate: it computes any
+ * number of aggregates grouped by any number of columns, with the same
+ * result columns and group order.  Each batch is aggregated a column at a
+ * time: the group of every selected row is looked up first, then each
+ * aggregate is one loop over its int column and the group numbers.
+ * <p>
+ * Unlike HashAggregate, the groups are kept in memory whatever their number.
+ *
+ * @see HashAggregate
+ */
+public class BatchAggregate implements BatchIterator {
+    private BatchIterator child;
+    private int[] groupFields;
+    private int[] aggFields;
+    private Aggregator.Op[] aggOps;
+    private TupleDesc td;
+
+    private GroupTable groups;
+    private int numGroups;
+    private long[] counts;
+    private long[][] sums;
+    private int[][] mins;
+    private int[][] maxs;
+    private int[] rowGroups;
+    private int nextGroup;
+    private boolean built;
+    private VectorBatch batch;
+
+    /**
+     * Constructor.
+     *
+     * @param child The BatchIterator that is feeding us rows.
+     * @param gfields The columns over which we are grouping the result, or
+     *   an empty array if there is no grouping
+     * @param afields The columns over which we are computing aggregates, or
+     *   HashAggregate.COUNT_ALL for a COUNT(*)
+     * @param aops The aggregation operator of each aggregate
+     * @throws IllegalArgumentException if there are no aggregates, or an
+     *   aggregate other than COUNT is over a string field or COUNT_ALL
+     */
+    public BatchAggregate(BatchIterator child, int[] gfields, int[] afields, Aggregator.Op[] aops) {
+        if (afields.length == 0 || afields.length != aops.length) {
+            throw new IllegalArgumentException("need an operator for each of one or more aggregates");
+        }
+        TupleDesc childTd = child.getTupleDesc();
+        for (int i = 0; i < afields.length; i++) {
+            if (aops[i] != Aggregator.Op.COUNT
+                    && (afields[i] == HashAggregate.COUNT_ALL || childTd.getType(afields[i]) != Type.INT_TYPE)) {
+                throw new IllegalArgumentException("cannot compute " + Aggregate.aggName(aops[i])
+                        + " of " + (afields[i] == HashAggregate.COUNT_ALL ? "*" : childTd.getFieldName(afields[i])));
+            }
+        }
+        this.child = child;
+        this.groupFields = gfields.clone();
+        this.aggFields = afields.clone();
+        this.aggOps = aops.clone();
+
+        Type[] types = new Type[gfields.length + afields.length];
+        String[] names = new String[types.length];
+        for (int i = 0; i < gfields.length; i++) {
+            types[i] = childTd.getType(gfields[i]);
+            names[i] = childTd.getFieldName(gfields[i]);
+        }
+        for (int i = 0; i < afields.length; i++) {
+            types[gfields.length + i] = Type.INT_TYPE;
+            names[gfields.length + i] = Aggregate.aggName(aops[i]) + " ("
+                    + (afields[i] == HashAggregate.COUNT_ALL ? "*" : childTd.getFieldName(afields[i])) + ")";
+        }
+        this.td = new TupleDesc(types, names);
+    }
+
+    /**
+     * @see HashAggregate#getTupleDesc
+     */
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        if (!this.built) {
+            this.child.open();
+            this.build();
+            this.built = true;
+        }
+        this.batch = new VectorBatch(this.td);
+        this.nextGroup = 0;
+    }
+
+    private void build() throws DbException, TransactionAbortedException {
+        Type[] keyTypes = new Type[this.groupFields.length];
+        TupleDesc childTd = this.child.getTupleDesc();
+        for (int i = 0; i < keyTypes.length; i++) {
+            keyTypes[i] = childTd.getType(this.groupFields[i]);
+        }
+        this.groups = keyTypes.length > 0 ? new GroupTable(keyTypes) : null;
+        this.numGroups = 0;
+        int capacity = 16;
+        this.counts = new long[capacity];
+        this.sums = new long[this.aggOps.length][];
+        this.mins = new int[this.aggOps.length][];
+        this.maxs = new int[this.aggOps.length][];
+        for (int i = 0; i < this.aggOps.length; i++) {
+            switch (this.aggOps[i]) {
+            case SUM:
+            case AVG:
+                this.sums[i] = new long[capacity];
+                break;
+            case MIN:
+                this.mins[i] = new int[capacity];
+                Arrays.fill(this.mins[i], Integer.MAX_VALUE);
+                break;
+            case MAX:
+                this.maxs[i] = new int[capacity];
+                Arrays.fill(this.maxs[i], Integer.MIN_VALUE);
+                break;
+            default:
+                break;
+            }
+        }
+
+        VectorBatch in;
+        while ((in = this.child.nextBatch()) != null) {
+            int rows = in.numRows();
+            if (rows == 0) continue;
+            if (this.rowGroups == null || this.rowGroups.length < rows) {
+                this.rowGroups = new int[in.capacity()];
+            }
+            int[] rowGroups = this.rowGroups;
+            if (this.groups == null) {
+                if (this.numGroups == 0) this.addGroup();
+                Arrays.fill(rowGroups, 0, rows, 0);
+            } else if (this.groupFields.length == 1 && keyTypes[0] == Type.INT_TYPE) {
+                int[] keys = in.intColumn(this.groupFields[0]);
+                for (int i = 0; i < rows; i++) {
+                    rowGroups[i] = this.groups.groupOf(keys[in.row(i)]);
+                    if (rowGroups[i] == this.numGroups) this.addGroup();
+                }
+            } else {
+                for (int i = 0; i < rows; i++) {
+                    rowGroups[i] = this.groups.groupOf(in, in.row(i), this.groupFields);
+                    if (rowGroups[i] == this.numGroups) this.addGroup();
+                }
+            }
+
+            long[] counts = this.counts;
+            for (int i = 0; i < rows; i++) {
+                counts[rowGroups[i]]++;
+            }
+            for (int a = 0; a < this.aggOps.length; a++) {
+                if (this.aggOps[a] == Aggregator.Op.COUNT) continue;
+                int[] values = in.intColumn(this.aggFields[a]);
+                if (this.sums[a] != null) {
+                    long[] sums = this.sums[a];
+                    for (int i = 0; i < rows; i++) {
+                        sums[rowGroups[i]] += values[in.row(i)];
+                    }
+                } else if (this.mins[a] != null) {
+                    int[] mins = this.mins[a];
+                    for (int i = 0; i < rows; i++) {
+                        int value = values[in.row(i)];
+                        if (value < mins[rowGroups[i]]) mins[rowGroups[i]] = value;
+                    }
+                } else {
+                    int[] maxs = this.maxs[a];
+                    for (int i = 0; i < rows; i++) {
+                        int value = values[in.row(i)];
+                        if (value > maxs[rowGroups[i]]) maxs[rowGroups[i]] = value;
+                    }
+                }
+            }
+        }
+    }
+
+    private void addGroup() {
+        if (this.numGroups == this.counts.length) {
+            int capacity = 2 * this.numGroups;
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            for (int i = 0; i < this.aggOps.length; i++) {
+                if (this.sums[i] != null) this.sums[i] = Arrays.copyOf(this.sums[i], capacity);
+                if (this.mins[i] != null) {
+                    this.mins[i] = Arrays.copyOf(this.mins[i], capacity);
+                    Arrays.fill(this.mins[i], this.numGroups, capacity, Integer.MAX_VALUE);
+                }
+                if (this.maxs[i] != null) {
+                    this.maxs[i] = Arrays.copyOf(this.maxs[i], capacity);
+                    Arrays.fill(this.maxs[i], this.numGroups, capacity, Integer.MIN_VALUE);
+                }
+            }
+        }
+        this.numGroups++;
+    }
+
+    /**
+     * Returns the next batch of groups, with the group-by fields followed by
+     * the aggregates, or null if there are no more groups.
+     */
+    public VectorBatch nextBatch() {
+        if (this.nextGroup >= this.numGroups) return null;
+        this.batch.clear();
+        int width = this.groupFields.length;
+        while (!this.batch.isFull() && this.nextGroup < this.numGroups) {
+            int group = this.nextGroup++;
+            int row = this.batch.addRow();
+            for (int i = 0; i < width; i++) {
+                this.batch.setField(i, row, this.groups.key(group, i));
+            }
+            for (int i = 0; i < this.aggOps.length; i++) {
+                this.batch.setInt(width + i, row, this.aggregate(i, group));
+            }
+        }
+        return this.batch;
+    }
+
+    /**
+     * @return the value of an aggregate for a group; as in HashAggregate, a
+     *   SUM that does not fit in an int wraps around
+     */
+    private int aggregate(int i, int group) {
+        switch (this.aggOps[i]) {
+        case AVG:
+            return (int) (this.sums[i][group] / this.counts[group]);
+        case SUM:
+            return (int) this.sums[i][group];
+        case MIN:
+            return this.mins[i][group];
+        case MAX:
+            return this.maxs[i][group];
+        default:
+            return (int) this.counts[group];
+        }
+    }
+
+    /**
+     * Restarts the results, without aggregating the child again.
+     */
+    public void rewind() {
+        this.nextGroup = 0;
+    }
+
+    public void close() {
+        this.child.close();
+        this.built = false;
+        this.groups = null;
+        this.counts = null;
+        this.sums = null;
+        this.mins = null;
+        this.maxs = null;
+        this.rowGroups = null;
+        this.numGroups = 0;
+        this.batch = null;
+    }
+}
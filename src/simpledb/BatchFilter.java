@@ -0,0 +1,126 @@
+package simpledb;
+
+/**
+ * BatchFilter is the batch counterpart of Filter.  It does not move the rows
+ * that pass the predicate; it narrows the selection vector of each batch to
+ * them.  A predicate on an INT_TYPE field is a loop of primitive comparisons
+ * over the column, one loop per operator; other fields are compared with
+ * Field.compare.
+ *
+ * @see Filter
+ */
+public class BatchFilter implements BatchIterator {
+    private Predicate predicate;
+    private BatchIterator child;
+    private int[] selection;
+
+    /**
+     * @param p The predicate to filter rows with
+     * @param child The child operator
+     */
+    public BatchFilter(Predicate p, BatchIterator child) {
+        this.predicate = p;
+        this.child = child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        this.child.open();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        this.child.rewind();
+    }
+
+    public void close() {
+        this.child.close();
+    }
+
+    /**
+     * Returns the next batch of the child that has rows passing the
+     * predicate, with only those rows selected.
+     */
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        VectorBatch batch;
+        while ((batch = this.child.nextBatch()) != null) {
+            // the child's selection may be read while this one is written,
+            // so the two are never the same array
+            if (this.selection == null || this.selection.length < batch.size()) {
+                this.selection = new int[batch.capacity()];
+            }
+            int count;
+            int field = this.predicate.getField();
+            if (this.getTupleDesc().getType(field) == Type.INT_TYPE) {
+                count = this.filterInts(batch, batch.intColumn(field),
+                        ((IntField) this.predicate.getOperand()).getValue());
+            } else {
+                count = this.filterFields(batch, field);
+            }
+            batch.select(this.selection, count);
+            if (count > 0) return batch;
+        }
+        return null;
+    }
+
+    private int filterInts(VectorBatch batch, int[] values, int operand) {
+        int[] out = this.selection;
+        int rows = batch.numRows();
+        int count = 0;
+        switch (this.predicate.getOp()) {
+            case EQUALS:
+            case LIKE:
+                for (int i = 0; i < rows; i++) {
+                    int row = batch.row(i);
+                    if (values[row] == operand) out[count++] = row;
+                }
+                break;
+            case NOT_EQUALS:
+                for (int i = 0; i < rows; i++) {
+                    int row = batch.row(i);
+                    if (values[row] != operand) out[count++] = row;
+                }
+                break;
+            case GREATER_THAN:
+                for (int i = 0; i < rows; i++) {
+                    int row = batch.row(i);
+                    if (values[row] > operand) out[count++] = row;
+                }
+                break;
+            case GREATER_THAN_OR_EQ:
+                for (int i = 0; i < rows; i++) {
+                    int row = batch.row(i);
+                    if (values[row] >= operand) out[count++] = row;
+                }
+                break;
+            case LESS_THAN:
+                for (int i = 0; i < rows; i++) {
+                    int row = batch.row(i);
+                    if (values[row] < operand) out[count++] = row;
+                }
+                break;
+            case LESS_THAN_OR_EQ:
+                for (int i = 0; i < rows; i++) {
+                    int row = batch.row(i);
+                    if (values[row] <= operand) out[count++] = row;
+                }
+                break;
+        }
+        return count;
+    }
+
+    private int filterFields(VectorBatch batch, int field) {
+        Field[] values = batch.fieldColumn(field);
+        Predicate.Op op = this.predicate.getOp();
+        Field operand = this.predicate.getOperand();
+        int rows = batch.numRows();
+        int count = 0;
+        for (int i = 0; i < rows; i++) {
+            int row = batch.row(i);
+            if (values[row].compare(op, operand)) this.selection[count++] = row;
+        }
+        return count;
+    }
+}
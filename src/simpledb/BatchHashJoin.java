@@ -0,0 +1,177 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * BatchHashJoin is the batch counterpart of HashEquiJoin.  When opened it
+ * copies the rows of the inner child into blocks of columns and numbers
+ * their join keys with a GroupTable, chaining the rows of each key through
+ * an int array instead of a list per key.  Each outer batch is then probed
+ * row by row, and the joined rows, the outer columns followed by the inner
+ * ones, are copied into the output batch column by column.
+ * <p>
+ * Rows come in the same order as from HashEquiJoin when it fits in memory:
+ * outer order and then inner order.  Unlike HashEquiJoin, the inner child
+ * is kept in memory whatever its size.
+ *
+ * @see HashEquiJoin
+ */
+public class BatchHashJoin implements BatchIterator {
+    private static final int END = -1;
+
+    private JoinPredicate joinPredicate;
+    private BatchIterator child1;
+    private BatchIterator child2;
+    private TupleDesc td;
+    private int outerWidth;
+
+    // the inner rows, DEFAULT_ROWS to a block; the row numbered r is row
+    // r % DEFAULT_ROWS of block r / DEFAULT_ROWS
+    private ArrayList<VectorBatch> blocks;
+    private GroupTable keys;
+    // the first and last inner row of each key, and the next row of each row
+    private int[] heads;
+    private int[] tails;
+    private int[] nextRows;
+    private int numRows;
+
+    private VectorBatch batch;
+    // the outer batch being probed, the next of its selected rows, and the
+    // next inner row that matches the current one, or END
+    private VectorBatch outer;
+    private int outerIndex;
+    private int match;
+
+    /**
+     * Constructor.
+     *
+     * @param p The predicate to use to join the children; its operator
+     *   must be Predicate.Op.EQUALS
+     * @param child1 the left (outer) relation to join
+     * @param child2 the right (inner) relation to join, which is the one
+     *   held in memory
+     * @throws IllegalArgumentException if the predicate is not an equality
+     */
+    public BatchHashJoin(JoinPredicate p, BatchIterator child1, BatchIterator child2) {
+        if (p.getOperator() != Predicate.Op.EQUALS) {
+            throw new IllegalArgumentException("hash join needs an equality predicate");
+        }
+        this.joinPredicate = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.td = TupleDesc.combine(child1.getTupleDesc(), child2.getTupleDesc());
+        this.outerWidth = child1.getTupleDesc().numFields();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /**
+     * Opens the children and builds the hash table from the inner child.
+     */
+    public void open() throws DbException, TransactionAbortedException {
+        this.child1.open();
+        this.child2.open();
+        this.build();
+        this.batch = new VectorBatch(this.td);
+        this.outer = null;
+        this.match = END;
+    }
+
+    private void build() throws DbException, TransactionAbortedException {
+        TupleDesc innerTd = this.child2.getTupleDesc();
+        int[] keyFields = { this.joinPredicate.getField2() };
+        this.blocks = new ArrayList<VectorBatch>();
+        this.keys = new GroupTable(innerTd.getType(keyFields[0]));
+        this.heads = new int[16];
+        this.tails = new int[16];
+        this.nextRows = new int[VectorBatch.DEFAULT_ROWS];
+        this.numRows = 0;
+
+        VectorBatch in;
+        VectorBatch block = null;
+        while ((in = this.child2.nextBatch()) != null) {
+            for (int i = 0; i < in.numRows(); i++) {
+                if (block == null || block.isFull()) {
+                    block = new VectorBatch(innerTd);
+                    this.blocks.add(block);
+                }
+                int inRow = in.row(i);
+                block.copyRow(in, inRow, block.addRow(), 0);
+
+                int newKey = this.keys.size();
+                int key = this.keys.groupOf(in, inRow, keyFields);
+                int row = this.numRows++;
+                if (row == this.nextRows.length) {
+                    this.nextRows = Arrays.copyOf(this.nextRows, 2 * row);
+                }
+                this.nextRows[row] = END;
+                if (key == newKey) {
+                    if (key == this.heads.length) {
+                        this.heads = Arrays.copyOf(this.heads, 2 * key);
+                        this.tails = Arrays.copyOf(this.tails, 2 * key);
+                    }
+                    this.heads[key] = row;
+                } else {
+                    this.nextRows[this.tails[key]] = row;
+                }
+                this.tails[key] = row;
+            }
+        }
+    }
+
+    /**
+     * Returns the next batch of joined rows, or null if there are no more.
+     */
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        this.batch.clear();
+        int outerKey = this.joinPredicate.getField1();
+        boolean intKey = this.child1.getTupleDesc().getType(outerKey) == Type.INT_TYPE;
+        while (!this.batch.isFull()) {
+            if (this.match == END) {
+                if (this.outer == null || this.outerIndex >= this.outer.numRows()) {
+                    this.outer = this.child1.nextBatch();
+                    this.outerIndex = 0;
+                    if (this.outer == null) break;
+                    continue;
+                }
+                int row = this.outer.row(this.outerIndex);
+                int key = intKey ? this.keys.find(this.outer.getInt(outerKey, row))
+                        : this.keys.find(this.outer.getField(outerKey, row));
+                if (key < 0) {
+                    this.outerIndex++;
+                    continue;
+                }
+                this.match = this.heads[key];
+            }
+            int out = this.batch.addRow();
+            this.batch.copyRow(this.outer, this.outer.row(this.outerIndex), out, 0);
+            VectorBatch block = this.blocks.get(this.match / VectorBatch.DEFAULT_ROWS);
+            this.batch.copyRow(block, this.match % VectorBatch.DEFAULT_ROWS, out, this.outerWidth);
+            this.match = this.nextRows[this.match];
+            if (this.match == END) this.outerIndex++;
+        }
+        return this.batch.size() == 0 ? null : this.batch;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        this.child1.rewind();
+        this.batch.clear();
+        this.outer = null;
+        this.match = END;
+    }
+
+    public void close() {
+        this.child1.close();
+        this.child2.close();
+        this.blocks = null;
+        this.keys = null;
+        this.heads = null;
+        this.tails = null;
+        this.nextRows = null;
+        this.batch = null;
+        this.outer = null;
+    }
+}
@@ -0,0 +1,51 @@
+package simpledb;
+
+/**
+ * BatchIterator is the interface of the vectorized operators, the batch
+ * counterpart of DbIterator.  Instead of one Tuple per call, nextBatch
+ * returns a VectorBatch of many rows stored column by column, so that an
+ * operator's per-row work is a loop over primitive arrays rather than a
+ * virtual call and a Tuple allocation.
+ * <p>
+ * As with DbIterator, open must be called before the other methods, open
+ * opens the children and close closes them.  Batch operators are mixed with
+ * tuple operators through the adapters TupleBatchIterator, which batches the
+ * tuples of a DbIterator, and BatchTupleIterator, which returns the rows of
+ * a BatchIterator as Tuples.
+ *
+ * @see VectorBatch
+ * @see DbIterator
+ */
+public interface BatchIterator {
+    /**
+     * Opens the iterator. This must be called before any of the other methods.
+     * @throws DbException when there are problems opening/accessing the database.
+     */
+    public void open() throws DbException, TransactionAbortedException;
+
+    /**
+     * Returns the next batch of rows.  A batch may have no selected rows,
+     * for instance when a filter rejected all of them, without the iterator
+     * being exhausted.  The batch is only valid until the next call, which
+     * may reuse it.
+     *
+     * @return the next batch, or null if there are no more rows
+     */
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException;
+
+    /**
+     * Resets the iterator to the start.
+     * @throws DbException when rewind is unsupported.
+     */
+    public void rewind() throws DbException, TransactionAbortedException;
+
+    /**
+     * @return the TupleDesc of the rows of the batches
+     */
+    public TupleDesc getTupleDesc();
+
+    /**
+     * Closes the iterator.
+     */
+    public void close();
+}
@@ -0,0 +1,52 @@
+package simpledb;
+
+/**
+ * BatchProject is the batch counterpart of Project.  Its batches share the
+ * columns and selection of the child's batches instead of copying them.
+ *
+ * @see Project
+ */
+public class BatchProject implements BatchIterator {
+    private BatchIterator child;
+    private int[] fields;
+    private TupleDesc td;
+
+    /**
+     * @param fields the indices of the child's fields to project out, in
+     *   output order
+     * @param child The child operator
+     */
+    public BatchProject(int[] fields, BatchIterator child) {
+        this.child = child;
+        this.fields = fields.clone();
+        TupleDesc childTd = child.getTupleDesc();
+        Type[] types = new Type[fields.length];
+        String[] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = childTd.getType(fields[i]);
+            names[i] = childTd.getFieldName(fields[i]);
+        }
+        this.td = new TupleDesc(types, names);
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        this.child.open();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        this.child.rewind();
+    }
+
+    public void close() {
+        this.child.close();
+    }
+
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        VectorBatch batch = this.child.nextBatch();
+        return batch == null ? null : batch.project(this.fields, this.td);
+    }
+}
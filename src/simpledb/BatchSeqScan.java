@@ -0,0 +1,99 @@
+package simpledb;
+
+/**
+ * BatchSeqScan is the batch counterpart of SeqScan: it returns the tuples of
+ * a table in batches of VectorBatch.DEFAULT_ROWS rows.  Pages of a HeapFile
+ * are decoded straight into the columns of the batch, without building a
+ * Tuple per row; any other kind of table is read through a SeqScan.
+ *
+ * @see SeqScan
+ */
+public class BatchSeqScan implements BatchIterator {
+    private TransactionId tid;
+    private HeapFile file;
+    private TupleDesc td;
+    private BatchIterator tupleScan;
+    private VectorBatch batch;
+    private ScanRing ring;
+    private HeapPage page;
+    private int nextPageNo;
+    private int nextSlot;
+
+    /**
+     * Creates a batched sequential scan over the specified table as a part
+     * of the specified transaction.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan.
+     * @param tableAlias the alias of this table; as for SeqScan, the fields
+     *   of the returned TupleDesc are named tableAlias.fieldName
+     */
+    public BatchSeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this.tid = tid;
+        DbFile file = Database.getCatalog().getDbFile(tableid);
+        if (file instanceof HeapFile) {
+            this.file = (HeapFile) file;
+            TupleDesc originalTd = file.getTupleDesc();
+            Type[] types = new Type[originalTd.numFields()];
+            String[] names = new String[originalTd.numFields()];
+            for (int i = 0; i < originalTd.numFields(); i++) {
+                types[i] = originalTd.getType(i);
+                names[i] = tableAlias + "." + originalTd.getFieldName(i);
+            }
+            this.td = new TupleDesc(types, names);
+        } else {
+            this.tupleScan = new TupleBatchIterator(new SeqScan(tid, tableid, tableAlias));
+            this.td = this.tupleScan.getTupleDesc();
+        }
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        if (this.tupleScan != null) {
+            this.tupleScan.open();
+            return;
+        }
+        this.batch = new VectorBatch(this.td);
+        this.ring = ScanRing.forScan(Database.getBufferPool(), this.file.numPages());
+        this.page = null;
+        this.nextPageNo = 0;
+        this.nextSlot = 0;
+    }
+
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (this.tupleScan != null) {
+            return this.tupleScan.nextBatch();
+        }
+        if (this.batch == null) {
+            throw new IllegalStateException("BatchSeqScan is not open");
+        }
+        this.batch.clear();
+        while (!this.batch.isFull()) {
+            if (this.page == null || this.nextSlot >= this.page.numSlots()) {
+                if (this.nextPageNo >= this.file.numPages()) break;
+                HeapPageId pid = new HeapPageId(this.file.getId(), this.nextPageNo++);
+                this.page = (HeapPage) Database.getBufferPool().getPage(this.tid, pid, Permissions.READ_ONLY, this.ring);
+                this.nextSlot = 0;
+            }
+            this.nextSlot = this.page.readRows(this.nextSlot, this.batch);
+        }
+        return this.batch.size() == 0 ? null : this.batch;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        this.close();
+        this.open();
+    }
+
+    public void close() {
+        if (this.tupleScan != null) {
+            this.tupleScan.close();
+        }
+        this.batch = null;
+        this.ring = null;
+        this.page = null;
+    }
+}
@@ -0,0 +1,50 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * BatchTupleIterator adapts a BatchIterator to a DbIterator, returning the
+ * selected rows of its batches as Tuples, so that a batch operator can feed
+ * any tuple operator.
+ *
+ * @see TupleBatchIterator
+ */
+public class BatchTupleIterator extends AbstractDbIterator {
+    private BatchIterator child;
+    private VectorBatch batch;
+    private int next;
+
+    public BatchTupleIterator(BatchIterator child) {
+        this.child = child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+        this.child.open();
+        this.batch = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.close();
+        this.child.rewind();
+        this.batch = null;
+    }
+
+    public void close() {
+        super.close();
+        this.child.close();
+        this.batch = null;
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException {
+        while (this.batch == null || this.next >= this.batch.numRows()) {
+            this.batch = this.child.nextBatch();
+            this.next = 0;
+            if (this.batch == null) return null;
+        }
+        return this.batch.getTuple(this.batch.row(this.next++));
+    }
+}
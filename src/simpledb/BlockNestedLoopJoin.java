@@ -0,0 +1,160 @@
+package simpledb;
+import java.util.*;
+
+/**
+ * BlockNestedLoopJoin implements a join on any predicate by nested loops
+ * over blocks of outer tuples.  It reads as many outer tuples as fit in a
+ * MemoryBudget of pages, then scans the inner child once, applying the
+ * predicate to each inner tuple and every tuple of the block; then it reads
+ * the next block.  The inner child is scanned once per block instead of
+ * once per outer tuple, as Join does.
+ * <p>
+ * Tuples are returned as Join returns them, the concatenation of the outer
+ * and inner tuple.  Within a block they come in inner order, and for each
+ * inner tuple in outer order.
+ *
+ * @see Join
+ * @see MemoryBudget
+ */
+public class BlockNestedLoopJoin extends AbstractDbIterator {
+    private JoinPredicate joinPredicate;
+    private DbIterator child1;
+    private DbIterator child2;
+    private TupleDesc td;
+    private final long blockTuples;
+
+    private ArrayList<Tuple> block = new ArrayList<Tuple>();
+    private int blocks;
+    // the inner tuple being joined with the block, and the next block
+    // tuple to compare it with
+    private Tuple innerTuple;
+    private int position;
+
+    /**
+     * Constructor.  Accepts to children to join and the predicate
+     * to join them on.  Blocks are as large as the default MemoryBudget.
+     *
+     * @param p The predicate to use to join the children
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 Iterator for the right(inner) relation to join
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, MemoryBudget.getDefaultPages());
+    }
+
+    /**
+     * Constructor for a join with its own block size.
+     *
+     * @param blockPages the number of pages of outer tuples in a block
+     * @see #BlockNestedLoopJoin(JoinPredicate, DbIterator, DbIterator)
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int blockPages) {
+        this.joinPredicate = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.td = TupleDesc.combine(child1.getTupleDesc(), child2.getTupleDesc());
+        this.blockTuples = MemoryBudget.tupleCapacity(blockPages, child1.getTupleDesc());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /** @return the number of blocks of outer tuples read so far */
+    public int blocks() {
+        return this.blocks;
+    }
+
+    public void open()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+        this.child1.open();
+        this.child2.open();
+        this.blocks = 0;
+        this.readBlock();
+    }
+
+    public void close() {
+        super.close();
+        this.child1.close();
+        this.child2.close();
+        this.block.clear();
+        this.innerTuple = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.close();
+        this.child1.rewind();
+        this.child2.rewind();
+        this.blocks = 0;
+        this.readBlock();
+    }
+
+    /**
+     * Reads the next block of outer tuples, and restarts the inner child if
+     * it was scanned for the previous block.
+     *
+     * @return false if the outer child has no more tuples
+     */
+    private boolean readBlock() throws DbException, TransactionAbortedException {
+        this.block.clear();
+        this.innerTuple = null;
+        while (this.block.size() < this.blockTuples && this.child1.hasNext()) {
+            this.block.add(this.child1.next());
+        }
+        if (this.block.isEmpty()) {
+            return false;
+        }
+        if (this.blocks > 0) {
+            this.child2.rewind();
+        }
+        this.blocks++;
+        return true;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     * @see JoinPredicate#filter
+     */
+    protected Tuple readNext() throws TransactionAbortedException, DbException {
+        while (!this.block.isEmpty()) {
+            if (this.innerTuple != null) {
+                while (this.position < this.block.size()) {
+                    Tuple t1 = this.block.get(this.position++);
+                    if (this.joinPredicate.filter(t1, this.innerTuple)) {
+                        return this.joinTuples(t1, this.innerTuple);
+                    }
+                }
+            }
+            if (this.child2.hasNext()) {
+                this.innerTuple = this.child2.next();
+                this.position = 0;
+            } else {
+                this.readBlock();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a new tuple from two existing tuples.
+     * @param t1 the first Tuple to join
+     * @param t2 the second Tuple to join with the first
+     * @return the joined Tuple
+     */
+    private Tuple joinTuples(Tuple t1, Tuple t2) {
+        Tuple joinedTuple = new Tuple(this.td);
+
+        for (int i = 0; i < t1.numFields(); i++) {
+            joinedTuple.setField(i, t1.getField(i));
+        }
+
+        for (int j = 0; j < t2.numFields(); j++) {
+            joinedTuple.setField(j + t1.numFields(), t2.getField(j));
+        }
+
+        return joinedTuple;
+    }
+}
@@ -4,7 +4,14 @@ import com.dstibrany.lockmanager.DeadlockException;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -14,12 +21,29 @@ import java.util.concurrent.ConcurrentHashMap;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool which check that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * The page table is split into shards keyed by PageId hash, each with its
+ * own lock and eviction state; see Shard.  Methods that write pages to disk
+ * still synchronize on the BufferPool, so the lock order is BufferPool,
+ * then LogFile, then a single shard.
  */
 public class BufferPool {
     private int numPages;
-    private Map<PageId, Page> pagePool = new ConcurrentHashMap<>();
+    private Shard[] shards;
+    private AtomicInteger occupiedFrames = new AtomicInteger(0);
     private Map<TransactionId, Set<PageId>> transactionPageMap  = new ConcurrentHashMap<>();
 
+    private volatile boolean prefetchEnabled =
+            !"false".equals(System.getProperty("simpledb.BufferPool.prefetch"));
+    private ExecutorService prefetcher;
+    private Map<PageId, CompletableFuture<Void>> prefetching = new ConcurrentHashMap<>();
+    // bumped after every page write made through the pool and every discard,
+    // so that a prefetch or a getPage miss can tell that the disk changed
+    // under its read
+    private AtomicLong diskWrites = new AtomicLong(0);
+    // pages appended by bulk inserts of transactions that are still running
+    private Map<TransactionId, List<AppendedRun>> appendedRuns = new ConcurrentHashMap<>();
+
     /** Bytes per page, including header. */
     public static final int PAGE_SIZE = 4096;
 
@@ -28,19 +52,135 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /** Pools are never split into shards of fewer pages than this. */
+    static final int MIN_PAGES_PER_SHARD = 8;
+
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * A partition of the page table.  Pages are assigned to shards by the
+     * hash of their PageId; each shard's pages and eviction state are
+     * guarded by the shard's own monitor, so transactions working on
+     * different pages rarely contend.  Frames are not partitioned: the pool
+     * capacity is shared by all shards (see reserveFrame).
+     */
+    private static class Shard {
+        private Map<PageId, Page> pages = new HashMap<>();
+        private EvictionPolicy evictionPolicy;
+        // pages that a getPage miss is reading in, outside the shard lock;
+        // completed once the page is resident or the read failed
+        private Map<PageId, CompletableFuture<Void>> loading = new HashMap<>();
+
+        Shard(EvictionPolicy evictionPolicy) {
+            this.evictionPolicy = evictionPolicy;
+        }
+
+        /** @return the clean page the policy would evict next, or null */
+        Page findVictim() {
+            PageId victim = this.evictionPolicy.chooseVictim(pid -> {
+                Page page = this.pages.get(pid);
+                return page != null && page.isDirty() == null;
+            });
+            return victim == null ? null : this.pages.get(victim);
+        }
+
+        /** @return true if the page was resident */
+        boolean remove(PageId pid) {
+            if (this.pages.remove(pid) == null) return false;
+            this.evictionPolicy.pageRemoved(pid);
+            return true;
+        }
+    }
+
+    /**
+     * A run of pages that a bulk insert appended to a heap file, which has to
+     * be overwritten with empty pages if the transaction aborts.
+     */
+    private static class AppendedRun {
+        private HeapFile file;
+        private int firstPageNo;
+        private int count;
+
+        AppendedRun(HeapFile file, int firstPageNo, int count) {
+            this.file = file;
+            this.firstPageNo = firstPageNo;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, using the
+     * eviction policy selected by the simpledb.BufferPool.policy system
+     * property (CLOCK by default).
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, EvictionPolicy.Kind.fromSystemProperty());
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages.  The number of
+     * shards is taken from the simpledb.BufferPool.shards system property,
+     * and defaults to the number of available processors.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policyKind the page replacement policy to use
+     */
+    public BufferPool(int numPages, EvictionPolicy.Kind policyKind) {
+        this(numPages, policyKind, shardsFromSystemProperty());
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, split into at
+     * most numShards independently locked shards.  Small pools get fewer
+     * shards, so that every shard holds at least MIN_PAGES_PER_SHARD pages.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policyKind the page replacement policy to use
+     * @param numShards the maximum number of shards
+     */
+    public BufferPool(int numPages, EvictionPolicy.Kind policyKind, int numShards) {
         this.numPages = numPages;
+        int shardCount = Math.max(1, Math.min(numShards, numPages / MIN_PAGES_PER_SHARD));
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            this.shards[i] = new Shard(policyKind.create(numPages / shardCount + 1));
+        }
+    }
+
+    private static int shardsFromSystemProperty() {
+        String shards = System.getProperty("simpledb.BufferPool.shards");
+        if (shards == null || shards.isEmpty()) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return Integer.parseInt(shards.trim());
+    }
+
+    /** @return the maximum number of pages in this buffer pool */
+    public int getNumPages() {
+        return this.numPages;
+    }
+
+    /** @return the number of shards the page table is split into */
+    public int numShards() {
+        return this.shards.length;
+    }
+
+    private int shardIndex(PageId pid) {
+        // spread the hash bits, as HashMap does, before taking the modulus
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % this.shards.length;
+    }
+
+    private Shard shardFor(PageId pid) {
+        return this.shards[shardIndex(pid)];
     }
 
     /**
      * Retrieve the specified page with the associated permissions.
      * Will acquire a lock and may block if that lock is held by another
-     * transaction.
+     * transaction.  Several threads may get pages on behalf of the same
+     * transaction, as the workers of an Exchange do.
      * <p>
      * The retrieved page should be looked up in the buffer pool.  If it
      * is present, it should be returned.  If it is not present, it should
@@ -54,32 +194,126 @@ public class BufferPool {
      */
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
+        return getPage(tid, pid, perm, null);
+    }
 
-        try {
-            Database.getLockManager().lock(pid.hashCode(), tid.hashCode(), perm.adaptForLockManager());
-        } catch (DeadlockException e) {
-            throw new TransactionAbortedException();
-        }
+    /**
+     * Retrieve the specified page on behalf of a large sequential scan.  If
+     * the page is not resident and the scan's ring is full, the frame of the
+     * ring page the scan read longest ago is reused, instead of evicting a
+     * page that other transactions may still need.
+     *
+     * @param tid the ID of the transaction requesting the page
+     * @param pid the ID of the requested page
+     * @param perm the requested permissions on the page
+     * @param ring the scan's ring of frames, or null to use the whole pool
+     * @see ScanRing
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, ScanRing ring)
+        throws TransactionAbortedException, DbException {
 
-        Set<PageId> transactionPages = transactionPageMap.getOrDefault(tid, new HashSet<>());
+        Set<PageId> transactionPages = transactionPageMap.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet());
+        // the lock manager's state of a transaction is not thread-safe, so
+        // the workers of a parallel query take their locks one at a time
+        synchronized (transactionPages) {
+            try {
+                Database.getLockManager().lock(pid.hashCode(), tid.hashCode(), perm.adaptForLockManager());
+            } catch (DeadlockException e) {
+                throw new TransactionAbortedException();
+            }
+        }
         transactionPages.add(pid);
-        transactionPageMap.put(tid, transactionPages);
 
-        if (pagePool.containsKey(pid)) {
-            Page page = this.pagePool.get(pid);
-            page.updateLastAccessTimestamp();
-            return page;
+        // a prefetch of this page is under way; wait for it rather than
+        // read the page twice
+        CompletableFuture<Void> pending = this.prefetching.get(pid);
+        if (pending != null) {
+            pending.join();
         }
 
-        if (pagePool.size() >= this.numPages) {
-            evictPage();
-        }
+        int home = shardIndex(pid);
+        Shard shard = this.shards[home];
+        while (true) {
+            synchronized (shard) {
+                Page page = shard.pages.get(pid);
+                if (page != null) {
+                    shard.evictionPolicy.pageAccessed(pid);
+                    return page;
+                }
+            }
 
-        Page newPage = Database.getCatalog().getDbFile(pid.getTableId()).readPage(pid);
+            // never hold a shard lock while evicting from other shards
+            reserveFrame(home, ring);
 
-        pagePool.put(pid, newPage);
-            
-        return newPage;
+            CompletableFuture<Void> load = new CompletableFuture<>();
+            CompletableFuture<Void> loading;
+            synchronized (shard) {
+                Page page = shard.pages.get(pid);
+                if (page != null) {
+                    // another transaction read the page in the meantime
+                    this.occupiedFrames.decrementAndGet();
+                    shard.evictionPolicy.pageAccessed(pid);
+                    return page;
+                }
+                loading = shard.loading.putIfAbsent(pid, load);
+            }
+            if (loading != null) {
+                // another transaction is reading the page; wait for it and
+                // look again, rather than read the page twice
+                this.occupiedFrames.decrementAndGet();
+                loading.join();
+                continue;
+            }
+
+            // the read runs outside the shard lock, so that hits on the
+            // shard's other pages do not wait for the disk
+            try {
+                return readIntoShard(shard, pid, ring);
+            } finally {
+                synchronized (shard) {
+                    shard.loading.remove(pid);
+                }
+                load.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Reads a page that is not resident into a frame reserved for it, and
+     * adds it to its shard.  The caller has registered the read in the
+     * shard's loading map, so no other getPage reads the page at the same
+     * time.
+     */
+    private Page readIntoShard(Shard shard, PageId pid, ScanRing ring) {
+        DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
+        long writesBefore = this.diskWrites.get();
+        Page newPage;
+        try {
+            newPage = file.readPage(pid);
+            synchronized (shard) {
+                // a prefetch may have admitted the page during the read
+                Page page = shard.pages.get(pid);
+                if (page != null) {
+                    this.occupiedFrames.decrementAndGet();
+                    shard.evictionPolicy.pageAccessed(pid);
+                    return page;
+                }
+                // the disk changed under the read; read the page again
+                // under the lock
+                if (this.diskWrites.get() != writesBefore) {
+                    newPage = file.readPage(pid);
+                }
+                shard.pages.put(pid, newPage);
+                shard.evictionPolicy.pageAdded(pid);
+                if (ring != null) {
+                    ring.add(pid);
+                }
+                return newPage;
+            }
+        } catch (RuntimeException e) {
+            this.occupiedFrames.decrementAndGet();
+            throw e;
+        }
     }
 
     /**
@@ -123,17 +357,27 @@ public class BufferPool {
         for (PageId pid: transactionPageIds) {
             if (commit) {
                 flushPage(pid);
-                Page page = this.pagePool.get(pid);
+                Page page = residentPage(pid);
                 if (page != null) {
                     page.setBeforeImage();
                 }
             } else {
-                if (pagePool.get(pid) != null && tid.equals(pagePool.get(pid).isDirty())) {
-                    Page restoredPage = Database.getCatalog().getDbFile(pid.getTableId()).readPage(pid);
-                    pagePool.put(pid, restoredPage);
+                Shard shard = shardFor(pid);
+                synchronized (shard) {
+                    Page page = shard.pages.get(pid);
+                    if (page != null && tid.equals(page.isDirty())) {
+                        Page restoredPage = Database.getCatalog().getDbFile(pid.getTableId()).readPage(pid);
+                        shard.pages.put(pid, restoredPage);
+                    }
                 }
             }
         }
+        List<AppendedRun> runs = this.appendedRuns.remove(tid);
+        if (runs != null && !commit) {
+            for (AppendedRun run : runs) {
+                undoAppendedRun(run);
+            }
+        }
         Database.getLockManager().removeTransaction(tid.hashCode());
         transactionPageMap.remove(tid);
     }
@@ -147,6 +391,7 @@ public class BufferPool {
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit, and updates cached versions of any pages that have 
      * been dirtied so that future requests see up-to-date pages. 
+     * The table's indexes, if any, are updated in the same transaction.
      *
      * @param tid the transaction adding the tuple
      * @param tableId the table to add the tuple to
@@ -156,11 +401,144 @@ public class BufferPool {
         throws DbException, IOException, TransactionAbortedException {
         DbFile file = Database.getCatalog().getDbFile(tableId);
         ArrayList<Page> dirtiedPages = file.addTuple(tid, t);
+        for (IndexDescriptor index : Database.getCatalog().getIndexes(tableId)) {
+            dirtiedPages.addAll(index.insertEntry(tid, t));
+        }
         for (Page dirtiedPage: dirtiedPages) {
             dirtiedPage.markDirty(true, tid);
         }
     }
 
+    /**
+     * Inserts every tuple the iterator returns into the specified table on
+     * behalf of a bulk load.  Heap files fill fresh pages at the end of the
+     * file and write them without caching them in the pool (see
+     * appendPages and writeAppendedPages); the appended pages stay locked
+     * exclusively until the transaction completes, and are emptied again
+     * if it aborts.
+     *
+     * @param tid the transaction performing the load
+     * @param tableId the table to add the tuples to
+     * @param tuples an open iterator over the tuples to add
+     * @return the number of tuples inserted
+     * @see DbFile#bulkInsert
+     */
+    public int bulkInsertTuples(TransactionId tid, int tableId, DbIterator tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        return file.bulkInsert(tid, tuples);
+    }
+
+    /**
+     * Appends count fresh pages to the end of a heap file for a bulk insert.
+     * The pages are locked exclusively before the file grows, so no other
+     * transaction can see them until tid completes.
+     *
+     * @return the number of the first appended page
+     */
+    public int appendPages(TransactionId tid, HeapFile file, int count)
+        throws TransactionAbortedException {
+        while (true) {
+            int firstPageNo = file.numPages();
+            for (int pageno = firstPageNo; pageno < firstPageNo + count; pageno++) {
+                PageId pid = new HeapPageId(file.getId(), pageno);
+                try {
+                    Database.getLockManager().lock(pid.hashCode(), tid.hashCode(),
+                            Permissions.READ_WRITE.adaptForLockManager());
+                } catch (DeadlockException e) {
+                    throw new TransactionAbortedException();
+                }
+            }
+            if (file.extend(firstPageNo, count)) return firstPageNo;
+
+            // somebody else appended a page in the meantime
+            for (int pageno = firstPageNo; pageno < firstPageNo + count; pageno++) {
+                releasePage(tid, new HeapPageId(file.getId(), pageno));
+            }
+        }
+    }
+
+    /**
+     * Writes the pages a bulk insert filled for a run of reserved pages
+     * returned by appendPages.  If fewer pages were filled than reserved, the
+     * rest of the run is given back when it is still at the end of the file,
+     * and written empty otherwise.  A BULK_APPEND record for the run is
+     * forced to the log before the pages are written.  The table's indexes
+     * are then updated with the entries for every appended tuple.
+     *
+     * @param tid the transaction performing the bulk insert
+     * @param file the file the run was appended to
+     * @param firstPageNo the first page of the run
+     * @param reserved the number of pages reserved by appendPages
+     * @param pages the filled pages, in page number order
+     */
+    public void writeAppendedPages(TransactionId tid, HeapFile file, int firstPageNo, int reserved,
+                                   List<Page> pages)
+        throws IOException, DbException, TransactionAbortedException {
+        List<IndexDescriptor> indexes = Database.getCatalog().getIndexes(file.getId());
+        List<Tuple> appended = new ArrayList<>();
+        if (!indexes.isEmpty()) {
+            for (Page page : pages) {
+                ((HeapPage) page).iterator().forEachRemaining(appended::add);
+            }
+        }
+
+        int endPageNo = firstPageNo + pages.size();
+        if (file.shrink(firstPageNo + reserved, endPageNo)) {
+            for (int pageno = endPageNo; pageno < firstPageNo + reserved; pageno++) {
+                releasePage(tid, new HeapPageId(file.getId(), pageno));
+            }
+        } else {
+            pages = new ArrayList<>(pages);
+            for (int pageno = endPageNo; pageno < firstPageNo + reserved; pageno++) {
+                pages.add(new HeapPage(new HeapPageId(file.getId(), pageno), HeapPage.createEmptyPageData()));
+            }
+        }
+
+        AppendedRun run = new AppendedRun(file, firstPageNo, pages.size());
+        this.appendedRuns.computeIfAbsent(tid, k -> Collections.synchronizedList(new ArrayList<>())).add(run);
+        synchronized (this) {
+            Database.getLogFile().logBulkAppend(tid, file.getId(), firstPageNo, pages.size());
+            file.writePages(firstPageNo, pages);
+            dropAppendedRun(run);
+        }
+
+        // index entries go through the pool like any other insert, a whole
+        // run at a time in key order
+        for (IndexDescriptor index : indexes) {
+            for (Page page : index.insertEntries(tid, appended)) {
+                page.markDirty(true, tid);
+            }
+        }
+    }
+
+    /** Overwrites a run of appended pages with empty pages. */
+    private synchronized void undoAppendedRun(AppendedRun run) throws IOException {
+        List<Page> emptyPages = new ArrayList<>(run.count);
+        for (int pageno = run.firstPageNo; pageno < run.firstPageNo + run.count; pageno++) {
+            emptyPages.add(new HeapPage(new HeapPageId(run.file.getId(), pageno), HeapPage.createEmptyPageData()));
+        }
+        run.file.writePages(run.firstPageNo, emptyPages);
+        dropAppendedRun(run);
+    }
+
+    /**
+     * Drops any cached copies of a run of appended pages; a prefetch may have
+     * read them before they were written.
+     */
+    private void dropAppendedRun(AppendedRun run) {
+        for (int pageno = run.firstPageNo; pageno < run.firstPageNo + run.count; pageno++) {
+            PageId pid = new HeapPageId(run.file.getId(), pageno);
+            Shard shard = shardFor(pid);
+            synchronized (shard) {
+                if (shard.remove(pid)) {
+                    this.occupiedFrames.decrementAndGet();
+                }
+            }
+        }
+        this.diskWrites.incrementAndGet();
+    }
+
     /**
      * Remove the specified tuple from the buffer pool.
      * Will acquire a write lock on the page the tuple is removed from. May block if
@@ -169,7 +547,8 @@ public class BufferPool {
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit.  Does not need to update cached versions of any pages that have 
      * been dirtied, as it is not possible that a new page was created during the deletion
-     * (note difference from addTuple).
+     * (note difference from addTuple).  The tuple's entries are removed from
+     * the table's indexes, if any, in the same transaction.
      *
      * @param tid the transaction adding the tuple.
      * @param t the tuple to add
@@ -177,9 +556,15 @@ public class BufferPool {
     public void deleteTuple(TransactionId tid, Tuple t)
         throws DbException, TransactionAbortedException {
         if (t.getRecordId() == null) {
-            System.out.printf("NULL: %s\n", t.toString());
+            throw new DbException("tuple has no record id: " + t);
         }
-        DbFile file = Database.getCatalog().getDbFile(t.getRecordId().getPageId().getTableId());
+        int tableId = t.getRecordId().getPageId().getTableId();
+        // the index entries are found by the record id, which the table
+        // clears when it deletes the tuple
+        for (IndexDescriptor index : Database.getCatalog().getIndexes(tableId)) {
+            index.deleteEntry(tid, t).markDirty(true, tid);
+        }
+        DbFile file = Database.getCatalog().getDbFile(tableId);
         Page dirtiedPage = file.deleteTuple(tid, t);
         dirtiedPage.markDirty(true, tid);
     }
@@ -190,8 +575,14 @@ public class BufferPool {
      *     break simpledb if running in NO STEAL mode.
      */
     public synchronized void flushAllPages() throws IOException {
-        for (PageId pid: this.pagePool.keySet()) {
-            flushPage(pid);
+        for (Shard shard : this.shards) {
+            List<PageId> pids;
+            synchronized (shard) {
+                pids = new ArrayList<>(shard.pages.keySet());
+            }
+            for (PageId pid : pids) {
+                flushPage(pid);
+            }
         }
     }
 
@@ -201,7 +592,23 @@ public class BufferPool {
         cache.
     */
     public synchronized void discardPage(PageId pid) {
-        pagePool.remove(pid);
+        Shard shard = shardFor(pid);
+        synchronized (shard) {
+            if (shard.remove(pid)) {
+                this.occupiedFrames.decrementAndGet();
+            }
+        }
+        this.diskWrites.incrementAndGet();
+    }
+
+    /**
+     * @return the cached copy of the page, or null if it is not resident
+     */
+    private Page residentPage(PageId pid) {
+        Shard shard = shardFor(pid);
+        synchronized (shard) {
+            return shard.pages.get(pid);
+        }
     }
 
     /**
@@ -209,7 +616,7 @@ public class BufferPool {
      * @param pid an ID indicating the page to flush
      */
     private synchronized void flushPage(PageId pid) throws IOException {
-        Page page = this.pagePool.get(pid);
+        Page page = residentPage(pid);
 
         if (page != null && page.isDirty() != null) {
             // append an update record to the log, with
@@ -221,6 +628,7 @@ public class BufferPool {
             DbFile tableFile = Database.getCatalog().getDbFile(pid.getTableId());
             tableFile.writePage(page);
             page.markDirty(false, null);
+            this.diskWrites.incrementAndGet();
         }
     }
 
@@ -236,40 +644,227 @@ public class BufferPool {
     }
 
     /**
-     * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Turns read-ahead on or off; see prefetchPages.  Read-ahead is on unless
+     * the simpledb.BufferPool.prefetch system property is "false".
+     */
+    public void setPrefetchEnabled(boolean enabled) {
+        this.prefetchEnabled = enabled;
+    }
+
+    /** @return true if prefetchPages issues reads */
+    public boolean isPrefetchEnabled() {
+        return this.prefetchEnabled;
+    }
+
+    /**
+     * Asynchronously reads a run of pages of a heap file into the pool, in
+     * one batched read, so that a sequential scan finds them resident.
+     * Pages that are already resident or being prefetched are skipped, and
+     * getPage waits for a page that is being prefetched instead of reading
+     * it a second time.
+     * <p>
+     * No locks are taken: prefetched pages are locked when they are actually
+     * requested through getPage.  Prefetching is only a hint and never fails;
+     * pages are dropped if the pool has no clean page to evict, or if a page
+     * was written to disk while the batch was being read (the copy read
+     * might then be stale).
+     *
+     * @param file the file to read from
+     * @param firstPageNo the first page of the run
+     * @param count the number of pages in the run
+     */
+    public void prefetchPages(HeapFile file, int firstPageNo, int count) {
+        prefetchPages(file, firstPageNo, count, null);
+    }
+
+    /**
+     * Prefetches a run of pages on behalf of a scan that reads through a
+     * ring; the prefetched pages are admitted into the ring.
+     *
+     * @see #prefetchPages(HeapFile, int, int)
+     * @param ring the scan's ring of frames, or null to use the whole pool
      */
-    private synchronized void evictPage() throws DbException {
-        Page lruPage = findLRUPage();
+    public void prefetchPages(HeapFile file, int firstPageNo, int count, ScanRing ring) {
+        if (!this.prefetchEnabled || count <= 0) return;
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        ArrayList<Integer> pagenos = new ArrayList<>();
+        for (int pageno = firstPageNo; pageno < firstPageNo + count; pageno++) {
+            PageId pid = new HeapPageId(file.getId(), pageno);
+            if (residentPage(pid) == null && this.prefetching.putIfAbsent(pid, done) == null) {
+                pagenos.add(pageno);
+            }
+        }
+        if (pagenos.isEmpty()) return;
 
-        if (lruPage == null) throw new DbException("There are no pages to evict in the buffer pool");
+        Runnable finish = () -> {
+            for (int pageno : pagenos) {
+                this.prefetching.remove(new HeapPageId(file.getId(), pageno));
+            }
+            done.complete(null);
+        };
+        try {
+            this.prefetcher().execute(() -> {
+                try {
+                    readAhead(file, pagenos, ring);
+                } finally {
+                    finish.run();
+                }
+            });
+        } catch (RuntimeException e) {
+            finish.run();
+        }
+    }
+
+    private synchronized ExecutorService prefetcher() {
+        if (this.prefetcher == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 5, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "simpledb-prefetch");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            this.prefetcher = executor;
+        }
+        return this.prefetcher;
+    }
 
+    /**
+     * Reads the given pages (sorted, not necessarily contiguous) with one
+     * batched read per contiguous run and admits them to the pool.
+     */
+    private void readAhead(HeapFile file, List<Integer> pagenos, ScanRing ring) {
+        long writesBefore = this.diskWrites.get();
         try {
-            this.flushPage(lruPage.getId());
-            this.pagePool.remove(lruPage.getId());
-        } catch (IOException e) {
-            throw new DbException("Page could not be flushed");
+            int runStart = 0;
+            for (int i = 1; i <= pagenos.size(); i++) {
+                if (i < pagenos.size() && pagenos.get(i) == pagenos.get(i - 1) + 1) continue;
+
+                List<Page> pages = file.readPages(pagenos.get(runStart), i - runStart);
+                for (Page page : pages) {
+                    if (!admitPrefetched(page, writesBefore, ring)) return;
+                }
+                runStart = i;
+            }
+        } catch (Exception e) {
+            Debug.log("prefetch of table %d failed: %s", file.getId(), e);
         }
     }
 
     /**
-     * Implements LRU: Finds the page with the oldest timestamp. Note that timestamps are updated each time a page
-     * is grabbed from the buffer pool.
-     * @return The least recently used page
+     * Adds a prefetched page to the pool unless it is already resident.
+     * @return false if pages were written since the prefetch started, in
+     *   which case the rest of the batch must be dropped too
      */
-    Page findLRUPage() {
-        Page lruPage = null;
-        for (Page page: this.pagePool.values()) {
-            // Skip dirty pages for NO STEAL
-            if (page.isDirty() != null) {
-                continue;
+    private boolean admitPrefetched(Page page, long writesBefore, ScanRing ring) throws DbException {
+        PageId pid = page.getId();
+        int home = shardIndex(pid);
+        Shard shard = this.shards[home];
+        synchronized (shard) {
+            if (shard.pages.containsKey(pid)) return true;
+        }
+
+        reserveFrame(home, ring);
+        synchronized (shard) {
+            if (this.diskWrites.get() != writesBefore) {
+                this.occupiedFrames.decrementAndGet();
+                return false;
+            }
+            if (shard.pages.containsKey(pid)) {
+                this.occupiedFrames.decrementAndGet();
+                return true;
+            }
+            shard.pages.put(pid, page);
+            shard.evictionPolicy.pageAdded(pid);
+            if (ring != null) {
+                ring.add(pid);
             }
+            return true;
+        }
+    }
 
-            if (lruPage == null || page.getLastAccessTimestamp() < lruPage.getLastAccessTimestamp()) {
-                lruPage = page;
+    /**
+     * Claims a frame for a page that is about to be read in, reusing the
+     * oldest frame of the scan's ring if the ring is full.
+     *
+     * @param home the shard the new page belongs to
+     * @param ring the scan's ring of frames, or null
+     */
+    private void reserveFrame(int home, ScanRing ring) throws DbException {
+        if (ring != null) {
+            PageId oldest;
+            while ((oldest = ring.pollOldestIfFull()) != null) {
+                Shard shard = shardFor(oldest);
+                synchronized (shard) {
+                    Page page = shard.pages.get(oldest);
+                    // the frame passes straight to the new page, so the
+                    // frame count does not change
+                    if (page != null && page.isDirty() == null) {
+                        shard.remove(oldest);
+                        return;
+                    }
+                }
+                // the page was dirtied or already evicted; try the next one
+            }
+        }
+        reserveFrame(home);
+    }
+
+    /**
+     * Claims a frame for a page that is about to be read in, evicting pages
+     * until the pool has room.  The claim is a compare-and-set on the shared
+     * frame count, so concurrent misses never overfill the pool.
+     *
+     * @param home the shard the new page belongs to; eviction starts there
+     */
+    private void reserveFrame(int home) throws DbException {
+        while (true) {
+            int occupied = this.occupiedFrames.get();
+            if (occupied < this.numPages) {
+                if (this.occupiedFrames.compareAndSet(occupied, occupied + 1)) return;
+            } else {
+                evictPage(home);
+            }
+        }
+    }
+
+    /**
+     * Discards a page from the buffer pool.  Only clean pages are evicted
+     * (NO STEAL), so nothing has to be written back.  Shards are tried one at
+     * a time, starting with the home shard, and no two shard locks are ever
+     * held together.
+     *
+     * @param home the shard to look for a victim in first
+     */
+    private void evictPage(int home) throws DbException {
+        for (int i = 0; i < this.shards.length; i++) {
+            Shard shard = this.shards[(home + i) % this.shards.length];
+            synchronized (shard) {
+                Page victim = shard.findVictim();
+                if (victim != null) {
+                    shard.remove(victim.getId());
+                    this.occupiedFrames.decrementAndGet();
+                    return;
+                }
             }
         }
+        throw new DbException("There are no pages to evict in the buffer pool");
+    }
 
-        return lruPage;
+    /**
+     * Asks the eviction policy of each shard in turn for the next page to
+     * evict. Dirty pages are never chosen, since the buffer pool runs in
+     * NO STEAL mode.
+     * @return The page to evict, or null if every page in the pool is dirty
+     */
+    Page findVictimPage() {
+        for (Shard shard : this.shards) {
+            synchronized (shard) {
+                Page victim = shard.findVictim();
+                if (victim != null) return victim;
+            }
+        }
+        return null;
     }
 }
@@ -19,6 +19,8 @@ public class Catalog {
     private HashMap<Integer, String> tableNames;
     private HashMap<Integer, String> primaryKeys;
     private HashMap<String, Integer> tableNameToId;
+    private HashMap<Integer, List<IndexDescriptor>> indexes;
+    private HashMap<Integer, IndexFile> indexFiles;
 
     /**
      * Constructor.
@@ -29,6 +31,8 @@ public class Catalog {
         tableNames = new HashMap<Integer, String>();
         primaryKeys = new HashMap<Integer, String>();
         tableNameToId = new HashMap<String, Integer>();
+        indexes = new HashMap<Integer, List<IndexDescriptor>>();
+        indexFiles = new HashMap<Integer, IndexFile>();
     }
 
     /**
@@ -41,7 +45,10 @@ public class Catalog {
      * @param pkeyField the name of the primary key field
      */
     public void addTable(DbFile file, String name, String pkeyField) {
-        dbFiles.put(file.getId(), file);
+        DbFile replaced = dbFiles.put(file.getId(), file);
+        if (replaced != null && replaced != file) {
+            closeFile(replaced);
+        }
         tableNames.put(file.getId(), name);
         primaryKeys.put(file.getId(), pkeyField);
 
@@ -66,6 +73,63 @@ public class Catalog {
         addTable(file, (new UUID()).toString());
     }*/
 
+    /**
+     * Add a secondary index to the catalog.  From then on, the BufferPool
+     * updates the index whenever tuples are inserted into or deleted from
+     * the table.  The index file can be found with getDbFile, like a table,
+     * but it is not listed by tableIdIterator.
+     *
+     * @param index the index to add; its table must already be in the catalog
+     */
+    public void addIndex(IndexDescriptor index) {
+        IndexFile replaced = indexFiles.put(index.getFile().getId(), index.getFile());
+        if (replaced != null && replaced != index.getFile()) {
+            closeFile(replaced);
+        }
+        List<IndexDescriptor> tableIndexes = indexes.computeIfAbsent(index.getTableId(),
+                k -> new ArrayList<IndexDescriptor>());
+        tableIndexes.removeIf(other -> other.getFile().getId() == index.getFile().getId());
+        tableIndexes.add(index);
+    }
+
+    /**
+     * Returns the secondary indexes of the specified table.
+     * @return the indexes, an empty list if the table has none
+     */
+    public List<IndexDescriptor> getIndexes(int tableid) {
+        List<IndexDescriptor> tableIndexes = indexes.get(tableid);
+        if (tableIndexes == null) return Collections.emptyList();
+        return Collections.unmodifiableList(tableIndexes);
+    }
+
+    /**
+     * Returns a secondary index on the specified field of a table.
+     * @return the index, or null if the field is not indexed
+     */
+    public IndexDescriptor getIndex(int tableid, int field) {
+        for (IndexDescriptor index : getIndexes(tableid)) {
+            if (index.getField() == field) return index;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the secondary index on the specified field of a table that
+     * best serves a predicate: a hash index for an equality predicate, and
+     * an ordered index for any other.
+     * @return the index, or null if the field is not indexed
+     */
+    public IndexDescriptor getIndex(int tableid, int field, Predicate.Op op) {
+        IndexDescriptor found = null;
+        for (IndexDescriptor index : getIndexes(tableid)) {
+            if (index.getField() != field) continue;
+            boolean hashed = index.getFile() instanceof HashIndexFile;
+            if (hashed == (op == Predicate.Op.EQUALS)) return index;
+            if (found == null) found = index;
+        }
+        return found;
+    }
+
     /**
      * Return the id of the table with a specified name,
      * @throws NoSuchElementException if the table doesn't exist
@@ -82,9 +146,7 @@ public class Catalog {
      *     function passed to addTable
      */
     public TupleDesc getTupleDesc(int tableid) throws NoSuchElementException {
-        DbFile file = dbFiles.get(tableid);
-        if (file == null) throw new NoSuchElementException();
-        return file.getTupleDesc();
+        return getDbFile(tableid).getTupleDesc();
     }
 
     /**
@@ -95,15 +157,32 @@ public class Catalog {
      */
     public DbFile getDbFile(int tableid) throws NoSuchElementException {
         DbFile file = dbFiles.get(tableid);
+        if (file == null) file = indexFiles.get(tableid);
         if (file == null) throw new NoSuchElementException();
         return file;
     }
 
-    /** Delete all tables from the catalog */
+    /** Delete all tables and indexes from the catalog, closing their files */
     public void clear() {
+        for (DbFile file : dbFiles.values()) {
+            closeFile(file);
+        }
+        for (DbFile file : indexFiles.values()) {
+            closeFile(file);
+        }
         dbFiles.clear();
         tableNames.clear();
         primaryKeys.clear();
+        indexes.clear();
+        indexFiles.clear();
+    }
+
+    private void closeFile(DbFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     public String getPrimaryKey(int tableid) throws NoSuchElementException {
@@ -140,6 +219,7 @@ public class Catalog {
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
                 String primaryKey = "";
+                ArrayList<Integer> indexed = new ArrayList<Integer>();
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
@@ -151,11 +231,14 @@ public class Catalog {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    // "field type pk index": any of the annotations, in any order
+                    for (int i = 2; i < els2.length; i++) {
+                        if (els2[i].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[i].trim().equals("index"))
+                            indexed.add(names.size() - 1);
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[i]);
                             System.exit(0);
                         }
                     }
@@ -163,10 +246,51 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File("data/" + name + ".dat"), t);
+                // "name (fields) mapped" stores the table in a MappedHeapFile
+                String options = line.substring(line.indexOf(")") + 1).trim();
+                HeapFile tabHf;
+                if (options.equals("mapped")) {
+                    tabHf = new MappedHeapFile(new File("data/" + name + ".dat"), t);
+                } else if (options.isEmpty()) {
+                    tabHf = new HeapFile(new File("data/" + name + ".dat"), t);
+                } else {
+                    System.out.println("Unknown table option " + options);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
+                // each indexed field gets a B+tree in data/<table>.<field>.idx,
+                // built from the table the first time
+                for (int field : indexed) {
+                    File indexFile = new File("data/" + name + "." + namesAr[field] + ".idx");
+                    boolean fresh = indexFile.length() == 0;
+                    BTreeFile btree = new BTreeFile(indexFile, 0, IndexDescriptor.entryDesc(typeAr[field]));
+                    IndexDescriptor index = new IndexDescriptor(name + "." + namesAr[field], tabHf.getId(), field, btree);
+                    addIndex(index);
+                    if (fresh && tabHf.numPages() > 0) {
+                        index.build();
+                    }
+                    System.out.println("Added index : " + index.getName());
+                }
+                // the primary key gets a hash index in data/<table>.<field>.hidx,
+                // so that lookups by key read one bucket
+                int pkField = names.indexOf(primaryKey);
+                if (pkField >= 0) {
+                    File indexFile = new File("data/" + name + "." + primaryKey + ".hidx");
+                    boolean fresh = indexFile.length() == 0;
+                    HashIndexFile hash = new HashIndexFile(indexFile, 0, IndexDescriptor.entryDesc(typeAr[pkField]));
+                    IndexDescriptor index = new IndexDescriptor(name + "." + primaryKey + ".hash", tabHf.getId(), pkField, hash);
+                    addIndex(index);
+                    if (fresh && tabHf.numPages() > 0) {
+                        index.build();
+                    }
+                    System.out.println("Added index : " + index.getName());
+                }
             }
+        } catch (DbException | TransactionAbortedException e) {
+            System.out.println("Could not build index : " + e.getMessage());
+            System.exit(0);
         } catch (IOException e) {
             e.printStackTrace();
             System.exit(0);
@@ -0,0 +1,102 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+/**
+ * ClockPolicy implements the CLOCK (second chance) approximation of LRU.
+ * Every frame has a reference bit that is set on each hit; the clock hand
+ * sweeps the frames, clearing reference bits, and stops at the first frame
+ * whose bit is already clear.  A hit only sets a bit, and each eviction
+ * advances the hand a constant number of frames on average.
+ * <p>
+ * Frames holding pages that may not be evicted (dirty pages under NO STEAL)
+ * are passed over.  The sweep gives up after two full turns, which means
+ * that no resident page is evictable.
+ */
+public class ClockPolicy implements EvictionPolicy {
+    private PageId[] frames;
+    private boolean[] referenced;
+    private HashMap<PageId, Integer> frameOf;
+    private ArrayDeque<Integer> freeFrames;
+    private int hand;
+
+    /**
+     * @param capacity the initial number of frames; the clock grows if more
+     *   pages than this are added
+     */
+    public ClockPolicy(int capacity) {
+        int frameCount = Math.max(capacity, 1);
+        this.frames = new PageId[frameCount];
+        this.referenced = new boolean[frameCount];
+        this.frameOf = new HashMap<>();
+        this.freeFrames = new ArrayDeque<>();
+        for (int i = 0; i < frameCount; i++) {
+            this.freeFrames.add(i);
+        }
+        this.hand = 0;
+    }
+
+    public void pageAdded(PageId pid) {
+        if (this.frameOf.containsKey(pid)) {
+            this.pageAccessed(pid);
+            return;
+        }
+        if (this.freeFrames.isEmpty()) {
+            this.grow();
+        }
+        int frame = this.freeFrames.poll();
+        this.frames[frame] = pid;
+        this.referenced[frame] = true;
+        this.frameOf.put(pid, frame);
+    }
+
+    public void pageAccessed(PageId pid) {
+        Integer frame = this.frameOf.get(pid);
+        if (frame != null) {
+            this.referenced[frame] = true;
+        }
+    }
+
+    public void pageRemoved(PageId pid) {
+        Integer frame = this.frameOf.remove(pid);
+        if (frame != null) {
+            this.frames[frame] = null;
+            this.referenced[frame] = false;
+            this.freeFrames.add(frame);
+        }
+    }
+
+    public PageId chooseVictim(Predicate<PageId> evictable) {
+        int maxSteps = 2 * this.frames.length;
+        for (int step = 0; step < maxSteps; step++) {
+            int frame = this.hand;
+            this.hand = (this.hand + 1) % this.frames.length;
+
+            PageId pid = this.frames[frame];
+            if (pid == null) continue;
+
+            if (this.referenced[frame]) {
+                this.referenced[frame] = false;
+            } else if (evictable.test(pid)) {
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Doubles the number of frames; used only if the pool admits more pages
+     * than the capacity it announced.
+     */
+    private void grow() {
+        int oldLength = this.frames.length;
+        this.frames = Arrays.copyOf(this.frames, oldLength * 2);
+        this.referenced = Arrays.copyOf(this.referenced, oldLength * 2);
+        for (int i = oldLength; i < this.frames.length; i++) {
+            this.freeFrames.add(i);
+        }
+    }
+}
@@ -74,6 +74,7 @@ public class Database {
 
     //reset the database, used for unit tests only.
     public static void reset() {
+        _instance._catalog.clear();
     	_instance = new Database();
     }
 
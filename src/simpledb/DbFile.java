@@ -84,4 +84,38 @@ public interface DbFile {
      * @return TupleDesc of this DbFile.
      */
     public TupleDesc getTupleDesc();
+
+    /**
+     * Inserts every tuple the iterator returns on behalf of a bulk load, and
+     * returns how many were inserted.  Implementations may bypass the
+     * BufferPool and write fresh pages directly, as long as the inserted
+     * tuples stay invisible to other transactions and are undone if the
+     * transaction aborts.  The iterator must already be open.
+     * <p>
+     * The default inserts the tuples one at a time through the BufferPool.
+     *
+     * @param tid The transaction performing the load
+     * @param tuples The tuples to insert
+     * @return the number of tuples inserted
+     * @see BufferPool#bulkInsertTuples
+     */
+    public default int bulkInsert(TransactionId tid, DbIterator tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        int count = 0;
+        while (tuples.hasNext()) {
+            Database.getBufferPool().insertTuple(tid, this.getId(), tuples.next());
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Releases any file handles held by this DbFile.  Called by the Catalog
+     * when the table is removed; a closed DbFile reopens its handles if it
+     * is used again.
+     *
+     * @throws IOException if the underlying file cannot be closed
+     */
+    public default void close() throws IOException {
+    }
 }
@@ -0,0 +1,88 @@
+package simpledb;
+
+import java.util.function.Predicate;
+
+/**
+ * EvictionPolicy decides which resident page the BufferPool gives up when it
+ * needs a free frame.  The BufferPool reports every page it admits, touches
+ * and drops, and asks the policy for a victim among the pages it is allowed
+ * to evict (under NO STEAL, only clean pages may leave the pool).
+ * <p>
+ * Implementations are not thread-safe; the BufferPool serializes all calls
+ * into a policy instance.
+ *
+ * @see BufferPool
+ */
+public interface EvictionPolicy {
+
+    /**
+     * The replacement policies that can be selected for a BufferPool, either
+     * explicitly or with the simpledb.BufferPool.policy system property
+     * (e.g. -Dsimpledb.BufferPool.policy=LRU_K).
+     */
+    public enum Kind {
+        LRU() {
+            @Override
+            public EvictionPolicy create(int capacity) {
+                return new LRUPolicy();
+            }
+        }, CLOCK() {
+            @Override
+            public EvictionPolicy create(int capacity) {
+                return new ClockPolicy(capacity);
+            }
+        }, LRU_K() {
+            @Override
+            public EvictionPolicy create(int capacity) {
+                return new LRUKPolicy(LRUKPolicy.DEFAULT_K);
+            }
+        };
+
+        /**
+         * @param capacity the number of frames the policy will manage
+         * @return a new, empty policy instance of this kind
+         */
+        public abstract EvictionPolicy create(int capacity);
+
+        /**
+         * @return the kind named by the simpledb.BufferPool.policy system
+         *   property, or CLOCK if the property is not set.
+         * @throws IllegalArgumentException if the property names an unknown policy
+         */
+        public static Kind fromSystemProperty() {
+            String policy = System.getProperty("simpledb.BufferPool.policy");
+            if (policy == null || policy.isEmpty()) {
+                return CLOCK;
+            }
+            return valueOf(policy.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Called after a page has been read into the pool.
+     * @param pid the id of the newly resident page
+     */
+    public void pageAdded(PageId pid);
+
+    /**
+     * Called on every buffer pool hit.
+     * @param pid the id of the resident page that was requested
+     */
+    public void pageAccessed(PageId pid);
+
+    /**
+     * Called after a page has left the pool, whether it was evicted or
+     * discarded.
+     * @param pid the id of the page that is no longer resident
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Picks the page that should be evicted next.  The page stays tracked by
+     * the policy until {@link #pageRemoved} is called for it.
+     *
+     * @param evictable tells the policy whether a resident page may be evicted
+     * @return the id of the page to evict, or null if no resident page is evictable
+     */
+    public PageId chooseVictim(Predicate<PageId> evictable);
+}
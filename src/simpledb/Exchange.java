@@ -0,0 +1,186 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exchange is the gather operator of intra-query parallelism: it runs each
+ * of its children on a worker thread of its own and returns the tuples of
+ * all of them, in whatever order they arrive, to the single-threaded
+ * operators above it.  A child is typically a part of a plan that can run
+ * independently of the others, such as a Filter over one page range of a
+ * table (see ParallelSeqScan).
+ * <p>
+ * Workers pass their tuples on in chunks of CHUNK_TUPLES, through a bounded
+ * queue, so a worker can only get a few chunks ahead of the consumer.  Each
+ * child is opened, read and closed by its worker, and all of them read
+ * pages under the transaction the plan was built for.  If a worker fails,
+ * its exception is thrown to the consumer, and the other workers are
+ * stopped.
+ *
+ * @see ParallelSeqScan
+ */
+public class Exchange extends AbstractDbIterator {
+    /** The number of tuples a worker passes on at a time. */
+    static final int CHUNK_TUPLES = 256;
+    /** The number of chunks per worker that may wait for the consumer. */
+    static final int QUEUED_CHUNKS = 4;
+
+    private final DbIterator[] children;
+    private final TupleDesc td;
+
+    private BlockingQueue<ArrayList<Tuple>> queue;
+    private Thread[] workers;
+    private volatile boolean cancelled;
+    private volatile Exception failure;
+    private int running;
+    private ArrayList<Tuple> chunk;
+    private int next;
+
+    /**
+     * Constructor.
+     *
+     * @param children the plans to run in parallel; their tuples must all
+     *   have the same TupleDesc
+     * @throws IllegalArgumentException if there are no children
+     */
+    public Exchange(DbIterator[] children) {
+        if (children.length == 0) {
+            throw new IllegalArgumentException("an exchange needs at least one child");
+        }
+        this.children = children.clone();
+        this.td = children[0].getTupleDesc();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /** @return the number of children, each run on a thread of its own */
+    public int parallelism() {
+        return this.children.length;
+    }
+
+    /**
+     * Starts a worker for each child.
+     */
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+        this.queue = new ArrayBlockingQueue<ArrayList<Tuple>>(QUEUED_CHUNKS * this.children.length);
+        this.cancelled = false;
+        this.failure = null;
+        this.chunk = null;
+        this.running = this.children.length;
+        this.workers = new Thread[this.children.length];
+        for (int i = 0; i < this.children.length; i++) {
+            final DbIterator child = this.children[i];
+            this.workers[i] = new Thread(() -> this.produce(child), "Exchange worker " + i);
+            this.workers[i].setDaemon(true);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Runs a child on a worker, and then queues an empty chunk to say that
+     * it is done.
+     */
+    private void produce(DbIterator child) {
+        try {
+            child.open();
+            ArrayList<Tuple> tuples = new ArrayList<Tuple>(CHUNK_TUPLES);
+            while (!this.cancelled && child.hasNext()) {
+                tuples.add(child.next());
+                if (tuples.size() == CHUNK_TUPLES) {
+                    this.put(tuples);
+                    tuples = new ArrayList<Tuple>(CHUNK_TUPLES);
+                }
+            }
+            if (!tuples.isEmpty()) this.put(tuples);
+        } catch (Exception e) {
+            this.failure = e;
+            this.cancelled = true;
+        } finally {
+            child.close();
+            this.put(new ArrayList<Tuple>(0));
+        }
+    }
+
+    /**
+     * Queues a chunk, waiting for room unless the exchange is cancelled.
+     * Workers are not interrupted, since that would close the FileChannel
+     * of a file they are reading.
+     */
+    private void put(ArrayList<Tuple> tuples) {
+        try {
+            while (!this.queue.offer(tuples, 10, TimeUnit.MILLISECONDS)) {
+                if (this.cancelled && !tuples.isEmpty()) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected Tuple readNext() throws DbException, TransactionAbortedException {
+        while (this.chunk == null || this.next == this.chunk.size()) {
+            if (this.running == 0) {
+                this.checkFailure();
+                return null;
+            }
+            try {
+                this.chunk = this.queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DbException("interrupted while waiting for exchange workers");
+            }
+            this.next = 0;
+            if (this.chunk.isEmpty()) {
+                this.running--;
+                this.checkFailure();
+            }
+        }
+        return this.chunk.get(this.next++);
+    }
+
+    private void checkFailure() throws DbException, TransactionAbortedException {
+        Exception e = this.failure;
+        if (e == null) return;
+        if (e instanceof TransactionAbortedException) throw (TransactionAbortedException) e;
+        if (e instanceof DbException) throw (DbException) e;
+        if (e instanceof RuntimeException) throw (RuntimeException) e;
+        throw new DbException("exchange worker failed: " + e);
+    }
+
+    /**
+     * Runs the children again from the start.
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        this.close();
+        this.open();
+    }
+
+    /**
+     * Stops the workers and waits for them to close their children.
+     */
+    public void close() {
+        super.close();
+        if (this.workers == null) return;
+        this.cancelled = true;
+        for (Thread worker : this.workers) {
+            // keep the queue empty, so that no worker waits for room in it
+            while (worker.isAlive()) {
+                this.queue.clear();
+                try {
+                    worker.join(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        this.workers = null;
+        this.queue = null;
+        this.chunk = null;
+    }
+}
@@ -24,6 +24,11 @@ public class Filter extends AbstractDbIterator {
         return this.child.getTupleDesc();
     }
 
+    /** @return the operator the tuples are filtered from */
+    public DbIterator getChild() {
+        return this.child;
+    }
+
     public void open()
         throws DbException, NoSuchElementException, TransactionAbortedException {
         this.child.open();
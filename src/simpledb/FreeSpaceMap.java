@@ -0,0 +1,195 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * FreeSpaceMap records roughly how many free slots every page of a HeapFile
+ * has, so that an insert can go straight to a page with room instead of
+ * looking at every page of the table in turn.
+ * <p>
+ * Each page is summarised by one byte: 0 if the page is full, otherwise its
+ * free slots scaled to 1..255.  The map is kept in memory and in a sidecar
+ * file next to the table (the table file's name followed by ".fsm"), one
+ * byte per page.  The sidecar entry of a page is rewritten whenever the page
+ * itself is written to the table file, so it follows what is on disk
+ * through commits, rollbacks and recovery alike.  Pages read back from the
+ * table file (including pages restored when a transaction aborts) refresh
+ * their in-memory entry, and inserts lower the entry of the page they fill.
+ * <p>
+ * The map is only a hint: HeapFile checks the page itself once it holds the
+ * page's lock.  A sidecar that is missing, or does not cover the whole
+ * table, is rebuilt from the page headers the first time it is needed.
+ *
+ * @see HeapFile#addTuple
+ */
+public class FreeSpaceMap {
+    /** Appended to the name of the table file to name the sidecar. */
+    public static final String SUFFIX = ".fsm";
+
+    private final HeapFile heapFile;
+    private final File file;
+    private final int slotsPerPage;
+
+    // null until the map is first needed
+    private byte[] categories;
+    private BitSet pagesWithSpace;
+    private volatile FileChannel channel;
+
+    /**
+     * @param heapFile the table the map describes
+     * @param slotsPerPage the number of tuple slots on each of its pages
+     */
+    public FreeSpaceMap(HeapFile heapFile, int slotsPerPage) {
+        this.heapFile = heapFile;
+        this.file = new File(heapFile.getFile().getPath() + SUFFIX);
+        this.slotsPerPage = slotsPerPage;
+    }
+
+    /** @return the sidecar file the map is stored in */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Returns the number of the first page at or after fromPageNo that the
+     * map believes has a free slot, or -1 if there is none.
+     */
+    public synchronized int nextPageWithSpace(int fromPageNo) throws IOException {
+        this.load();
+        return this.pagesWithSpace.nextSetBit(fromPageNo);
+    }
+
+    /**
+     * @return the approximate number of free slots on the given page, as far
+     *   as the map knows
+     */
+    public synchronized int approximateFreeSlots(int pageno) throws IOException {
+        this.load();
+        if (pageno >= this.categories.length) return 0;
+        return (this.categories[pageno] & 0xff) * this.slotsPerPage / 255;
+    }
+
+    /**
+     * Records how many free slots a page has now, in memory only.  Used by
+     * inserts, whose changes are not on disk yet.
+     */
+    public synchronized void update(int pageno, int emptySlots) {
+        if (this.categories == null) return;
+        this.set(pageno, this.category(emptySlots));
+    }
+
+    /**
+     * Records the free slots of a page that was just read from the table
+     * file.  Does nothing until the map has been loaded, so that scans
+     * do not pay for it.
+     */
+    public synchronized void pageRead(HeapPage page) {
+        if (this.categories == null) return;
+        this.set(page.getId().pageno(), this.category(page.getNumEmptySlots()));
+    }
+
+    /**
+     * Records the free slots of a page that was just written to the table
+     * file, in memory and in the sidecar.
+     */
+    public synchronized void pageWritten(HeapPage page) throws IOException {
+        int pageno = page.getId().pageno();
+        byte category = this.category(page.getNumEmptySlots());
+        if (this.categories != null) {
+            this.set(pageno, category);
+        } else if (!this.file.exists()) {
+            // will be rebuilt from the table file when it is first needed
+            return;
+        }
+        this.write(pageno, new byte[] { category });
+    }
+
+    /**
+     * Reads the sidecar into memory, or rebuilds it from the table file if
+     * it does not match the table.
+     */
+    private void load() throws IOException {
+        if (this.categories != null) return;
+
+        int filePages = (int) (this.heapFile.getFile().length() / BufferPool.PAGE_SIZE);
+        this.categories = new byte[filePages];
+        this.pagesWithSpace = new BitSet(filePages);
+
+        if (this.file.length() == filePages) {
+            ByteBuffer buffer = ByteBuffer.wrap(this.categories);
+            FileChannel channel = this.channel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) break;
+            }
+        } else {
+            for (int pageno = 0; pageno < filePages; pageno++) {
+                this.categories[pageno] = this.category(this.emptySlots(this.heapFile.readPageData(pageno)));
+            }
+            this.channel().truncate(0);
+            this.write(0, this.categories);
+        }
+
+        for (int pageno = 0; pageno < filePages; pageno++) {
+            if (this.categories[pageno] != 0) {
+                this.pagesWithSpace.set(pageno);
+            }
+        }
+    }
+
+    /** Counts the clear bits of a page's header. */
+    private int emptySlots(byte[] pageData) {
+        int used = 0;
+        for (int i = 0; i < this.slotsPerPage / 8; i++) {
+            used += Integer.bitCount(pageData[i] & 0xff);
+        }
+        int lastBits = this.slotsPerPage % 8;
+        if (lastBits != 0) {
+            used += Integer.bitCount(pageData[this.slotsPerPage / 8] & ((1 << lastBits) - 1));
+        }
+        return this.slotsPerPage - used;
+    }
+
+    private byte category(int emptySlots) {
+        if (emptySlots <= 0) return 0;
+        return (byte) Math.max(1, emptySlots * 255 / this.slotsPerPage);
+    }
+
+    private void set(int pageno, byte category) {
+        if (pageno >= this.categories.length) {
+            this.categories = Arrays.copyOf(this.categories, Math.max(pageno + 1, this.categories.length * 2));
+        }
+        this.categories[pageno] = category;
+        this.pagesWithSpace.set(pageno, category != 0);
+    }
+
+    private void write(long offset, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        FileChannel channel = this.channel();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (this.channel == null || !this.channel.isOpen()) {
+            this.channel = FileChannel.open(this.file.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return this.channel;
+    }
+
+    /**
+     * Closes the sidecar.  The map stays in memory, and the sidecar is
+     * opened again if it is written to.
+     */
+    public void close() throws IOException {
+        FileChannel channel = this.channel;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * GroupTable numbers the distinct values of one or more group-by fields in
+ * the order they are first seen: 0, 1, 2, and so on, so that an aggregator
+ * can keep its per-group state in plain arrays indexed by group.
+ * <p>
+ * String keys are dictionary-encoded: each distinct string of a field is
+ * given the next code of that field.  The integer values and string codes of
+ * a key then go in an open-addressing hash table of ints with linear
+ * probing, without boxing them or calling Field.hashCode and equals.  A
+ * single string field needs no table, since its codes are its groups.
+ */
+public class GroupTable {
+    private static final int EMPTY = -1;
+
+    private final Type[] keyTypes;
+    private final int width;
+    private int size;
+
+    // slots hold group numbers, or EMPTY; keys hold the width ints of each
+    // group's key, one after another
+    private int[] slots;
+    private int[] keys;
+    private final int[] codes;
+
+    // for each string field, its codes and the field of each code
+    private HashMap<String, Integer>[] dictionaries;
+    private ArrayList<Field>[] fields;
+
+    /**
+     * Creates an empty table for a single group-by field.
+     *
+     * @param keyType the type of the group-by field
+     */
+    public GroupTable(Type keyType) {
+        this(new Type[] { keyType });
+    }
+
+    /**
+     * Creates an empty table for a composite key.
+     *
+     * @param keyTypes the types of the group-by fields
+     */
+    @SuppressWarnings("unchecked")
+    public GroupTable(Type[] keyTypes) {
+        this.keyTypes = keyTypes.clone();
+        this.width = keyTypes.length;
+        this.slots = new int[16];
+        Arrays.fill(this.slots, EMPTY);
+        this.keys = new int[8 * this.width];
+        this.codes = new int[this.width];
+        this.dictionaries = new HashMap[this.width];
+        this.fields = new ArrayList[this.width];
+        for (int i = 0; i < this.width; i++) {
+            if (keyTypes[i] == Type.STRING_TYPE) {
+                this.dictionaries[i] = new HashMap<String, Integer>();
+                this.fields[i] = new ArrayList<Field>();
+            }
+        }
+    }
+
+    /** @return the number of groups */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the group number of a key of a single field, which is
+     *   size() - 1 if the key was not in the table before
+     */
+    public int groupOf(Field key) {
+        if (this.keyTypes[0] == Type.INT_TYPE) {
+            return this.groupOf(((IntField) key).getValue());
+        }
+        this.codes[0] = this.encode(0, key, true);
+        return this.lookup(true);
+    }
+
+    /**
+     * @return the group number of an integer key of a single field
+     * @see #groupOf(Field)
+     */
+    public int groupOf(int key) {
+        this.codes[0] = key;
+        return this.lookup(true);
+    }
+
+    /**
+     * @return the group number of the key made of the given fields of a
+     *   tuple, in order
+     * @see #groupOf(Field)
+     */
+    public int groupOf(Tuple t, int[] keyFields) {
+        this.encode(t, keyFields, true);
+        return this.lookup(true);
+    }
+
+    /**
+     * @return the group number of the key made of the given fields of a
+     *   tuple, or -1 if it is not in the table; the table is not changed
+     */
+    public int find(Tuple t, int[] keyFields) {
+        if (!this.encode(t, keyFields, false)) return -1;
+        return this.lookup(false);
+    }
+
+    /**
+     * @return the group number of an integer key of a single field, or -1
+     *   if it is not in the table; the table is not changed
+     */
+    public int find(int key) {
+        this.codes[0] = key;
+        return this.lookup(false);
+    }
+
+    /**
+     * @return the group number of a key of a single field, or -1 if it is
+     *   not in the table; the table is not changed
+     */
+    public int find(Field key) {
+        if (this.keyTypes[0] == Type.INT_TYPE) {
+            return this.find(((IntField) key).getValue());
+        }
+        this.codes[0] = this.encode(0, key, false);
+        return this.codes[0] < 0 ? -1 : this.lookup(false);
+    }
+
+    /**
+     * @return the group number of the key made of the given columns of a
+     *   row of a batch, in order
+     * @see #groupOf(Tuple, int[])
+     */
+    public int groupOf(VectorBatch batch, int row, int[] keyColumns) {
+        for (int i = 0; i < this.width; i++) {
+            if (this.keyTypes[i] == Type.INT_TYPE) {
+                this.codes[i] = batch.getInt(keyColumns[i], row);
+            } else {
+                this.codes[i] = this.encode(i, batch.getField(keyColumns[i], row), true);
+            }
+        }
+        return this.lookup(true);
+    }
+
+    /**
+     * Sets codes to the key of a tuple.
+     *
+     * @return false if the key has a string that is not in the table and
+     *   insert is false
+     */
+    private boolean encode(Tuple t, int[] keyFields, boolean insert) {
+        for (int i = 0; i < this.width; i++) {
+            Field f = t.getField(keyFields[i]);
+            if (this.keyTypes[i] == Type.INT_TYPE) {
+                this.codes[i] = ((IntField) f).getValue();
+            } else {
+                this.codes[i] = this.encode(i, f, insert);
+                if (this.codes[i] < 0) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the code of a string field, or -1 if it has none and insert
+     *   is false
+     */
+    private int encode(int column, Field key, boolean insert) {
+        String value = ((StringField) key).getValue();
+        Integer code = this.dictionaries[column].get(value);
+        if (code == null) {
+            if (!insert) return -1;
+            code = this.fields[column].size();
+            this.dictionaries[column].put(value, code);
+            this.fields[column].add(key);
+        }
+        return code;
+    }
+
+    /**
+     * @return the group of the key in codes, or -1 if it is not in the
+     *   table and insert is false
+     */
+    private int lookup(boolean insert) {
+        if (this.width == 1 && this.keyTypes[0] == Type.STRING_TYPE) {
+            if (this.codes[0] == this.size) this.size++;
+            return this.codes[0];
+        }
+        int mask = this.slots.length - 1;
+        int slot = this.hash(this.codes, 0) & mask;
+        while (this.slots[slot] != EMPTY) {
+            if (this.matches(this.slots[slot])) {
+                return this.slots[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (!insert) return -1;
+
+        int group = this.size++;
+        if ((group + 1) * this.width > this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, 2 * this.keys.length);
+        }
+        System.arraycopy(this.codes, 0, this.keys, group * this.width, this.width);
+        this.slots[slot] = group;
+        // keep the table at most half full
+        if (2 * this.size > this.slots.length) {
+            this.rehash();
+        }
+        return group;
+    }
+
+    private boolean matches(int group) {
+        int base = group * this.width;
+        for (int i = 0; i < this.width; i++) {
+            if (this.keys[base + i] != this.codes[i]) return false;
+        }
+        return true;
+    }
+
+    private int hash(int[] values, int base) {
+        int h = 0;
+        for (int i = 0; i < this.width; i++) {
+            h = (h + values[base + i]) * 0x9E3779B9;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash() {
+        int[] slots = new int[2 * this.slots.length];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (int group = 0; group < this.size; group++) {
+            int slot = this.hash(this.keys, group * this.width) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = group;
+        }
+        this.slots = slots;
+    }
+
+    /** @return the key of a group of a single field */
+    public Field key(int group) {
+        return this.key(group, 0);
+    }
+
+    /** @return one field of the key of a group */
+    public Field key(int group, int column) {
+        if (this.width == 1 && this.keyTypes[0] == Type.STRING_TYPE) {
+            return this.fields[0].get(group);
+        }
+        int value = this.keys[group * this.width + column];
+        if (this.keyTypes[column] == Type.INT_TYPE) {
+            return new IntField(value);
+        }
+        return this.fields[column].get(value);
+    }
+}
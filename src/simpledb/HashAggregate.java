@@ -0,0 +1,400 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * HashAggregate is an operator that computes any number of aggregates
+ * (e.g., sum, avg, max, min, count) grouped by any number of columns, such
+ * as SELECT a, b, SUM(x), COUNT(*), MAX(y) ... GROUP BY a, b, in one scan
+ * of its child.  Groups are numbered by a GroupTable on the composite key,
+ * and each group's count and, as the aggregates need them, its sums, mins
+ * and maxs are kept in primitive arrays indexed by group number.
+ * <p>
+ * The groups are limited to a MemoryBudget, against an estimate of the
+ * bytes each group takes.  Once the table is full, tuples of groups already
+ * in it are still aggregated in memory, and tuples of other groups are
+ * divided into partitions by a hash of their group-by fields and written to
+ * SpillFiles.  After the in-memory groups are returned, each partition is
+ * aggregated on its own, by a HashAggregate that partitions again with a
+ * different hash if it still does not fit.
+ * <p>
+ * Result tuples hold the group-by fields, in the order given, followed by
+ * the aggregates, in the order given.  Groups that fit in memory come in
+ * the order they were first seen, and the others partition by partition.
+ * Without group-by fields the result is a single tuple, or none if the
+ * child is empty, as with Aggregate.
+ *
+ * @see Aggregate
+ * @see GroupTable
+ * @see MemoryBudget
+ */
+public class HashAggregate extends AbstractDbIterator {
+    /** The aggregate field of COUNT(*), which counts every tuple. */
+    public static final int COUNT_ALL = -1;
+    /** The most partitions the groups that do not fit are split into at a time. */
+    static final int MAX_PARTITIONS = 32;
+    /**
+     * How many times a partition is divided again before it is aggregated in
+     * memory regardless of the budget.
+     */
+    static final int MAX_DEPTH = 4;
+
+    private DbIterator child;
+    private int[] groupFields;
+    private int[] aggFields;
+    private Aggregator.Op[] aggOps;
+    private TupleDesc td;
+    private final int memoryPages;
+    private final int depth;
+    private final long maxGroups;
+
+    private GroupTable groups;
+    private int numGroups;
+    private long[] counts;
+    // for each aggregate over an int field, the arrays its operator needs
+    private long[][] sums;
+    private int[][] mins;
+    private int[][] maxs;
+    private int nextGroup;
+    private boolean built;
+
+    // set once the groups do not fit in memory
+    private SpillFile[] partitions;
+    private int partition;
+    private HashAggregate partitionAggregate;
+
+    /**
+     * Constructor.
+     *
+     * @param child The DbIterator that is feeding us tuples.
+     * @param gfields The columns over which we are grouping the result, or
+     *   an empty array if there is no grouping
+     * @param afields The columns over which we are computing aggregates, or
+     *   COUNT_ALL for a COUNT(*)
+     * @param aops The aggregation operator of each aggregate
+     * @throws IllegalArgumentException if there are no aggregates, or an
+     *   aggregate other than COUNT is over a string field or COUNT_ALL
+     */
+    public HashAggregate(DbIterator child, int[] gfields, int[] afields, Aggregator.Op[] aops) {
+        this(child, gfields, afields, aops, MemoryBudget.getDefaultPages());
+    }
+
+    /**
+     * Constructor for an aggregate with its own memory budget.
+     *
+     * @param memoryPages the number of pages the groups may take before the
+     *   aggregate spills to disk
+     * @see #HashAggregate(DbIterator, int[], int[], Aggregator.Op[])
+     */
+    public HashAggregate(DbIterator child, int[] gfields, int[] afields, Aggregator.Op[] aops, int memoryPages) {
+        this(child, gfields, afields, aops, memoryPages, 0);
+    }
+
+    private HashAggregate(DbIterator child, int[] gfields, int[] afields, Aggregator.Op[] aops,
+                          int memoryPages, int depth) {
+        if (afields.length == 0 || afields.length != aops.length) {
+            throw new IllegalArgumentException("need an operator for each of one or more aggregates");
+        }
+        TupleDesc childTd = child.getTupleDesc();
+        for (int i = 0; i < afields.length; i++) {
+            if (aops[i] != Aggregator.Op.COUNT
+                    && (afields[i] == COUNT_ALL || childTd.getType(afields[i]) != Type.INT_TYPE)) {
+                throw new IllegalArgumentException("cannot compute " + Aggregate.aggName(aops[i])
+                        + " of " + (afields[i] == COUNT_ALL ? "*" : childTd.getFieldName(afields[i])));
+            }
+        }
+        this.child = child;
+        this.groupFields = gfields.clone();
+        this.aggFields = afields.clone();
+        this.aggOps = aops.clone();
+
+        Type[] types = new Type[gfields.length + afields.length];
+        String[] names = new String[types.length];
+        for (int i = 0; i < gfields.length; i++) {
+            types[i] = childTd.getType(gfields[i]);
+            names[i] = childTd.getFieldName(gfields[i]);
+        }
+        for (int i = 0; i < afields.length; i++) {
+            types[gfields.length + i] = Type.INT_TYPE;  //the type of all aggregate functions is INT
+            names[gfields.length + i] = Aggregate.aggName(aops[i]) + " ("
+                    + (afields[i] == COUNT_ALL ? "*" : childTd.getFieldName(afields[i])) + ")";
+        }
+        this.td = new TupleDesc(types, names);
+        this.memoryPages = memoryPages;
+        this.depth = depth;
+        this.maxGroups = depth >= MAX_DEPTH ? Long.MAX_VALUE
+                : maxGroups(memoryPages, childTd, gfields, aops);
+    }
+
+    /**
+     * @return the number of groups of the given fields and aggregates that
+     *   fit in a budget of memoryPages pages
+     */
+    static long maxGroups(int memoryPages, TupleDesc childTd, int[] gfields, Aggregator.Op[] aops) {
+        return Math.max(1, (long) memoryPages * BufferPool.PAGE_SIZE / groupBytes(childTd, gfields, aops));
+    }
+
+    /**
+     * @return an estimate of the bytes a group takes: its key in the group
+     *   table, with a dictionary entry for each string, and its aggregates
+     */
+    private static int groupBytes(TupleDesc childTd, int[] gfields, Aggregator.Op[] aops) {
+        // two slots of the half full table, and the count
+        int bytes = 8 + 8;
+        for (int gfield : gfields) {
+            bytes += 4;
+            if (childTd.getType(gfield) == Type.STRING_TYPE) {
+                // the string, its field and its map entry
+                bytes += 2 * Type.STRING_LEN + 96;
+            }
+        }
+        for (Aggregator.Op op : aops) {
+            if (op == Aggregator.Op.SUM || op == Aggregator.Op.AVG) bytes += 8;
+            else if (op != Aggregator.Op.COUNT) bytes += 4;
+        }
+        return bytes;
+    }
+
+    /** @return true if the groups did not fit in memory */
+    public boolean spilled() {
+        return this.partitions != null;
+    }
+
+    /**
+     * Returns the TupleDesc of this HashAggregate: the group-by fields, with
+     * their names in the child, then an int field for each aggregate, named
+     * "aggName(aop) (child_td.getFieldName(afield))".
+     */
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    public void open()
+        throws NoSuchElementException, DbException, TransactionAbortedException {
+        if (!this.built) {
+            this.child.open();
+            this.build();
+            this.built = true;
+        }
+        this.nextGroup = 0;
+        this.partition = 0;
+    }
+
+    /**
+     * Merges every tuple of the child into its group, or into a partition
+     * if its group does not fit.
+     */
+    private void build() throws DbException, TransactionAbortedException {
+        Type[] keyTypes = new Type[this.groupFields.length];
+        TupleDesc childTd = this.child.getTupleDesc();
+        for (int i = 0; i < keyTypes.length; i++) {
+            keyTypes[i] = childTd.getType(this.groupFields[i]);
+        }
+        this.groups = keyTypes.length > 0 ? new GroupTable(keyTypes) : null;
+        this.numGroups = 0;
+        int capacity = 16;
+        this.counts = new long[capacity];
+        this.sums = new long[this.aggOps.length][];
+        this.mins = new int[this.aggOps.length][];
+        this.maxs = new int[this.aggOps.length][];
+        for (int i = 0; i < this.aggOps.length; i++) {
+            switch (this.aggOps[i]) {
+            case SUM:
+            case AVG:
+                this.sums[i] = new long[capacity];
+                break;
+            case MIN:
+                this.mins[i] = new int[capacity];
+                break;
+            case MAX:
+                this.maxs[i] = new int[capacity];
+                break;
+            default:
+                break;
+            }
+        }
+
+        while (this.child.hasNext()) {
+            Tuple t = this.child.next();
+            int group = 0;
+            if (this.groups != null) {
+                if (this.partitions == null && this.numGroups >= this.maxGroups) {
+                    this.partitions = new SpillFile[Math.max(2, Math.min(MAX_PARTITIONS, this.memoryPages / 2))];
+                }
+                if (this.partitions == null) {
+                    group = this.groups.groupOf(t, this.groupFields);
+                } else {
+                    group = this.groups.find(t, this.groupFields);
+                    if (group < 0) {
+                        this.spill(t);
+                        continue;
+                    }
+                }
+            }
+            boolean first = group == this.numGroups;
+            if (first) {
+                this.addGroup();
+            }
+            this.counts[group]++;
+            for (int i = 0; i < this.aggOps.length; i++) {
+                if (this.aggOps[i] == Aggregator.Op.COUNT) continue;
+                int value = ((IntField) t.getField(this.aggFields[i])).getValue();
+                if (this.sums[i] != null) {
+                    this.sums[i][group] += value;
+                } else if (this.mins[i] != null) {
+                    if (first || value < this.mins[i][group]) this.mins[i][group] = value;
+                } else if (first || value > this.maxs[i][group]) {
+                    this.maxs[i][group] = value;
+                }
+            }
+        }
+        if (this.partitions != null) {
+            try {
+                for (SpillFile f : this.partitions) {
+                    if (f != null) f.finish();
+                }
+            } catch (IOException e) {
+                throw new DbException("could not spill aggregate input: " + e.getMessage());
+            }
+        }
+    }
+
+    private void spill(Tuple t) throws DbException {
+        int p = this.partitionOf(t);
+        try {
+            if (this.partitions[p] == null) {
+                this.partitions[p] = new SpillFile(this.child.getTupleDesc());
+            }
+            this.partitions[p].add(t);
+        } catch (IOException e) {
+            throw new DbException("could not spill aggregate input: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the partition of a tuple's group; each level of partitioning
+     *   hashes with a different seed
+     */
+    private int partitionOf(Tuple t) {
+        int h = this.depth * 0x9E3779B9;
+        for (int gfield : this.groupFields) {
+            h = 31 * h + t.getField(gfield).hashCode();
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, this.partitions.length);
+    }
+
+    private void addGroup() {
+        if (this.numGroups == this.counts.length) {
+            int capacity = 2 * this.numGroups;
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            for (int i = 0; i < this.aggOps.length; i++) {
+                if (this.sums[i] != null) this.sums[i] = Arrays.copyOf(this.sums[i], capacity);
+                if (this.mins[i] != null) this.mins[i] = Arrays.copyOf(this.mins[i], capacity);
+                if (this.maxs[i] != null) this.maxs[i] = Arrays.copyOf(this.maxs[i], capacity);
+            }
+        }
+        this.numGroups++;
+    }
+
+    /**
+     * Returns the next group's tuple, or null if there are no more groups.
+     */
+    protected Tuple readNext() throws TransactionAbortedException, DbException {
+        if (this.nextGroup >= this.numGroups) {
+            return this.readSpilledPartitions();
+        }
+        int group = this.nextGroup++;
+        Tuple t = new Tuple(this.td);
+        for (int i = 0; i < this.groupFields.length; i++) {
+            t.setField(i, this.groups.key(group, i));
+        }
+        for (int i = 0; i < this.aggOps.length; i++) {
+            t.setField(this.groupFields.length + i, new IntField(this.aggregate(i, group)));
+        }
+        return t;
+    }
+
+    /**
+     * @return the value of an aggregate for a group.  Results are
+     *   IntFields, so a SUM that does not fit in an int wraps around
+     */
+    private int aggregate(int i, int group) {
+        switch (this.aggOps[i]) {
+        case AVG:
+            return (int) (this.sums[i][group] / this.counts[group]);
+        case SUM:
+            return (int) this.sums[i][group];
+        case MIN:
+            return this.mins[i][group];
+        case MAX:
+            return this.maxs[i][group];
+        default:
+            return (int) this.counts[group];
+        }
+    }
+
+    /**
+     * Aggregates the spilled partitions one at a time.
+     */
+    private Tuple readSpilledPartitions() throws DbException, TransactionAbortedException {
+        if (this.partitions == null) return null;
+        while (true) {
+            if (this.partitionAggregate != null) {
+                if (this.partitionAggregate.hasNext()) return this.partitionAggregate.next();
+                this.partitionAggregate.close();
+                this.partitionAggregate = null;
+                this.partition++;
+            }
+            while (this.partition < this.partitions.length && this.partitions[this.partition] == null) {
+                this.partition++;
+            }
+            if (this.partition == this.partitions.length) return null;
+            this.partitionAggregate = new HashAggregate(this.partitions[this.partition].iterator(),
+                    this.groupFields, this.aggFields, this.aggOps, this.memoryPages, this.depth + 1);
+            this.partitionAggregate.open();
+        }
+    }
+
+    /**
+     * Restarts the results.  The groups that fit in memory are kept, and
+     * the spilled partitions are aggregated again.
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.close();
+        this.closePartitionAggregate();
+        this.nextGroup = 0;
+        this.partition = 0;
+    }
+
+    private void closePartitionAggregate() {
+        if (this.partitionAggregate != null) {
+            this.partitionAggregate.close();
+            this.partitionAggregate = null;
+        }
+    }
+
+    public void close() {
+        super.close();
+        this.child.close();
+        this.closePartitionAggregate();
+        if (this.partitions != null) {
+            for (SpillFile f : this.partitions) {
+                if (f != null) f.delete();
+            }
+            this.partitions = null;
+        }
+        this.built = false;
+        this.groups = null;
+        this.counts = null;
+        this.sums = null;
+        this.mins = null;
+        this.maxs = null;
+        this.numGroups = 0;
+    }
+}
@@ -0,0 +1,130 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HashBucketPage holds the tuples of one bucket of a HashIndexFile, in no
+ * particular order.  A bucket is a primary page and a chain of overflow
+ * pages, each linked to the next.
+ * <p>
+ * The page format is the page number of the next overflow page (0 if this
+ * is the last page of the chain), the number of tuples, and then the tuples.
+ *
+ * @see HashIndexFile
+ */
+public class HashBucketPage extends HashPage {
+    private final TupleDesc td;
+    private final int maxTuples;
+    private int nextOverflow;
+    private ArrayList<Tuple> tuples;
+
+    /**
+     * Create a bucket page from a set of bytes of data read from disk.
+     */
+    public HashBucketPage(HashPageId id, byte[] data) {
+        this(fileOf(id), id, data);
+    }
+
+    HashBucketPage(HashIndexFile file, HashPageId id, byte[] data) {
+        super(file, id, data);
+        this.td = file.getTupleDesc();
+        this.maxTuples = (BufferPool.PAGE_SIZE - 8) / this.td.getSize();
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        this.nextOverflow = buffer.getInt();
+        int numTuples = buffer.getInt();
+        this.tuples = new ArrayList<Tuple>(numTuples);
+        for (int i = 0; i < numTuples; i++) {
+            Tuple t = new Tuple(this.td);
+            for (int j = 0; j < this.td.numFields(); j++) {
+                t.setField(j, this.td.getType(j).parse(buffer));
+            }
+            this.tuples.add(t);
+        }
+    }
+
+    /** @return the number of tuples on this page */
+    public int numTuples() {
+        return this.tuples.size();
+    }
+
+    /** @return true if another tuple fits on this page */
+    public boolean hasRoom() {
+        return this.tuples.size() < this.maxTuples;
+    }
+
+    /**
+     * @return a copy of the i-th tuple of this page, with its record id set.
+     *   The record id is only valid until the page is next modified.
+     */
+    public Tuple getTuple(int i) {
+        Tuple stored = this.tuples.get(i);
+        Tuple t = new Tuple(this.td);
+        for (int j = 0; j < this.td.numFields(); j++) {
+            t.setField(j, stored.getField(j));
+        }
+        t.setRecordId(new RecordId(this.pid, i));
+        return t;
+    }
+
+    /**
+     * Adds a tuple to this page, which must have room for it.
+     *
+     * @return the index the tuple was added at
+     */
+    public int addTuple(Tuple t) {
+        this.tuples.add(t);
+        return this.tuples.size() - 1;
+    }
+
+    /** Removes the i-th tuple of this page. */
+    public void deleteTuple(int i) {
+        this.tuples.remove(i);
+    }
+
+    /**
+     * Removes every tuple from this page.
+     *
+     * @return the tuples that were on the page
+     */
+    List<Tuple> takeTuples() {
+        List<Tuple> taken = this.tuples;
+        this.tuples = new ArrayList<Tuple>();
+        return taken;
+    }
+
+    /** @return the id of the next page of the chain, or null if this is the last */
+    public HashPageId getNextOverflowId() {
+        if (this.nextOverflow == 0) return null;
+        return new HashPageId(this.pid.getTableId(), this.nextOverflow);
+    }
+
+    /** Links this page to the next page of the chain, or ends the chain if next is null. */
+    public void setNextOverflowId(HashPageId next) {
+        this.nextOverflow = next == null ? 0 : next.pageno();
+    }
+
+    public byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(this.nextOverflow);
+            dos.writeInt(this.tuples.size());
+            for (Tuple t : this.tuples) {
+                for (int j = 0; j < this.td.numFields(); j++) {
+                    t.getField(j).serialize(dos);
+                }
+            }
+            dos.flush();
+        } catch (IOException e) {
+            // writing to a byte array cannot fail
+            throw new RuntimeException(e);
+        }
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        System.arraycopy(baos.toByteArray(), 0, data, 0, baos.size());
+        return data;
+    }
+}
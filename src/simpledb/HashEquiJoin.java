@@ -0,0 +1,359 @@
+package simpledb;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * HashEquiJoin implements a join on an equality predicate by hashing.
+ * When opened it reads the right (inner) child once into a hash table keyed
+ * on the join field, and then reads the left (outer) child once, looking each
+ * of its tuples up in the table.  The join costs one scan of each child
+ * instead of a scan of the inner child for every outer tuple, as Join does.
+ * <p>
+ * The hash table is limited to a MemoryBudget.  If the inner child does not
+ * fit, the join becomes a hybrid hash join: both children are divided into
+ * partitions by a hash of the join field, partition 0 of the inner child
+ * stays in memory and the others are written to SpillFiles, and each pair
+ * of spilled partitions is then joined on its own, by a HashEquiJoin that
+ * partitions again with a different hash if it still does not fit.  Outer
+ * tuples whose inner partition is empty are dropped rather than spilled.
+ * <p>
+ * Tuples are returned in the same form as Join returns them: the
+ * concatenation of the outer and inner tuple.  If the inner child fits in
+ * memory, they are also in the same order, outer order and then inner
+ * order; otherwise they come partition by partition.
+ *
+ * @see Join
+ * @see MemoryBudget
+ */
+public class HashEquiJoin extends AbstractDbIterator {
+    /** The most partitions the join splits its children into at a time. */
+    static final int MAX_PARTITIONS = 32;
+    /**
+     * How many times a partition is divided again before it is joined in
+     * memory regardless of the budget; more would not help a partition of
+     * tuples that share one key.
+     */
+    static final int MAX_DEPTH = 4;
+
+    private JoinPredicate joinPredicate;
+    private DbIterator child1;
+    private DbIterator child2;
+    private TupleDesc td;
+    private final int memoryPages;
+    private final int depth;
+    private final long maxTuples;
+
+    private HashMap<Field, ArrayList<Tuple>> table;
+    // the outer tuple being joined, and the inner tuples that match it
+    private Tuple currentTuple;
+    private Iterator<Tuple> matches;
+
+    // set once the inner child has been partitioned
+    private SpillFile[] buildFiles;
+    private SpillFile[] probeFiles;
+    // true if partition 0 of the inner child is in the hash table
+    private boolean resident;
+    private boolean probed;
+    private int partition;
+    private HashEquiJoin partitionJoin;
+
+    /**
+     * Constructor.  Accepts to children to join and the predicate
+     * to join them on.  The join uses the default MemoryBudget.
+     *
+     * @param p The predicate to use to join the children; its operator
+     *   must be Predicate.Op.EQUALS
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 Iterator for the right(inner) relation to join, which
+     *   is the one held in memory
+     * @throws IllegalArgumentException if the predicate is not an equality
+     */
+    public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, MemoryBudget.getDefaultPages());
+    }
+
+    /**
+     * Constructor for a join with its own memory budget.
+     *
+     * @param memoryPages the number of pages of inner tuples the hash
+     *   table may hold before the join spills to disk
+     * @see #HashEquiJoin(JoinPredicate, DbIterator, DbIterator)
+     */
+    public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int memoryPages) {
+        this(p, child1, child2, memoryPages, 0);
+    }
+
+    private HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int memoryPages, int depth) {
+        if (p.getOperator() != Predicate.Op.EQUALS) {
+            throw new IllegalArgumentException("hash join needs an equality predicate");
+        }
+        this.joinPredicate = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.td = TupleDesc.combine(child1.getTupleDesc(), child2.getTupleDesc());
+        this.memoryPages = memoryPages;
+        this.depth = depth;
+        this.maxTuples = depth >= MAX_DEPTH ? Long.MAX_VALUE
+                : MemoryBudget.tupleCapacity(memoryPages, child2.getTupleDesc());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /** @return true if the inner child did not fit in memory */
+    public boolean spilled() {
+        return this.buildFiles != null;
+    }
+
+    /**
+     * Opens the children and builds the hash table from the inner child,
+     * partitioning it if it does not fit.
+     */
+    public void open()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+        this.child1.open();
+        this.child2.open();
+        this.build();
+    }
+
+    private void build() throws DbException, TransactionAbortedException {
+        this.table = new HashMap<Field, ArrayList<Tuple>>();
+        this.currentTuple = null;
+        this.matches = Collections.emptyIterator();
+        this.probed = false;
+        this.partition = 0;
+
+        int field2 = this.joinPredicate.getField2();
+        long inMemory = 0;
+        try {
+            while (this.child2.hasNext()) {
+                Tuple t = this.child2.next();
+                Field key = t.getField(field2);
+                if (this.buildFiles == null && inMemory == this.maxTuples) {
+                    inMemory = this.spill();
+                }
+                if (this.buildFiles != null) {
+                    int p = this.partitionOf(key);
+                    if (p == 0 && this.resident && inMemory == this.maxTuples) {
+                        inMemory = this.spill();
+                    }
+                    if (p != 0 || !this.resident) {
+                        this.buildFiles[p].add(t);
+                        continue;
+                    }
+                }
+                this.table.computeIfAbsent(key, k -> new ArrayList<Tuple>()).add(t);
+                inMemory++;
+            }
+            if (this.buildFiles != null) {
+                for (SpillFile f : this.buildFiles) {
+                    if (f != null) f.finish();
+                }
+            }
+        } catch (IOException e) {
+            throw new DbException("could not spill join input: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Makes room in the hash table: partitions the inner tuples read so far,
+     * the first time, and keeps only partition 0 in memory; or, if
+     * partition 0 alone is too big, spills it as well.
+     *
+     * @return the number of tuples left in the hash table
+     */
+    private long spill() throws DbException, IOException {
+        TupleDesc td2 = this.child2.getTupleDesc();
+        if (this.buildFiles == null) {
+            int partitions = Math.max(2, Math.min(MAX_PARTITIONS, this.memoryPages / 2));
+            this.buildFiles = new SpillFile[partitions];
+            this.probeFiles = new SpillFile[partitions];
+            for (int p = 1; p < partitions; p++) {
+                this.buildFiles[p] = new SpillFile(td2);
+            }
+            this.resident = true;
+        } else {
+            this.buildFiles[0] = new SpillFile(td2);
+            this.resident = false;
+        }
+
+        long kept = 0;
+        Iterator<Map.Entry<Field, ArrayList<Tuple>>> it = this.table.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Field, ArrayList<Tuple>> entry = it.next();
+            int p = this.partitionOf(entry.getKey());
+            if (p == 0 && this.resident) {
+                kept += entry.getValue().size();
+                continue;
+            }
+            for (Tuple t : entry.getValue()) {
+                this.buildFiles[p].add(t);
+            }
+            it.remove();
+        }
+        return kept;
+    }
+
+    /**
+     * @return the partition of a join key; each level of partitioning
+     *   hashes with a different seed
+     */
+    private int partitionOf(Field key) {
+        int h = key.hashCode() + this.depth * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, this.buildFiles.length);
+    }
+
+    public void close() {
+        super.close();
+        this.child1.close();
+        this.child2.close();
+        this.table = null;
+        this.currentTuple = null;
+        this.matches = null;
+        this.deleteSpillFiles();
+    }
+
+    private void deleteSpillFiles() {
+        if (this.partitionJoin != null) {
+            this.partitionJoin.close();
+            this.partitionJoin = null;
+        }
+        if (this.buildFiles != null) {
+            for (int p = 0; p < this.buildFiles.length; p++) {
+                if (this.buildFiles[p] != null) this.buildFiles[p].delete();
+                if (this.probeFiles[p] != null) this.probeFiles[p].delete();
+            }
+            this.buildFiles = null;
+            this.probeFiles = null;
+        }
+    }
+
+    /**
+     * Restarts the outer child.  The hash table of the inner child is kept
+     * if it fit in memory; otherwise both children are read again.
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.close();
+        this.child1.rewind();
+        if (this.spilled()) {
+            this.deleteSpillFiles();
+            this.child2.rewind();
+            this.build();
+        } else {
+            this.currentTuple = null;
+            this.matches = Collections.emptyIterator();
+            this.probed = false;
+        }
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple readNext() throws TransactionAbortedException, DbException {
+        int field1 = this.joinPredicate.getField1();
+        while (!this.matches.hasNext()) {
+            if (!this.probed) {
+                if (!this.child1.hasNext()) {
+                    this.finishProbe();
+                    continue;
+                }
+                this.currentTuple = this.child1.next();
+                Field key = this.currentTuple.getField(field1);
+                if (this.buildFiles != null) {
+                    int p = this.partitionOf(key);
+                    if (p != 0 || !this.resident) {
+                        this.spillProbe(p, this.currentTuple);
+                        continue;
+                    }
+                }
+                ArrayList<Tuple> found = this.table.get(key);
+                if (found != null) {
+                    this.matches = found.iterator();
+                }
+            } else {
+                return this.readSpilledPartitions();
+            }
+        }
+        return this.joinTuples(this.currentTuple, this.matches.next());
+    }
+
+    private void spillProbe(int p, Tuple t) throws DbException {
+        if (this.buildFiles[p].numTuples() == 0) return;
+        try {
+            if (this.probeFiles[p] == null) {
+                this.probeFiles[p] = new SpillFile(this.child1.getTupleDesc());
+            }
+            this.probeFiles[p].add(t);
+        } catch (IOException e) {
+            throw new DbException("could not spill join input: " + e.getMessage());
+        }
+    }
+
+    private void finishProbe() throws DbException {
+        this.probed = true;
+        if (this.probeFiles == null) return;
+        // the partitions are joined with hash tables of their own
+        this.table = null;
+        try {
+            for (SpillFile f : this.probeFiles) {
+                if (f != null) f.finish();
+            }
+        } catch (IOException e) {
+            throw new DbException("could not spill join input: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Joins the spilled partitions one pair at a time.
+     */
+    private Tuple readSpilledPartitions() throws DbException, TransactionAbortedException {
+        if (this.buildFiles == null) return null;
+        while (true) {
+            if (this.partitionJoin != null) {
+                if (this.partitionJoin.hasNext()) return this.partitionJoin.next();
+                this.partitionJoin.close();
+                this.partitionJoin = null;
+                this.buildFiles[this.partition].delete();
+                this.probeFiles[this.partition].delete();
+                this.partition++;
+            }
+            while (this.partition < this.buildFiles.length && this.probeFiles[this.partition] == null) {
+                this.partition++;
+            }
+            if (this.partition == this.buildFiles.length) return null;
+            this.partitionJoin = new HashEquiJoin(this.joinPredicate,
+                    this.probeFiles[this.partition].iterator(), this.buildFiles[this.partition].iterator(),
+                    this.memoryPages, this.depth + 1);
+            this.partitionJoin.open();
+        }
+    }
+
+    /**
+     * Creates a new tuple from two existing tuples.
+     * @param t1 the first Tuple to join
+     * @param t2 the second Tuple to join with the first
+     * @return the joined Tuple
+     */
+    private Tuple joinTuples(Tuple t1, Tuple t2) {
+        Tuple joinedTuple = new Tuple(this.td);
+
+        for (int i = 0; i < t1.numFields(); i++) {
+            joinedTuple.setField(i, t1.getField(i));
+        }
+
+        for (int j = 0; j < t2.numFields(); j++) {
+            joinedTuple.setField(j + t1.numFields(), t2.getField(j));
+        }
+
+        return joinedTuple;
+    }
+}
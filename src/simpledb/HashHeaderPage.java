@@ -0,0 +1,76 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HashHeaderPage is page 0 of every HashIndexFile.  It records how far the
+ * linear hash table has grown: the level, which gives 2^level buckets at
+ * the start of a round of splits, and the next bucket to split.  The table
+ * has 2^level + next buckets.
+ *
+ * @see HashIndexFile
+ */
+public class HashHeaderPage extends HashPage {
+    private int level;
+    private int next;
+
+    /**
+     * Create a header page from a set of bytes of data read from disk.
+     * The format is two integers: the level and the next bucket to split.
+     */
+    public HashHeaderPage(HashPageId id, byte[] data) {
+        this(fileOf(id), id, data);
+    }
+
+    HashHeaderPage(HashIndexFile file, HashPageId id, byte[] data) {
+        super(file, id, data);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        this.level = buffer.getInt();
+        this.next = buffer.getInt();
+    }
+
+    /** @return the number of buckets */
+    public int numBuckets() {
+        return (1 << this.level) + this.next;
+    }
+
+    /** @return the bucket a key with the given hash code belongs in */
+    public int bucketFor(int hash) {
+        int bucket = hash & ((1 << this.level) - 1);
+        if (bucket < this.next) {
+            bucket = hash & ((2 << this.level) - 1);
+        }
+        return bucket;
+    }
+
+    /** @return the next bucket to split */
+    public int nextToSplit() {
+        return this.next;
+    }
+
+    /** @return the bucket the next split moves keys to */
+    public int splitImage() {
+        return this.next + (1 << this.level);
+    }
+
+    /** @return the mask that tells the two halves of the next split apart */
+    public int splitMask() {
+        return (2 << this.level) - 1;
+    }
+
+    /** Records that the next bucket was split, starting a new round if it was the last. */
+    public void advance() {
+        this.next++;
+        if (this.next == (1 << this.level)) {
+            this.level++;
+            this.next = 0;
+        }
+    }
+
+    public byte[] getPageData() {
+        ByteBuffer buffer = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+        buffer.putInt(this.level);
+        buffer.putInt(this.next);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,310 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * HashIndexFile is a DbFile that keeps its tuples in a linear hash table on
+ * one key field, so that an equality predicate on the key reads the header
+ * page and one bucket, whatever the size of the file.
+ * <p>
+ * Page 0 is a HashHeaderPage.  Bucket b starts at page 2b + 1, so a bucket
+ * is found without a directory; overflow pages take the even page numbers.
+ * The table grows one bucket at a time: whenever an insert has to start an
+ * overflow page, the next bucket in turn is split in two, and its tuples
+ * are divided between it and the new bucket by one more bit of their hash.
+ * No other bucket is touched, so the table never has to be rehashed as a
+ * whole.
+ * <p>
+ * All pages go through the BufferPool and are logged like heap pages.
+ * Readers lock the header and the pages of their bucket shared.  An insert
+ * locks the pages of its bucket exclusively, and the header only when it
+ * splits a bucket.  Overflow pages emptied by a split are not reused.
+ *
+ * @see HashHeaderPage
+ * @see HashBucketPage
+ */
+public class HashIndexFile implements IndexFile {
+    private final File file;
+    private final TupleDesc td;
+    private final int keyField;
+    private final int tableid;
+    // the next even page number to use for an overflow page
+    private int nextOverflowPage;
+    private FileChannel channel;
+
+    private static final ThreadLocal<ByteBuffer> pageBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BufferPool.PAGE_SIZE));
+
+    /**
+     * Constructs a hash index file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this file
+     * @param keyField the index of the field the tuples are hashed on
+     * @param td the tuple descriptor of the tuples in the file
+     */
+    public HashIndexFile(File f, int keyField, TupleDesc td) {
+        this.file = f;
+        this.td = td;
+        this.keyField = keyField;
+        this.tableid = f.getAbsoluteFile().hashCode();
+        int pages = (int) (f.length() / BufferPool.PAGE_SIZE);
+        this.nextOverflowPage = Math.max(2, pages + (pages & 1));
+    }
+
+    /**
+     * Returns the File backing this HashIndexFile on disk.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this HashIndexFile: the hash code
+     * of the absolute file name, as for HeapFile.
+     */
+    public int getId() {
+        return this.tableid;
+    }
+
+    /**
+     * Returns the TupleDesc of the table stored in this DbFile.
+     */
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    // see IndexFile.java for javadocs
+    public int keyField() {
+        return this.keyField;
+    }
+
+    /** @return the hash code used to place a key in a bucket */
+    static int hash(Field key) {
+        int h = key.hashCode() * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+
+    HashPageId headerId() {
+        return new HashPageId(this.tableid, 0);
+    }
+
+    HashPageId bucketId(int bucket) {
+        return new HashPageId(this.tableid, 2 * bucket + 1);
+    }
+
+    // see DbFile.java for javadocs
+    // Pages past the end of the file are buckets or overflow pages that
+    // have not been written yet, and are read as empty pages.
+    public Page readPage(PageId pid) throws NoSuchElementException {
+        try {
+            return this.createPage((HashPageId) pid, this.readPageData(pid.pageno()));
+        } catch (IOException e) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    private byte[] readPageData(int pageno) throws IOException {
+        long pageOffset = (long) pageno * BufferPool.PAGE_SIZE;
+        FileChannel channel = this.channel();
+        ByteBuffer buffer = pageBuffer.get();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pageOffset + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        buffer.get(data, 0, buffer.remaining());
+        return data;
+    }
+
+    /**
+     * Builds the header page or a bucket page from its bytes.
+     */
+    HashPage createPage(HashPageId pid, byte[] data) {
+        if (pid.pageno() == 0) {
+            return new HashHeaderPage(this, pid, data);
+        }
+        return new HashBucketPage(this, pid, data);
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        long pageOffset = (long) page.getId().pageno() * BufferPool.PAGE_SIZE;
+        FileChannel channel = this.channel();
+        ByteBuffer buffer = pageBuffer.get();
+        buffer.clear();
+        buffer.put(page.getPageData());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, pageOffset + buffer.position());
+        }
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (this.channel == null || !this.channel.isOpen()) {
+            this.channel = FileChannel.open(this.file.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return this.channel;
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+    }
+
+    private HashPage getPage(TransactionId tid, HashPageId pid, Permissions perm)
+        throws DbException, TransactionAbortedException {
+        return (HashPage) Database.getBufferPool().getPage(tid, pid, perm);
+    }
+
+    /**
+     * Allocates an overflow page and locks it exclusively.  The page is
+     * empty; it reaches the disk when the transaction commits.
+     */
+    private HashBucketPage newOverflowPage(TransactionId tid)
+        throws DbException, TransactionAbortedException {
+        int pageno;
+        synchronized (this) {
+            pageno = this.nextOverflowPage;
+            this.nextOverflowPage += 2;
+        }
+        return (HashBucketPage) getPage(tid, new HashPageId(this.tableid, pageno), Permissions.READ_WRITE);
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> addTuple(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(this.td)) {
+            throw new DbException("tuple does not match the schema of the file");
+        }
+        LinkedHashSet<Page> dirtied = new LinkedHashSet<Page>();
+        HashHeaderPage header = (HashHeaderPage) getPage(tid, headerId(), Permissions.READ_ONLY);
+        int bucket = header.bucketFor(hash(t.getField(this.keyField)));
+
+        // the first page of the chain with room, or a new overflow page
+        HashBucketPage page = (HashBucketPage) getPage(tid, bucketId(bucket), Permissions.READ_WRITE);
+        boolean overflowed = false;
+        while (!page.hasRoom()) {
+            HashPageId next = page.getNextOverflowId();
+            if (next == null) {
+                HashBucketPage overflow = newOverflowPage(tid);
+                page.setNextOverflowId(overflow.getId());
+                dirtied.add(page);
+                page = overflow;
+                overflowed = true;
+            } else {
+                page = (HashBucketPage) getPage(tid, next, Permissions.READ_WRITE);
+            }
+        }
+        int slot = page.addTuple(t);
+        dirtied.add(page);
+        t.setRecordId(new RecordId(page.getId(), slot));
+
+        if (overflowed) {
+            header = (HashHeaderPage) getPage(tid, headerId(), Permissions.READ_WRITE);
+            this.splitNext(tid, header, dirtied);
+        }
+        return new ArrayList<Page>(dirtied);
+    }
+
+    /**
+     * Splits the next bucket in turn: its tuples are divided between it and
+     * a new bucket at the end of the table.
+     */
+    private void splitNext(TransactionId tid, HashHeaderPage header, Collection<Page> dirtied)
+        throws DbException, TransactionAbortedException {
+        int mask = header.splitMask();
+        int bucket = header.nextToSplit();
+        int image = header.splitImage();
+
+        // take the tuples off every page of the chain
+        ArrayList<HashBucketPage> chain = new ArrayList<HashBucketPage>();
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        HashPageId pid = bucketId(bucket);
+        while (pid != null) {
+            HashBucketPage page = (HashBucketPage) getPage(tid, pid, Permissions.READ_WRITE);
+            chain.add(page);
+            tuples.addAll(page.takeTuples());
+            dirtied.add(page);
+            pid = page.getNextOverflowId();
+        }
+
+        ArrayList<Tuple> staying = new ArrayList<Tuple>();
+        ArrayList<Tuple> moving = new ArrayList<Tuple>();
+        for (Tuple t : tuples) {
+            if ((hash(t.getField(this.keyField)) & mask) == bucket) staying.add(t);
+            else moving.add(t);
+        }
+
+        // the old bucket keeps as much of its chain as it still needs
+        int used = 0;
+        for (Tuple t : staying) {
+            if (!chain.get(used).hasRoom()) used++;
+            chain.get(used).addTuple(t);
+        }
+        chain.get(used).setNextOverflowId(null);
+
+        HashBucketPage page = (HashBucketPage) getPage(tid, bucketId(image), Permissions.READ_WRITE);
+        dirtied.add(page);
+        for (Tuple t : moving) {
+            if (!page.hasRoom()) {
+                HashBucketPage overflow = newOverflowPage(tid);
+                page.setNextOverflowId(overflow.getId());
+                page = overflow;
+                dirtied.add(page);
+            }
+            page.addTuple(t);
+        }
+
+        header.advance();
+        dirtied.add(header);
+    }
+
+    // see DbFile.java for javadocs
+    // The tuple is found by its key and its field values; its record id may
+    // be stale, since tuples move when buckets are split.
+    public Page deleteTuple(TransactionId tid, Tuple t)
+        throws DbException, TransactionAbortedException {
+        HashHeaderPage header = (HashHeaderPage) getPage(tid, headerId(), Permissions.READ_ONLY);
+        HashPageId pid = bucketId(header.bucketFor(hash(t.getField(this.keyField))));
+        while (pid != null) {
+            HashBucketPage page = (HashBucketPage) getPage(tid, pid, Permissions.READ_WRITE);
+            for (int i = 0; i < page.numTuples(); i++) {
+                if (sameFields(page.getTuple(i), t)) {
+                    page.deleteTuple(i);
+                    return page;
+                }
+            }
+            pid = page.getNextOverflowId();
+        }
+        throw new DbException("tuple is not in the file");
+    }
+
+    private static boolean sameFields(Tuple a, Tuple b) {
+        for (int i = 0; i < a.numFields(); i++) {
+            if (!a.getField(i).equals(b.getField(i))) return false;
+        }
+        return true;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new HashIndexFileIterator(this, tid, null);
+    }
+
+    // see IndexFile.java for javadocs
+    // Only equality predicates can use the hash table; other predicates scan
+    // every bucket.
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        return new HashIndexFileIterator(this, tid, ipred);
+    }
+}
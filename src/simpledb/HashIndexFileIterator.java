@@ -0,0 +1,92 @@
+package simpledb;
+
+/**
+ * HashIndexFileIterator returns the tuples of a HashIndexFile, either all of
+ * them or those whose key satisfies an IndexPredicate.  An equality
+ * predicate reads only the bucket the key hashes to; any other predicate
+ * reads every bucket and filters the tuples, since hashing does not keep
+ * keys in order.
+ */
+public class HashIndexFileIterator extends AbstractDbFileIterator {
+    private HashIndexFile file;
+    private TransactionId tid;
+    private IndexPredicate ipred;
+    // the buckets to read, [bucket, lastBucket]
+    private int bucket;
+    private int lastBucket;
+    private HashBucketPage page;
+    private int position;
+
+    /**
+     * @param ipred the predicate on the key field, or null to return every
+     *   tuple
+     */
+    public HashIndexFileIterator(HashIndexFile file, TransactionId tid, IndexPredicate ipred) {
+        this.file = file;
+        this.tid = tid;
+        this.ipred = ipred;
+    }
+
+    /**
+     * Opens the iterator, positioned before the first tuple of the first
+     * bucket to read.
+     */
+    public void open()
+        throws DbException, TransactionAbortedException {
+        HashHeaderPage header = (HashHeaderPage) Database.getBufferPool().getPage(
+                this.tid, this.file.headerId(), Permissions.READ_ONLY);
+        if (this.ipred != null && this.ipred.getOp() == Predicate.Op.EQUALS) {
+            this.bucket = header.bucketFor(HashIndexFile.hash(this.ipred.getField()));
+            this.lastBucket = this.bucket;
+        } else {
+            this.bucket = 0;
+            this.lastBucket = header.numBuckets() - 1;
+        }
+        this.page = this.readPage(this.file.bucketId(this.bucket));
+        this.position = 0;
+    }
+
+    private HashBucketPage readPage(HashPageId pid)
+        throws DbException, TransactionAbortedException {
+        return (HashBucketPage) Database.getBufferPool().getPage(this.tid, pid, Permissions.READ_ONLY);
+    }
+
+    /**
+     * Resets the iterator to the start.
+     */
+    public void rewind()
+        throws DbException, TransactionAbortedException {
+        this.close();
+        this.open();
+    }
+
+    /**
+     * Closes the iterator.
+     */
+    public void close() {
+        super.close();
+        this.page = null;
+        this.position = 0;
+    }
+
+    protected Tuple readNext()
+            throws DbException, TransactionAbortedException {
+        while (this.page != null) {
+            if (this.position >= this.page.numTuples()) {
+                HashPageId next = this.page.getNextOverflowId();
+                if (next == null && this.bucket < this.lastBucket) {
+                    next = this.file.bucketId(++this.bucket);
+                }
+                this.page = next == null ? null : this.readPage(next);
+                this.position = 0;
+                continue;
+            }
+
+            Tuple t = this.page.getTuple(this.position++);
+            if (this.ipred == null || this.ipred.matches(t.getField(this.file.keyField()))) {
+                return t;
+            }
+        }
+        return null;
+    }
+}
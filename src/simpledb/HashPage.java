@@ -0,0 +1,63 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * HashPage holds what the header and bucket pages of a HashIndexFile have
+ * in common: the page id, the dirty state and the before image.  Each kind
+ * of page decodes its contents when it is read and encodes them again in
+ * getPageData.
+ *
+ * @see HashIndexFile
+ */
+public abstract class HashPage implements Page {
+    protected final HashIndexFile file;
+    protected final HashPageId pid;
+    private volatile TransactionId dirtier;
+    private volatile byte[] oldData;
+
+    HashPage(HashIndexFile file, HashPageId pid, byte[] data) {
+        this.file = file;
+        this.pid = pid;
+        this.oldData = data.clone();
+    }
+
+    /**
+     * @return the file a page read back from the log belongs to
+     */
+    static HashIndexFile fileOf(PageId pid) {
+        return (HashIndexFile) Database.getCatalog().getDbFile(pid.getTableId());
+    }
+
+    /**
+     * @return the id of this page
+     */
+    public HashPageId getId() {
+        return this.pid;
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirtier = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return this.dirtier;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public Page getBeforeImage() {
+        return this.file.createPage(this.pid, this.oldData);
+    }
+
+    public void setBeforeImage() {
+        this.oldData = this.getPageData();
+    }
+}
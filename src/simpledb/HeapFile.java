@@ -1,6 +1,9 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /**
@@ -10,6 +13,19 @@ import java.util.*;
  * pages. HeapFile works closely with HeapPage.  The format of HeapPages
  * is described in the HeapPage constructor.
  *
+ * <p>
+ * Pages are read and written with positional I/O on a single FileChannel
+ * that stays open for the lifetime of the HeapFile, through a direct buffer
+ * owned by the calling thread.  The channel is opened on first use and
+ * released by {@link #close}, which the Catalog calls when the table is
+ * dropped.
+ *
+ * <p>
+ * Inserts find a page with room through a {@link FreeSpaceMap}, kept in a
+ * sidecar file next to the table file.  Bulk inserts skip the BufferPool:
+ * they fill fresh pages at the end of the file and write them in batches
+ * of BULK_BATCH_PAGES pages.
+ *
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
  */
@@ -18,6 +34,16 @@ public class HeapFile implements DbFile {
     private File file;
     private int tableid;
     private int numPages;
+    private FileChannel channel;
+    private FreeSpaceMap freeSpace;
+
+    /** Pages filled and written together by a bulk insert. */
+    static final int BULK_BATCH_PAGES = 256;
+
+    private static final ThreadLocal<ByteBuffer> pageBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BufferPool.PAGE_SIZE));
+    private static final ThreadLocal<ByteBuffer> batchBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(0));
     
     /**
      * Constructs a heap file backed by the specified file.
@@ -28,7 +54,8 @@ public class HeapFile implements DbFile {
         this.td = td;
         this.file = f;
         this.tableid = f.getAbsoluteFile().hashCode();
-        this.numPages = (int) f.length() / BufferPool.PAGE_SIZE;
+        this.numPages = (int) (f.length() / BufferPool.PAGE_SIZE);
+        this.freeSpace = new FreeSpaceMap(this, (BufferPool.PAGE_SIZE * 8) / (td.getSize() * 8 + 1));
     }
 
     /**
@@ -40,6 +67,13 @@ public class HeapFile implements DbFile {
         return this.file;
     }
 
+    /**
+     * Returns the map of the free space on this HeapFile's pages.
+     */
+    public FreeSpaceMap getFreeSpaceMap() {
+        return this.freeSpace;
+    }
+
     /**
     * Returns an ID uniquely identifying this HeapFile. Implementation note:
     * you will need to generate this tableid somewhere ensure that each
@@ -62,41 +96,172 @@ public class HeapFile implements DbFile {
     }
 
     // see DbFile.java for javadocs
-    // Using the file handle, we read a page of bytes at a specific offset
+    // Using the file channel, we read a page of bytes at a specific offset
     // then create a new HeapPage using that data, and return it.
     public Page readPage(PageId pid) throws NoSuchElementException {
-        long pageOffset = pid.pageno() * BufferPool.PAGE_SIZE;
-        byte[] data = new byte[BufferPool.PAGE_SIZE];
-
         if (pid.pageno() > this.numPages()) {
-            throw new NoSuchElementException();
+            throw new NoSuchElementException("page " + pid.pageno() + " is past the end of " + this.file);
         }
 
         try {
             // add a new blank page to the HeapFile
             if (pid.pageno() == this.numPages()) {
-                this.numPages++;
+                synchronized (this) {
+                    if (pid.pageno() == this.numPages) {
+                        this.numPages++;
+                    }
+                }
                 return new HeapPage((HeapPageId) pid, HeapPage.createEmptyPageData());
             // read the existing page from disk
             } else {
-                RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "r");
-                randomAccessFile.seek(pageOffset);
-                randomAccessFile.read(data);
-                randomAccessFile.close();
-                return new HeapPage((HeapPageId) pid, data);
+                return this.pageRead(new HeapPage((HeapPageId) pid, this.readPageData(pid.pageno())));
             }
         } catch (IOException e) {
-            throw new NoSuchElementException();
+            throw new NoSuchElementException("could not read page " + pid.pageno() + " of " + this.file
+                    + ": " + e.getMessage());
         }
     }
 
+    /**
+     * Reads the raw bytes of a page.  A page that lies partly past the end of
+     * the file is padded with zeroes.
+     */
+    protected byte[] readPageData(int pageno) throws IOException {
+        long pageOffset = (long) pageno * BufferPool.PAGE_SIZE;
+        FileChannel channel = this.channel();
+        ByteBuffer buffer = pageBuffer.get();
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pageOffset + buffer.position()) < 0) break;
+        }
+        buffer.flip();
+
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        buffer.get(data, 0, buffer.remaining());
+        return data;
+    }
+
+    /**
+     * Reads a run of consecutive pages with a single read.  Pages past the
+     * end of the file are returned empty.  Used by the BufferPool to
+     * prefetch pages for sequential scans; the pages do not go through
+     * readPage.
+     *
+     * @param firstPageNo the number of the first page to read
+     * @param count the number of pages to read
+     * @return the pages, in page number order
+     */
+    public List<Page> readPages(int firstPageNo, int count) throws IOException {
+        int length = count * BufferPool.PAGE_SIZE;
+        ByteBuffer buffer = batchBuffer.get();
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(length);
+            batchBuffer.set(buffer);
+        }
+
+        long offset = (long) firstPageNo * BufferPool.PAGE_SIZE;
+        FileChannel channel = this.channel();
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) break;
+        }
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+
+        // the buffer is reused, and pages keep the bytes they are built from
+        buffer.flip();
+        List<Page> pages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] data = new byte[BufferPool.PAGE_SIZE];
+            buffer.get(data);
+            pages.add(this.pageRead(new HeapPage(new HeapPageId(this.getId(), firstPageNo + i), data)));
+        }
+        return pages;
+    }
+
+    /**
+     * Lets the free-space map know what a page read from the file looks like.
+     * Subclasses that build pages themselves pass them through here too.
+     */
+    protected HeapPage pageRead(HeapPage page) {
+        this.freeSpace.pageRead(page);
+        return page;
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         PageId pid = page.getId();
-        long pageOffset = pid.pageno() * BufferPool.PAGE_SIZE;
-        RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "rw");
-        randomAccessFile.seek(pageOffset);
-        randomAccessFile.write(page.getPageData());
+        long pageOffset = (long) pid.pageno() * BufferPool.PAGE_SIZE;
+        FileChannel channel = this.channel();
+        ByteBuffer buffer = pageBuffer.get();
+        buffer.clear();
+        buffer.put(page.getPageData());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, pageOffset + buffer.position());
+        }
+        this.freeSpace.pageWritten((HeapPage) page);
+    }
+
+    /**
+     * Writes a run of consecutive pages with a single write.
+     *
+     * @param firstPageNo the number of the first page
+     * @param pages the pages, in page number order
+     */
+    public void writePages(int firstPageNo, List<Page> pages) throws IOException {
+        int length = pages.size() * BufferPool.PAGE_SIZE;
+        ByteBuffer buffer = batchBuffer.get();
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(length);
+            batchBuffer.set(buffer);
+        }
+
+        buffer.clear();
+        for (Page page : pages) {
+            buffer.put(page.getPageData());
+        }
+        buffer.flip();
+
+        long offset = (long) firstPageNo * BufferPool.PAGE_SIZE;
+        FileChannel channel = this.channel();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        for (Page page : pages) {
+            this.freeSpace.pageWritten((HeapPage) page);
+        }
+    }
+
+    /**
+     * Forces the pages written so far to disk.
+     */
+    public void force() throws IOException {
+        this.channel().force(false);
+    }
+
+    /**
+     * Returns the channel to the backing file, opening it if this is the
+     * first access or the file has been closed.  A channel also closes
+     * itself when a thread blocked on it is interrupted.
+     */
+    protected synchronized FileChannel channel() throws IOException {
+        if (this.channel == null || !this.channel.isOpen()) {
+            this.channel = FileChannel.open(this.file.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        return this.channel;
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+            this.channel = null;
+        }
+        this.freeSpace.close();
     }
 
     /**
@@ -106,40 +271,101 @@ public class HeapFile implements DbFile {
         return this.numPages;
     }
 
+    /**
+     * Grows the file by count pages if it still has firstPageNo pages.
+     * Used by the BufferPool to append pages for a bulk insert once it has
+     * locked them.
+     *
+     * @return false if another transaction appended pages in the meantime
+     */
+    synchronized boolean extend(int firstPageNo, int count) {
+        if (this.numPages != firstPageNo) return false;
+        this.numPages += count;
+        return true;
+    }
+
+    /**
+     * Gives back the pages past endPageNo of a run ending at reservedEndPageNo,
+     * if they are still the last pages of the file.
+     *
+     * @return true if the pages were given back
+     */
+    synchronized boolean shrink(int reservedEndPageNo, int endPageNo) {
+        if (this.numPages != reservedEndPageNo) return false;
+        this.numPages = endPageNo;
+        return true;
+    }
+
     // see DbFile.java for javadocs
+    // The free-space map points at pages that should have room; it is only
+    // a hint, so each candidate is checked once we hold its write lock.
     public ArrayList<Page> addTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
         ArrayList<Page> modifiedPages = new ArrayList<>();
+        BufferPool bufferPool = Database.getBufferPool();
         HeapPage pageWithSpace = null;
 
-        // find a page that has an space for a new tuple
-        for (int currentPageNo = 0; currentPageNo < this.numPages(); currentPageNo++) {
+        int currentPageNo = this.freeSpace.nextPageWithSpace(0);
+        while (currentPageNo >= 0 && currentPageNo < this.numPages()) {
             HeapPageId pageId = new HeapPageId(this.getId(), currentPageNo);
-            HeapPage currentPage = (HeapPage)Database.getBufferPool().getPage(tid, pageId, Permissions.READ_ONLY);
+            boolean alreadyLocked = bufferPool.holdsLock(tid, pageId);
+            HeapPage currentPage = (HeapPage) bufferPool.getPage(tid, pageId, Permissions.READ_WRITE);
             if (currentPage.getNumEmptySlots() > 0) {
-                // upgrade read lock to write lock
-                pageWithSpace = (HeapPage)Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
+                pageWithSpace = currentPage;
                 break;
-            } else {
-                Database.getBufferPool().releasePage(tid, pageId);
             }
+            this.freeSpace.update(currentPageNo, 0);
+            // keep any lock the transaction needed before it got here
+            if (!alreadyLocked) {
+                bufferPool.releasePage(tid, pageId);
+            }
+            currentPageNo = this.freeSpace.nextPageWithSpace(currentPageNo + 1);
         }
 
-        // add tuple to a page with space
-        if (pageWithSpace != null) {
-            pageWithSpace.addTuple(t);
-            modifiedPages.add(pageWithSpace);
-        //  create a new blank page and add the tuple
-        } else {
+        //  create a new blank page if no page has space
+        if (pageWithSpace == null) {
             HeapPageId newPageId = new HeapPageId(this.getId(), this.numPages());
-            HeapPage newPage = (HeapPage)Database.getBufferPool().getPage(tid, newPageId, Permissions.READ_WRITE);
-            newPage.addTuple(t);
-            modifiedPages.add(newPage);
+            pageWithSpace = (HeapPage) bufferPool.getPage(tid, newPageId, Permissions.READ_WRITE);
         }
 
+        pageWithSpace.addTuple(t);
+        this.freeSpace.update(pageWithSpace.getId().pageno(), pageWithSpace.getNumEmptySlots());
+        modifiedPages.add(pageWithSpace);
         return modifiedPages;
     }
 
+    // see DbFile.java for javadocs
+    // Each batch of fresh pages is appended and locked through the
+    // BufferPool, filled in memory, and written with a single write; the
+    // log only records which pages were appended.
+    public int bulkInsert(TransactionId tid, DbIterator tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        BufferPool bufferPool = Database.getBufferPool();
+        int count = 0;
+
+        while (tuples.hasNext()) {
+            int firstPageNo = bufferPool.appendPages(tid, this, BULK_BATCH_PAGES);
+            List<Page> pages = new ArrayList<>(BULK_BATCH_PAGES);
+            HeapPage page = null;
+            while (tuples.hasNext()) {
+                if (page == null || page.getNumEmptySlots() == 0) {
+                    if (pages.size() == BULK_BATCH_PAGES) break;
+                    page = new HeapPage(new HeapPageId(this.getId(), firstPageNo + pages.size()),
+                            HeapPage.createEmptyPageData());
+                    pages.add(page);
+                }
+                page.addTuple(tuples.next());
+                count++;
+            }
+            bufferPool.writeAppendedPages(tid, this, firstPageNo, BULK_BATCH_PAGES, pages);
+        }
+
+        // nothing but the run boundaries is logged, so the pages must be on
+        // disk before the transaction can commit
+        this.force();
+        return count;
+    }
+
     // see DbFile.java for javadocs
     public Page deleteTuple(TransactionId tid, Tuple t)
         throws DbException, TransactionAbortedException {
@@ -156,6 +382,19 @@ public class HeapFile implements DbFile {
     public DbFileIterator iterator(TransactionId tid) {
         return new HeapFileIterator(this, tid);
     }
+
+    /**
+     * Returns an iterator over the tuples of a range of pages, for scans
+     * that divide the file between them, such as the workers of a
+     * ParallelSeqScan.
+     *
+     * @param fromPage the first page to read
+     * @param toPage the page after the last one to read, or -1 to read to
+     *   the end of the file, as it is when the iterator gets there
+     */
+    public DbFileIterator iterator(TransactionId tid, int fromPage, int toPage) {
+        return new HeapFileIterator(this, tid, fromPage, toPage);
+    }
     
 }
 
@@ -4,27 +4,72 @@ import java.util.*;
 /**
  * HeapFileIterator implements DbFileIterator and is used to
  * iterate through all tuples in a DbFile.
+ * <p>
+ * Once the scan has read a few pages in order, it asks the BufferPool to
+ * prefetch the pages ahead of it.  The read-ahead window starts at
+ * MIN_PREFETCH_PAGES and doubles each time the scan catches up with it, up to
+ * MAX_PREFETCH_PAGES or a quarter of the buffer pool, whichever is smaller,
+ * so that a scan never pushes out more than a fraction of the pool.
+ * <p>
+ * A table too large to be cached is scanned through a ScanRing, so that the
+ * scan recycles a few frames of its own instead of flushing the pool; the
+ * read-ahead window is then limited to half the ring, which ScanRing sizes
+ * to hold at least two windows of MIN_PREFETCH_PAGES.
+ * <p>
+ * An iterator may be limited to a range of pages, so that several scans
+ * can divide a file between them.
  */
 public class HeapFileIterator extends AbstractDbFileIterator {
+    static final int MIN_PREFETCH_PAGES = 8;
+    static final int MAX_PREFETCH_PAGES = 64;
+    /** Consecutive pages read before read-ahead starts. */
+    static final int SEQUENTIAL_THRESHOLD = 2;
+
     private HeapFile heapFile;
     private TransactionId tid;
+    private int firstPageNo;
+    private int endPageNo;
     private int nextPageNo;
     private Iterator<Tuple> tupleIterator;
+    private int sequentialPages;
+    private int prefetchWindow;
+    private int prefetchedUntil;
+    private ScanRing ring;
 
     public HeapFileIterator(HeapFile heapFile, TransactionId tid) {
+        this(heapFile, tid, 0, -1);
+    }
+
+    /**
+     * Creates an iterator over the pages from fromPage up to, but not
+     * including, toPage, or to the end of the file if toPage is -1.
+     */
+    public HeapFileIterator(HeapFile heapFile, TransactionId tid, int fromPage, int toPage) {
         this.heapFile = heapFile;
         this.tid = tid;
-        this.nextPageNo = 0;
+        this.firstPageNo = fromPage;
+        this.endPageNo = toPage;
+        this.nextPageNo = fromPage;
         this.tupleIterator = null;
     }
 
+    /** @return the page after the last one to read */
+    private int endPage() {
+        int numPages = this.heapFile.numPages();
+        return this.endPageNo < 0 ? numPages : Math.min(this.endPageNo, numPages);
+    }
+
     /**
      * Opens the iterator
      * @throws DbException when there are problems opening/accessing the database.
      */
     public void open() 
         throws DbException, TransactionAbortedException {
-        this.tupleIterator = this.getNextPageIterator();
+        this.ring = ScanRing.forScan(Database.getBufferPool(), this.heapFile.numPages());
+        // an empty range reads nothing, not even an empty page
+        if (this.endPageNo < 0 || this.nextPageNo < this.endPage()) {
+            this.tupleIterator = this.getNextPageIterator();
+        }
     }
 
     /**
@@ -42,24 +87,24 @@ public class HeapFileIterator extends AbstractDbFileIterator {
      */
     public void close() {
         super.close();
-        this.nextPageNo = 0;
+        this.nextPageNo = this.firstPageNo;
         this.tupleIterator = null;
+        this.sequentialPages = 0;
+        this.prefetchWindow = 0;
+        this.prefetchedUntil = 0;
+        this.ring = null;
     }
 
     protected Tuple readNext()
             throws DbException, TransactionAbortedException {
         if (this.tupleIterator == null) return null;
 
-        if (this.tupleIterator.hasNext()) {
-            return this.tupleIterator.next();
-        } else if (this.nextPageNo < this.heapFile.numPages()) {
+        // skip over pages that hold no tuples
+        while (!this.tupleIterator.hasNext()) {
+            if (this.nextPageNo >= this.endPage()) return null;
             this.tupleIterator = this.getNextPageIterator();
-            if (this.tupleIterator.hasNext()) {
-                return this.tupleIterator.next();
-            }
         }
-
-        return null;
+        return this.tupleIterator.next();
     }
 
     private Iterator<Tuple> getNextPageIterator() throws DbException, TransactionAbortedException {
@@ -69,6 +114,32 @@ public class HeapFileIterator extends AbstractDbFileIterator {
     private HeapPage getNextPage() throws DbException, TransactionAbortedException {
         HeapPageId pageId = new HeapPageId(this.heapFile.getId(), this.nextPageNo);
         this.nextPageNo++;
-        return (HeapPage) Database.getBufferPool().getPage(this.tid, pageId, Permissions.READ_ONLY);
+        this.readAhead();
+        return (HeapPage) Database.getBufferPool().getPage(this.tid, pageId, Permissions.READ_ONLY, this.ring);
+    }
+
+    /**
+     * Issues the next prefetch once the scan has consumed half of the
+     * previous read-ahead window.
+     */
+    private void readAhead() {
+        BufferPool bufferPool = Database.getBufferPool();
+        int maxWindow = Math.min(MAX_PREFETCH_PAGES, bufferPool.getNumPages() / 4);
+        if (this.ring != null) {
+            maxWindow = Math.min(maxWindow, this.ring.capacity() / 2);
+        }
+        if (maxWindow < MIN_PREFETCH_PAGES || !bufferPool.isPrefetchEnabled()) return;
+        if (++this.sequentialPages < SEQUENTIAL_THRESHOLD) return;
+
+        int numPages = this.endPage();
+        int from = Math.max(this.prefetchedUntil, this.nextPageNo);
+        if (from >= numPages || this.prefetchedUntil - this.nextPageNo > this.prefetchWindow / 2) return;
+
+        this.prefetchWindow = this.prefetchWindow == 0
+                ? MIN_PREFETCH_PAGES
+                : Math.min(2 * this.prefetchWindow, maxWindow);
+        int count = Math.min(this.prefetchWindow, numPages - from);
+        bufferPool.prefetchPages(this.heapFile, from, count, this.ring);
+        this.prefetchedUntil = from + count;
     }
 }
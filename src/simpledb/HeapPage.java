@@ -2,11 +2,18 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
-import java.time.Instant;
+import java.nio.ByteBuffer;
 
 /**
  * HeapPage stores pages of HeapFiles and implements the Page interface that
  * is used by BufferPool.
+ * <p>
+ * A HeapPage keeps the raw bytes of the page and decodes tuples, or single
+ * fields, only when they are asked for; a scan that looks at one column or
+ * rejects most rows never builds the rest.  The bytes are shared rather than
+ * copied wherever possible (with the array passed to the constructor, or
+ * with the before image), and the page makes a private copy the first time
+ * it is modified.
  *
  * @see HeapFile
  * @see BufferPool
@@ -14,13 +21,19 @@ import java.time.Instant;
 public class HeapPage implements Page {
     private HeapPageId pid;
     private TupleDesc td;
-    private byte[] header;
-    private Tuple[] tuples;
     private int numSlots;
+    private int headerSize;
+    private int tupleSize;
+    private int[] fieldOffsets;
+    private int numEmptySlots;
     private TransactionId dirtierTid;
-    private long lastAccessTimestamp;
 
-    private byte[] oldData;
+    // the page image; position 0 is the start of the page
+    private ByteBuffer data;
+    // true if data is a private array that may be modified in place
+    private boolean writable;
+
+    private ByteBuffer oldData;
 
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
@@ -34,33 +47,55 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The page does not copy the array; it must not be modified afterwards.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#PAGE_SIZE
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a HeapPage from the BufferPool.PAGE_SIZE bytes that start at
+     * the current position of a buffer, such as a slice of a larger buffer.
+     * The page reads the buffer in place, so its contents must not change
+     * while the page is in use; the buffer's position is not modified.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) {
+        this(id, data, Database.getCatalog().getTupleDesc(id.getTableId()));
+    }
+
+    /**
+     * Create a HeapPage of tuples with the given TupleDesc, for pages that
+     * do not belong to a table in the Catalog, such as the pages of a
+     * SpillFile.  The buffer is read in place, as for
+     * {@link #HeapPage(HeapPageId, ByteBuffer)}.
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data, TupleDesc td) {
         this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.td = td;
         this.numSlots = getNumTuples();
+        this.headerSize = getHeaderSize();
+        this.tupleSize = this.td.getSize();
+        this.fieldOffsets = new int[this.td.numFields()];
+        for (int i = 1; i < this.fieldOffsets.length; i++) {
+            this.fieldOffsets[i] = this.fieldOffsets[i - 1] + this.td.getType(i - 1).getLen();
+        }
         this.dirtierTid = null;
-        this.updateLastAccessTimestamp();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
 
-        // allocate and read the header slots of this page
-        this.header = new byte[getHeaderSize()];
-        for (int i=0; i < this.header.length; i++)
-            this.header[i] = dis.readByte();
+        ByteBuffer page = data.duplicate();
+        page.limit(page.position() + BufferPool.PAGE_SIZE);
+        this.data = page.slice();
+        this.writable = false;
 
-        try {
-            // allocate and read the actual records of this page
-            tuples = new Tuple[numSlots];
-            for (int i=0; i<tuples.length; i++) {
-                tuples[i] = readNextTuple(dis, i);
-            }
-        } catch(NoSuchElementException e) {
-            e.printStackTrace();
+        this.numEmptySlots = 0;
+        for (int i = 0; i < this.numSlots; i++) {
+            if (!getSlot(i)) this.numEmptySlots++;
         }
-        dis.close();
 
         setBeforeImage();
     }
@@ -85,18 +120,14 @@ public class HeapPage implements Page {
     /** Return a view of this page before it was modified
         -- used by recovery */
     public HeapPage getBeforeImage() {
-        try {
-            return new HeapPage(pid,oldData);
-        } catch (IOException e) {
-            e.printStackTrace();
-            //should never happen -- we parsed it OK before!
-            System.exit(1);
-        }
-        return null;
+        return new HeapPage(pid, oldData, td);
     }
     
     public void setBeforeImage() {
-        oldData = getPageData().clone();
+        // the before image shares the current bytes; the next modification
+        // copies them
+        oldData = data.duplicate();
+        writable = false;
     }
 
     /**
@@ -107,109 +138,117 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Makes the page bytes private to this page before they are modified.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!getSlot(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
+    private void ensureWritable() {
+        if (this.writable) return;
+        byte[] copy = new byte[BufferPool.PAGE_SIZE];
+        ByteBuffer source = this.data.duplicate();
+        source.position(0);
+        source.get(copy);
+        this.data = ByteBuffer.wrap(copy);
+        this.writable = true;
+    }
 
-        // read fields in the tuple
+    /**
+     * Decodes one field of the tuple stored in a slot, without building the
+     * rest of the tuple.
+     *
+     * @param slot the slot of the tuple
+     * @param field the index of the field in the page's TupleDesc
+     * @return the field, or null if the slot is empty
+     */
+    public Field getField(int slot, int field) {
+        if (!getSlot(slot)) return null;
+        ByteBuffer buffer = this.data.duplicate();
+        buffer.position(this.headerSize + slot * this.tupleSize + this.fieldOffsets[field]);
+        return this.td.getType(field).parse(buffer);
+    }
+
+    /**
+     * Decodes the tuple stored in a slot.
+     *
+     * @param slot the slot of the tuple
+     * @return the tuple, with its RecordId set, or null if the slot is empty
+     */
+    public Tuple getTuple(int slot) {
+        if (!getSlot(slot)) return null;
+        return readTuple(this.data.duplicate(), slot);
+    }
+
+    /**
+     * Decodes the tuple in a slot from a view of the page bytes.
+     */
+    private Tuple readTuple(ByteBuffer buffer, int slotId) {
+        buffer.position(this.headerSize + slotId * this.tupleSize);
         Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+        t.setRecordId(new RecordId(pid, slotId));
+        for (int j=0; j<td.numFields(); j++) {
+            t.setField(j, td.getType(j).parse(buffer));
         }
-
         return t;
     }
 
     /**
-     * Generates a byte array representing the contents of this page.
-     * Used to serialize this page to disk.
+     * Decodes the tuples in the used slots from a given slot on into the
+     * columns of a batch, until the batch is full or the page ends.  INT_TYPE
+     * fields are read straight into the batch's int arrays, without building
+     * Fields or Tuples.
+     *
+     * @param fromSlot the first slot to read
+     * @param batch the batch to add rows to, whose columns are those of the page
+     * @return the slot to continue from, or numSlots() if the page is done
+     */
+    public int readRows(int fromSlot, VectorBatch batch) {
+        ByteBuffer buffer = this.data.duplicate();
+        int[][] ints = new int[this.fieldOffsets.length][];
+        for (int j = 0; j < ints.length; j++) {
+            ints[j] = batch.intColumn(j);
+        }
+        int slot = findUsedSlot(buffer, fromSlot);
+        while (slot < this.numSlots && !batch.isFull()) {
+            int row = batch.addRow();
+            int base = this.headerSize + slot * this.tupleSize;
+            for (int j = 0; j < ints.length; j++) {
+                if (ints[j] != null) {
+                    ints[j][row] = buffer.getInt(base + this.fieldOffsets[j]);
+                } else {
+                    buffer.position(base + this.fieldOffsets[j]);
+                    batch.setField(j, row, td.getType(j).parse(buffer));
+                }
+            }
+            slot = findUsedSlot(buffer, slot + 1);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the bytes of this page.  Used to serialize this page to disk.
      * <p>
      * The invariant here is that it should be possible to pass the byte
      * array generated by getPageData to the HeapPage constructor and
      * have it produce an identical HeapPage object.
+     * <p>
+     * The array is the page's own backing array whenever possible, so it must
+     * not be modified.
      *
      * @see #HeapPage
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.PAGE_SIZE;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
+        if (this.data.hasArray() && this.data.arrayOffset() == 0
+                && this.data.array().length == BufferPool.PAGE_SIZE) {
+            return this.data.array();
         }
 
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!getSlot(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.PAGE_SIZE - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        // a view of a larger buffer: copy it out
+        byte[] copy = new byte[BufferPool.PAGE_SIZE];
+        ByteBuffer source = this.data.duplicate();
+        source.position(0);
+        source.get(copy);
+        this.data = ByteBuffer.wrap(copy);
+        this.writable = false;
+        return copy;
     }
 
     /**
@@ -240,7 +279,12 @@ public class HeapPage implements Page {
         if (!rid.getPageId().equals(this.pid)) throw new DbException("Tuple does not exist on this page");
         if (!this.getSlot(rid.tupleno())) throw new DbException("Tuple slot is already empty");
 
+        this.ensureWritable();
         this.setSlot(rid.tupleno(), false);
+        // empty slots are all zeroes on disk
+        int offset = this.headerSize + rid.tupleno() * this.tupleSize;
+        Arrays.fill(this.data.array(), offset, offset + this.tupleSize, (byte) 0);
+        this.numEmptySlots++;
         t.setRecordId(null);
     }
 
@@ -257,17 +301,35 @@ public class HeapPage implements Page {
             throw new DbException("The tuple's descriptor does match the page's tuple descriptor");
         }
 
-        // find an empty slot
+        // find an empty slot, skipping header bytes whose slots are all used
         int emptySlotIdx = -1;
-        for (int i = 0; i < this.numSlots; i++) {
-            if (!this.getSlot(i)) {
-                emptySlotIdx = i;
-                break;
+        for (int b = 0; b < this.headerSize && emptySlotIdx < 0; b++) {
+            int bits = this.data.get(b) & 0xff;
+            if (bits != 0xff) {
+                int slot = b * 8 + Integer.numberOfTrailingZeros(~bits);
+                if (slot < this.numSlots) emptySlotIdx = slot;
             }
         }
+
+        // serialize the tuple into its slot
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(this.tupleSize);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            for (int j = 0; j < this.td.numFields(); j++) {
+                t.getField(j).serialize(dos);
+            }
+            dos.flush();
+        } catch (IOException e) {
+            // writing to a byte array cannot fail
+            throw new DbException("could not serialize tuple: " + e.getMessage());
+        }
+
+        this.ensureWritable();
+        System.arraycopy(baos.toByteArray(), 0, this.data.array(),
+                this.headerSize + emptySlotIdx * this.tupleSize, this.tupleSize);
         this.setSlot(emptySlotIdx, true);
+        this.numEmptySlots--;
         t.setRecordId(new RecordId(this.pid, emptySlotIdx));
-        this.tuples[emptySlotIdx] = t;
     }
 
     /**
@@ -293,57 +355,78 @@ public class HeapPage implements Page {
      * Returns the number of empty slots on this page.
      */
     public int getNumEmptySlots() {
-        int numEmptySlots = 0;
-        for (int i = 0; i < this.numSlots; i++) {
-            if (!this.getSlot(i)) {
-                numEmptySlots++;
-            }
-        }
-        return numEmptySlots;
+        return this.numEmptySlots;
     }
 
     /**
      * Returns true if associated slot on this page is filled.
      */
     public boolean getSlot(int i) {
-        return (this.header[i / 8] & (1 << (i % 8))) != 0;
+        return (this.data.get(i / 8) & (1 << (i % 8))) != 0;
     }
 
     /**
-     * Abstraction to fill or clear a slot on this page.
+     * Abstraction to fill or clear a slot on this page.  The page must be
+     * writable.
      */
     private void setSlot(int i, boolean value) {
+        byte[] header = this.data.array();
         if (value) {
-            this.header[i / 8] |= (1 << (i % 8));
+            header[i / 8] |= (1 << (i % 8));
         } else {
-            this.header[i / 8] &= ~(1 << (i % 8));
+            header[i / 8] &= ~(1 << (i % 8));
         }
     }
 
+    /**
+     * @return the number of tuple slots on this page
+     */
+    public int numSlots() {
+        return this.numSlots;
+    }
+
     /**
      * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
      * (note that this iterator shouldn't return tuples in empty slots!)
+     * <p>
+     * Tuples are decoded as the iterator reaches them.  The iterator sees
+     * the page as it was when the iterator was created, even if the page is
+     * modified meanwhile.
      */
     public Iterator<Tuple> iterator() {
-        ArrayList<Tuple> validTuples = new ArrayList<Tuple>();
-        for (int i = 0; i < this.numSlots; i++) {
-            if (this.getSlot(i)) {
-                validTuples.add(this.tuples[i]);
+        // later modifications copy the bytes instead of changing them under
+        // the iterator
+        this.writable = false;
+        final ByteBuffer snapshot = this.data.duplicate();
+
+        return new Iterator<Tuple>() {
+            private int nextSlot = findUsedSlot(snapshot, 0);
+
+            public boolean hasNext() {
+                return this.nextSlot < numSlots;
             }
-        }
-        return validTuples.iterator();
+
+            public Tuple next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Tuple t = readTuple(snapshot, this.nextSlot);
+                this.nextSlot = findUsedSlot(snapshot, this.nextSlot + 1);
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
     /**
-     * Set the page timestamp to the current time
+     * @return the first used slot at or after from, or numSlots if none
      */
-    public void updateLastAccessTimestamp() {
-        this.lastAccessTimestamp = Instant.now().toEpochMilli();
-    }
-
-    public long getLastAccessTimestamp() {
-        return this.lastAccessTimestamp;
+    private int findUsedSlot(ByteBuffer page, int from) {
+        for (int i = from; i < this.numSlots; i++) {
+            if ((page.get(i / 8) & (1 << (i % 8))) != 0) return i;
+        }
+        return this.numSlots;
     }
 
 }
-
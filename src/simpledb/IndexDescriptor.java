@@ -0,0 +1,177 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * IndexDescriptor describes a secondary index on one field of a heap table,
+ * as registered in the Catalog.  The index is an IndexFile whose tuples are
+ * entries of the form (key, page number, slot): the value of the indexed
+ * field and the record id of the table tuple that holds it.
+ * <p>
+ * The BufferPool keeps every index of a table in step with the table as
+ * tuples are inserted and deleted; the index pages are locked, logged and
+ * rolled back like any other page, within the same transaction.
+ *
+ * @see Catalog#addIndex
+ * @see IndexScan
+ */
+public class IndexDescriptor {
+    private final String name;
+    private final int tableid;
+    private final int field;
+    private final IndexFile file;
+
+    /**
+     * @param name the name of the index
+     * @param tableid the table the index is on
+     * @param field the index of the indexed field in the table's TupleDesc
+     * @param file the index file; its TupleDesc must be
+     *   entryDesc(type of the indexed field), keyed on field 0
+     */
+    public IndexDescriptor(String name, int tableid, int field, IndexFile file) {
+        this.name = name;
+        this.tableid = tableid;
+        this.field = field;
+        this.file = file;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getTableId() {
+        return this.tableid;
+    }
+
+    /** @return the index of the indexed field in the table's TupleDesc */
+    public int getField() {
+        return this.field;
+    }
+
+    public IndexFile getFile() {
+        return this.file;
+    }
+
+    /**
+     * @return the TupleDesc of the entries of an index on a field of the
+     *   given type
+     */
+    public static TupleDesc entryDesc(Type keyType) {
+        return new TupleDesc(new Type[] { keyType, Type.INT_TYPE, Type.INT_TYPE },
+                new String[] { "key", "pageno", "slot" });
+    }
+
+    /**
+     * @return the index entry for a table tuple, which must have its record
+     *   id set
+     */
+    public Tuple entryFor(Tuple t) {
+        RecordId rid = t.getRecordId();
+        Tuple entry = new Tuple(this.file.getTupleDesc());
+        entry.setField(0, t.getField(this.field));
+        entry.setField(1, new IntField(rid.getPageId().pageno()));
+        entry.setField(2, new IntField(rid.tupleno()));
+        return entry;
+    }
+
+    /**
+     * Adds the entry for a tuple that was just inserted into the table.
+     *
+     * @return the index pages that were modified
+     */
+    public ArrayList<Page> insertEntry(TransactionId tid, Tuple t)
+        throws DbException, IOException, TransactionAbortedException {
+        return this.file.addTuple(tid, this.entryFor(t));
+    }
+
+    /**
+     * Adds the entries for a batch of tuples that were just inserted into
+     * the table.  The entries are sorted first, so that consecutive entries
+     * mostly go to the same index page.
+     *
+     * @return the index pages that were modified
+     */
+    public ArrayList<Page> insertEntries(TransactionId tid, List<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        ArrayList<Tuple> entries = new ArrayList<Tuple>(tuples.size());
+        for (Tuple t : tuples) {
+            entries.add(this.entryFor(t));
+        }
+        entries.sort((a, b) -> BTreePage.compare(a.getField(0), b.getField(0)));
+        return this.file.addTuples(tid, entries);
+    }
+
+    /**
+     * Removes the entry for a tuple that is about to be deleted from the
+     * table.
+     *
+     * @return the index page that was modified
+     */
+    public Page deleteEntry(TransactionId tid, Tuple t)
+        throws DbException, TransactionAbortedException {
+        return this.file.deleteTuple(tid, this.entryFor(t));
+    }
+
+    /**
+     * Fills an empty index with the entries for every tuple already in the
+     * table, as a transaction of its own.
+     */
+    public void build()
+        throws DbException, IOException, TransactionAbortedException {
+        Transaction transaction = new Transaction();
+        transaction.start();
+        TransactionId tid = transaction.getId();
+        ArrayList<Tuple> entries = new ArrayList<Tuple>();
+        DbFileIterator it = Database.getCatalog().getDbFile(this.tableid).iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            entries.add(this.entryFor(it.next()));
+        }
+        it.close();
+        TupleIterator tuples = new TupleIterator(this.file.getTupleDesc(), entries);
+        tuples.open();
+        this.file.bulkInsert(tid, tuples);
+        tuples.close();
+        transaction.commit();
+    }
+
+    /**
+     * Returns an iterator over the table tuples whose indexed field
+     * satisfies the predicate.  Each entry found in the index is resolved
+     * to its tuple by reading the table page it points to.
+     */
+    public DbFileIterator lookup(TransactionId tid, IndexPredicate ipred) {
+        DbFileIterator entries = this.file.indexIterator(tid, ipred);
+        return new AbstractDbFileIterator() {
+            public void open() throws DbException, TransactionAbortedException {
+                entries.open();
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                super.close();
+                entries.rewind();
+            }
+
+            public void close() {
+                super.close();
+                entries.close();
+            }
+
+            protected Tuple readNext() throws DbException, TransactionAbortedException {
+                while (entries.hasNext()) {
+                    Tuple entry = entries.next();
+                    HeapPageId pid = new HeapPageId(tableid, ((IntField) entry.getField(1)).getValue());
+                    HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                    Tuple t = page.getTuple(((IntField) entry.getField(2)).getValue());
+                    if (t != null) return t;
+                }
+                return null;
+            }
+        };
+    }
+
+    public String toString() {
+        return this.name + " on " + this.tableid + "." + this.field;
+    }
+}
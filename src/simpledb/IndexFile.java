@@ -0,0 +1,43 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The interface for DbFiles that keep their tuples ordered, or hashed, by a
+ * key field, so that tuples matching a predicate on the key can be found
+ * without scanning the whole file.
+ *
+ * @see IndexScan
+ */
+public interface IndexFile extends DbFile {
+    /**
+     * @return the index of the field of the TupleDesc the file is keyed on
+     */
+    public int keyField();
+
+    /**
+     * Returns an iterator over the tuples whose key field satisfies the
+     * predicate.
+     *
+     * @param tid the transaction the iterator runs as a part of
+     * @param ipred the predicate on the key field
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred);
+
+    /**
+     * Adds a batch of tuples, sorted by key, on behalf of a transaction.
+     * Files can use the order to avoid looking up the page each tuple goes
+     * to from scratch.  The default adds the tuples one at a time.
+     *
+     * @return the pages that were modified, each once
+     */
+    public default ArrayList<Page> addTuples(TransactionId tid, List<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        LinkedHashSet<Page> dirtied = new LinkedHashSet<Page>();
+        for (Tuple t : tuples) {
+            dirtied.addAll(this.addTuple(tid, t));
+        }
+        return new ArrayList<Page>(dirtied);
+    }
+}
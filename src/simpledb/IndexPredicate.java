@@ -0,0 +1,51 @@
+package simpledb;
+
+/**
+ * IndexPredicate compares the key field of the tuples of an IndexFile to a
+ * constant value.
+ */
+public class IndexPredicate {
+    private Predicate.Op op;
+    private Field fieldValue;
+
+    /**
+     * Constructor.
+     *
+     * @param op operation to use for comparison
+     * @param fvalue field value to compare the key fields to
+     */
+    public IndexPredicate(Predicate.Op op, Field fvalue) {
+        this.op = op;
+        this.fieldValue = fvalue;
+    }
+
+    public Predicate.Op getOp() {
+        return this.op;
+    }
+
+    public Field getField() {
+        return this.fieldValue;
+    }
+
+    /**
+     * @return true if a tuple whose key is the given field value satisfies
+     *   this predicate
+     */
+    public boolean matches(Field key) {
+        return key.compare(this.op, this.fieldValue);
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof IndexPredicate)) return false;
+        IndexPredicate that = (IndexPredicate) o;
+        return this.op == that.op && this.fieldValue.equals(that.fieldValue);
+    }
+
+    public int hashCode() {
+        return this.op.hashCode() * 31 + this.fieldValue.hashCode();
+    }
+
+    public String toString() {
+        return this.op + " " + this.fieldValue;
+    }
+}
@@ -0,0 +1,122 @@
+package simpledb;
+import java.util.*;
+
+/**
+ * IndexScan is an access method that reads the tuples of a table whose
+ * field satisfies a predicate, using an index to avoid reading the rest of
+ * the table.  The table is either itself an IndexFile keyed on the field, or
+ * a table with a secondary index on the field; see IndexDescriptor.
+ *
+ * @see IndexFile
+ */
+public class IndexScan implements DbIterator {
+    private TransactionId tid;
+    private int tableid;
+    private String tableAlias;
+    private IndexPredicate ipred;
+    private DbFile file;
+    private DbFileIterator fileIterator;
+    private int sortedField;
+
+    /**
+     * Creates an index scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan; its DbFile must be an IndexFile.
+     * @param tableAlias the alias of this table (needed by the parser)
+     * @param ipred the predicate on the table's key field
+     * @throws IllegalArgumentException if the table is not an IndexFile
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, IndexPredicate ipred) {
+        this(tid, tableid, tableAlias, keyField(tableid), ipred);
+    }
+
+    private static int keyField(int tableid) {
+        DbFile dbFile = Database.getCatalog().getDbFile(tableid);
+        if (!(dbFile instanceof IndexFile)) {
+            throw new IllegalArgumentException("table " + tableid + " is not an index");
+        }
+        return ((IndexFile) dbFile).keyField();
+    }
+
+    /**
+     * Creates an index scan over the specified field of a table as a part of
+     * the specified transaction.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan
+     * @param tableAlias the alias of this table (needed by the parser)
+     * @param field the field the predicate applies to
+     * @param ipred the predicate on the field
+     * @throws IllegalArgumentException if the field is not indexed
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, int field, IndexPredicate ipred) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.ipred = ipred;
+        this.file = Database.getCatalog().getDbFile(tableid);
+        IndexFile index;
+        if (this.file instanceof IndexFile && ((IndexFile) this.file).keyField() == field) {
+            index = (IndexFile) this.file;
+            this.fileIterator = index.indexIterator(tid, ipred);
+        } else {
+            IndexDescriptor descriptor = Database.getCatalog().getIndex(tableid, field, ipred.getOp());
+            if (descriptor == null) {
+                throw new IllegalArgumentException("field " + field + " of table " + tableid + " is not indexed");
+            }
+            index = descriptor.getFile();
+            this.fileIterator = descriptor.lookup(tid, ipred);
+        }
+        // a B+tree returns its keys in order
+        this.sortedField = index instanceof BTreeFile ? field : -1;
+    }
+
+    /**
+     * @return the field the scan returns tuples in ascending order of, or
+     *   -1 if the order is arbitrary
+     */
+    public int sortedField() {
+        return this.sortedField;
+    }
+
+    public void open()
+        throws DbException, TransactionAbortedException {
+        this.fileIterator.open();
+    }
+
+    /**
+     * Returns the TupleDesc with field names from the underlying file,
+     * prefixed with the tableAlias string from the constructor.
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc originalTd = this.file.getTupleDesc();
+        Type[] newTdTypeAr = new Type[originalTd.numFields()];
+        String[] newTdFieldAr = new String[originalTd.numFields()];
+
+        for (int i = 0; i < originalTd.numFields(); i++) {
+            newTdTypeAr[i] = originalTd.getType(i);
+            newTdFieldAr[i] = this.tableAlias + "." + originalTd.getFieldName(i);
+        }
+        return new TupleDesc (newTdTypeAr, newTdFieldAr);
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return this.fileIterator.hasNext();
+    }
+
+    public Tuple next()
+        throws NoSuchElementException, TransactionAbortedException, DbException {
+        return this.fileIterator.next();
+    }
+
+    public void close() {
+        this.fileIterator.close();
+    }
+
+    public void rewind()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+        this.fileIterator.rewind();
+    }
+}
@@ -3,7 +3,9 @@ import java.io.IOException;
 
 /**
  * Inserts tuples read from the child operator into
- * the tableid specified in the constructor
+ * the tableid specified in the constructor.  In bulk mode the tuples are
+ * handed to the table all at once (see BufferPool.bulkInsertTuples), which
+ * appends them on fresh pages instead of looking for free slots.
  */
 public class Insert extends AbstractDbIterator {
     private TransactionId tid;
@@ -11,6 +13,7 @@ public class Insert extends AbstractDbIterator {
     private int tableid;
     private TupleDesc td;
     private boolean hasBeenCalled;
+    private boolean bulk;
 
     /**
      * Constructor.
@@ -20,8 +23,22 @@ public class Insert extends AbstractDbIterator {
      * @throws DbException if TupleDesc of child differs from table into which we are to insert.
      */
     public Insert(TransactionId t, DbIterator child, int tableid)
+        throws DbException {
+        this(t, child, tableid, false);
+    }
+
+    /**
+     * Constructor.
+     * @param t The transaction running the insert.
+     * @param child The child operator from which to read tuples to be inserted.
+     * @param tableid The table in which to insert tuples.
+     * @param bulk true to load the tuples with a bulk insert
+     * @throws DbException if TupleDesc of child differs from table into which we are to insert.
+     */
+    public Insert(TransactionId t, DbIterator child, int tableid, boolean bulk)
         throws DbException {
         this.tid = t;
+        this.bulk = bulk;
         this.child = child;
         this.tableid = tableid;
         this.td = new TupleDesc(new Type[]{Type.INT_TYPE});
@@ -71,6 +88,14 @@ public class Insert extends AbstractDbIterator {
         int insertCount = 0;
         hasBeenCalled = true;
 
+        if (this.bulk) {
+            try {
+                insertCount = Database.getBufferPool().bulkInsertTuples(this.tid, this.tableid, this.child);
+            } catch (IOException e) {
+                throw new DbException("Insert failed");
+            }
+        }
+
         while (this.child.hasNext()) {
             Tuple tuple = this.child.next();
             insertCount++;
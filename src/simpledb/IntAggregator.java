@@ -1,18 +1,27 @@
 package simpledb;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * Knows how to compute some aggregate over a set of IntFields.
+ * <p>
+ * Groups are numbered by a GroupTable, and each group's count, sum, min and
+ * max are kept in primitive arrays indexed by group number, all updated in
+ * the one pass over the tuples.  Sums are kept as longs, so an average does
+ * not overflow even if the sum of its group does not fit in an int.
  */
 public class IntAggregator implements Aggregator {
     private int gbField;
     private Type gbFieldType;
     private int aggField;
     private Op aggOp;
-    private HashMap<Field, Integer> groupCounts;
-    private HashMap<Field, Integer> groupAggregates;
+    private GroupTable groups;
+    private int numGroups;
+    private long[] counts;
+    private long[] sums;
+    private int[] mins;
+    private int[] maxs;
     /**
      * Aggregate constructor
      * @param gbfield the 0-based index of the group-by field in the tuple, or NO_GROUPING if there is no grouping
@@ -26,8 +35,13 @@ public class IntAggregator implements Aggregator {
         this.gbFieldType = gbfieldtype;
         this.aggField = afield;
         this.aggOp = what;
-        this.groupCounts = new HashMap<>();
-        this.groupAggregates = new HashMap<>();
+        if (gbfield != Aggregator.NO_GROUPING) {
+            this.groups = new GroupTable(gbfieldtype);
+        }
+        this.counts = new long[16];
+        this.sums = new long[16];
+        this.mins = new int[16];
+        this.maxs = new int[16];
     }
 
     /**
@@ -35,13 +49,94 @@ public class IntAggregator implements Aggregator {
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void merge(Tuple tup) {
-        Field groupByField = getGroupByField(tup);
+        int group = this.getGroup(tup);
+        int value = ((IntField) tup.getField(this.aggField)).getValue();
+        if (group == this.numGroups) {
+            this.addGroup(value);
+        }
+        this.update(group, value);
+    }
+
+    public boolean mergeExisting(Tuple tup) {
+        int group = this.findGroup(tup);
+        if (group < 0) return false;
+        this.update(group, ((IntField) tup.getField(this.aggField)).getValue());
+        return true;
+    }
+
+    private void update(int group, int value) {
+        this.counts[group]++;
+        this.sums[group] += value;
+        if (value < this.mins[group]) this.mins[group] = value;
+        if (value > this.maxs[group]) this.maxs[group] = value;
+    }
+
+    /**
+     * Adds the counts, sums, mins and maxs of another IntAggregator's
+     * groups.  Since an average is kept as its sum and count until the
+     * end, the averages of the combined groups are exact.
+     * @param other an IntAggregator with the same fields and operator
+     */
+    public void combine(Aggregator other) {
+        if (!(other instanceof IntAggregator)) {
+            throw new IllegalArgumentException("cannot combine with " + other.getClass().getSimpleName());
+        }
+        IntAggregator o = (IntAggregator) other;
+        for (int g = 0; g < o.numGroups; g++) {
+            int group = this.groups == null ? 0 : this.groups.groupOf(o.groups.key(g));
+            if (group == this.numGroups) {
+                this.addGroup(o.mins[g]);
+                this.maxs[group] = o.maxs[g];
+            }
+            this.counts[group] += o.counts[g];
+            this.sums[group] += o.sums[g];
+            if (o.mins[g] < this.mins[group]) this.mins[group] = o.mins[g];
+            if (o.maxs[g] > this.maxs[group]) this.maxs[group] = o.maxs[g];
+        }
+    }
 
-        int updatedCount = getUpdatedCount(tup);
-        groupCounts.put(groupByField, updatedCount);
+    public int numGroups() {
+        return this.numGroups;
+    }
 
-        int updatedAggregate = getUpdatedAggregate(tup);
-        groupAggregates.put(groupByField, updatedAggregate);
+    /**
+     * Returns the group number of the current tuple, which is numGroups if it
+     * starts a new group
+     * @param tup The tuple whose group we wish to return
+     * @return the group number, always 0 if there is no grouping
+     */
+    private int getGroup(Tuple tup) {
+        if (this.groups == null) {
+            return 0;
+        }
+        return this.groups.groupOf(tup.getField(this.gbField));
+    }
+
+    /**
+     * @return the group number of the tuple, or -1 if its group has not
+     *   been encountered
+     */
+    private int findGroup(Tuple tup) {
+        if (this.groups == null) {
+            return this.numGroups > 0 ? 0 : -1;
+        }
+        return this.groups.find(tup.getField(this.gbField));
+    }
+
+    /**
+     * Adds the state of a new group, whose first aggregate value is value
+     */
+    private void addGroup(int value) {
+        if (this.numGroups == this.counts.length) {
+            int capacity = 2 * this.numGroups;
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            this.sums = Arrays.copyOf(this.sums, capacity);
+            this.mins = Arrays.copyOf(this.mins, capacity);
+            this.maxs = Arrays.copyOf(this.maxs, capacity);
+        }
+        this.mins[this.numGroups] = value;
+        this.maxs[this.numGroups] = value;
+        this.numGroups++;
     }
 
     /**
@@ -63,17 +158,14 @@ public class IntAggregator implements Aggregator {
             groupAggregateTd = new TupleDesc(new Type[]{Type.INT_TYPE});
         }
 
-        for (HashMap.Entry<Field, Integer> groupAggregateEntry: this.groupAggregates.entrySet()) {
+        for (int group = 0; group < this.numGroups; group++) {
             Tuple groupAggregateTuple = new Tuple(groupAggregateTd);
-            Integer finalAggregateValue= this.getFinalAggregateValue(
-                    groupCounts.get(groupAggregateEntry.getKey()),
-                    groupAggregateEntry.getValue()
-            );
+            int finalAggregateValue = this.getFinalAggregateValue(group);
 
             // If there is a grouping, we return a tuple in the form {groupByField, aggregateVal}
             // If there is no grouping, we return a tuple in the form {aggregateVal}
             if (hasGrouping) {
-                groupAggregateTuple.setField(0, groupAggregateEntry.getKey());
+                groupAggregateTuple.setField(0, this.groups.key(group));
                 groupAggregateTuple.setField(1, new IntField(finalAggregateValue));
             } else {
                 groupAggregateTuple.setField(0, new IntField(finalAggregateValue));
@@ -84,83 +176,24 @@ public class IntAggregator implements Aggregator {
     }
 
     /**
-     * Returns the updated count aggregate (+1 for each tuple we've seen in a particular group)
-     * @param tup The tuple used to update the current count
-     * @return the updated count
-     */
-    private int getUpdatedCount(Tuple tup) {
-        Field groupByField = getGroupByField(tup);
-        int currentCount = groupCounts.getOrDefault(groupByField, 0);
-        return ++currentCount;
-    }
-
-    /**
-     * Returns the updated aggregate value, by adding the tuple aggregate value to the group aggregate value
-     * @param tup The current tuple whose aggregate value we will merge into the group
-     * @return the new aggregate value
-     */
-    private int getUpdatedAggregate(Tuple tup) {
-        IntField tupleAggregate = (IntField)tup.getField((this.aggField));
-        Field groupByField = getGroupByField(tup);
-        Integer defaultValue = (this.aggOp == Op.MIN || this.aggOp == Op.MAX) ? tupleAggregate.getValue() : 0;
-        Integer currentAggregateValue = groupAggregates.getOrDefault(groupByField, defaultValue);
-        Integer updatedAggregateValue = currentAggregateValue;
-
-        switch (this.aggOp) {
-            case AVG:
-                updatedAggregateValue = currentAggregateValue + tupleAggregate.getValue();
-                break;
-            case MAX:
-                updatedAggregateValue = Math.max(currentAggregateValue, tupleAggregate.getValue());
-                break;
-            case MIN:
-                updatedAggregateValue = Math.min(currentAggregateValue, tupleAggregate.getValue());
-                break;
-            case SUM:
-                updatedAggregateValue = currentAggregateValue + tupleAggregate.getValue();
-                break;
-            case COUNT:
-                // this is handled by groupCount
-                break;
-        }
-        return updatedAggregateValue;
-    }
-
-    /**
-     * Returns the groupby Field of the current tuple, or null if there is no grouping
-     * @param tup The tuple whose groupby Field we wish to return
-     * @return the Field used in the group by clause, or null if there is no grouping
-     */
-    private Field getGroupByField(Tuple tup) {
-        Field groupByField;
-        if (this.gbField == Aggregator.NO_GROUPING) {
-            groupByField = null;
-        } else {
-            groupByField = tup.getField(this.gbField);
-        }
-        return groupByField;
-    }
-
-    /**
-     * Calculates the final aggregate value for AVG and COUNT; returns the passed in aggregateValue otherwise
-     * @param totalCount The count of tuples in the group
-     * @param aggregateValue The aggregate value for the group, which for AVG will need to be divided by count
+     * Calculates the final aggregate value of a group for the aggregation operator.
+     * Results are IntFields, so a SUM that does not fit in an int wraps around
+     * @param group The group number
      * @return The final aggregate value for the group
      */
-    private Integer getFinalAggregateValue(Integer totalCount, Integer aggregateValue) {
-        Integer finalAggregateValue;
+    private int getFinalAggregateValue(int group) {
         switch (this.aggOp) {
             case AVG:
-                finalAggregateValue = aggregateValue / totalCount;
-                break;
+                return (int) (this.sums[group] / this.counts[group]);
             case COUNT:
-                finalAggregateValue = totalCount;
-                break;
+                return (int) this.counts[group];
+            case SUM:
+                return (int) this.sums[group];
+            case MIN:
+                return this.mins[group];
             default:
-                finalAggregateValue = aggregateValue;
-                break;
+                return this.maxs[group];
         }
-        return finalAggregateValue;
     }
 
 }
@@ -47,8 +47,13 @@ public class Join extends AbstractDbIterator {
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
+        super.close();
         this.child1.rewind();
         this.child2.rewind();
+        // start again from the first outer tuple
+        if (!this.checkAndSetNextTuple(child1)) {
+            this.currentTuple = null;
+        }
     }
 
     /**
@@ -71,6 +76,9 @@ public class Join extends AbstractDbIterator {
      * @see JoinPredicate#filter
      */
     protected Tuple readNext() throws TransactionAbortedException, DbException {
+        if (this.currentTuple == null) {
+            return null;
+        }
         do {
             Tuple t1 = this.currentTuple;
             while (this.child2.hasNext()) {
@@ -82,6 +90,7 @@ public class Join extends AbstractDbIterator {
             this.child2.rewind();
         } while (this.checkAndSetNextTuple(child1));
 
+        this.currentTuple = null;
         return null;
     }
 
@@ -54,12 +54,54 @@ public class JoinOptimizer {
         }
         
         JoinPredicate p = new JoinPredicate(t1id,lj.p,t2id);
-       
-        j = new Join(p,plan1,plan2);
+
+        // equi-joins hash the inner child or merge, whichever is estimated
+        // to cost less given the children already sorted on the join
+        // fields; range joins sort and merge
+        switch (lj.p) {
+        case EQUALS:
+            if (this.mergeIsCheaper(lj, stats, SortMergeJoin.isSortedOn(plan1, t1id),
+                    SortMergeJoin.isSortedOn(plan2, t2id))) {
+                j = new SortMergeJoin(p,plan1,plan2);
+            } else {
+                j = new HashEquiJoin(p,plan1,plan2);
+            }
+            break;
+        case LESS_THAN:
+        case LESS_THAN_OR_EQ:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQ:
+            j = new SortMergeJoin(p,plan1,plan2);
+            break;
+        default:
+            j = new BlockNestedLoopJoin(p,plan1,plan2);
+            break;
+        }
         
         return j;
 
     }
+
+    /**
+     * @return true if merging an equi-join is estimated to cost less than
+     *   hashing it, given which of its sides are already sorted.  The sides
+     *   are estimated from the stats of their tables, unfiltered; without
+     *   stats, only two sorted sides are merged.
+     */
+    private boolean mergeIsCheaper(LogicalJoinNode lj, HashMap<String, TableStats> stats,
+                                   boolean sorted1, boolean sorted2) {
+        TableStats s1 = stats.get(lj.t1);
+        TableStats s2 = lj.t2 == null ? null : stats.get(lj.t2);
+        if (s1 == null || s2 == null) {
+            return sorted1 && sorted2;
+        }
+        int card1 = s1.estimateTableCardinality(1.0);
+        int card2 = s2.estimateTableCardinality(1.0);
+        double cost1 = s1.estimateScanCost();
+        double cost2 = s2.estimateScanCost();
+        return estimateSortMergeJoinCost(lj, card1, card2, cost1, cost2, sorted1, sorted2)
+            < estimateHashJoinCost(lj, card1, card2, cost1, cost2);
+    }
     
     /**
      * Estimate the cost of a join.
@@ -77,18 +119,139 @@ public class JoinOptimizer {
      * @param card2 Estimated cardinality of the right-hand side of the query
      * @param cost1 Estimated cost of one full scan of the table on the left-hand side of the query
      * @param cost2 Estimated cost of one full scan of the table on the right-hand side of the query
+     * <p>
+     * A side is taken to be sorted on its join field if its table is a
+     * B+tree keyed on that field; see
+     * {@link #estimateJoinCost(LogicalJoinNode, int, int, double, double, boolean, boolean)}.
+     *
      * @return An estimate of the cost of this query, in terms of cost1 and cost2
      */
     public double estimateJoinCost(LogicalJoinNode j, int card1, int card2, double cost1, double cost2) {
+        return estimateJoinCost(j, card1, card2, cost1, cost2,
+                isSortedOn(j.t1, j.f1), j.t2 != null && isSortedOn(j.t2, j.f2));
+    }
+
+    /**
+     * Estimate the cost of a join whose sides may already be sorted on
+     * their join fields.
+     * <p>
+     * An equi-join is a HashEquiJoin or a SortMergeJoin, whichever costs
+     * less; see {@link #estimateHashJoinCost} and
+     * {@link #estimateSortMergeJoinCost}.  A range join is a SortMergeJoin.
+     * Any other join is a BlockNestedLoopJoin, which scans the inner side
+     * once per block of outer tuples and applies the predicate to every pair.
+     *
+     * @param sorted1 true if the left-hand side is already sorted on its
+     *   join field
+     * @param sorted2 true if the right-hand side is already sorted on its
+     *   join field
+     * @see #estimateJoinCost(LogicalJoinNode, int, int, double, double)
+     */
+    public double estimateJoinCost(LogicalJoinNode j, int card1, int card2, double cost1, double cost2,
+                                   boolean sorted1, boolean sorted2) {
         if (j instanceof LogicalSubplanJoinNode) {
         	// A LogicalSubplanJoinNode represents a subquery.
         	// You do not need to implement proper support for these for Lab 4.
         	return card1 + cost1 + cost2;
+        } else if (j.p == Predicate.Op.EQUALS) {
+            return Math.min(estimateHashJoinCost(j, card1, card2, cost1, cost2),
+                    estimateSortMergeJoinCost(j, card1, card2, cost1, cost2, sorted1, sorted2));
+        } else if (j.p == Predicate.Op.NOT_EQUALS || j.p == Predicate.Op.LIKE) {
+            double blocks = Math.ceil(card1 / (double) blockTuples(j.t1));
+            return cost1 + (blocks * cost2) + (card1 * card2);
         } else {
-            return cost1 + (card1 * cost2) + (card1 * card2);
+            return estimateSortMergeJoinCost(j, card1, card2, cost1, cost2, sorted1, sorted2);
+        }
+    }
+
+    /**
+     * Estimate the cost of a HashEquiJoin: one scan of each side, and one
+     * hash table insert per inner tuple and one probe per outer tuple, each
+     * counted as a hash and a compare.  If the inner side does not fit in
+     * the MemoryBudget, both sides are also written to partitions and read
+     * back.
+     *
+     * @see #estimateJoinCost
+     */
+    public double estimateHashJoinCost(LogicalJoinNode j, int card1, int card2, double cost1, double cost2) {
+        double cost = cost1 + cost2 + 2.0 * (card1 + card2);
+        if (card2 > blockTuples(j.t2)) {
+            cost += 2 * (cost1 + cost2);
+        }
+        return cost;
+    }
+
+    /**
+     * Estimate the cost of a SortMergeJoin: one scan of each side, a sort of
+     * each side that is not already in join order, and the merge.  An
+     * equality merge compares each tuple about once; a range merge returns
+     * an estimated fraction of all pairs, as estimateJoinCardinality does,
+     * and if the inner side does not fit in the MemoryBudget, reads it back
+     * from disk for each outer tuple at worst.
+     *
+     * @param sorted1 true if the left-hand side is already sorted on its
+     *   join field
+     * @param sorted2 true if the right-hand side is already sorted on its
+     *   join field
+     * @see #estimateJoinCost
+     */
+    public double estimateSortMergeJoinCost(LogicalJoinNode j, int card1, int card2, double cost1, double cost2,
+                                            boolean sorted1, boolean sorted2) {
+        double cost = cost1 + cost2;
+        if (!sorted1) cost += card1 * log2(card1);
+        if (!sorted2) cost += card2 * log2(card2);
+        if (j.p == Predicate.Op.EQUALS) {
+            return cost + card1 + card2;
+        }
+        cost += card1 + card2 + 0.3 * card1 * card2;
+        if (card2 > blockTuples(j.t2)) {
+            cost += card1 * cost2;
+        }
+        return cost;
+    }
+
+    /**
+     * @return the number of tuples of a table, given by alias or name, that
+     *   fit in a block of a BlockNestedLoopJoin, or 1 if the table is unknown
+     */
+    private long blockTuples(String table) {
+        Integer tableid = p.getTableId(table);
+        try {
+            if (tableid == null) {
+                tableid = Database.getCatalog().getTableId(table);
+            }
+            TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+            return MemoryBudget.tupleCapacity(MemoryBudget.getDefaultPages(), td);
+        } catch (NoSuchElementException e) {
+            return 1;
         }
     }
 
+    /**
+     * @return true if a table, given by alias or name, is a B+tree keyed on
+     *   the field, so that a scan of it is already in join order
+     */
+    private boolean isSortedOn(String table, String field) {
+        Integer tableid = p.getTableId(table);
+        try {
+            if (tableid == null) {
+                tableid = Database.getCatalog().getTableId(table);
+            }
+            DbFile file = Database.getCatalog().getDbFile(tableid);
+            if (!(file instanceof BTreeFile)) {
+                return false;
+            }
+            String key = file.getTupleDesc().getFieldName(((BTreeFile) file).keyField());
+            return key.equals(field) || (table + "." + key).equals(field);
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    private static double log2(int n) {
+        return n > 1 ? Math.log(n) / Math.log(2) : 1;
+    }
+
     /**
      * Estimate the cardinality of a join.  The cardinality of a join
      * is the number of tuples produced by the join.
@@ -177,6 +340,10 @@ public class JoinOptimizer {
                                               HashMap<String, Double> filterSelectivities,  
                                               boolean explain) throws ParsingException 
     {
+        // a single-table query has nothing to order
+        if (joins.isEmpty()) {
+            return joins;
+        }
 
         PlanCache planCache = new PlanCache();
 
@@ -261,16 +428,20 @@ public class JoinOptimizer {
         double t1cost,t2cost;
         int t1card,t2card;
         boolean leftPkey, rightPkey;
+        // only a base table is known to be sorted on its join field
+        boolean leftSorted, rightSorted;
 
         if (news.isEmpty()) { //base case -- both are base relations
             prevBest = new Vector<LogicalJoinNode>();
             t1cost = stats.get(j.t1).estimateScanCost();
             t1card = stats.get(j.t1).estimateTableCardinality(filterSelectivities.get(j.t1));
             leftPkey = isPkey(j.t1, j.f1);
+            leftSorted = isSortedOn(j.t1, j.f1);
 
             t2cost = j.t2==null?0:stats.get(j.t2).estimateScanCost();
             t2card = j.t2==null?0:stats.get(j.t2).estimateTableCardinality(filterSelectivities.get(j.t2));
             rightPkey = j.t2==null?false:isPkey(j.t2,j.f2);
+            rightSorted = j.t2 != null && isSortedOn(j.t2, j.f2);
         } else {
             //news is not empty -- figure best way to join j to news
             prevBest = pc.getOrder(news);
@@ -287,16 +458,19 @@ public class JoinOptimizer {
             t1cost = prevBestCost;  //left side just has cost of whatever left subtree is
             t1card = bestCard;
             leftPkey = hasPkey(prevBest);
+            leftSorted = false;
 
             //estimate cost of right subtree
             if (doesJoin(prevBest,j.t1)) { //j.t1 is in prevBest
                 t2cost = j.t2 == null?0:stats.get(j.t2).estimateScanCost();
                 t2card = j.t2 == null?0:stats.get(j.t2).estimateTableCardinality(filterSelectivities.get(j.t2));
                 rightPkey = j.t2 == null?false:isPkey(j.t2,j.f2);
+                rightSorted = j.t2 != null && isSortedOn(j.t2, j.f2);
             } else if (doesJoin(prevBest, j.t2)) { //j.t2 is in prevbest (both shouldn't be)
                 t2cost = stats.get(j.t1).estimateScanCost();
                 t2card = stats.get(j.t1).estimateTableCardinality(filterSelectivities.get(j.t1));
                 rightPkey = isPkey(j.t1,j.f1);
+                rightSorted = isSortedOn(j.t1, j.f1);
 
             } else {
                 //don't consider this plan if one of j.t1 or j.t2
@@ -306,10 +480,10 @@ public class JoinOptimizer {
         }
                     
         //case where prevbest is left
-        double cost1 = estimateJoinCost(j,t1card,t2card, t1cost,t2cost);
+        double cost1 = estimateJoinCost(j,t1card,t2card, t1cost,t2cost, leftSorted,rightSorted);
 
         LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2,t2card,t1card, t2cost,t1cost);
+        double cost2 = estimateJoinCost(j2,t2card,t1card, t2cost,t1cost, rightSorted,leftSorted);
         if (cost2 < cost1) {
             boolean tmp;
             j = j2;
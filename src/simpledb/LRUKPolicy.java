@@ -0,0 +1,112 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * LRUKPolicy implements LRU-K (O'Neil, O'Neil and Weikum): the victim is the
+ * page whose K-th most recent reference lies furthest in the past.  Pages
+ * that have been referenced fewer than K times have an infinite backward
+ * K-distance and are evicted first, least recently used first, so a single
+ * large scan cannot push out pages that are referenced repeatedly.
+ * <p>
+ * Time is a logical counter that advances on every reference.  Pages with
+ * fewer than K references live in an access-ordered list (constant time);
+ * pages with K or more references are ordered by their K-th most recent
+ * reference in a tree keyed by that (unique) timestamp, which costs
+ * O(log n) per hit on a hot page.
+ */
+public class LRUKPolicy implements EvictionPolicy {
+    static final int DEFAULT_K = 2;
+
+    private int k;
+    private long clock;
+    private HashMap<PageId, long[]> history;
+    private LinkedHashMap<PageId, Boolean> coldPages;
+    private TreeMap<Long, PageId> hotPages;
+
+    /**
+     * @param k the number of references that make up a page's history
+     */
+    public LRUKPolicy(int k) {
+        if (k < 1) throw new IllegalArgumentException("K must be at least 1");
+        this.k = k;
+        this.clock = 0;
+        this.history = new HashMap<>();
+        this.coldPages = new LinkedHashMap<>(16, 0.75f, true);
+        this.hotPages = new TreeMap<>();
+    }
+
+    public void pageAdded(PageId pid) {
+        if (this.history.containsKey(pid)) {
+            this.pageAccessed(pid);
+            return;
+        }
+        // history[0] holds the number of references seen, the rest is a ring
+        // of the last k reference times
+        long[] refs = new long[this.k + 1];
+        this.history.put(pid, refs);
+        this.record(pid, refs);
+    }
+
+    public void pageAccessed(PageId pid) {
+        long[] refs = this.history.get(pid);
+        if (refs != null) {
+            this.record(pid, refs);
+        }
+    }
+
+    public void pageRemoved(PageId pid) {
+        long[] refs = this.history.remove(pid);
+        if (refs == null) return;
+
+        if (refs[0] >= this.k) {
+            this.hotPages.remove(this.kthMostRecent(refs));
+        } else {
+            this.coldPages.remove(pid);
+        }
+    }
+
+    public PageId chooseVictim(Predicate<PageId> evictable) {
+        for (PageId pid : this.coldPages.keySet()) {
+            if (evictable.test(pid)) return pid;
+        }
+        for (Map.Entry<Long, PageId> entry : this.hotPages.entrySet()) {
+            if (evictable.test(entry.getValue())) return entry.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Appends a reference at the current logical time and moves the page to
+     * its new position in the cold list or the hot tree.
+     */
+    private void record(PageId pid, long[] refs) {
+        long now = ++this.clock;
+        if (refs[0] >= this.k) {
+            this.hotPages.remove(this.kthMostRecent(refs));
+        }
+
+        refs[1 + (int) (refs[0] % this.k)] = now;
+        refs[0]++;
+
+        if (refs[0] >= this.k) {
+            this.coldPages.remove(pid);
+            this.hotPages.put(this.kthMostRecent(refs), pid);
+        } else {
+            this.coldPages.put(pid, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return the time of the K-th most recent reference; only valid once
+     *   the page has been referenced at least K times
+     */
+    private long kthMostRecent(long[] refs) {
+        // the oldest entry of the ring is the next one to be overwritten
+        return refs[1 + (int) (refs[0] % this.k)];
+    }
+}
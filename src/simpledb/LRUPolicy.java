@@ -0,0 +1,40 @@
+package simpledb;
+
+import java.util.LinkedHashMap;
+import java.util.function.Predicate;
+
+/**
+ * LRUPolicy evicts the least recently used evictable page.  Pages are kept in
+ * an access-ordered linked hash map, so recording a hit and finding the
+ * victim are both constant time unless a run of dirty pages sits at the cold
+ * end of the list.
+ */
+public class LRUPolicy implements EvictionPolicy {
+    private LinkedHashMap<PageId, Boolean> pages;
+
+    public LRUPolicy() {
+        this.pages = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public void pageAdded(PageId pid) {
+        this.pages.put(pid, Boolean.TRUE);
+    }
+
+    public void pageAccessed(PageId pid) {
+        // an access-ordered LinkedHashMap moves the entry to the tail on get()
+        this.pages.get(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        this.pages.remove(pid);
+    }
+
+    public PageId chooseVictim(Predicate<PageId> evictable) {
+        for (PageId pid : this.pages.keySet()) {
+            if (evictable.test(pid)) {
+                return pid;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package simpledb;
+import java.util.*;
+
+/**
+ * Limit is an operator that implements a relational LIMIT: it returns the
+ * first tuples of its child, up to a given number.  It stops reading the
+ * child once it has returned them, so a scan below it reads only as many
+ * pages as it needs.
+ */
+public class Limit extends AbstractDbIterator {
+    private DbIterator child;
+    private final int limit;
+    private int count;
+
+    /**
+     * Constructor accepts the number of tuples to return and a child
+     * operator to read them from.
+     *
+     * @param limit The most tuples to return
+     * @param child The child operator
+     */
+    public Limit(int limit, DbIterator child) {
+        if (limit < 0) throw new IllegalArgumentException("negative limit " + limit);
+        this.limit = limit;
+        this.child = child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.child.getTupleDesc();
+    }
+
+    public void open()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+        this.child.open();
+        this.count = 0;
+    }
+
+    public void close() {
+        super.close();
+        this.child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.close();
+        this.child.rewind();
+        this.count = 0;
+    }
+
+    /**
+     * AbstractDbIterator.readNext implementation.
+     * Returns tuples from the child operator until the limit is reached.
+     *
+     * @return The next tuple, or null if there are no more tuples or the
+     *   limit has been reached
+     */
+    protected Tuple readNext()
+        throws NoSuchElementException, TransactionAbortedException, DbException {
+        if (this.count >= this.limit || !this.child.hasNext()) return null;
+        this.count++;
+        return this.child.next();
+    }
+}
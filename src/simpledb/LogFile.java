@@ -51,8 +51,8 @@ transaction id.
 <li> Each log record ends with a long integer file offset representing
 the position in the log file where the record began.
 
-<li> There are five record types: ABORT, COMMIT, UPDATE, BEGIN, and
-CHECKPOINT
+<li> There are six record types: ABORT, COMMIT, UPDATE, BEGIN,
+CHECKPOINT, and BULK_APPEND
 
 <li> ABORT, COMMIT, and BEGIN records contain no additional data
 
@@ -67,6 +67,13 @@ of the record is an integer count of the number of transactions, as well
 as a long integer transaction id and a long integer first record offset
 for each active transaction.
 
+<li> BULK_APPEND records describe a run of fresh pages that a bulk insert
+appended to a table, as an integer table id, an integer first page number
+and an integer page count.  The pages themselves are not logged: they are
+forced to the table file before the transaction commits, so there is
+nothing to redo, and undoing the record overwrites the run with empty
+pages.
+
 </ul>
 
 */
@@ -82,6 +89,7 @@ public class LogFile {
     static final int UPDATE_RECORD = 3;
     static final int BEGIN_RECORD = 4;
     static final int CHECKPOINT_RECORD = 5;
+    static final int BULK_APPEND_RECORD = 6;
     static final long NO_CHECKPOINT_ID = -1;
 
     static int INT_SIZE = 4;
@@ -218,6 +226,42 @@ public class LogFile {
         Debug.log("WRITE OFFSET = " + currentOffset);
     }
 
+    /** Write a BULK_APPEND record to disk for the specified tid and run of
+        appended pages, and force the log to disk.  Must be called before
+        the pages are written to the table file.
+
+        @param tid The transaction performing the bulk insert
+        @param tableId The table the pages were appended to
+        @param firstPageNo The number of the first appended page
+        @param count The number of appended pages
+    */
+    public synchronized void logBulkAppend(TransactionId tid, int tableId,
+                                           int firstPageNo, int count)
+        throws IOException {
+        preAppend();
+        Debug.log("BULK APPEND " + tid.getId() + ", table " + tableId + ", pages " + firstPageNo + "+" + count);
+
+        raf.writeInt(BULK_APPEND_RECORD);
+        raf.writeLong(tid.getId());
+        raf.writeInt(tableId);
+        raf.writeInt(firstPageNo);
+        raf.writeInt(count);
+        raf.writeLong(currentOffset);
+        currentOffset = raf.getFilePointer();
+        force();
+    }
+
+    /** Undo a BULK_APPEND record by overwriting the appended pages with
+        empty pages and dropping any cached copies of them. */
+    void undoBulkAppend(int tableId, int firstPageNo, int count) throws IOException {
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        for (int pageno = firstPageNo; pageno < firstPageNo + count; pageno++) {
+            HeapPageId pid = new HeapPageId(tableId, pageno);
+            file.writePage(new HeapPage(pid, HeapPage.createEmptyPageData()));
+            Database.getBufferPool().discardPage(pid);
+        }
+    }
+
     void writePageData(RandomAccessFile raf, Page p) throws IOException{
         PageId pid = p.getId();
         int pageInfo[] = pid.serialize();
@@ -257,15 +301,16 @@ public class LogFile {
             Class<?> idClass = Class.forName(idClassName);
             Class<?> pageClass = Class.forName(pageClassName);
 
-            Constructor<?>[] idConsts = idClass.getDeclaredConstructors();
             int numIdArgs = raf.readInt();
             Object idArgs[] = new Object[numIdArgs];
+            Class<?> idArgTypes[] = new Class<?>[numIdArgs];
             for (int i = 0; i<numIdArgs;i++) {
                 idArgs[i] = new Integer(raf.readInt());
+                idArgTypes[i] = int.class;
             }
-            pid = (PageId)idConsts[0].newInstance(idArgs);
+            pid = (PageId)idClass.getDeclaredConstructor(idArgTypes).newInstance(idArgs);
 
-            Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
+            Constructor<?> pageConst = findPageConstructor(pageClass, pid.getClass());
             int pageSize = raf.readInt();
 
             byte[] pageData = new byte[pageSize];
@@ -275,12 +320,15 @@ public class LogFile {
             pageArgs[0] = pid;
             pageArgs[1] = pageData;
 
-            newPage = (Page)pageConsts[0].newInstance(pageArgs);
+            newPage = (Page)pageConst.newInstance(pageArgs);
 
             //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
         } catch (ClassNotFoundException e){
             e.printStackTrace();
             throw new IOException();
+        } catch (NoSuchMethodException e) {
+            e.printStackTrace();
+            throw new IOException();
         } catch (InstantiationException e) {
             e.printStackTrace();
             throw new IOException();
@@ -295,6 +343,21 @@ public class LogFile {
 
     }
 
+    /**
+     * Finds the (PageId, byte[]) constructor of a page class; page classes
+     * may declare other constructors too.
+     */
+    private Constructor<?> findPageConstructor(Class<?> pageClass, Class<?> idClass)
+        throws NoSuchMethodException {
+        for (Constructor<?> c : pageClass.getDeclaredConstructors()) {
+            Class<?>[] params = c.getParameterTypes();
+            if (params.length == 2 && params[0].isAssignableFrom(idClass) && params[1] == byte[].class) {
+                return c;
+            }
+        }
+        throw new NoSuchMethodException(pageClass.getName() + "(" + idClass.getName() + ", byte[])");
+    }
+
     /** Write a BEGIN record for the specified transaction
         @param tid The transaction that is beginning
 
@@ -429,6 +492,11 @@ public class LogFile {
                 case BEGIN_RECORD:
                     tidToFirstLogRecord.put(record_tid,newStart);
                     break;
+                case BULK_APPEND_RECORD:
+                    logNew.writeInt(raf.readInt());
+                    logNew.writeInt(raf.readInt());
+                    logNew.writeInt(raf.readInt());
+                    break;
                 }
 
                 //all xactions finish with a pointer
@@ -476,13 +544,26 @@ public class LogFile {
                         long recordTid = raf.readLong();
 
                         if (recordType == UPDATE_RECORD) {
-                            HeapPage beforePage = (HeapPage) readPageData(raf);
+                            Page beforePage = readPageData(raf);
                             if (recordTid == tid.getId()) {
-                                HeapFile file = (HeapFile) Database.getCatalog().getDbFile(beforePage.getId().getTableId());
+                                DbFile file = Database.getCatalog().getDbFile(beforePage.getId().getTableId());
                                 file.writePage(beforePage.getBeforeImage());
                                 Database.getBufferPool().discardPage(beforePage.getId());
                             }
-                            HeapPage afterPage = (HeapPage) readPageData(raf);
+                            Page afterPage = readPageData(raf);
+                        } else if (recordType == BULK_APPEND_RECORD) {
+                            int tableId = raf.readInt();
+                            int firstPageNo = raf.readInt();
+                            int count = raf.readInt();
+                            if (recordTid == tid.getId()) {
+                                undoBulkAppend(tableId, firstPageNo, count);
+                            }
+                        } else if (recordType == CHECKPOINT_RECORD) {
+                            int numActiveTxns = raf.readInt();
+                            for (int i = 0; i < numActiveTxns; i++) {
+                                raf.readLong();
+                                raf.readLong();
+                            }
                         }
 
                         raf.readLong();
@@ -567,6 +648,11 @@ public class LogFile {
                                 readPageData(raf);
                                 readPageData(raf);
                                 break;
+                            case BULK_APPEND_RECORD:
+                                raf.readInt();
+                                raf.readInt();
+                                raf.readInt();
+                                break;
                         }
                         raf.readLong();
                     } catch (EOFException e) {
@@ -599,6 +685,12 @@ public class LogFile {
                                     file.writePage(afterPage);
                                 }
                                 break;
+                            case BULK_APPEND_RECORD:
+                                // appended pages were forced before the commit
+                                raf.readInt();
+                                raf.readInt();
+                                raf.readInt();
+                                break;
                         }
                         raf.readLong();
                     } catch (EOFException e) {
@@ -635,6 +727,15 @@ public class LogFile {
                             Page afterPage = readPageData(raf);
                             break;
 
+                        case BULK_APPEND_RECORD:
+                            int tableId = raf.readInt();
+                            int firstPageNo = raf.readInt();
+                            int count = raf.readInt();
+                            if (losers.contains(recordTid)) {
+                                undoBulkAppend(tableId, firstPageNo, count);
+                            }
+                            break;
+
                         case CHECKPOINT_RECORD:
                             int numActiveTxns = raf.readInt();
                             for (int i = 0; i < numActiveTxns; i++) {
@@ -713,6 +814,13 @@ public class LogFile {
 
                     System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
 
+                    break;
+                case BULK_APPEND_RECORD:
+                    System.out.println(" (BULK APPEND)");
+                    System.out.println(raf.getFilePointer() + ": TABLE ID: " + raf.readInt());
+                    System.out.println(raf.getFilePointer() + ": FIRST PAGE: " + raf.readInt());
+                    System.out.println(raf.getFilePointer() + ": PAGE COUNT: " + raf.readInt());
+                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
                     break;
                 }
 
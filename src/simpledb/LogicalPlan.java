@@ -34,12 +34,11 @@ public  class LogicalPlan {
     private HashMap<String,Integer> tableMap;
 
     private Vector<LogicalSelectListNode> selectList;
-    private String groupByField = null;
-    private boolean hasAgg = false;
-    private String aggOp;
-    private String aggField;
-    private boolean oByAsc, hasOrderBy = false;
-    private String oByField;
+    private Vector<String> groupByFields = new Vector<String>();
+    private Vector<LogicalSelectListNode> aggregates = new Vector<LogicalSelectListNode>();
+    private Vector<String> oByFields = new Vector<String>();
+    private Vector<Boolean> oByAsc = new Vector<Boolean>();
+    private int limit = NO_LIMIT;
     private String query;
 
     /** Constructor -- generate an empty logical plan */
@@ -76,7 +75,7 @@ public  class LogicalPlan {
         @param alias the table alias to return a table id for
         @return the id of the table corresponding to alias, or null if the alias is unknown
      */
-    public int getTableId(String alias) {
+    public Integer getTableId(String alias) {
         return tableMap.get(alias);
     }
 
@@ -178,28 +177,48 @@ public  class LogicalPlan {
     }
     
     /** Add an aggregate over the field with the specified grouping to
-        the query.  SimpleDb only supports a single aggregate
-        expression and GROUP BY field.
+        the query.  Each call adds an aggregate, and all of them are computed in
+        one pass, grouped by every field added with addGroupBy or here.
         @param op the aggregation operator
-        @param afield the field to aggregate over
-        @param gfield the field to group by
+        @param afield the field to aggregate over, or "*" for COUNT(*)
+        @param gfield a field to group by, or null
     */
     public void addAggregate(String op, String afield, String gfield) {
-        aggOp = op;
-        aggField = afield;
-        groupByField = gfield;
-        hasAgg = true;
+        aggregates.addElement(new LogicalSelectListNode(op, afield));
+        if (gfield != null) {
+            addGroupBy(gfield);
+        }
+    }
+
+    /** Add a GROUP BY field to the query.  Groups are formed on all of
+        the fields added, in the order they were added.
+        @param gfield the field to group by
+    */
+    public void addGroupBy(String gfield) {
+        if (!groupByFields.contains(gfield)) {
+            groupByFields.addElement(gfield);
+        }
     }
 
-    /** Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
-        a single ORDER BY field.
+    /** Add an ORDER BY expression in the specified order on the specified field.  Each call adds
+        a field after those already added, which orders tuples that are equal on all of them.
         @param field the field to order by
         @param asc true if should be ordered in ascending order, false for descending order
     */
     public void addOrderBy(String field, boolean asc) {
-        oByField = field;
-        oByAsc = asc;
-        hasOrderBy = true;
+        oByFields.addElement(field);
+        oByAsc.addElement(asc);
+    }
+
+    /** Constant used by setLimit for a query without a LIMIT. */
+    public static final int NO_LIMIT = -1;
+
+    /** Add a LIMIT to the query: it returns at most the given number of tuples, the first in
+        ORDER BY order if it has one.
+        @param limit the most tuples to return, or NO_LIMIT
+    */
+    public void setLimit(int limit) {
+        this.limit = limit;
     }
 
     /** Given a name of a field, try to figure out what table it belongs to by looking
@@ -256,6 +275,48 @@ public  class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /**
+     * @return true if the table can be read through an index for a
+     *   predicate on the field: it is an IndexFile keyed on the field, or it
+     *   has a secondary index on the field
+     */
+    private static boolean isIndexed(int tableid, int field, Predicate.Op op) {
+        DbFile file = Database.getCatalog().getDbFile(tableid);
+        if (file instanceof IndexFile && ((IndexFile) file).keyField() == field) {
+            return true;
+        }
+        return Database.getCatalog().getIndex(tableid, field, op) != null;
+    }
+
+    /**
+     * Returns an Aggregate that merges a large table in parallel, from
+     * morsels of its filtered scan, if the plan is a single aggregate of an
+     * int field, grouped by at most one field, over a single table that is
+     * read by a SeqScan, and the default parallelism is more than one.
+     *
+     * @param scanFilters the filters of each table read by its SeqScan
+     * @return the Aggregate, or null if the plan does not qualify
+     */
+    private DbIterator parallelAggregate(TransactionId t, HashMap<String,ArrayList<Predicate>> scanFilters,
+                                         TupleDesc childTd, int[] gfields, int[] afields, Aggregator.Op[] aops) {
+        int parallelism = ParallelSeqScan.getDefaultParallelism();
+        if (parallelism < 2 || tables.size() != 1 || !joins.isEmpty()
+                || gfields.length > 1 || afields.length != 1) {
+            return null;
+        }
+        String alias = tables.elementAt(0).alias;
+        // COUNT(*) counts the first field, which every tuple has
+        int afield = afields[0] == HashAggregate.COUNT_ALL ? 0 : afields[0];
+        if (!scanFilters.containsKey(alias) || childTd.getType(afield) != Type.INT_TYPE
+                || ParallelSeqScan.workersFor(getTableId(alias), parallelism) < 2) {
+            return null;
+        }
+        MorselSource morsels = new ScanMorsels(t, getTableId(alias), alias,
+                scanFilters.get(alias).toArray(new Predicate[0]));
+        int gfield = gfields.length == 0 ? Aggregator.NO_GROUPING : gfields[0];
+        return new Aggregate(morsels, afield, gfield, aops[0], parallelism);
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -274,6 +335,8 @@ public  class LogicalPlan {
         HashMap<String,String> equivMap = new HashMap<String,String>();
         HashMap<String,Double> filterSelectivities = new HashMap<String, Double>();
         HashMap<String,TableStats> statsMap = new HashMap<String,TableStats>();
+        // the filters of each table that is still read by its SeqScan
+        HashMap<String,ArrayList<Predicate>> scanFilters = new HashMap<String,ArrayList<Predicate>>();
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
@@ -285,13 +348,24 @@ public  class LogicalPlan {
             }
             
             subplanMap.put(table.alias,ss);
+            scanFilters.put(table.alias, new ArrayList<Predicate>());
             String baseTableName = Database.getCatalog().getTableName(table.t);
             statsMap.put(table.alias, baseTableStats.get(baseTableName));
             filterSelectivities.put(table.alias, 1.0);
 
         }
 
-        Iterator<LogicalFilterNode> filterIt = filters.iterator();        
+        // equality filters go first, so that one on an indexed field can
+        // replace the table's SeqScan with an IndexScan
+        Vector<LogicalFilterNode> ordered = new Vector<LogicalFilterNode>();
+        for (LogicalFilterNode lf : filters) {
+            if (lf.p == Predicate.Op.EQUALS) ordered.add(lf);
+        }
+        for (LogicalFilterNode lf : filters) {
+            if (lf.p != Predicate.Op.EQUALS) ordered.add(lf);
+        }
+
+        Iterator<LogicalFilterNode> filterIt = ordered.iterator();
         while (filterIt.hasNext()) {
             LogicalFilterNode lf = filterIt.next();
             DbIterator subplan = subplanMap.get(lf.t);
@@ -319,7 +393,17 @@ public  class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.f);
             }
-            subplanMap.put(lf.t, new Filter(p, subplan));
+            int field = subplan.getTupleDesc().nameToId(disambiguateName(lf.f));
+            int tableid = getTableId(lf.t);
+            if (lf.p == Predicate.Op.EQUALS && subplan instanceof SeqScan
+                    && isIndexed(tableid, field, lf.p)) {
+                subplanMap.put(lf.t, new IndexScan(t, tableid, lf.t, field,
+                        new IndexPredicate(lf.p, f)));
+                scanFilters.remove(lf.t);
+            } else {
+                subplanMap.put(lf.t, new Filter(p, subplan));
+                if (scanFilters.containsKey(lf.t)) scanFilters.get(lf.t).add(p);
+            }
 
             TableStats s = statsMap.get(lf.t);
             
@@ -329,6 +413,23 @@ public  class LogicalPlan {
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
         }
         
+        // scan large tables in parallel, each worker filtering its own pages
+        int parallelism = ParallelSeqScan.getDefaultParallelism();
+        for (String alias : scanFilters.keySet()) {
+            int tableid = getTableId(alias);
+            int workers = parallelism > 1 ? ParallelSeqScan.workersFor(tableid, parallelism) : 1;
+            if (workers < 2) continue;
+            SeqScan[] scans = ParallelSeqScan.partitions(t, tableid, alias, workers);
+            DbIterator[] children = new DbIterator[workers];
+            for (int i = 0; i < workers; i++) {
+                children[i] = scans[i];
+                for (Predicate p : scanFilters.get(alias)) {
+                    children[i] = new Filter(p, children[i]);
+                }
+            }
+            subplanMap.put(alias, new Exchange(children));
+        }
+
         JoinOptimizer jo = new JoinOptimizer(this,joins);
 
         joins = jo.orderJoins(statsMap,filterSelectivities,explain);
@@ -394,72 +495,100 @@ public  class LogicalPlan {
         DbIterator node =  (DbIterator)(subplanMap.entrySet().iterator().next().getValue());
 
         //walk the select list, to determine order in which to project output fields
+        //an aggregate's output is its group by fields followed by its aggregates
         ArrayList<Integer> outFields = new ArrayList<Integer>();
         ArrayList<Type> outTypes = new ArrayList<Type>();
+        boolean hasAgg = !aggregates.isEmpty();
+        TupleDesc childTd = node.getTupleDesc();
         for (int i = 0; i < selectList.size(); i++) {
             LogicalSelectListNode si = selectList.elementAt(i);
             if (si.aggOp != null) {
-                outFields.add(groupByField!=null?1:0);
-                TupleDesc td = node.getTupleDesc();
-                int  id;
-                try {
-                    id = td.nameToId(disambiguateName(si.fname));
-                } catch (NoSuchElementException e) {
-                    throw new ParsingException("Unknown field " +  si.fname + " in SELECT list");
+                int a;
+                for (a = 0; a < aggregates.size(); a++) {
+                    LogicalSelectListNode agg = aggregates.elementAt(a);
+                    if (agg.aggOp.equalsIgnoreCase(si.aggOp) && agg.fname.equals(si.fname)) break;
                 }
+                if (a == aggregates.size()) {
+                    throw new ParsingException("Aggregate " + si.aggOp + "(" + si.fname + ") in SELECT list is not computed");
+                }
+                outFields.add(groupByFields.size() + a);
                 outTypes.add(Type.INT_TYPE);  //the type of all aggregate functions is INT
 
             } else if (hasAgg) {
-                    if (groupByField == null) {
+                    int g = groupByFields.size() - 1;
+                    while (g >= 0 && !disambiguateName(groupByFields.elementAt(g)).equals(disambiguateName(si.fname))) {
+                        g--;
+                    }
+                    if (g < 0) {
                         throw new ParsingException("Field " + si.fname + " does not appear in GROUP BY list");
                     }
-                    outFields.add(0);
-                    TupleDesc td = node.getTupleDesc();
-                    int  id;
+                    outFields.add(g);
                     try {
-                        id = td.nameToId(disambiguateName(groupByField));
+                        outTypes.add(childTd.getType(childTd.nameToId(disambiguateName(si.fname))));
                     } catch (NoSuchElementException e) {
-                        throw new ParsingException("Unknown field " +  groupByField + " in GROUP BY statement");
+                        throw new ParsingException("Unknown field " +  si.fname + " in GROUP BY statement");
                     }
-                    outTypes.add(td.getType(id));
             } else if (si.fname.equals("null.*")) {
-                    TupleDesc td = node.getTupleDesc();
-                    for ( i = 0; i < td.numFields(); i++) {
-                        outFields.add(i);
-                        outTypes.add(td.getType(i));
+                    for (int j = 0; j < childTd.numFields(); j++) {
+                        outFields.add(j);
+                        outTypes.add(childTd.getType(j));
                     }
             } else  {
-                    TupleDesc td = node.getTupleDesc();
                     int id;
                     try {
-                        id = td.nameToId(disambiguateName(si.fname));
+                        id = childTd.nameToId(disambiguateName(si.fname));
                     } catch (NoSuchElementException e) {
                         throw new ParsingException("Unknown field " +  si.fname + " in SELECT list");
                     }
                     outFields.add(id);
-                    outTypes.add(td.getType(id));
+                    outTypes.add(childTd.getType(id));
 
                 }
         }
 
         if (hasAgg) {
-            TupleDesc td = node.getTupleDesc();
-            Aggregate aggNode;
+            int[] gfields = new int[groupByFields.size()];
+            int[] afields = new int[aggregates.size()];
+            Aggregator.Op[] aops = new Aggregator.Op[aggregates.size()];
             try {
-                aggNode = new Aggregate(node,
-                                        td.nameToId(disambiguateName(aggField)),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.nameToId(disambiguateName(groupByField)),
-                                getAggOp(aggOp));
+                for (int i = 0; i < gfields.length; i++) {
+                    gfields[i] = childTd.nameToId(disambiguateName(groupByFields.elementAt(i)));
+                }
+                for (int i = 0; i < afields.length; i++) {
+                    LogicalSelectListNode agg = aggregates.elementAt(i);
+                    afields[i] = agg.fname.equals("*") ? HashAggregate.COUNT_ALL
+                        : childTd.nameToId(disambiguateName(agg.fname));
+                    aops[i] = getAggOp(agg.aggOp);
+                }
+                DbIterator parallel = this.parallelAggregate(t, scanFilters, childTd, gfields, afields, aops);
+                if (parallel != null) {
+                    node = parallel;
+                } else {
+                    node = new HashAggregate(node, gfields, afields, aops);
+                }
             } catch (NoSuchElementException e) {
                 throw new simpledb.ParsingException(e);
             } catch (IllegalArgumentException e) {
                 throw new simpledb.ParsingException(e);
             }
-            node = aggNode;
         }
 
-        if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().nameToId(disambiguateName(oByField)), oByAsc, node);
+        if (!oByFields.isEmpty()) {
+            int[] fields = new int[oByFields.size()];
+            boolean[] asc = new boolean[oByFields.size()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = node.getTupleDesc().nameToId(disambiguateName(oByFields.elementAt(i)));
+                asc[i] = oByAsc.elementAt(i);
+            }
+            // a limit that fits in memory keeps only the top tuples instead of sorting them all
+            if (limit != NO_LIMIT && limit <= MemoryBudget.tupleCapacity(MemoryBudget.getDefaultPages(), node.getTupleDesc())) {
+                node = new TopN(fields, asc, limit, node);
+            } else {
+                node = new OrderBy(fields, asc, node);
+            }
+        }
+        if (limit != NO_LIMIT && !(node instanceof TopN)) {
+            node = new Limit(limit, node);
         }
 
         return new Project(outFields, outTypes, node);
@@ -0,0 +1,127 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * MappedHeapFile is a HeapFile whose pages are read from a memory mapping of
+ * the table file instead of with a read call.  It is meant for large,
+ * read-mostly tables: the operating system's page cache acts as a second
+ * tier below the BufferPool, and a buffer pool miss on a cached page costs
+ * no system call, only a copy of the page out of the mapping.
+ * <p>
+ * Pages are copied rather than read in place, because flushing a page writes
+ * the file under the mapping: a page that viewed the mapping would see its
+ * before image, and any iterator over it, change to the flushed bytes.
+ * <p>
+ * Writes still go through HeapFile.writePage (and therefore through the
+ * BufferPool and the LogFile like any other table); the mapping is
+ * read-only, and sees them because both share the page cache.  When the file
+ * grows, the mapping is extended the first time a page past its end is read.
+ * A single mapping cannot exceed 2 GB, so the file is mapped in segments of
+ * SEGMENT_PAGES pages.
+ *
+ * @see HeapFile
+ */
+public class MappedHeapFile extends HeapFile {
+    /** Pages per mapped segment. */
+    static final int SEGMENT_PAGES = (1 << 30) / BufferPool.PAGE_SIZE;
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private volatile int mappedPages = 0;
+
+    /**
+     * Constructs a memory mapped heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap file.
+     */
+    public MappedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) throws NoSuchElementException {
+        int pageno = pid.pageno();
+        // blank pages being appended are created by HeapFile
+        if (pageno >= this.numPages()) {
+            return super.readPage(pid);
+        }
+
+        try {
+            byte[] data = this.mappedPage(pageno);
+            if (data == null) {
+                // the page was appended but has not been written yet
+                return super.readPage(pid);
+            }
+            return this.pageRead(new HeapPage((HeapPageId) pid, data));
+        } catch (IOException e) {
+            throw new NoSuchElementException("could not read page " + pageno + " of " + this.getFile()
+                    + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pages are already in memory, so a batched read only copies them out.
+     */
+    public List<Page> readPages(int firstPageNo, int count) throws IOException {
+        List<Page> pages = new ArrayList<>(count);
+        for (int pageno = firstPageNo; pageno < firstPageNo + count; pageno++) {
+            byte[] data = this.mappedPage(pageno);
+            HeapPageId pid = new HeapPageId(this.getId(), pageno);
+            pages.add(this.pageRead(data == null
+                    ? new HeapPage(pid, HeapPage.createEmptyPageData())
+                    : new HeapPage(pid, data)));
+        }
+        return pages;
+    }
+
+    /**
+     * @return a copy of the page's bytes in the mapping, or null if the page
+     *   lies past the end of the file
+     */
+    private byte[] mappedPage(int pageno) throws IOException {
+        if (pageno >= this.mappedPages) {
+            this.remap();
+            if (pageno >= this.mappedPages) return null;
+        }
+        ByteBuffer page = this.segments[pageno / SEGMENT_PAGES].duplicate();
+        page.position((pageno % SEGMENT_PAGES) * BufferPool.PAGE_SIZE);
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        page.get(data);
+        return data;
+    }
+
+    /**
+     * Extends the mapping to the current length of the file.  Segments that
+     * were already full are kept; the last one is mapped again.
+     */
+    private synchronized void remap() throws IOException {
+        FileChannel channel = this.channel();
+        int filePages = (int) (channel.size() / BufferPool.PAGE_SIZE);
+        if (filePages <= this.mappedPages) return;
+
+        int segmentCount = (filePages + SEGMENT_PAGES - 1) / SEGMENT_PAGES;
+        MappedByteBuffer[] remapped = Arrays.copyOf(this.segments, segmentCount);
+        for (int i = this.mappedPages / SEGMENT_PAGES; i < segmentCount; i++) {
+            long start = (long) i * SEGMENT_PAGES * BufferPool.PAGE_SIZE;
+            long size = (long) Math.min(SEGMENT_PAGES, filePages - i * SEGMENT_PAGES) * BufferPool.PAGE_SIZE;
+            remapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        }
+
+        // readers check mappedPages before they index segments
+        this.segments = remapped;
+        this.mappedPages = filePages;
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized void close() throws IOException {
+        // Java cannot unmap explicitly; dropping the buffers lets the
+        // garbage collector release the mapping
+        this.mappedPages = 0;
+        this.segments = new MappedByteBuffer[0];
+        super.close();
+    }
+}
@@ -0,0 +1,51 @@
+package simpledb;
+
+/**
+ * MemoryBudget is the memory a query operator may hold for its own working
+ * state, such as the hash table of a join, outside the BufferPool.  Budgets
+ * are counted in pages of BufferPool.PAGE_SIZE bytes of tuple data; an
+ * operator whose state outgrows its budget spills the rest to SpillFiles.
+ * <p>
+ * Operators take their budget when they are constructed.  Those built by
+ * the optimizer get the default, which comes from the system property
+ * simpledb.MemoryBudget.pages and can be changed with setDefaultPages.
+ *
+ * @see SpillFile
+ */
+public class MemoryBudget {
+    /** Default number of pages, if the system property is not set. */
+    public static final int DEFAULT_PAGES = 4096;
+
+    private static volatile int defaultPages = initialPages();
+
+    private static int initialPages() {
+        String pages = System.getProperty("simpledb.MemoryBudget.pages");
+        if (pages == null) return DEFAULT_PAGES;
+        return Math.max(1, Integer.parseInt(pages));
+    }
+
+    /** @return the budget, in pages, of operators built by the optimizer */
+    public static int getDefaultPages() {
+        return defaultPages;
+    }
+
+    /** Sets the budget of operators built from now on. */
+    public static void setDefaultPages(int pages) {
+        if (pages < 1) throw new IllegalArgumentException("a budget needs at least one page");
+        defaultPages = pages;
+    }
+
+    /** Restores the default budget set by the system property. */
+    public static void resetDefaultPages() {
+        defaultPages = initialPages();
+    }
+
+    /**
+     * @return the number of tuples with the given TupleDesc that fit in the
+     *   given number of pages, laid out as on a HeapPage
+     */
+    public static long tupleCapacity(int pages, TupleDesc td) {
+        long perPage = (BufferPool.PAGE_SIZE * 8L) / (td.getSize() * 8L + 1);
+        return pages * Math.max(1, perPage);
+    }
+}
@@ -0,0 +1,32 @@
+package simpledb;
+
+/**
+ * MorselSource divides the input of a parallel operator into morsels,
+ * small independent pieces of work, such as a filtered scan of a few pages
+ * of a table, that the operator's workers take one at a time.  A worker
+ * that finishes a morsel early takes the next, so the workers finish
+ * together even if some morsels take longer than others.
+ *
+ * @see ScanMorsels
+ */
+public interface MorselSource {
+    /**
+     * @return the TupleDesc of the tuples of every morsel
+     */
+    public TupleDesc getTupleDesc();
+
+    /**
+     * Returns a plan over the next morsel, which the caller opens, reads and
+     * closes.  Several threads may call this at the same time; every morsel
+     * is returned once.
+     *
+     * @return the next morsel, or null if there are none left
+     */
+    public DbIterator nextMorsel();
+
+    /**
+     * Starts handing out the morsels again from the first.  Must not be
+     * called while morsels are being taken.
+     */
+    public void rewind();
+}
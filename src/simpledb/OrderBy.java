@@ -1,16 +1,51 @@
 package simpledb;
+import java.io.IOException;
 import java.util.*;
 
 /**
  * OrderBy is an operator that implements a relational ORDER BY.
+ * <p>
+ * The sort is limited to a MemoryBudget.  If the child's tuples fit, they
+ * are sorted in memory; otherwise OrderBy does an external merge sort: it
+ * sorts the tuples a budget at a time into runs written to SpillFiles, and
+ * then merges the runs, as many at a time as the budget has pages, until
+ * one merge of the remaining runs returns the tuples in order.  Either way
+ * the sort is stable.
+ *
+ * @see MemoryBudget
  */
 public class OrderBy extends AbstractDbIterator {
     DbIterator child;
     TupleDesc td;
     ArrayList<Tuple> childTups = new ArrayList<Tuple>();
-    int orderByField;
+    int[] orderByFields;
+    boolean[] asc;
     Iterator<Tuple> it;
-    boolean asc;
+    private final TupleComparator comparator;
+    private final long maxTuples;
+    private final int fanIn;
+
+    // set if the tuples did not fit in memory: the runs of the final merge,
+    // and the merge itself, ordered by head tuple and then by run
+    private ArrayList<SpillFile> runs;
+    private PriorityQueue<RunCursor> merge;
+
+    /** The next tuple of one run being merged. */
+    private static class RunCursor {
+        final DbIterator run;
+        final int index;
+        Tuple head;
+
+        RunCursor(DbIterator run, int index) {
+            this.run = run;
+            this.index = index;
+        }
+
+        boolean advance() throws DbException, TransactionAbortedException {
+            this.head = this.run.hasNext() ? this.run.next() : null;
+            return this.head != null;
+        }
+    }
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -20,32 +55,196 @@ public class OrderBy extends AbstractDbIterator {
      * @param child the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, DbIterator child) {
+        this(new int[] { orderbyField }, new boolean[] { asc }, child);
+    }
+
+    /**
+     * Creates a new OrderBy node that sorts on several fields: by the first,
+     * then among equal values of the first by the second, and so on.  The
+     * sort uses the default MemoryBudget.
+     *
+     * @param orderbyFields the fields to which the sort is applied.
+     * @param asc for each field, true if the sort order is ascending.
+     * @param child the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child) {
+        this(orderbyFields, asc, child, MemoryBudget.getDefaultPages());
+    }
+
+    /**
+     * Constructor for a sort with its own memory budget.
+     *
+     * @param memoryPages the number of pages of tuples the sort may hold in
+     *   memory, and the number of runs it merges at a time
+     * @see #OrderBy(int[], boolean[], DbIterator)
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, DbIterator child, int memoryPages) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length) {
+            throw new IllegalArgumentException("need a sort order for each of one or more fields");
+        }
         this.child = child;
         td= child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.asc = asc;
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.comparator = new TupleComparator(td, this.orderByFields, this.asc);
+        this.maxTuples = MemoryBudget.tupleCapacity(memoryPages, td);
+        this.fanIn = Math.max(2, memoryPages - 1);
     }
 
     public TupleDesc getTupleDesc() {
         return td;
     }
 
+    /**
+     * @return the field the tuples are returned in ascending order of, or
+     *   -1 if the sort is descending
+     */
+    public int sortedField() {
+        return asc[0] ? orderByFields[0] : -1;
+    }
+
+    /** @return true if the tuples did not fit in memory */
+    public boolean spilled() {
+        return runs != null;
+    }
+
     public void open()
         throws DbException, NoSuchElementException, TransactionAbortedException {
         child.open();
-        //load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple)child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        childTups.clear();
+        deleteRuns();
+        try {
+            //load the tuples in a collection a budget at a time, and sort it
+            while (child.hasNext()) {
+                if (childTups.size() == maxTuples) {
+                    writeRun();
+                }
+                childTups.add(child.next());
+            }
+            if (runs == null) {
+                Collections.sort(childTups, comparator);
+                it = childTups.iterator();
+                return;
+            }
+            if (!childTups.isEmpty()) {
+                writeRun();
+            }
+            while (runs.size() > fanIn) {
+                mergePass();
+            }
+        } catch (IOException e) {
+            throw new DbException("could not spill sort input: " + e.getMessage());
+        }
+        startMerge();
+    }
+
+    private void writeRun() throws DbException, IOException {
+        if (runs == null) {
+            runs = new ArrayList<SpillFile>();
+        }
+        Collections.sort(childTups, comparator);
+        SpillFile run = new SpillFile(td);
+        for (Tuple t : childTups) {
+            run.add(t);
+        }
+        run.finish();
+        runs.add(run);
+        childTups.clear();
+    }
+
+    /**
+     * Merges the runs fanIn at a time into fewer, longer runs.
+     */
+    private void mergePass() throws DbException, TransactionAbortedException, IOException {
+        ArrayList<SpillFile> merged = new ArrayList<SpillFile>();
+        for (int i = 0; i < runs.size(); i += fanIn) {
+            List<SpillFile> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+            SpillFile out = new SpillFile(td);
+            PriorityQueue<RunCursor> heap = openMerge(group);
+            Tuple t;
+            while ((t = nextMerged(heap)) != null) {
+                out.add(t);
+            }
+            out.finish();
+            for (SpillFile run : group) {
+                run.delete();
+            }
+            merged.add(out);
+        }
+        runs = merged;
+    }
+
+    private PriorityQueue<RunCursor> openMerge(List<SpillFile> group)
+        throws DbException, TransactionAbortedException {
+        PriorityQueue<RunCursor> heap = new PriorityQueue<RunCursor>(Math.max(1, group.size()),
+                (a, b) -> {
+                    int c = comparator.compare(a.head, b.head);
+                    return c != 0 ? c : Integer.compare(a.index, b.index);
+                });
+        for (int i = 0; i < group.size(); i++) {
+            RunCursor cursor = new RunCursor(group.get(i).iterator(), i);
+            cursor.run.open();
+            if (cursor.advance()) {
+                heap.add(cursor);
+            } else {
+                cursor.run.close();
+            }
+        }
+        return heap;
+    }
+
+    private static Tuple nextMerged(PriorityQueue<RunCursor> heap)
+        throws DbException, TransactionAbortedException {
+        RunCursor cursor = heap.poll();
+        if (cursor == null) return null;
+        Tuple t = cursor.head;
+        if (cursor.advance()) {
+            heap.add(cursor);
+        } else {
+            cursor.run.close();
+        }
+        return t;
+    }
+
+    private void startMerge() throws DbException, TransactionAbortedException {
+        closeMerge();
+        merge = openMerge(runs);
+    }
+
+    private void closeMerge() {
+        if (merge != null) {
+            for (RunCursor cursor : merge) {
+                cursor.run.close();
+            }
+            merge = null;
+        }
     }
 
     public void close() {
+        super.close();
+        child.close();
         it = null;
+        childTups.clear();
+        deleteRuns();
+    }
+
+    private void deleteRuns() {
+        closeMerge();
+        if (runs != null) {
+            for (SpillFile run : runs) {
+                run.delete();
+            }
+            runs = null;
+        }
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        super.close();
+        if (runs != null) {
+            startMerge();
+        } else {
+            it = childTups.iterator();
+        }
     }
 
     /**
@@ -56,31 +255,12 @@ public class OrderBy extends AbstractDbIterator {
      */
     protected Tuple readNext()
         throws NoSuchElementException, TransactionAbortedException, DbException {
+        if (merge != null) {
+            return nextMerged(merge);
+        }
         if (it != null && it.hasNext()) {
             return it.next();
         } else
             return null;
     }
 }
-
- class TupleComparator implements Comparator<Tuple> {
-     int field;
-     boolean asc;
-
-     public TupleComparator(int field, boolean asc) {
-         this.field = field;
-         this.asc = asc;
-     }
-
-     public int compare(Tuple o1, Tuple o2) {
-         Field t1 = (o1).getField(field);
-         Field t2 = (o2).getField(field);
-         if (t1.compare(Predicate.Op.EQUALS, t2))
-             return 0;
-         if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-             return asc?1:-1;
-         else
-             return asc?-1:1;
-     }
-
-}
@@ -7,7 +7,7 @@ package simpledb;
  * Pages may be "dirty", indicating that they have been modified since they
  * were last written out to disk.
  *
- * For recovery purposes, pages MUST have a single constructor of the form:
+ * For recovery purposes, pages MUST have a constructor of the form:
  *     Page(PageId id, byte[] data)
  */
 public interface Page {
@@ -56,16 +56,4 @@ public interface Page {
      * copy current content to the before image.
      */
     public void setBeforeImage();
-
-    /**
-     * Set the last access timestamp to the current time.
-     * Used for the LRU Buffer Pool replacement policy
-     */
-    public void updateLastAccessTimestamp();
-
-    /**
-     * Get the last access timestamp of the current page.
-     * Used for the LRU Buffer Pool replacement policy
-     */
-    public long getLastAccessTimestamp();
 }
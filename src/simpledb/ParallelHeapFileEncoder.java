@@ -0,0 +1,368 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * ParallelHeapFileEncoder converts a comma delimited text file into heap
+ * pages, like HeapFileEncoder, but parses and encodes the file on a
+ * fork-join pool.  The input is split into chunks of about chunkBytes bytes
+ * that end on a line boundary; every chunk is parsed into its own run of
+ * pages by a pool thread, and the runs are passed on in input order while
+ * the next chunks are being encoded.  Only a few chunks are in memory at a
+ * time, so files of any size can be converted.
+ * <p>
+ * The input format is that of HeapFileEncoder: one tuple per line, fields
+ * separated by commas, INT_TYPE fields as decimal integers and STRING_TYPE
+ * fields as raw text (trimmed, and cut to Type.STRING_LEN bytes).  Blank
+ * lines and carriage returns are ignored.  Unlike HeapFileEncoder, a
+ * malformed line fails the conversion.  Each chunk starts a new page, so
+ * the last page of every chunk may be only partly full.
+ * <p>
+ * {@link #convert} writes the pages to a new data file through one
+ * FileChannel; {@link #load} appends them to an existing table on behalf
+ * of a transaction, through the same path as a bulk insert (see
+ * BufferPool.appendPages).
+ *
+ * @see HeapFileEncoder
+ */
+public class ParallelHeapFileEncoder {
+    /** Input bytes parsed by one task, unless set otherwise. */
+    public static final int DEFAULT_CHUNK_BYTES = 8 << 20;
+
+    private Type[] types;
+    private int npagebytes;
+    private ForkJoinPool pool;
+    private int chunkBytes;
+
+    private int recordBytes;
+    private int recordsPerPage;
+    private int headerBytes;
+
+    /**
+     * The pages encoded from one chunk of the input.
+     */
+    static class EncodedChunk {
+        byte[] pages;
+        int numPages;
+        long rows;
+    }
+
+    /**
+     * Receives the encoded runs of pages, in input order.
+     */
+    interface PageSink {
+        void write(EncodedChunk chunk) throws IOException, DbException, TransactionAbortedException;
+    }
+
+    /**
+     * Creates an encoder that runs on the common fork-join pool.
+     *
+     * @param types the types of the fields of each tuple
+     * @param npagebytes the number of bytes per page
+     */
+    public ParallelHeapFileEncoder(Type[] types, int npagebytes) {
+        this(types, npagebytes, ForkJoinPool.commonPool(), DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * @param types the types of the fields of each tuple
+     * @param npagebytes the number of bytes per page
+     * @param pool the pool chunks are encoded on
+     * @param chunkBytes the approximate number of input bytes per chunk
+     */
+    public ParallelHeapFileEncoder(Type[] types, int npagebytes, ForkJoinPool pool, int chunkBytes) {
+        this.types = types;
+        this.npagebytes = npagebytes;
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+
+        for (Type type : types) {
+            this.recordBytes += type.getLen();
+        }
+        this.recordsPerPage = (npagebytes * 8) / (this.recordBytes * 8 + 1);
+        this.headerBytes = (this.recordsPerPage + 7) / 8;
+    }
+
+    /**
+     * Converts the specified input text file into a binary page file, using
+     * the common fork-join pool.  An empty input produces one empty page.
+     *
+     * @param inFile The input file to read data from
+     * @param outFile The output file to write data to
+     * @param npagebytes The number of bytes per page in the output file
+     * @param types the types of the fields of each input line/output tuple
+     * @return the number of tuples written
+     * @throws IOException if the input/output file can't be opened or a
+     *   malformed input line is encountered
+     */
+    public static long convert(File inFile, File outFile, int npagebytes, Type[] types) throws IOException {
+        return new ParallelHeapFileEncoder(types, npagebytes).convert(inFile, outFile);
+    }
+
+    /**
+     * Converts the specified input text file into a binary page file.
+     *
+     * @return the number of tuples written
+     * @see #convert(File, File, int, Type[])
+     */
+    public long convert(File inFile, File outFile) throws IOException {
+        try (FileChannel out = FileChannel.open(outFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long rows = this.encode(inFile, chunk -> write(out, ByteBuffer.wrap(chunk.pages, 0,
+                    chunk.numPages * this.npagebytes)));
+            if (out.size() == 0) {
+                write(out, ByteBuffer.allocate(this.npagebytes));
+            }
+            return rows;
+        } catch (DbException | TransactionAbortedException e) {
+            // only the sink of load throws these
+            throw new IOException(e);
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Appends the tuples of the specified input text file to a table on
+     * behalf of a transaction.  Like a bulk insert, the pages are written to
+     * the end of the table file without going through the pool, stay
+     * locked until the transaction completes, and are emptied again if it
+     * aborts.
+     *
+     * @param tid the transaction doing the load
+     * @param file the table to load; its pages must be PAGE_SIZE bytes
+     * @param inFile The input file to read data from
+     * @return the number of tuples loaded
+     * @see HeapFile#bulkInsert
+     */
+    public static long load(TransactionId tid, HeapFile file, File inFile)
+        throws IOException, DbException, TransactionAbortedException {
+        TupleDesc td = file.getTupleDesc();
+        Type[] types = new Type[td.numFields()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getType(i);
+        }
+
+        BufferPool bufferPool = Database.getBufferPool();
+        long rows = new ParallelHeapFileEncoder(types, BufferPool.PAGE_SIZE).encode(inFile, chunk -> {
+            if (chunk.numPages == 0) return;
+            int firstPageNo = bufferPool.appendPages(tid, file, chunk.numPages);
+            List<Page> pages = new ArrayList<>(chunk.numPages);
+            for (int i = 0; i < chunk.numPages; i++) {
+                byte[] data = Arrays.copyOfRange(chunk.pages, i * BufferPool.PAGE_SIZE, (i + 1) * BufferPool.PAGE_SIZE);
+                pages.add(new HeapPage(new HeapPageId(file.getId(), firstPageNo + i), data));
+            }
+            bufferPool.writeAppendedPages(tid, file, firstPageNo, chunk.numPages, pages);
+        });
+        file.force();
+        return rows;
+    }
+
+    /**
+     * Splits the input into chunks, encodes them on the pool and passes the
+     * encoded chunks to the sink in input order.  At most two chunks per
+     * pool thread are encoded or waiting at any time.
+     *
+     * @return the number of tuples encoded
+     */
+    long encode(File inFile, PageSink sink) throws IOException, DbException, TransactionAbortedException {
+        int window = Math.max(2, 2 * this.pool.getParallelism());
+        ArrayDeque<ForkJoinTask<EncodedChunk>> inFlight = new ArrayDeque<>();
+        long rows = 0;
+
+        try (FileChannel in = FileChannel.open(inFile.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            long start = 0;
+            try {
+                while (start < size || !inFlight.isEmpty()) {
+                    while (start < size && inFlight.size() < window) {
+                        long chunkStart = start;
+                        long chunkEnd = this.chunkEnd(in, start, size);
+                        inFlight.add(this.pool.submit(() -> this.encodeChunk(in, chunkStart, chunkEnd)));
+                        start = chunkEnd;
+                    }
+
+                    EncodedChunk chunk = join(inFlight.poll());
+                    sink.write(chunk);
+                    rows += chunk.rows;
+                }
+            } finally {
+                for (ForkJoinTask<EncodedChunk> task : inFlight) {
+                    task.cancel(false);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static EncodedChunk join(ForkJoinTask<EncodedChunk> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the offset just past the first newline at or after
+     *   start + chunkBytes - 1, or the end of the file
+     */
+    private long chunkEnd(FileChannel in, long start, long size) throws IOException {
+        long position = start + this.chunkBytes - 1;
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (position < size) {
+            buffer.clear();
+            int read = in.read(buffer, position);
+            if (read < 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses the lines between two offsets of the input into pages.
+     */
+    private EncodedChunk encodeChunk(FileChannel in, long start, long end) {
+        try {
+            byte[] input = new byte[(int) (end - start)];
+            ByteBuffer buffer = ByteBuffer.wrap(input);
+            while (buffer.hasRemaining()) {
+                if (in.read(buffer, start + buffer.position()) < 0) break;
+            }
+            return this.encodeLines(input, buffer.position());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    EncodedChunk encodeLines(byte[] input, int length) throws IOException {
+        EncodedChunk chunk = new EncodedChunk();
+        // a guess, grown as needed: lines are at least two bytes long
+        int estimatedPages = length / Math.max(2, this.recordBytes) / this.recordsPerPage + 1;
+        chunk.pages = new byte[Math.min(estimatedPages, 1024) * this.npagebytes];
+
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && input[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (!isBlank(input, lineStart, lineEnd)) {
+                this.encodeLine(chunk, input, lineStart, lineEnd);
+            }
+            lineStart = lineEnd + 1;
+        }
+        chunk.numPages = (int) ((chunk.rows + this.recordsPerPage - 1) / this.recordsPerPage);
+        return chunk;
+    }
+
+    private static boolean isBlank(byte[] input, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (input[i] != '\r') return false;
+        }
+        return true;
+    }
+
+    private void encodeLine(EncodedChunk chunk, byte[] input, int start, int end) throws IOException {
+        int page = (int) (chunk.rows / this.recordsPerPage);
+        int slot = (int) (chunk.rows % this.recordsPerPage);
+        int pageOffset = page * this.npagebytes;
+        if (pageOffset + this.npagebytes > chunk.pages.length) {
+            chunk.pages = Arrays.copyOf(chunk.pages, chunk.pages.length * 2);
+        }
+
+        int offset = pageOffset + this.headerBytes + slot * this.recordBytes;
+        int fieldStart = start;
+        for (int field = 0; field < this.types.length; field++) {
+            int fieldEnd = fieldStart;
+            while (fieldEnd < end && input[fieldEnd] != ',') {
+                fieldEnd++;
+            }
+            if (fieldEnd == end && field < this.types.length - 1) {
+                throw new IOException("Line has " + (field + 1) + " fields, expected " + this.types.length
+                        + ": " + new String(input, start, end - start));
+            }
+
+            if (this.types[field] == Type.INT_TYPE) {
+                writeInt(chunk.pages, offset, parseInt(input, fieldStart, fieldEnd));
+            } else {
+                int from = fieldStart;
+                int to = fieldEnd;
+                while (from < to && isSpace(input[from])) from++;
+                while (to > from && isSpace(input[to - 1])) to--;
+                int len = Math.min(to - from, Type.STRING_LEN);
+                writeInt(chunk.pages, offset, len);
+                System.arraycopy(input, from, chunk.pages, offset + 4, len);
+            }
+            offset += this.types[field].getLen();
+            fieldStart = fieldEnd + 1;
+        }
+        if (fieldStart <= end) {
+            throw new IOException("Line has more than " + this.types.length + " fields: "
+                    + new String(input, start, end - start));
+        }
+
+        chunk.pages[pageOffset + slot / 8] |= (byte) (1 << (slot % 8));
+        chunk.rows++;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static int parseInt(byte[] input, int start, int end) throws IOException {
+        int from = start;
+        int to = end;
+        while (from < to && isSpace(input[from])) from++;
+        while (to > from && isSpace(input[to - 1])) to--;
+
+        boolean negative = from < to && input[from] == '-';
+        int digitsFrom = negative || (from < to && input[from] == '+') ? from + 1 : from;
+        if (digitsFrom == to || to - digitsFrom > 10) {
+            return parseIntSlowly(input, start, end);
+        }
+        long value = 0;
+        for (int i = digitsFrom; i < to; i++) {
+            int digit = input[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return parseIntSlowly(input, start, end);
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return parseIntSlowly(input, start, end);
+        }
+        return (int) value;
+    }
+
+    /** Parses the odd cases, and reports the malformed ones. */
+    private static int parseIntSlowly(byte[] input, int start, int end) throws IOException {
+        String s = new String(input, start, end - start).trim();
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad integer: " + s);
+        }
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
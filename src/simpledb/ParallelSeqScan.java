@@ -0,0 +1,108 @@
+package simpledb;
+
+/**
+ * ParallelSeqScan is a sequential scan of a HeapFile that divides the
+ * file's pages into contiguous ranges and scans each range on a worker
+ * thread of an Exchange.  Every worker locks pages under the scan's
+ * transaction, as a SeqScan would.  The tuples come in no particular order.
+ * <p>
+ * The optimizer goes further, and runs the filters of a table in the
+ * workers too, over the SeqScans of {@link #partitions}.  It scans a table
+ * in parallel if the default parallelism, which comes from the system
+ * property simpledb.parallelism and can be changed with
+ * setDefaultParallelism, is more than one, and the table has at least
+ * MIN_PAGES_PER_WORKER pages for a second worker.
+ *
+ * @see Exchange
+ * @see SeqScan
+ */
+public class ParallelSeqScan extends Exchange {
+    /** Default parallelism, if the system property is not set. */
+    public static final int DEFAULT_PARALLELISM = 1;
+    /** The fewest pages worth giving a worker of its own. */
+    public static final int MIN_PAGES_PER_WORKER = 16;
+
+    private static volatile int defaultParallelism = initialParallelism();
+
+    private static int initialParallelism() {
+        String parallelism = System.getProperty("simpledb.parallelism");
+        if (parallelism == null) return DEFAULT_PARALLELISM;
+        return Math.max(1, Integer.parseInt(parallelism.trim()));
+    }
+
+    /** @return the number of workers of scans built by the optimizer */
+    public static int getDefaultParallelism() {
+        return defaultParallelism;
+    }
+
+    /** Sets the number of workers of scans built from now on. */
+    public static void setDefaultParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least one");
+        defaultParallelism = parallelism;
+    }
+
+    /** Restores the default parallelism set by the system property. */
+    public static void resetDefaultParallelism() {
+        defaultParallelism = initialParallelism();
+    }
+
+    /**
+     * @return the number of workers to scan a table with, at most
+     *   parallelism: one for a table that is not a HeapFile, and otherwise
+     *   one for every MIN_PAGES_PER_WORKER pages
+     */
+    public static int workersFor(int tableid, int parallelism) {
+        DbFile file = Database.getCatalog().getDbFile(tableid);
+        if (!(file instanceof HeapFile)) return 1;
+        int numPages = ((HeapFile) file).numPages();
+        return Math.max(1, Math.min(parallelism, numPages / MIN_PAGES_PER_WORKER));
+    }
+
+    /**
+     * Divides a table stored in a HeapFile into contiguous page ranges of
+     * about the same size.  The last range runs to the end of the file, so
+     * pages appended after this call are scanned too.
+     *
+     * @param workers the number of ranges
+     * @return a SeqScan of each range, in page order
+     * @throws IllegalArgumentException if the table is not a HeapFile
+     */
+    public static SeqScan[] partitions(TransactionId tid, int tableid, String tableAlias, int workers) {
+        DbFile file = Database.getCatalog().getDbFile(tableid);
+        if (!(file instanceof HeapFile)) {
+            throw new IllegalArgumentException("only a HeapFile can be scanned in parallel");
+        }
+        int numPages = ((HeapFile) file).numPages();
+        SeqScan[] scans = new SeqScan[workers];
+        for (int i = 0; i < workers; i++) {
+            int fromPage = (int) ((long) numPages * i / workers);
+            int toPage = i == workers - 1 ? -1 : (int) ((long) numPages * (i + 1) / workers);
+            scans[i] = new SeqScan(tid, tableid, tableAlias, fromPage, toPage);
+        }
+        return scans;
+    }
+
+    /**
+     * Creates a parallel scan with the default parallelism.
+     *
+     * @see #ParallelSeqScan(TransactionId, int, String, int)
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, getDefaultParallelism());
+    }
+
+    /**
+     * Creates a parallel scan over the specified table as a part of the
+     * specified transaction.
+     *
+     * @param tid The transaction this scan is running as a part of.
+     * @param tableid the table to scan, which must be a HeapFile
+     * @param tableAlias the alias of this table; as for SeqScan, the fields
+     *   of the returned TupleDesc are named tableAlias.fieldName
+     * @param parallelism the most workers to scan with
+     * @throws IllegalArgumentException if the table is not a HeapFile
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias, int parallelism) {
+        super(partitions(tid, tableid, tableAlias, workersFor(tableid, parallelism)));
+    }
+}
@@ -3,6 +3,8 @@ package simpledb;
 import Zql.*;
 import java.io.*;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -150,20 +152,18 @@ public class Parser {
 
         // now look for group by fields
         ZGroupBy gby = q.getGroupBy();
-        String groupByField = null;
+        Vector<String> groupByFields = new Vector<String>();
         if (gby != null) {
             @SuppressWarnings("unchecked")
             Vector<ZExp> gbs = gby.getGroupBy();
-            if (gbs.size() > 1) {
-                throw new simpledb.ParsingException("At most one grouping field expression supported.");
-            }
-            if (gbs.size() == 1) {
-                ZExp gbe = gbs.elementAt(0);
+            for (ZExp gbe : gbs) {
                 if (! (gbe instanceof ZConstant)) {
                     throw new simpledb.ParsingException("Complex grouping expressions (" + gbe + ") not supported.");
                 }
-                groupByField = ((ZConstant)gbe).getValue();
+                String groupByField = ((ZConstant)gbe).getValue();
                 System.out.println ("GROUP BY FIELD : " + groupByField);
+                groupByFields.addElement(groupByField);
+                lp.addGroupBy(groupByField);
             }
 
         }
@@ -171,8 +171,7 @@ public class Parser {
         // walk the select list, pick out aggregates, and check for query validity
         @SuppressWarnings("unchecked")
         Vector<ZSelectItem> selectList = q.getSelect();
-        String aggField = null;
-        String aggFun = null;
+        boolean hasAgg = false;
 
         for (int i = 0; i < selectList.size(); i++) {
             ZSelectItem si = selectList.elementAt(i);
@@ -180,43 +179,41 @@ public class Parser {
                 throw new simpledb.ParsingException("Expressions in SELECT list are not supported.");
             }
             if (si.getAggregate() != null) {
-                if (aggField != null) {
-                    throw new simpledb.ParsingException("Aggregates over multiple fields not supported.");
+                ZExpression agg = (ZExpression)si.getExpression();
+                if (agg.nbOperands() != 1 || !(agg.getOperand(0) instanceof ZConstant)) {
+                    throw new simpledb.ParsingException("Complex aggregate expressions (" + agg + ") not supported.");
                 }
-                aggField = ((ZConstant)((ZExpression)si.getExpression()).getOperand(0)).getValue();
-                aggFun = si.getAggregate();
+                String aggField = ((ZConstant)agg.getOperand(0)).getValue();
+                String aggFun = si.getAggregate();
                 System.out.println ("Aggregate field is " + aggField + ", agg fun is : " + aggFun);
                 lp.addProjectField(aggField, aggFun);
+                lp.addAggregate(aggFun, aggField, null);
+                hasAgg = true;
             } else {
-                if (groupByField != null && ! (groupByField.equals(si.getTable() + "." + si.getColumn()) || groupByField.equals(si.getColumn()))) {
+                if (!groupByFields.isEmpty() && !groupByFields.contains(si.getTable() + "." + si.getColumn()) && !groupByFields.contains(si.getColumn())) {
                     throw new simpledb.ParsingException("Non-aggregate field " + si.getColumn() + " does not appear in GROUP BY list.");
                 }
                 lp.addProjectField(si.getTable() + "." + si.getColumn(), null);
             }
         }
 
-        if (groupByField != null && aggFun == null) {
+        if (!groupByFields.isEmpty() && !hasAgg) {
             throw new simpledb.ParsingException("GROUP BY without aggregation.");
         }
         
-        if (aggFun != null) {
-            lp.addAggregate(aggFun, aggField, groupByField);
-        }
         // sort the data
 
         if (q.getOrderBy() != null) {
             @SuppressWarnings("unchecked")
                 Vector<ZOrderBy> obys = q.getOrderBy();
-            if (obys.size() > 1)  {
-                throw new simpledb.ParsingException("Multi-attribute ORDER BY is not supported.");
-            }
-            ZOrderBy oby = obys.elementAt(0);
-            if (!(oby.getExpression() instanceof ZConstant)) {
-                throw new simpledb.ParsingException("Complex ORDER BY's are not supported");
-            }
-            ZConstant f = (ZConstant)oby.getExpression();
+            for (ZOrderBy oby : obys) {
+                if (!(oby.getExpression() instanceof ZConstant)) {
+                    throw new simpledb.ParsingException("Complex ORDER BY's are not supported");
+                }
+                ZConstant f = (ZConstant)oby.getExpression();
 
-            lp.addOrderBy(f.getValue(), oby.getAscOrder());
+                lp.addOrderBy(f.getValue(), oby.getAscOrder());
+            }
 
         }
         return lp;
@@ -229,9 +226,20 @@ public class Parser {
     static Transaction curtrans = null;
 
     public static void handleQueryStatement(ZQuery s) throws TransactionAbortedException, DbException, IOException, simpledb.ParsingException, Zql.ParseException  {
+        handleQueryStatement(s, LogicalPlan.NO_LIMIT);
+    }
+
+    /**
+     * Runs a query and prints its results.
+     *
+     * @param limit the query's LIMIT, which Zql does not parse, or LogicalPlan.NO_LIMIT
+     */
+    public static void handleQueryStatement(ZQuery s, int limit) throws TransactionAbortedException, DbException, IOException, simpledb.ParsingException, Zql.ParseException  {
         // and run it
         DbIterator node;
-        node = parseQuery(curtrans.getId(), s);
+        LogicalPlan lp = parseQueryLogicalPlan(curtrans.getId(), s);
+        lp.setLimit(limit);
+        node = lp.physicalPlan(curtrans.getId(), statsMap, explain);
 
         Query sdbq = new Query(node, curtrans.getId());
         TupleDesc td = node.getTupleDesc();
@@ -350,6 +358,63 @@ public class Parser {
 
     }
 
+    /** COPY table FROM 'file', which Zql does not know about. */
+    static final Pattern COPY_STATEMENT =
+            Pattern.compile("^\\s*copy\\s+(\\S+)\\s+from\\s+'([^']*)'\\s*;?\\s*$",
+                    Pattern.CASE_INSENSITIVE);
+
+    /** A statement ending in LIMIT k, which Zql cannot parse: group 1 is the statement before it. */
+    static final Pattern LIMIT_CLAUSE =
+            Pattern.compile("^(.*\\S)\\s+limit\\s+(\\d+)\\s*;?\\s*$",
+                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * @return the number k of a statement that ends in LIMIT k, or
+     *   LogicalPlan.NO_LIMIT if it does not
+     */
+    static int parseLimit(String statement) throws simpledb.ParsingException {
+        Matcher limit = LIMIT_CLAUSE.matcher(statement);
+        if (!limit.matches()) return LogicalPlan.NO_LIMIT;
+        try {
+            return Integer.parseInt(limit.group(2));
+        } catch (NumberFormatException e) {
+            throw new simpledb.ParsingException("LIMIT " + limit.group(2) + " is too large");
+        }
+    }
+
+    /** @return a statement with its LIMIT clause, if any, removed */
+    static String stripLimit(String statement) {
+        Matcher limit = LIMIT_CLAUSE.matcher(statement);
+        return limit.matches() ? limit.group(1) + ";" : statement;
+    }
+
+    /**
+     * Loads a comma delimited text file into a table, in the format
+     * HeapFileEncoder reads.  The file is parsed and encoded in parallel and
+     * appended to the table like a bulk insert.
+     *
+     * @see ParallelHeapFileEncoder#load
+     */
+    public static void handleCopyStatement(String tableName, String fileName) throws TransactionAbortedException, DbException, IOException, simpledb.ParsingException {
+        int id;
+        try {
+            id = Database.getCatalog().getTableId(tableName); //will fall through if table doesn't exist
+        } catch (NoSuchElementException e) {
+            throw new simpledb.ParsingException ("Unknown table : " + tableName);
+        }
+        DbFile file = Database.getCatalog().getDbFile(id);
+        if (!(file instanceof HeapFile)) {
+            throw new simpledb.ParsingException("COPY can only load heap files");
+        }
+        File inFile = new File(fileName);
+        if (!inFile.exists()) {
+            throw new simpledb.ParsingException("No such file : " + fileName);
+        }
+
+        long rows = ParallelHeapFileEncoder.load(curtrans.getId(), (HeapFile) file, inFile);
+        System.out.println("Copied " + rows + " rows.");
+    }
+
     public static void handleTransactStatement(ZTransactStmt s) throws TransactionAbortedException, DbException, IOException, simpledb.ParsingException, Zql.ParseException {
         if (s.getStmtType().equals("COMMIT")) {
             curtrans.transactionComplete(false);
@@ -366,12 +431,14 @@ public class Parser {
     }
 
     public static LogicalPlan generateLogicalPlan(TransactionId tid, String s) throws simpledb.ParsingException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
+        int limit = parseLimit(s);
+        ByteArrayInputStream bis = new ByteArrayInputStream(stripLimit(s).getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
             if (stmt instanceof ZQuery) {
                     LogicalPlan lp = parseQueryLogicalPlan(tid, (ZQuery)stmt);
+                    lp.setLimit(limit);
                     return lp;
             }
         }
@@ -404,8 +471,25 @@ public class Parser {
     
     public static void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            ByteArrayOutputStream statement = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = is.read(buf)) > 0) {
+                statement.write(buf, 0, n);
+            }
+            Matcher copy = COPY_STATEMENT.matcher(statement.toString("UTF-8"));
+            if (copy.matches()) {
+                handleCopyStatement(copy.group(1), copy.group(2));
+                return;
+            }
+
+            String sql = statement.toString("UTF-8");
+            int limit = parseLimit(sql);
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(stripLimit(sql).getBytes("UTF-8")));
             ZStatement s = p.readStatement();
+            if (limit != LogicalPlan.NO_LIMIT && !(s instanceof ZQuery)) {
+                throw new simpledb.ParsingException("LIMIT is only supported in queries");
+            }
 
             if (s instanceof ZTransactStmt)
                 handleTransactStatement((ZTransactStmt)s);
@@ -414,7 +498,7 @@ public class Parser {
             else if (s instanceof ZDelete)
                 handleDeleteStatement((ZDelete)s);
             else if (s instanceof ZQuery)
-                handleQueryStatement((ZQuery)s);
+                handleQueryStatement((ZQuery)s, limit);
             else {
                 System.out.println("Can't parse " + s + "\n -- parser only handles SQL transactions, insert, delete, and select statements");
             }
@@ -449,7 +533,9 @@ public class Parser {
         "insert",
         "delete",
         "values",
-        "into"
+        "into",
+        "limit",
+        "copy"
     };
 
     public static void main(String argv[]) throws IOException {
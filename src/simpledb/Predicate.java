@@ -45,6 +45,21 @@ public class Predicate {
         this.operand = operand;
     }
 
+    /** @return the field number of passed in tuples to compare against */
+    public int getField() {
+        return this.field;
+    }
+
+    /** @return the operation to use for comparison */
+    public Op getOp() {
+        return this.op;
+    }
+
+    /** @return the field value to compare passed in tuples to */
+    public Field getOperand() {
+        return this.operand;
+    }
+
     /**
      * Compares the field number of t specified in the constructor to the
      * operand field specified in the constructor using the operator specific
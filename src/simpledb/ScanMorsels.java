@@ -0,0 +1,78 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ScanMorsels divides a filtered sequential scan of a HeapFile into morsels
+ * of a few consecutive pages.  Each morsel is a SeqScan of its pages, under
+ * the given transaction, with the filters on top.  The last morsel runs to
+ * the end of the file, so pages appended in the meantime are scanned too.
+ *
+ * @see MorselSource
+ * @see ParallelSeqScan
+ */
+public class ScanMorsels implements MorselSource {
+    /** The number of pages of a morsel, unless set otherwise. */
+    public static final int DEFAULT_MORSEL_PAGES = 16;
+
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final Predicate[] filters;
+    private final int morselPages;
+    private final int numPages;
+    private final TupleDesc td;
+    private final AtomicInteger nextPage = new AtomicInteger();
+
+    /**
+     * Creates morsels of DEFAULT_MORSEL_PAGES pages.
+     *
+     * @see #ScanMorsels(TransactionId, int, String, Predicate[], int)
+     */
+    public ScanMorsels(TransactionId tid, int tableid, String tableAlias, Predicate[] filters) {
+        this(tid, tableid, tableAlias, filters, DEFAULT_MORSEL_PAGES);
+    }
+
+    /**
+     * @param tid The transaction the scans are running as a part of.
+     * @param tableid the table to scan, which must be a HeapFile
+     * @param tableAlias the alias of this table; as for SeqScan, the fields
+     *   of the tuples are named tableAlias.fieldName
+     * @param filters the predicates every tuple must pass, applied in order
+     * @param morselPages the number of pages of a morsel
+     * @throws IllegalArgumentException if the table is not a HeapFile
+     */
+    public ScanMorsels(TransactionId tid, int tableid, String tableAlias, Predicate[] filters, int morselPages) {
+        DbFile file = Database.getCatalog().getDbFile(tableid);
+        if (!(file instanceof HeapFile)) {
+            throw new IllegalArgumentException("only a HeapFile can be scanned in morsels");
+        }
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.filters = filters.clone();
+        this.morselPages = Math.max(1, morselPages);
+        this.numPages = ((HeapFile) file).numPages();
+        this.td = new SeqScan(tid, tableid, tableAlias).getTupleDesc();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    public DbIterator nextMorsel() {
+        int fromPage = this.nextPage.getAndAdd(this.morselPages);
+        // one morsel, possibly empty, even if the file is
+        if (fromPage >= this.numPages && fromPage > 0) return null;
+        int toPage = fromPage + this.morselPages >= this.numPages ? -1 : fromPage + this.morselPages;
+        DbIterator morsel = new SeqScan(this.tid, this.tableid, this.tableAlias, fromPage, toPage);
+        for (Predicate p : this.filters) {
+            morsel = new Filter(p, morsel);
+        }
+        return morsel;
+    }
+
+    public void rewind() {
+        this.nextPage.set(0);
+    }
+}
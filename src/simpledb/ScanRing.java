@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+
+/**
+ * ScanRing is the private set of buffer pool frames used by a large
+ * sequential scan.  Pages that the scan reads in are recorded in the ring;
+ * once the ring is full, each further miss reuses the frame of the page the
+ * scan read in longest ago instead of evicting a page from the rest of the
+ * pool.  A scan over a table much larger than the pool therefore only ever
+ * occupies ring-size frames and leaves everybody else's working set alone.
+ * <p>
+ * Pages that were already resident when the scan reached them are not part
+ * of the ring.  A ring page that has been dirtied or evicted in the
+ * meantime is simply forgotten.
+ *
+ * @see BufferPool#getPage(TransactionId, PageId, Permissions, ScanRing)
+ */
+public class ScanRing {
+    /** Tables larger than this fraction of the pool are scanned through a ring. */
+    static final double TABLE_FRACTION = 0.75;
+    static final int MIN_RING_PAGES = 4;
+    static final int MAX_RING_PAGES = 32;
+
+    private int capacity;
+    private ArrayDeque<PageId> pages;
+
+    /**
+     * @param capacity the number of frames in the ring
+     */
+    public ScanRing(int capacity) {
+        this.capacity = capacity;
+        this.pages = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Returns a ring for scanning a table of numPages pages through the
+     * given buffer pool, or null if the table is small enough to be cached
+     * like any other pages.  The ring holds an eighth of the pool, between
+     * MIN_RING_PAGES and MAX_RING_PAGES frames.  If the pool is large enough
+     * for a scan to read ahead, the ring holds at least two read-ahead
+     * windows of MIN_PREFETCH_PAGES, as the scan reads ahead by at most half
+     * the ring.
+     *
+     * @see HeapFileIterator#MIN_PREFETCH_PAGES
+     */
+    public static ScanRing forScan(BufferPool bufferPool, int numPages) {
+        int poolPages = bufferPool.getNumPages();
+        if (numPages <= poolPages * TABLE_FRACTION) return null;
+        int capacity = Math.max(MIN_RING_PAGES, Math.min(MAX_RING_PAGES, poolPages / 8));
+        if (bufferPool.isPrefetchEnabled() && poolPages / 4 >= HeapFileIterator.MIN_PREFETCH_PAGES) {
+            capacity = Math.max(capacity, 2 * HeapFileIterator.MIN_PREFETCH_PAGES);
+        }
+        return new ScanRing(capacity);
+    }
+
+    /** @return the number of frames in the ring */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /** Records a page that was read into the pool on behalf of the scan. */
+    synchronized void add(PageId pid) {
+        this.pages.addLast(pid);
+    }
+
+    /**
+     * @return the page that was added longest ago if the ring is full, so
+     *   that its frame can be reused; null if the ring still has room
+     */
+    synchronized PageId pollOldestIfFull() {
+        if (this.pages.size() < this.capacity) return null;
+        return this.pages.pollFirst();
+    }
+}
@@ -33,11 +33,45 @@ public class SeqScan implements DbIterator {
         this.fileIterator = this.file.iterator(tid);
     }
 
+    /**
+     * Creates a sequential scan over a range of the pages of a table stored
+     * in a HeapFile, for scans that divide the table between them.
+     *
+     * @param fromPage the first page to scan
+     * @param toPage the page after the last one to scan, or -1 to scan to
+     *   the end of the table
+     * @throws IllegalArgumentException if the table is not a HeapFile
+     * @see #SeqScan(TransactionId, int, String)
+     * @see ParallelSeqScan
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int fromPage, int toPage) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.file = Database.getCatalog().getDbFile(this.tableid);
+        if (!(this.file instanceof HeapFile)) {
+            throw new IllegalArgumentException("only a HeapFile can be scanned by page range");
+        }
+        this.fileIterator = ((HeapFile) this.file).iterator(tid, fromPage, toPage);
+    }
+
     public void open()
         throws DbException, TransactionAbortedException {
         this.fileIterator.open();
     }
 
+    /**
+     * @return the field the scan returns tuples in ascending order of, or
+     *   -1 if the order is arbitrary; a table stored in a B+tree is scanned
+     *   in key order
+     */
+    public int sortedField() {
+        if (this.file instanceof BTreeFile) {
+            return ((BTreeFile) this.file).keyField();
+        }
+        return -1;
+    }
+
     /**
      * Returns the TupleDesc with field names from the underlying HeapFile,
      * prefixed with the tableAlias string from the constructor.
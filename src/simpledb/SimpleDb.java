@@ -9,10 +9,11 @@ public class SimpleDb {
         if(args[0].equals("convert")) {
         try {
         if (args.length == 3) {
-            HeapFileEncoder.convert(new File(args[1]),
+            Type[] ts = new Type[Integer.parseInt(args[2])];
+            Arrays.fill(ts, Type.INT_TYPE);
+            ParallelHeapFileEncoder.convert(new File(args[1]),
                         new File(args[1].replaceAll(".txt", ".dat")),
-                        BufferPool.PAGE_SIZE,
-                        Integer.parseInt(args[2]));
+                        BufferPool.PAGE_SIZE, ts);
         }
         else if (args.length == 4) {
             ArrayList<Type> ts = new ArrayList<Type>();
@@ -27,10 +28,13 @@ public class SimpleDb {
                 return;
             }
             }
-            HeapFileEncoder.convert(new File(args[1]),
+            if (ts.size() != Integer.parseInt(args[2])) {
+                System.out.println("Expected " + args[2] + " types, got " + ts.size());
+                return;
+            }
+            ParallelHeapFileEncoder.convert(new File(args[1]),
                         new File(args[1].replaceAll(".txt", ".dat")),
-                        BufferPool.PAGE_SIZE,
-                        Integer.parseInt(args[2]), ts.toArray(new Type[0]));
+                        BufferPool.PAGE_SIZE, ts.toArray(new Type[0]));
 
         } else {
             System.out.println("Unexpected number of arguments to convert ");
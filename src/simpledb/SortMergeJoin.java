@@ -0,0 +1,367 @@
+package simpledb;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * SortMergeJoin implements a join by merging its children in ascending
+ * order of their join fields.  A child that is not already in that order,
+ * such as a SeqScan of a heap table, is sorted first with an OrderBy; one
+ * that is, such as a scan of a B+tree keyed on the join field, is read as
+ * it is.
+ * <p>
+ * An equality join reads each child once, keeping only the current run of
+ * inner tuples that share a key, so runs of duplicate keys on both sides
+ * produce their full cross product.  A range join (&lt;, &lt;=, &gt;, &gt;=)
+ * keeps the sorted inner child in memory: for each outer tuple its matches
+ * are a prefix or a suffix of the inner tuples, bounded by a position that
+ * only moves forward as the outer key grows.
+ * <p>
+ * The sorts and the inner tuples of a range join are limited to a
+ * MemoryBudget.  If the inner child does not fit, it is written to
+ * SpillFiles in chunks of a budget each, and for each outer tuple the
+ * chunks that hold its matches are read back; the chunks wholly before a
+ * suffix or after a prefix are skipped by their first and last tuples.
+ * <p>
+ * Tuples are returned as Join returns them, the concatenation of the outer
+ * and inner tuple, in ascending order of the outer join field.
+ *
+ * @see Join
+ * @see HashEquiJoin
+ * @see MemoryBudget
+ */
+public class SortMergeJoin extends AbstractDbIterator {
+    private JoinPredicate joinPredicate;
+    private DbIterator child1;
+    private DbIterator child2;
+    private TupleDesc td;
+
+    private Tuple currentTuple;
+
+    // equality: the run of inner tuples with key runKey, the position in
+    // it, and the first inner tuple after it
+    private ArrayList<Tuple> run = new ArrayList<Tuple>();
+    private Field runKey;
+    private int runPosition;
+    private Tuple lookahead;
+
+    // ranges: the sorted inner tuples, the bound on the matches of the
+    // current outer tuple, and the next match to return
+    private ArrayList<Tuple> inner;
+    private int bound;
+    private int position;
+    private int end;
+    private final int memoryPages;
+    private final long maxInner;
+
+    // ranges over an inner child larger than the budget: its sorted tuples
+    // in chunks of at most maxInner, the first and last tuple of each, and
+    // the chunk being read for the current outer tuple
+    private ArrayList<SpillFile> chunks;
+    private ArrayList<Tuple> chunkFirst;
+    private ArrayList<Tuple> chunkLast;
+    private int chunk;
+    private DbIterator chunkTuples;
+
+    /**
+     * Constructor.  Accepts to children to join and the predicate
+     * to join them on.  The join uses the default MemoryBudget.
+     *
+     * @param p The predicate to use to join the children; its operator
+     *   must be EQUALS or one of the four ranges
+     * @param child1 Iterator for the left(outer) relation to join
+     * @param child2 Iterator for the right(inner) relation to join
+     * @throws IllegalArgumentException if the predicate is LIKE or NOT_EQUALS
+     */
+    public SortMergeJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, MemoryBudget.getDefaultPages());
+    }
+
+    /**
+     * Constructor for a join with its own memory budget.
+     *
+     * @param memoryPages the number of pages of tuples each sort, and a
+     *   range join's inner tuples, may hold in memory before spilling
+     * @see #SortMergeJoin(JoinPredicate, DbIterator, DbIterator)
+     */
+    public SortMergeJoin(JoinPredicate p, DbIterator child1, DbIterator child2, int memoryPages) {
+        switch (p.getOperator()) {
+        case LIKE:
+        case NOT_EQUALS:
+            throw new IllegalArgumentException("cannot merge on " + p.getOperator());
+        default:
+            break;
+        }
+        this.joinPredicate = p;
+        this.td = TupleDesc.combine(child1.getTupleDesc(), child2.getTupleDesc());
+        this.memoryPages = memoryPages;
+        this.maxInner = MemoryBudget.tupleCapacity(memoryPages, child2.getTupleDesc());
+        this.child1 = sorted(child1, p.getField1(), memoryPages);
+        this.child2 = sorted(child2, p.getField2(), memoryPages);
+    }
+
+    private static DbIterator sorted(DbIterator child, int field, int memoryPages) {
+        if (isSortedOn(child, field)) return child;
+        return new OrderBy(new int[] { field }, new boolean[] { true }, child, memoryPages);
+    }
+
+    /**
+     * @return true if an iterator is known to return its tuples in
+     *   ascending order of the field
+     */
+    public static boolean isSortedOn(DbIterator it, int field) {
+        int sortedField = -1;
+        if (it instanceof SeqScan) sortedField = ((SeqScan) it).sortedField();
+        else if (it instanceof IndexScan) sortedField = ((IndexScan) it).sortedField();
+        else if (it instanceof OrderBy) sortedField = ((OrderBy) it).sortedField();
+        else if (it instanceof SortMergeJoin) sortedField = ((SortMergeJoin) it).sortedField();
+        else if (it instanceof Filter) return isSortedOn(((Filter) it).getChild(), field);
+        return sortedField >= 0 && sortedField == field;
+    }
+
+    /**
+     * @return the field the join returns tuples in ascending order of: the
+     *   outer join field
+     */
+    public int sortedField() {
+        return this.joinPredicate.getField1();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /** @return true if the inner tuples of a range join did not fit in memory */
+    public boolean spilled() {
+        return this.chunks != null;
+    }
+
+    public void open()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+        this.child1.open();
+        this.child2.open();
+        if (this.joinPredicate.getOperator() != Predicate.Op.EQUALS) {
+            this.inner = new ArrayList<Tuple>();
+            while (this.child2.hasNext()) {
+                if (this.inner.size() == this.maxInner) {
+                    this.spillInner();
+                }
+                this.inner.add(this.child2.next());
+            }
+            if (this.chunks != null && !this.inner.isEmpty()) {
+                this.spillInner();
+            }
+        }
+        this.reset();
+    }
+
+    /**
+     * Writes the inner tuples in memory to a new chunk and empties them.
+     */
+    private void spillInner() throws DbException {
+        if (this.chunks == null) {
+            this.chunks = new ArrayList<SpillFile>();
+            this.chunkFirst = new ArrayList<Tuple>();
+            this.chunkLast = new ArrayList<Tuple>();
+        }
+        try {
+            SpillFile f = new SpillFile(this.child2.getTupleDesc());
+            this.chunks.add(f);
+            for (Tuple t : this.inner) {
+                f.add(t);
+            }
+            f.finish();
+        } catch (IOException e) {
+            throw new DbException("could not spill join input: " + e.getMessage());
+        }
+        this.chunkFirst.add(this.inner.get(0));
+        this.chunkLast.add(this.inner.get(this.inner.size() - 1));
+        this.inner.clear();
+    }
+
+    private void deleteChunks() {
+        if (this.chunkTuples != null) {
+            this.chunkTuples.close();
+            this.chunkTuples = null;
+        }
+        if (this.chunks != null) {
+            for (SpillFile f : this.chunks) {
+                f.delete();
+            }
+            this.chunks = null;
+            this.chunkFirst = null;
+            this.chunkLast = null;
+        }
+    }
+
+    private void reset() throws DbException, TransactionAbortedException {
+        this.currentTuple = null;
+        this.run.clear();
+        this.runKey = null;
+        this.runPosition = 0;
+        this.lookahead = this.inner == null ? this.nextInner() : null;
+        this.bound = 0;
+        this.position = 0;
+        this.end = 0;
+        this.chunk = 0;
+        if (this.chunkTuples != null) {
+            this.chunkTuples.close();
+            this.chunkTuples = null;
+        }
+    }
+
+    public void close() {
+        super.close();
+        this.child1.close();
+        this.child2.close();
+        this.deleteChunks();
+        this.inner = null;
+        this.run.clear();
+        this.currentTuple = null;
+        this.lookahead = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.close();
+        this.child1.rewind();
+        if (this.inner == null) {
+            this.child2.rewind();
+        }
+        this.reset();
+    }
+
+    private Tuple nextInner() throws DbException, TransactionAbortedException {
+        return this.child2.hasNext() ? this.child2.next() : null;
+    }
+
+    private Field innerKey(Tuple t) {
+        return t.getField(this.joinPredicate.getField2());
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples.
+     *
+     * @return The next matching tuple.
+     */
+    protected Tuple readNext() throws TransactionAbortedException, DbException {
+        if (this.inner == null) {
+            return this.readNextEqual();
+        }
+        if (this.chunks != null) {
+            return this.readNextSpilled();
+        }
+        return this.readNextRange();
+    }
+
+    private Tuple readNextEqual() throws TransactionAbortedException, DbException {
+        while (this.currentTuple == null || this.runKey == null || this.runPosition >= this.run.size()) {
+            if (!this.child1.hasNext()) {
+                return null;
+            }
+            this.currentTuple = this.child1.next();
+            this.runPosition = 0;
+            Field key = this.currentTuple.getField(this.joinPredicate.getField1());
+            // a run of equal outer keys joins the same inner run
+            if (this.runKey != null && BTreePage.compare(key, this.runKey) == 0) {
+                continue;
+            }
+
+            while (this.lookahead != null && BTreePage.compare(this.innerKey(this.lookahead), key) < 0) {
+                this.lookahead = this.nextInner();
+            }
+            this.run.clear();
+            this.runKey = null;
+            if (this.lookahead == null || BTreePage.compare(this.innerKey(this.lookahead), key) > 0) {
+                continue;
+            }
+            this.runKey = this.innerKey(this.lookahead);
+            while (this.lookahead != null && BTreePage.compare(this.innerKey(this.lookahead), this.runKey) == 0) {
+                this.run.add(this.lookahead);
+                this.lookahead = this.nextInner();
+            }
+        }
+        return this.joinTuples(this.currentTuple, this.run.get(this.runPosition++));
+    }
+
+    private Tuple readNextRange() throws TransactionAbortedException, DbException {
+        Predicate.Op op = this.joinPredicate.getOperator();
+        // the bound is the first inner key >= the outer key, or > it
+        boolean upper = op == Predicate.Op.LESS_THAN || op == Predicate.Op.GREATER_THAN_OR_EQ;
+        // the matches are the inner tuples from the bound on, or before it
+        boolean suffix = op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ;
+
+        while (this.currentTuple == null || this.position >= this.end) {
+            if (!this.child1.hasNext()) {
+                return null;
+            }
+            this.currentTuple = this.child1.next();
+            Field key = this.currentTuple.getField(this.joinPredicate.getField1());
+            while (this.bound < this.inner.size()) {
+                int c = BTreePage.compare(this.innerKey(this.inner.get(this.bound)), key);
+                if (c > 0 || (c == 0 && !upper)) break;
+                this.bound++;
+            }
+            this.position = suffix ? this.bound : 0;
+            this.end = suffix ? this.inner.size() : this.bound;
+        }
+        return this.joinTuples(this.currentTuple, this.inner.get(this.position++));
+    }
+
+    private Tuple readNextSpilled() throws TransactionAbortedException, DbException {
+        Predicate.Op op = this.joinPredicate.getOperator();
+        boolean suffix = op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ;
+
+        while (true) {
+            if (this.chunkTuples == null) {
+                if (this.currentTuple == null || this.chunk >= this.chunks.size()) {
+                    if (!this.child1.hasNext()) {
+                        return null;
+                    }
+                    this.currentTuple = this.child1.next();
+                    this.chunk = 0;
+                }
+                if (suffix && !this.joinPredicate.filter(this.currentTuple, this.chunkLast.get(this.chunk))) {
+                    // the whole chunk is before the matches
+                    this.chunk++;
+                    continue;
+                }
+                if (!suffix && !this.joinPredicate.filter(this.currentTuple, this.chunkFirst.get(this.chunk))) {
+                    // the matches ended in an earlier chunk
+                    this.chunk = this.chunks.size();
+                    continue;
+                }
+                this.chunkTuples = this.chunks.get(this.chunk).iterator();
+                this.chunkTuples.open();
+            }
+            while (this.chunkTuples.hasNext()) {
+                Tuple t = this.chunkTuples.next();
+                if (this.joinPredicate.filter(this.currentTuple, t)) {
+                    return this.joinTuples(this.currentTuple, t);
+                }
+            }
+            this.chunkTuples.close();
+            this.chunkTuples = null;
+            this.chunk++;
+        }
+    }
+
+    /**
+     * Creates a new tuple from two existing tuples.
+     * @param t1 the first Tuple to join
+     * @param t2 the second Tuple to join with the first
+     * @return the joined Tuple
+     */
+    private Tuple joinTuples(Tuple t1, Tuple t2) {
+        Tuple joinedTuple = new Tuple(this.td);
+
+        for (int i = 0; i < t1.numFields(); i++) {
+            joinedTuple.setField(i, t1.getField(i));
+        }
+
+        for (int j = 0; j < t2.numFields(); j++) {
+            joinedTuple.setField(j + t1.numFields(), t2.getField(j));
+        }
+
+        return joinedTuple;
+    }
+}
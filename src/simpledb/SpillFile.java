@@ -0,0 +1,167 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * SpillFile is a temporary file of tuples that an operator writes when its
+ * working state does not fit in its MemoryBudget, and reads back later in
+ * the order it wrote them.  The file is a sequence of HeapPages, in the same
+ * format as a HeapFile, but it is private to the operator: it is not in the
+ * Catalog and its pages do not go through the BufferPool, so they are not
+ * locked or logged.
+ * <p>
+ * A SpillFile is written with add, then finished, then read with any
+ * number of iterators, and finally deleted.  Tuples read back have no
+ * record id.
+ *
+ * @see MemoryBudget
+ */
+public class SpillFile {
+    private final TupleDesc td;
+    private final File file;
+    private OutputStream out;
+    private HeapPage page;
+    private int numPages;
+    private long numTuples;
+
+    /**
+     * Creates an empty spill file for tuples with the given TupleDesc.
+     */
+    public SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.file = File.createTempFile("spill", ".dat");
+        this.file.deleteOnExit();
+        this.out = new BufferedOutputStream(new FileOutputStream(this.file), 16 * BufferPool.PAGE_SIZE);
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /** @return the number of tuples added to the file */
+    public long numTuples() {
+        return this.numTuples;
+    }
+
+    /** @return the number of pages written to the file */
+    public int numPages() {
+        return this.numPages;
+    }
+
+    /**
+     * Appends a tuple to the file.  The tuple is copied; its record id is
+     * not changed.
+     */
+    public void add(Tuple t) throws DbException, IOException {
+        if (this.out == null) throw new DbException("spill file is already finished");
+        if (this.page == null) {
+            this.page = new HeapPage(new HeapPageId(0, this.numPages),
+                    ByteBuffer.wrap(HeapPage.createEmptyPageData()), this.td);
+        }
+        RecordId rid = t.getRecordId();
+        this.page.addTuple(t);
+        t.setRecordId(rid);
+        this.numTuples++;
+        if (this.page.getNumEmptySlots() == 0) {
+            this.writePage();
+        }
+    }
+
+    private void writePage() throws IOException {
+        this.out.write(this.page.getPageData());
+        this.numPages++;
+        this.page = null;
+    }
+
+    /**
+     * Writes the last, partly filled page and closes the file for writing.
+     */
+    public void finish() throws IOException {
+        if (this.out == null) return;
+        if (this.page != null) {
+            this.writePage();
+        }
+        this.out.close();
+        this.out = null;
+    }
+
+    /**
+     * @return an iterator over the tuples of the file, in the order they
+     *   were added.  The file must be finished.
+     */
+    public DbIterator iterator() {
+        return new AbstractDbIterator() {
+            private DataInputStream in;
+            private int pageno;
+            private java.util.Iterator<Tuple> tuples;
+
+            public TupleDesc getTupleDesc() {
+                return td;
+            }
+
+            public void open() throws DbException {
+                if (out != null) throw new DbException("spill file is not finished");
+                try {
+                    this.in = new DataInputStream(new BufferedInputStream(
+                            new FileInputStream(file), 16 * BufferPool.PAGE_SIZE));
+                } catch (FileNotFoundException e) {
+                    throw new DbException("spill file is missing: " + e.getMessage());
+                }
+                this.pageno = 0;
+                this.tuples = null;
+            }
+
+            public void rewind() throws DbException {
+                this.close();
+                this.open();
+            }
+
+            public void close() {
+                super.close();
+                if (this.in != null) {
+                    try {
+                        this.in.close();
+                    } catch (IOException e) {
+                        // the stream was only read from, so nothing is lost
+                    }
+                    this.in = null;
+                }
+            }
+
+            protected Tuple readNext() throws DbException {
+                if (this.in == null) return null;
+                while (this.tuples == null || !this.tuples.hasNext()) {
+                    if (this.pageno >= numPages) return null;
+                    byte[] data = new byte[BufferPool.PAGE_SIZE];
+                    try {
+                        this.in.readFully(data);
+                    } catch (IOException e) {
+                        throw new DbException("could not read spill file: " + e.getMessage());
+                    }
+                    HeapPage page = new HeapPage(new HeapPageId(0, this.pageno++), ByteBuffer.wrap(data), td);
+                    this.tuples = page.iterator();
+                }
+                Tuple t = this.tuples.next();
+                t.setRecordId(null);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Deletes the file.  It cannot be used afterwards.
+     */
+    public void delete() {
+        if (this.out != null) {
+            try {
+                this.out.close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+            this.out = null;
+        }
+        this.page = null;
+        this.file.delete();
+    }
+}
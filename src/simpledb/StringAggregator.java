@@ -1,17 +1,21 @@
 package simpledb;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * Knows how to compute some aggregate over a set of StringFields.
+ * Groups are numbered by a GroupTable, and counted in an array indexed by
+ * group number.
  */
 public class StringAggregator implements Aggregator {
     private int gbField;
     private Type gbFieldType;
     private int aggField;
     private Op aggOp;
-    private HashMap<Field, Integer> groupCounts;
+    private GroupTable groups;
+    private int numGroups;
+    private int[] groupCounts;
     /**
      * Aggregate constructor
      * @param gbfield the 0-based index of the group-by field in the tuple, or NO_GROUPING if there is no grouping
@@ -28,7 +32,10 @@ public class StringAggregator implements Aggregator {
         this.gbFieldType = gbfieldtype;
         this.aggField = afield;
         this.aggOp = what;
-        this.groupCounts = new HashMap<>();
+        if (gbfield != Aggregator.NO_GROUPING) {
+            this.groups = new GroupTable(gbfieldtype);
+        }
+        this.groupCounts = new int[16];
     }
 
     /**
@@ -36,35 +43,70 @@ public class StringAggregator implements Aggregator {
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void merge(Tuple tup) {
-        Field groupByField = getGroupByField(tup);
-        int updatedCount = getUpdatedCount(tup);
-        groupCounts.put(groupByField, updatedCount);
+        int group = getGroup(tup);
+        if (group == numGroups) {
+            if (numGroups == groupCounts.length) {
+                groupCounts = Arrays.copyOf(groupCounts, 2 * numGroups);
+            }
+            numGroups++;
+        }
+        groupCounts[group]++;
+    }
+
+    public boolean mergeExisting(Tuple tup) {
+        int group = findGroup(tup);
+        if (group < 0) return false;
+        groupCounts[group]++;
+        return true;
+    }
+
+    /**
+     * Adds the counts of another StringAggregator's groups.
+     * @param other a StringAggregator with the same fields
+     */
+    public void combine(Aggregator other) {
+        if (!(other instanceof StringAggregator)) {
+            throw new IllegalArgumentException("cannot combine with " + other.getClass().getSimpleName());
+        }
+        StringAggregator o = (StringAggregator) other;
+        for (int g = 0; g < o.numGroups; g++) {
+            int group = this.groups == null ? 0 : this.groups.groupOf(o.groups.key(g));
+            if (group == this.numGroups) {
+                if (this.numGroups == this.groupCounts.length) {
+                    this.groupCounts = Arrays.copyOf(this.groupCounts, 2 * this.numGroups);
+                }
+                this.numGroups++;
+            }
+            this.groupCounts[group] += o.groupCounts[g];
+        }
+    }
+
+    public int numGroups() {
+        return this.numGroups;
     }
 
     /**
-     * Returns the updated count aggregate (+1 for each tuple we've seen in a particular group)
-     * @param tup The tuple used to update the current count
-     * @return the updated count
+     * Returns the group number of the current tuple, which is numGroups if it
+     * starts a new group
+     * @param tup The tuple whose group we wish to return
+     * @return the group number, always 0 if there is no grouping
      */
-    private int getUpdatedCount(Tuple tup) {
-        Field groupByField = getGroupByField(tup);
-        int currentCount = groupCounts.getOrDefault(groupByField, 0);
-        return ++currentCount;
+    private int getGroup(Tuple tup) {
+        if (this.groups == null) {
+            return 0;
+        }
+        return this.groups.groupOf(tup.getField(this.gbField));
     }
 
     /**
-     * Returns the groupby Field of the current tuple, or null if there is no grouping
-     * @param tup The tuple whose groupby Field we wish to return
-     * @return the Field used in the group by clause, or null if there is no grouping
+     * @return the group number of the tuple, or -1 if its group has not
+     *   been encountered
      */
-    private Field getGroupByField(Tuple tup) {
-        Field groupByField;
-        if (this.gbField == Aggregator.NO_GROUPING) {
-            groupByField = null;
-        } else {
-            groupByField = tup.getField(this.gbField);
+    private int findGroup(Tuple tup) {
+        if (this.groups == null) {
+            return this.numGroups > 0 ? 0 : -1;
         }
-        return groupByField;
+        return this.groups.find(tup.getField(this.gbField));
     }
 
     /**
@@ -86,16 +128,16 @@ public class StringAggregator implements Aggregator {
             groupAggregateTd = new TupleDesc(new Type[]{Type.INT_TYPE});
         }
 
-        for (HashMap.Entry<Field, Integer> groupAggregateEntry: this.groupCounts.entrySet()) {
+        for (int group = 0; group < this.numGroups; group++) {
             Tuple groupCountsTuple = new Tuple(groupAggregateTd);
 
             // If there is a grouping, we return a tuple in the form {groupByField, aggregateVal}
             // If there is no grouping, we return a tuple in the form {aggregateVal}
             if (hasGrouping) {
-                groupCountsTuple.setField(0, groupAggregateEntry.getKey());
-                groupCountsTuple.setField(1, new IntField(groupAggregateEntry.getValue()));
+                groupCountsTuple.setField(0, this.groups.key(group));
+                groupCountsTuple.setField(1, new IntField(this.groupCounts[group]));
             } else {
-                groupCountsTuple.setField(0, new IntField(groupAggregateEntry.getValue()));
+                groupCountsTuple.setField(0, new IntField(this.groupCounts[group]));
             }
             tuples.add(groupCountsTuple);
         }
@@ -0,0 +1,114 @@
+package simpledb;
+import java.util.*;
+
+/**
+ * TopN is an operator that implements ORDER BY followed by LIMIT: it
+ * returns the first tuples of its child in sort order, up to a given
+ * number.  It reads the child once, keeping only the best tuples seen so
+ * far in a bounded heap, so it takes O(n log k) time and holds k tuples
+ * instead of sorting all n of them as OrderBy does.  Like OrderBy, it
+ * keeps tuples with equal sort fields in child order.
+ *
+ * @see OrderBy
+ * @see Limit
+ */
+public class TopN extends AbstractDbIterator {
+    private DbIterator child;
+    private TupleDesc td;
+    private final int limit;
+    private final TupleComparator comparator;
+    private ArrayList<Tuple> top = new ArrayList<Tuple>();
+    private Iterator<Tuple> it;
+
+    /** A tuple in the heap, and the order it was read from the child in. */
+    private static class Entry {
+        final Tuple tuple;
+        final long seq;
+
+        Entry(Tuple tuple, long seq) {
+            this.tuple = tuple;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Creates a new TopN node over the tuples from the iterator.
+     *
+     * @param orderbyFields the fields to which the sort is applied.
+     * @param asc for each field, true if the sort order is ascending.
+     * @param limit the most tuples to return.
+     * @param child the tuples to sort.
+     * @see OrderBy#OrderBy(int[], boolean[], DbIterator)
+     */
+    public TopN(int[] orderbyFields, boolean[] asc, int limit, DbIterator child) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length) {
+            throw new IllegalArgumentException("need a sort order for each of one or more fields");
+        }
+        if (limit < 0) throw new IllegalArgumentException("negative limit " + limit);
+        this.child = child;
+        this.td = child.getTupleDesc();
+        this.limit = limit;
+        this.comparator = new TupleComparator(td, orderbyFields.clone(), asc.clone());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open()
+        throws DbException, NoSuchElementException, TransactionAbortedException {
+        child.open();
+        top.clear();
+        if (limit > 0) {
+            // the root of the heap is the worst tuple kept: the last in sort
+            // order, and the later read of equal ones
+            Comparator<Entry> order = (a, b) -> {
+                int c = comparator.compare(a.tuple, b.tuple);
+                return c != 0 ? c : Long.compare(a.seq, b.seq);
+            };
+            PriorityQueue<Entry> heap = new PriorityQueue<Entry>(limit, order.reversed());
+            long seq = 0;
+            while (child.hasNext()) {
+                Entry e = new Entry(child.next(), seq++);
+                if (heap.size() < limit) {
+                    heap.add(e);
+                } else if (order.compare(e, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(e);
+                }
+            }
+            ArrayList<Entry> entries = new ArrayList<Entry>(heap);
+            Collections.sort(entries, order);
+            for (Entry e : entries) {
+                top.add(e.tuple);
+            }
+        }
+        it = top.iterator();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        top.clear();
+        it = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.close();
+        it = top.iterator();
+    }
+
+    /**
+     * AbstractDbIterator.readNext implementation.
+     * Returns the kept tuples in order
+     *
+     * @return The next tuple in the ordering, or null if there are no more tuples
+     */
+    protected Tuple readNext()
+        throws NoSuchElementException, TransactionAbortedException, DbException {
+        if (it != null && it.hasNext()) {
+            return it.next();
+        } else
+            return null;
+    }
+}
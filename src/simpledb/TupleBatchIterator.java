@@ -0,0 +1,56 @@
+package simpledb;
+
+/**
+ * TupleBatchIterator adapts a DbIterator to a BatchIterator, copying its
+ * tuples into batches, so that any tuple operator can feed a batch operator.
+ *
+ * @see BatchTupleIterator
+ */
+public class TupleBatchIterator implements BatchIterator {
+    private DbIterator child;
+    private int batchRows;
+    private VectorBatch batch;
+
+    /**
+     * Creates an adapter that returns batches of VectorBatch.DEFAULT_ROWS
+     * rows.
+     */
+    public TupleBatchIterator(DbIterator child) {
+        this(child, VectorBatch.DEFAULT_ROWS);
+    }
+
+    /**
+     * @param child the tuples to batch
+     * @param batchRows the most rows of a returned batch
+     */
+    public TupleBatchIterator(DbIterator child, int batchRows) {
+        this.child = child;
+        this.batchRows = batchRows;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.child.getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        this.child.open();
+        this.batch = new VectorBatch(this.getTupleDesc(), this.batchRows);
+    }
+
+    public VectorBatch nextBatch() throws DbException, TransactionAbortedException {
+        this.batch.clear();
+        while (!this.batch.isFull() && this.child.hasNext()) {
+            this.batch.addTuple(this.child.next());
+        }
+        return this.batch.size() == 0 ? null : this.batch;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        this.child.rewind();
+    }
+
+    public void close() {
+        this.child.close();
+        this.batch = null;
+    }
+}
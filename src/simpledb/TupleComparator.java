@@ -0,0 +1,57 @@
+package simpledb;
+
+import java.util.Comparator;
+
+/**
+ * Compares tuples on a list of fields, each ascending or descending.
+ * Integer and string fields are compared by value, without going through
+ * Field.compare; other types fall back to it.
+ *
+ * @see OrderBy
+ * @see TopN
+ */
+class TupleComparator implements Comparator<Tuple> {
+    int[] fields;
+    boolean[] asc;
+    boolean[] isInt;
+    boolean[] isString;
+
+    public TupleComparator(TupleDesc td, int[] fields, boolean[] asc) {
+        this.fields = fields;
+        this.asc = asc;
+        this.isInt = new boolean[fields.length];
+        this.isString = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            this.isInt[i] = td.getType(fields[i]) == Type.INT_TYPE;
+            this.isString[i] = td.getType(fields[i]) == Type.STRING_TYPE;
+        }
+    }
+
+    public int compare(Tuple o1, Tuple o2) {
+        for (int i = 0; i < fields.length; i++) {
+            int c;
+            if (isInt[i]) {
+                c = Integer.compare(((IntField) o1.getField(fields[i])).getValue(),
+                                    ((IntField) o2.getField(fields[i])).getValue());
+            } else if (isString[i]) {
+                c = ((StringField) o1.getField(fields[i])).getValue()
+                        .compareTo(((StringField) o2.getField(fields[i])).getValue());
+            } else {
+                c = compare(o1.getField(fields[i]), o2.getField(fields[i]));
+            }
+            if (c != 0)
+                return asc[i] ? c : -c;
+        }
+        return 0;
+    }
+
+    private static int compare(Field t1, Field t2) {
+        if (t1.compare(Predicate.Op.EQUALS, t2))
+            return 0;
+        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
+            return 1;
+        else
+            return -1;
+    }
+
+}
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +25,11 @@ public enum Type {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buffer) {
+            return new IntField(buffer.getInt());
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,6 +48,16 @@ public enum Type {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buffer) {
+            int start = buffer.position();
+            int strLen = buffer.getInt();
+            byte bs[] = new byte[strLen];
+            buffer.get(bs);
+            buffer.position(start + getLen());
+            return new StringField(new String(bs), STRING_LEN);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -60,4 +76,12 @@ public enum Type {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object that has contents
+   *   read from the current position of the specified buffer; the position
+   *   is advanced by getLen() bytes.
+   * @param buffer The buffer to read from
+   */
+    public abstract Field parse(ByteBuffer buffer);
+
 }
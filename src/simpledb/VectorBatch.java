@@ -0,0 +1,225 @@
+package simpledb;
+
+/**
+ * VectorBatch is a batch of up to a fixed number of rows stored column by
+ * column, the unit of work of BatchIterators.  An INT_TYPE column is a
+ * primitive int[]; a STRING_TYPE column is an array of its Fields.
+ * <p>
+ * A batch may carry a selection vector: the ascending list of the rows that
+ * are still in the batch.  An operator that drops rows, such as BatchFilter,
+ * shrinks the selection instead of moving the column values, so the rows of
+ * a batch are read as
+ * <pre>
+ *     for (int i = 0; i &lt; batch.numRows(); i++) {
+ *         int row = batch.row(i);
+ *         ... batch.getInt(column, row) ...
+ *     }
+ * </pre>
+ * A batch belongs to the iterator that returned it, which may reuse it for
+ * its next batch.
+ *
+ * @see BatchIterator
+ */
+public class VectorBatch {
+    /** The number of rows the batch operators fill their batches with. */
+    public static final int DEFAULT_ROWS = 1024;
+
+    private final TupleDesc td;
+    private final int capacity;
+    private final int[][] ints;
+    private final Field[][] fields;
+    private int size;
+    // the selected rows, or null if all size rows are selected
+    private int[] selection;
+    private int selected;
+
+    /**
+     * Creates an empty batch of DEFAULT_ROWS rows.
+     */
+    public VectorBatch(TupleDesc td) {
+        this(td, DEFAULT_ROWS);
+    }
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param td the columns of the batch
+     * @param capacity the most rows the batch holds
+     */
+    public VectorBatch(TupleDesc td, int capacity) {
+        this.td = td;
+        this.capacity = capacity;
+        this.ints = new int[td.numFields()][];
+        this.fields = new Field[td.numFields()][];
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getType(i) == Type.INT_TYPE) {
+                this.ints[i] = new int[capacity];
+            } else {
+                this.fields[i] = new Field[capacity];
+            }
+        }
+    }
+
+    /**
+     * Creates a batch that shares the given columns and selection.
+     */
+    private VectorBatch(TupleDesc td, int capacity, int[][] ints, Field[][] fields,
+                        int size, int[] selection, int selected) {
+        this.td = td;
+        this.capacity = capacity;
+        this.ints = ints;
+        this.fields = fields;
+        this.size = size;
+        this.selection = selection;
+        this.selected = selected;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return this.td;
+    }
+
+    /** @return the most rows the batch holds */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /** @return the number of rows filled, selected or not */
+    public int size() {
+        return this.size;
+    }
+
+    /** @return true if no more rows can be added */
+    public boolean isFull() {
+        return this.size == this.capacity;
+    }
+
+    /** @return the number of selected rows */
+    public int numRows() {
+        return this.selection == null ? this.size : this.selected;
+    }
+
+    /** @return the row of the i-th selected row */
+    public int row(int i) {
+        return this.selection == null ? i : this.selection[i];
+    }
+
+    /**
+     * Empties the batch and drops its selection vector.
+     */
+    public void clear() {
+        this.size = 0;
+        this.selection = null;
+        this.selected = 0;
+    }
+
+    /**
+     * Adds a row, which is selected, and returns it; the caller then sets
+     * its column values.
+     *
+     * @throws IllegalStateException if the batch is full or has a
+     *   selection vector
+     */
+    public int addRow() {
+        if (this.isFull() || this.selection != null) {
+            throw new IllegalStateException("cannot add a row to this batch");
+        }
+        return this.size++;
+    }
+
+    /**
+     * Replaces the selection with the first count rows of rows, which must
+     * be ascending rows of the batch; the batch keeps the array.
+     */
+    public void select(int[] rows, int count) {
+        this.selection = rows;
+        this.selected = count;
+    }
+
+    /** @return the primitive values of an INT_TYPE column */
+    public int[] intColumn(int column) {
+        return this.ints[column];
+    }
+
+    /** @return the values of a STRING_TYPE column */
+    public Field[] fieldColumn(int column) {
+        return this.fields[column];
+    }
+
+    public int getInt(int column, int row) {
+        return this.ints[column][row];
+    }
+
+    public void setInt(int column, int row, int value) {
+        this.ints[column][row] = value;
+    }
+
+    /** @return the value of a column in a row, as a Field */
+    public Field getField(int column, int row) {
+        if (this.ints[column] != null) {
+            return new IntField(this.ints[column][row]);
+        }
+        return this.fields[column][row];
+    }
+
+    /** Sets the value of a column in a row from a Field. */
+    public void setField(int column, int row, Field value) {
+        if (this.ints[column] != null) {
+            this.ints[column][row] = ((IntField) value).getValue();
+        } else {
+            this.fields[column][row] = value;
+        }
+    }
+
+    /**
+     * Adds a row with the values of a tuple.
+     */
+    public void addTuple(Tuple t) {
+        int row = this.addRow();
+        for (int i = 0; i < this.ints.length; i++) {
+            this.setField(i, row, t.getField(i));
+        }
+    }
+
+    /** @return a new Tuple with the values of a row */
+    public Tuple getTuple(int row) {
+        Tuple t = new Tuple(this.td);
+        for (int i = 0; i < this.ints.length; i++) {
+            t.setField(i, this.getField(i, row));
+        }
+        return t;
+    }
+
+    /**
+     * Copies the values of a row of another batch into some columns of a
+     * row of this one.
+     *
+     * @param from the batch to copy from
+     * @param fromRow the row to copy
+     * @param row the row to copy to
+     * @param firstColumn the column of this batch the first column of from
+     *   is copied to
+     */
+    public void copyRow(VectorBatch from, int fromRow, int row, int firstColumn) {
+        for (int i = 0; i < from.ints.length; i++) {
+            if (from.ints[i] != null) {
+                this.ints[firstColumn + i][row] = from.ints[i][fromRow];
+            } else {
+                this.fields[firstColumn + i][row] = from.fields[i][fromRow];
+            }
+        }
+    }
+
+    /**
+     * @return a batch with some of the columns of this one, in the given
+     *   order, sharing their values and the selection instead of copying them
+     */
+    public VectorBatch project(int[] columns, TupleDesc td) {
+        int[][] ints = new int[columns.length][];
+        Field[][] fields = new Field[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            ints[i] = this.ints[columns[i]];
+            fields[i] = this.fields[columns[i]];
+        }
+        return new VectorBatch(td, this.capacity, ints, fields, this.size, this.selection, this.selected);
+    }
+}
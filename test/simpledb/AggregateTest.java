@@ -1,14 +1,21 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
 
 public class AggregateTest extends SimpleDbTestBase {
 
@@ -176,6 +183,100 @@ public class AggregateTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(min, op);
   }
 
+  /**
+   * Unit test for an Aggregate that merges morsels of a filtered scan in
+   * parallel, against one over the same scan, for every operator, with and
+   * without grouping, and after rewind and a second open
+   */
+  @Test public void parallelMorsels() throws Exception {
+    HeapFile table = SystemTestUtil.createRandomHeapFile(3, 20000, 100, null, null);
+    TransactionId tid = new TransactionId();
+    Predicate[] filters = { new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(20)) };
+    for (Aggregator.Op op : Aggregator.Op.values()) {
+      for (int gfield : new int[] { Aggregator.NO_GROUPING, 0 }) {
+        Aggregate expected = new Aggregate(new Filter(filters[0], new SeqScan(tid, table.getId(), "t")),
+            2, gfield, op);
+        Aggregate actual = new Aggregate(new ScanMorsels(tid, table.getId(), "t", filters, 2),
+            2, gfield, op, 4);
+        assertEquals(expected.getTupleDesc(), actual.getTupleDesc());
+        expected.open();
+        actual.open();
+        assertFalse(actual.spilled());
+        ArrayList<String> tuples = TestUtil.drainSorted(expected);
+        assertEquals(tuples, TestUtil.drainSorted(actual));
+        actual.rewind();
+        assertEquals(tuples, TestUtil.drainSorted(actual));
+        actual.close();
+        actual.open();
+        assertEquals(tuples, TestUtil.drainSorted(actual));
+        actual.close();
+        expected.close();
+      }
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Unit test for a parallel Aggregate whose groups do not fit in a
+   * one-page budget: each worker spills the tuples of the groups it has no
+   * room for, and the result is the same as the serial Aggregate's, for
+   * every operator, also after rewind and a second open
+   */
+  @Test public void parallelSpills() throws Exception {
+    HeapFile table = SystemTestUtil.createRandomHeapFile(3, 20000, 2000, null, null);
+    TransactionId tid = new TransactionId();
+    Predicate[] filters = { new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(20)) };
+    for (Aggregator.Op op : Aggregator.Op.values()) {
+      Aggregate expected = new Aggregate(new Filter(filters[0], new SeqScan(tid, table.getId(), "t")),
+          2, 0, op);
+      Aggregate actual = new Aggregate(new ScanMorsels(tid, table.getId(), "t", filters, 2),
+          2, 0, op, 4, 1);
+      expected.open();
+      actual.open();
+      assertTrue(actual.spilled());
+      ArrayList<String> tuples = TestUtil.drainSorted(expected);
+      assertTrue(tuples.size() > 1000);
+      assertEquals(tuples, TestUtil.drainSorted(actual));
+      actual.rewind();
+      assertEquals(tuples, TestUtil.drainSorted(actual));
+      actual.close();
+      assertFalse(actual.spilled());
+      actual.open();
+      assertEquals(tuples, TestUtil.drainSorted(actual));
+      actual.close();
+      expected.close();
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Unit test for LogicalPlan.physicalPlan() with a default parallelism:
+   * a GROUP BY over a large table is merged in parallel
+   */
+  @Test public void parallelPlan() throws Exception {
+    File f = SystemTestUtil.createRandomHeapFileUnopened(3, 30000, 50, null, null);
+    HeapFile table = new HeapFile(f, Utility.getTupleDesc(3, "f"));
+    Database.getCatalog().addTable(table, "morsels");
+    TransactionId tid = new TransactionId();
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put("morsels", new TableStats(table.getId(), 1000));
+    String sql = "SELECT m.f0, SUM(m.f2) FROM morsels m WHERE m.f1 < 25 GROUP BY m.f0;";
+    DbIterator serial = Parser.generateLogicalPlan(tid, sql).physicalPlan(tid, stats, false);
+    ParallelSeqScan.setDefaultParallelism(4);
+    DbIterator parallel;
+    try {
+      parallel = Parser.generateLogicalPlan(tid, sql).physicalPlan(tid, stats, false);
+    } finally {
+      ParallelSeqScan.resetDefaultParallelism();
+    }
+    serial.open();
+    parallel.open();
+    assertEquals(TestUtil.drainSorted(serial), TestUtil.drainSorted(parallel));
+    serial.close();
+    parallel.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
   /**
    * JUnit suite target
    */
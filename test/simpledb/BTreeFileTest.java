@@ -0,0 +1,218 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 20000;
+    private static final int KEYS = 2000;
+
+    /** Counts the pages read from disk. */
+    private static class CountingBTreeFile extends BTreeFile {
+        int reads;
+
+        CountingBTreeFile(File f, int keyField, TupleDesc td) {
+            super(f, keyField, td);
+        }
+
+        public Page readPage(PageId pid) {
+            this.reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingBTreeFile btree;
+    private int[] keyCounts;
+
+    private static CountingBTreeFile createBTreeFile(TupleDesc td) throws Exception {
+        File f = File.createTempFile("btree", ".dat");
+        f.deleteOnExit();
+        CountingBTreeFile btree = new CountingBTreeFile(f, 0, td);
+        Database.getCatalog().addTable(btree, UUID.randomUUID().toString());
+        return btree;
+    }
+
+    /**
+     * Set up initial resources for each unit test: a tree of ROWS two-int
+     * tuples, keyed on the first field, with about ROWS / KEYS tuples per key
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        Database.resetBufferPool(500);
+        this.btree = createBTreeFile(Utility.getTupleDesc(2));
+        this.keyCounts = new int[KEYS];
+
+        Random random = new Random(7);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            int key = random.nextInt(KEYS);
+            this.keyCounts[key]++;
+            Database.getBufferPool().insertTuple(tid, this.btree.getId(), Utility.getHeapTuple(new int[] { key, i }));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static ArrayList<Tuple> drain(DbFileIterator it) throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        it.close();
+        return tuples;
+    }
+
+    private static int key(Tuple t) {
+        return ((IntField) t.getField(0)).getValue();
+    }
+
+    /**
+     * Unit test for BTreeFile.iterator(): every tuple, in key order
+     */
+    @Test public void scanInKeyOrder() throws Exception {
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> tuples = drain(this.btree.iterator(tid));
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(ROWS, tuples.size());
+        for (int i = 1; i < tuples.size(); i++) {
+            assertTrue(key(tuples.get(i - 1)) <= key(tuples.get(i)));
+        }
+    }
+
+    /**
+     * Unit test for BTreeFile.indexIterator(): equality and range
+     * predicates return exactly the matching tuples
+     */
+    @Test public void indexPredicates() throws Exception {
+        TransactionId tid = new TransactionId();
+        int probe = KEYS / 3;
+        int below = 0;
+        for (int k = 0; k < probe; k++) below += this.keyCounts[k];
+        int equal = this.keyCounts[probe];
+        int above = ROWS - below - equal;
+
+        assertEquals(equal, count(tid, Predicate.Op.EQUALS, probe));
+        assertEquals(below, count(tid, Predicate.Op.LESS_THAN, probe));
+        assertEquals(below + equal, count(tid, Predicate.Op.LESS_THAN_OR_EQ, probe));
+        assertEquals(above, count(tid, Predicate.Op.GREATER_THAN, probe));
+        assertEquals(above + equal, count(tid, Predicate.Op.GREATER_THAN_OR_EQ, probe));
+        assertEquals(ROWS - equal, count(tid, Predicate.Op.NOT_EQUALS, probe));
+        assertEquals(0, count(tid, Predicate.Op.EQUALS, KEYS));
+        assertEquals(0, count(tid, Predicate.Op.LESS_THAN, 0));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private int count(TransactionId tid, Predicate.Op op, int value) throws Exception {
+        IndexPredicate ipred = new IndexPredicate(op, new IntField(value));
+        ArrayList<Tuple> tuples = drain(this.btree.indexIterator(tid, ipred));
+        for (Tuple t : tuples) {
+            assertTrue(t.getField(0).compare(op, new IntField(value)));
+        }
+        return tuples.size();
+    }
+
+    /**
+     * Unit test for IndexScan: a point lookup reads a path from the root to
+     * a leaf, not the whole file
+     */
+    @Test public void pointLookupReadsFewPages() throws Exception {
+        Database.resetBufferPool(500);
+        this.btree.reads = 0;
+
+        TransactionId tid = new TransactionId();
+        IndexScan scan = new IndexScan(tid, this.btree.getId(), "t",
+                new IndexPredicate(Predicate.Op.EQUALS, new IntField(KEYS / 2)));
+        scan.open();
+        int matches = 0;
+        while (scan.hasNext()) {
+            assertEquals(KEYS / 2, key(scan.next()));
+            matches++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(this.keyCounts[KEYS / 2], matches);
+        assertTrue(this.btree.numPages() > 20);
+        // header, root, and one or two leaves
+        assertTrue("read " + this.btree.reads + " pages", this.btree.reads <= 4);
+    }
+
+    /**
+     * Unit test for BTreeFile.deleteTuple()
+     */
+    @Test public void deleteTuple() throws Exception {
+        TransactionId tid = new TransactionId();
+        int probe = 17;
+        IndexPredicate ipred = new IndexPredicate(Predicate.Op.EQUALS, new IntField(probe));
+        for (Tuple t : drain(this.btree.indexIterator(tid, ipred))) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        assertEquals(0, drain(this.btree.indexIterator(tid, ipred)).size());
+        assertEquals(ROWS - this.keyCounts[probe], drain(this.btree.iterator(tid)).size());
+
+        try {
+            this.btree.deleteTuple(tid, Utility.getHeapTuple(new int[] { probe, 0 }));
+            fail("expected DbException for a tuple that is not in the file");
+        } catch (DbException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for BTreeFile.addTuple(): string keys split internal pages
+     * too, and an aborted insert leaves the tree as it was
+     */
+    @Test public void internalSplitsAndAbort() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+        CountingBTreeFile strings = createBTreeFile(td);
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3000; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField(String.format("key%05d", (i * 7919) % 3000), Type.STRING_LEN));
+            t.setField(1, new IntField(i));
+            Database.getBufferPool().insertTuple(tid, strings.getId(), t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        ArrayList<Tuple> tuples = drain(strings.iterator(tid));
+        assertEquals(3000, tuples.size());
+        for (int i = 0; i < tuples.size(); i++) {
+            assertEquals(String.format("key%05d", i), ((StringField) tuples.get(i).getField(0)).getValue());
+        }
+        IndexPredicate ipred = new IndexPredicate(Predicate.Op.EQUALS,
+                new StringField("key01234", Type.STRING_LEN));
+        assertEquals(1, drain(strings.indexIterator(tid, ipred)).size());
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        for (int i = 0; i < 500; i++) {
+            Database.getBufferPool().insertTuple(tid, this.btree.getId(),
+                    Utility.getHeapTuple(new int[] { i % KEYS, -i }));
+        }
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        assertEquals(ROWS, drain(this.btree.iterator(tid)).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
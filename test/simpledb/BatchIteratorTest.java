@@ -0,0 +1,250 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BatchIteratorTest extends SimpleDbTestBase {
+
+  HeapFile table;
+  ArrayList<ArrayList<Integer>> rows;
+  TransactionId tid;
+
+  /**
+   * Initialize each unit test with a table of several batches
+   */
+  @Before public void createTable() throws Exception {
+    this.rows = new ArrayList<ArrayList<Integer>>();
+    this.table = SystemTestUtil.createRandomHeapFile(3, 5000, 50, null, rows);
+    this.tid = new TransactionId();
+  }
+
+  /**
+   * Unit test for BatchSeqScan, through BatchTupleIterator
+   */
+  @Test public void scan() throws Exception {
+    BatchSeqScan scan = new BatchSeqScan(tid, table.getId(), "t");
+    assertEquals(new SeqScan(tid, table.getId(), "t").getTupleDesc(), scan.getTupleDesc());
+    DbIterator it = new BatchTupleIterator(scan);
+    it.open();
+    SystemTestUtil.matchTuples(it, rows);
+    it.rewind();
+    SystemTestUtil.matchTuples(it, rows);
+    it.close();
+  }
+
+  /**
+   * Unit test for the batches of BatchSeqScan
+   */
+  @Test public void scanBatches() throws Exception {
+    BatchSeqScan scan = new BatchSeqScan(tid, table.getId(), "t");
+    scan.open();
+    int total = 0;
+    VectorBatch batch;
+    while ((batch = scan.nextBatch()) != null) {
+      assertTrue(batch.numRows() <= VectorBatch.DEFAULT_ROWS);
+      if (total + batch.numRows() < rows.size()) assertTrue(batch.isFull());
+      total += batch.numRows();
+    }
+    assertEquals(rows.size(), total);
+    assertNull(scan.nextBatch());
+    scan.close();
+  }
+
+  /**
+   * Unit test for BatchFilter against Filter, with every operator
+   */
+  @Test public void filter() throws Exception {
+    for (Predicate.Op op : Predicate.Op.values()) {
+      Predicate p = new Predicate(1, op, new IntField(20));
+      DbIterator expected = new Filter(p, new SeqScan(tid, table.getId(), "t"));
+      DbIterator actual = new BatchTupleIterator(
+          new BatchFilter(p, new BatchSeqScan(tid, table.getId(), "t")));
+      expected.open();
+      actual.open();
+      TestUtil.compareDbIterators(expected, actual);
+      expected.close();
+      actual.close();
+    }
+  }
+
+  /**
+   * Unit test for two BatchFilters in a row and BatchProject
+   */
+  @Test public void filterProject() throws Exception {
+    Predicate p1 = new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(10));
+    Predicate p2 = new Predicate(2, Predicate.Op.LESS_THAN_OR_EQ, new IntField(30));
+    ArrayList<Integer> fields = new ArrayList<Integer>();
+    fields.add(2);
+    fields.add(0);
+    ArrayList<Type> types = new ArrayList<Type>();
+    types.add(Type.INT_TYPE);
+    types.add(Type.INT_TYPE);
+    DbIterator expected = new Project(fields, types,
+        new Filter(p2, new Filter(p1, new SeqScan(tid, table.getId(), "t"))));
+    BatchProject project = new BatchProject(new int[] { 2, 0 },
+        new BatchFilter(p2, new BatchFilter(p1, new BatchSeqScan(tid, table.getId(), "t"))));
+    assertEquals(expected.getTupleDesc(), project.getTupleDesc());
+    DbIterator actual = new BatchTupleIterator(project);
+    expected.open();
+    actual.open();
+    TestUtil.compareDbIterators(expected, actual);
+    expected.close();
+    actual.close();
+  }
+
+  /**
+   * Unit test for BatchFilter on a string field
+   */
+  @Test public void filterStrings() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    for (int i = 0; i < 3000; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField("s" + i % 7, Type.STRING_LEN));
+      t.setField(1, new IntField(i));
+      tuples.add(t);
+    }
+    Predicate p = new Predicate(0, Predicate.Op.EQUALS, new StringField("s3", Type.STRING_LEN));
+    DbIterator expected = new Filter(p, new TupleIterator(td, tuples));
+    DbIterator actual = new BatchTupleIterator(
+        new BatchFilter(p, new TupleBatchIterator(new TupleIterator(td, tuples), 100)));
+    expected.open();
+    actual.open();
+    TestUtil.compareDbIterators(expected, actual);
+    expected.close();
+    actual.close();
+  }
+
+  /**
+   * Unit test for BatchAggregate against HashAggregate, with and without
+   * grouping
+   */
+  @Test public void aggregate() throws Exception {
+    Aggregator.Op[] ops = { Aggregator.Op.SUM, Aggregator.Op.COUNT, Aggregator.Op.MIN,
+                            Aggregator.Op.MAX, Aggregator.Op.AVG };
+    int[] afields = { 2, HashAggregate.COUNT_ALL, 2, 2, 2 };
+    int[][] gfieldsList = { {}, { 0 }, { 1, 0 } };
+    for (int[] gfields : gfieldsList) {
+      Predicate p = new Predicate(2, Predicate.Op.GREATER_THAN, new IntField(5));
+      DbIterator expected = new HashAggregate(new Filter(p, new SeqScan(tid, table.getId(), "t")),
+          gfields, new int[] { 2, HashAggregate.COUNT_ALL, 2, 2, 2 }, ops);
+      BatchAggregate aggregate = new BatchAggregate(
+          new BatchFilter(p, new BatchSeqScan(tid, table.getId(), "t")), gfields, afields, ops);
+      assertEquals(expected.getTupleDesc(), aggregate.getTupleDesc());
+      DbIterator actual = new BatchTupleIterator(aggregate);
+      expected.open();
+      actual.open();
+      TestUtil.compareDbIterators(expected, actual);
+      expected.rewind();
+      actual.rewind();
+      TestUtil.compareDbIterators(expected, actual);
+      expected.close();
+      actual.close();
+    }
+  }
+
+  /**
+   * Unit test for BatchAggregate of an empty child
+   */
+  @Test public void aggregateEmpty() throws Exception {
+    Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(-1));
+    BatchAggregate aggregate = new BatchAggregate(
+        new BatchFilter(p, new BatchSeqScan(tid, table.getId(), "t")),
+        new int[0], new int[] { HashAggregate.COUNT_ALL }, new Aggregator.Op[] { Aggregator.Op.COUNT });
+    aggregate.open();
+    assertNull(aggregate.nextBatch());
+    aggregate.close();
+  }
+
+  /**
+   * Unit test for BatchHashJoin against HashEquiJoin, with an inner child
+   * of many batches and an output of many batches
+   */
+  @Test public void hashJoin() throws Exception {
+    ArrayList<ArrayList<Integer>> rows2 = new ArrayList<ArrayList<Integer>>();
+    HeapFile table2 = SystemTestUtil.createRandomHeapFile(2, 2000, 50, null, rows2);
+    JoinPredicate p = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+    DbIterator expected = new HashEquiJoin(p, new SeqScan(tid, table.getId(), "t1"),
+        new SeqScan(tid, table2.getId(), "t2"));
+    BatchHashJoin join = new BatchHashJoin(p, new BatchSeqScan(tid, table.getId(), "t1"),
+        new BatchSeqScan(tid, table2.getId(), "t2"));
+    assertEquals(expected.getTupleDesc(), join.getTupleDesc());
+    DbIterator actual = new BatchTupleIterator(join);
+    expected.open();
+    actual.open();
+    TestUtil.compareDbIterators(expected, actual);
+    expected.rewind();
+    actual.rewind();
+    TestUtil.compareDbIterators(expected, actual);
+    expected.close();
+    actual.close();
+  }
+
+  /**
+   * Unit test for BatchHashJoin on a string field, fed by tuple operators
+   */
+  @Test public void hashJoinStrings() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+    ArrayList<Tuple> outer = new ArrayList<Tuple>();
+    ArrayList<Tuple> inner = new ArrayList<Tuple>();
+    for (int i = 0; i < 500; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField("k" + i % 13, Type.STRING_LEN));
+      t.setField(1, new IntField(i));
+      (i % 3 == 0 ? inner : outer).add(t);
+    }
+    JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    DbIterator expected = new HashEquiJoin(p, new TupleIterator(td, outer), new TupleIterator(td, inner));
+    DbIterator actual = new BatchTupleIterator(new BatchHashJoin(p,
+        new TupleBatchIterator(new TupleIterator(td, outer), 64),
+        new TupleBatchIterator(new TupleIterator(td, inner), 64)));
+    expected.open();
+    actual.open();
+    TestUtil.compareDbIterators(expected, actual);
+    expected.close();
+    actual.close();
+  }
+
+  /**
+   * Unit test for TupleBatchIterator and BatchTupleIterator around a tuple
+   * operator
+   */
+  @Test public void adapters() throws Exception {
+    DbIterator child = TestUtil.createTupleList(2, new int[] { 1, 2, 3, 4, 5, 6 });
+    TupleBatchIterator batches = new TupleBatchIterator(child, 2);
+    batches.open();
+    VectorBatch batch = batches.nextBatch();
+    assertEquals(2, batch.numRows());
+    assertEquals(1, batch.getInt(0, 0));
+    assertEquals(4, batch.getInt(1, 1));
+    assertEquals(1, batches.nextBatch().numRows());
+    assertNull(batches.nextBatch());
+    batches.close();
+
+    DbIterator tuples = new BatchTupleIterator(new TupleBatchIterator(
+        TestUtil.createTupleList(2, new int[] { 1, 2, 3, 4, 5, 6 }), 2));
+    tuples.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(2, new int[] { 1, 2, 3, 4, 5, 6 }), tuples);
+    assertFalse(tuples.hasNext());
+    tuples.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BatchIteratorTest.class);
+  }
+}
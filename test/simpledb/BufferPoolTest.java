@@ -7,13 +7,19 @@ import simpledb.systemtest.SystemTestUtil;
 
 import java.io.File;
 import java.io.IOException;
-import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import junit.framework.JUnit4TestAdapter;
 
@@ -36,9 +42,9 @@ public class BufferPoolTest extends SimpleDbTestBase {
     }
 
     /**
-     * Unit test for BufferPool.findLRUPage()
+     * Unit test for BufferPool.findVictimPage()
      */
-    @Test public void testFindLRUPage() throws Exception {
+    @Test public void testFindVictimPage() throws Exception {
         BufferPool pool = new BufferPool(3);
 
         Page lruPage = pool.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
@@ -46,14 +52,14 @@ public class BufferPoolTest extends SimpleDbTestBase {
             pool.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
         }
 
-        assertEquals(lruPage, pool.findLRUPage());
+        assertEquals(lruPage, pool.findVictimPage());
     }
 
     /**
-     * Unit test for BufferPool.findLRUPage() with the first page being evicted
+     * Unit test for BufferPool.findVictimPage() with the first page being evicted
      *
      */
-    @Test public void testFindLRUPageWithEviction() throws Exception {
+    @Test public void testFindVictimPageWithEviction() throws Exception {
         BufferPool pool = new BufferPool(2);
         Page lruPage = null;
 
@@ -63,7 +69,236 @@ public class BufferPoolTest extends SimpleDbTestBase {
             if (i == 1) lruPage = page;
         }
 
-        assertEquals(lruPage.getId().pageno(), pool.findLRUPage().getId().pageno());
+        assertEquals(lruPage.getId().pageno(), pool.findVictimPage().getId().pageno());
+    }
+
+    /**
+     * Unit test for BufferPool.findVictimPage() skipping dirty pages, with
+     * every eviction policy
+     */
+    @Test public void testFindVictimPageSkipsDirtyPages() throws Exception {
+        for (EvictionPolicy.Kind kind : EvictionPolicy.Kind.values()) {
+            BufferPool pool = new BufferPool(3, kind);
+            Page first = pool.getPage(tid, new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+            Page second = pool.getPage(tid, new HeapPageId(hf.getId(), 1), Permissions.READ_ONLY);
+
+            first.markDirty(true, tid);
+            assertEquals(kind.name(), second, pool.findVictimPage());
+
+            second.markDirty(true, tid);
+            assertEquals(kind.name(), null, pool.findVictimPage());
+        }
+    }
+
+    /**
+     * Unit test for a sharded BufferPool: a miss evicts from other shards
+     * when its own shard has nothing to give up
+     */
+    @Test public void testShardedPoolEvictsAcrossShards() throws Exception {
+        HeapFile bigFile = SystemTestUtil.createRandomHeapFile(2, 504 * 40, null, null);
+        BufferPool pool = new BufferPool(16, EvictionPolicy.Kind.CLOCK, 2);
+        assertEquals(2, pool.numShards());
+
+        for (int i = 0; i < bigFile.numPages(); i++) {
+            Page page = pool.getPage(tid, new HeapPageId(bigFile.getId(), i), Permissions.READ_ONLY);
+            assertEquals(i, page.getId().pageno());
+        }
+
+        // dirty everything but one page; the next miss must evict that page,
+        // whichever shard it lives in
+        int lastPage = bigFile.numPages() - 1;
+        for (int i = lastPage - 15; i < lastPage; i++) {
+            pool.getPage(tid, new HeapPageId(bigFile.getId(), i), Permissions.READ_ONLY).markDirty(true, tid);
+        }
+        pool.getPage(tid, new HeapPageId(bigFile.getId(), 0), Permissions.READ_ONLY);
+        assertEquals(0, pool.findVictimPage().getId().pageno());
+    }
+
+    /**
+     * Unit test for BufferPool.getPage(): a miss reads its page outside the
+     * shard lock, so hits on the same shard do not wait for it, and a
+     * second miss on the same page waits for the first read instead of
+     * reading the page again
+     */
+    @Test public void testMissReadsOutsideShardLock() throws Exception {
+        class BlockingHeapFile extends HeapFile {
+            volatile int blockedPage = -1;
+            AtomicInteger blockedReads = new AtomicInteger();
+            CountDownLatch reading = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+
+            BlockingHeapFile(File f, TupleDesc td) {
+                super(f, td);
+            }
+
+            @Override
+            public Page readPage(PageId pid) {
+                if (pid.pageno() == blockedPage) {
+                    blockedReads.incrementAndGet();
+                    reading.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return super.readPage(pid);
+            }
+        }
+
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 4, 1000, null, null);
+        BlockingHeapFile file = new BlockingHeapFile(f, td);
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+        BufferPool pool = new BufferPool(16, EvictionPolicy.Kind.CLOCK, 1);
+        HeapPageId resident = new HeapPageId(file.getId(), 0);
+        HeapPageId missed = new HeapPageId(file.getId(), 1);
+        pool.getPage(tid, resident, Permissions.READ_ONLY);
+
+        file.blockedPage = 1;
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<Page> first = executor.submit(() -> pool.getPage(tid, missed, Permissions.READ_ONLY));
+            assertTrue(file.reading.await(10, TimeUnit.SECONDS));
+            Future<Page> second = executor.submit(() -> pool.getPage(tid, missed, Permissions.READ_ONLY));
+            Future<Page> hit = executor.submit(() -> pool.getPage(tid, resident, Permissions.READ_ONLY));
+            assertEquals(resident, hit.get(10, TimeUnit.SECONDS).getId());
+            assertFalse(second.isDone());
+
+            file.release.countDown();
+            assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, file.blockedReads.get());
+        } finally {
+            file.release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Unit test for BufferPool.prefetchPages(): a run of pages is read with
+     * one batched read, and getPage then finds them resident
+     */
+    @Test public void testPrefetchPages() throws Exception {
+        class CountingHeapFile extends HeapFile {
+            int pageReads = 0;
+            int batchReads = 0;
+
+            CountingHeapFile(File f, TupleDesc td) {
+                super(f, td);
+            }
+
+            @Override
+            public Page readPage(PageId pid) {
+                pageReads++;
+                return super.readPage(pid);
+            }
+
+            @Override
+            public List<Page> readPages(int firstPageNo, int count) throws IOException {
+                batchReads++;
+                return super.readPages(firstPageNo, count);
+            }
+        }
+
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 20, 1000, null, null);
+        CountingHeapFile file = new CountingHeapFile(f, td);
+        Database.getCatalog().addTable(file, SystemTestUtil.getUUID());
+
+        BufferPool pool = new BufferPool(100);
+        pool.setPrefetchEnabled(true);
+        pool.prefetchPages(file, 0, file.numPages());
+        for (int i = 0; i < file.numPages(); i++) {
+            Page page = pool.getPage(tid, new HeapPageId(file.getId(), i), Permissions.READ_ONLY);
+            assertEquals(i, page.getId().pageno());
+        }
+
+        assertEquals(1, file.batchReads);
+        assertEquals(0, file.pageReads);
+    }
+
+    /**
+     * Unit test for ScanRing: a scan over a table larger than the pool
+     * recycles its own frames and leaves the other resident pages alone
+     */
+    @Test public void testScanRingKeepsWorkingSet() throws Exception {
+        class CountingHeapFile extends HeapFile {
+            int pageReads = 0;
+
+            CountingHeapFile(File f, TupleDesc td) {
+                super(f, td);
+            }
+
+            @Override
+            public Page readPage(PageId pid) {
+                pageReads++;
+                return super.readPage(pid);
+            }
+        }
+
+        File hotFile = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 10, 1000, null, null);
+        CountingHeapFile hot = new CountingHeapFile(hotFile, td);
+        Database.getCatalog().addTable(hot, SystemTestUtil.getUUID());
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * 100, null, null);
+
+        BufferPool pool = Database.resetBufferPool(40);
+        for (int i = 0; i < hot.numPages(); i++) {
+            pool.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        }
+
+        DbFileIterator it = big.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(504 * 100, count);
+
+        hot.pageReads = 0;
+        for (int i = 0; i < hot.numPages(); i++) {
+            pool.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        }
+        assertEquals(0, hot.pageReads);
+    }
+
+    /**
+     * Unit test for ScanRing.forScan(): a scan through a ring of a pool of
+     * the default size still reads ahead, in batches
+     */
+    @Test public void testScanRingPrefetches() throws Exception {
+        class CountingHeapFile extends HeapFile {
+            int batchReads = 0;
+
+            CountingHeapFile(File f, TupleDesc td) {
+                super(f, td);
+            }
+
+            @Override
+            public List<Page> readPages(int firstPageNo, int count) throws IOException {
+                batchReads++;
+                return super.readPages(firstPageNo, count);
+            }
+        }
+
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * 100, 1000, null, null);
+        CountingHeapFile big = new CountingHeapFile(f, td);
+        Database.getCatalog().addTable(big, SystemTestUtil.getUUID());
+
+        BufferPool pool = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        pool.setPrefetchEnabled(true);
+        ScanRing ring = ScanRing.forScan(pool, big.numPages());
+        assertTrue(ring.capacity() >= 2 * HeapFileIterator.MIN_PREFETCH_PAGES);
+
+        DbFileIterator it = big.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(504 * 100, count);
+        assertTrue(big.batchReads > 0);
     }
 
     /**
@@ -0,0 +1,113 @@
+package simpledb;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+public class EvictionPolicyTest {
+    private static PageId page(int pageno) {
+        return new HeapPageId(1, pageno);
+    }
+
+    /**
+     * Unit test for LRUPolicy: the least recently touched page is the victim
+     */
+    @Test public void lruEvictsLeastRecentlyUsed() {
+        EvictionPolicy policy = new LRUPolicy();
+        policy.pageAdded(page(0));
+        policy.pageAdded(page(1));
+        policy.pageAdded(page(2));
+        policy.pageAccessed(page(0));
+
+        assertEquals(page(1), policy.chooseVictim(pid -> true));
+        policy.pageRemoved(page(1));
+        assertEquals(page(2), policy.chooseVictim(pid -> true));
+    }
+
+    /**
+     * Unit test for ClockPolicy: referenced pages get a second chance
+     */
+    @Test public void clockGivesSecondChance() {
+        EvictionPolicy policy = new ClockPolicy(3);
+        policy.pageAdded(page(0));
+        policy.pageAdded(page(1));
+        policy.pageAdded(page(2));
+
+        // the first sweep clears every reference bit and stops at page 0
+        assertEquals(page(0), policy.chooseVictim(pid -> true));
+        policy.pageRemoved(page(0));
+
+        // page 1 is touched again, so the hand skips it
+        policy.pageAccessed(page(1));
+        assertEquals(page(2), policy.chooseVictim(pid -> true));
+    }
+
+    /**
+     * Unit test for ClockPolicy: more pages than the announced capacity
+     */
+    @Test public void clockGrows() {
+        EvictionPolicy policy = new ClockPolicy(1);
+        for (int i = 0; i < 10; i++) {
+            policy.pageAdded(page(i));
+        }
+        Set<PageId> victims = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            PageId victim = policy.chooseVictim(pid -> true);
+            victims.add(victim);
+            policy.pageRemoved(victim);
+        }
+        assertEquals(10, victims.size());
+        assertNull(policy.chooseVictim(pid -> true));
+    }
+
+    /**
+     * Unit test for LRUKPolicy: pages seen once are evicted before pages seen
+     * K times, even if they were referenced more recently
+     */
+    @Test public void lruKIsScanResistant() {
+        EvictionPolicy policy = new LRUKPolicy(2);
+        policy.pageAdded(page(0));
+        policy.pageAccessed(page(0));
+        policy.pageAdded(page(1));
+        policy.pageAccessed(page(1));
+
+        // a scan touches pages 2 and 3 once each
+        policy.pageAdded(page(2));
+        policy.pageAdded(page(3));
+
+        assertEquals(page(2), policy.chooseVictim(pid -> true));
+        policy.pageRemoved(page(2));
+        assertEquals(page(3), policy.chooseVictim(pid -> true));
+        policy.pageRemoved(page(3));
+
+        // among hot pages, the oldest second-to-last reference loses, even
+        // if that page was the most recently used one
+        policy.pageAccessed(page(0));
+        assertEquals(page(0), policy.chooseVictim(pid -> true));
+    }
+
+    /**
+     * Unit test for every policy: pages that are not evictable are skipped
+     */
+    @Test public void skipsPagesThatAreNotEvictable() {
+        for (EvictionPolicy.Kind kind : EvictionPolicy.Kind.values()) {
+            EvictionPolicy policy = kind.create(4);
+            for (int i = 0; i < 4; i++) {
+                policy.pageAdded(page(i));
+            }
+            assertEquals(kind.name(), page(3), policy.chooseVictim(pid -> pid.pageno() == 3));
+            assertNull(kind.name(), policy.chooseVictim(pid -> false));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
@@ -0,0 +1,224 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HashAggregateTest extends SimpleDbTestBase {
+
+  int width1 = 3;
+  DbIterator scan1;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleList() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 1, 2,
+                    1, 2, 4,
+                    1, 1, 6,
+                    3, 1, 2,
+                    3, 1, -4,
+                    1, 2, 6,
+                    5, 5, 7 });
+  }
+
+  /**
+   * Unit test for HashAggregate.getTupleDesc()
+   */
+  @Test public void getTupleDesc() {
+    HashAggregate op = new HashAggregate(scan1, new int[] { 1, 0 }, new int[] { 2, HashAggregate.COUNT_ALL },
+        new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.COUNT });
+    TupleDesc td = op.getTupleDesc();
+    assertEquals(4, td.numFields());
+    assertEquals(scan1.getTupleDesc().getFieldName(1), td.getFieldName(0));
+    assertEquals(scan1.getTupleDesc().getFieldName(0), td.getFieldName(1));
+    assertEquals("sum (" + scan1.getTupleDesc().getFieldName(2) + ")", td.getFieldName(2));
+    assertEquals("count (*)", td.getFieldName(3));
+  }
+
+  /**
+   * Unit test for HashAggregate on two group-by fields and every
+   * aggregate, in one pass
+   */
+  @Test public void twoGroupsAllAggregates() throws Exception {
+    HashAggregate op = new HashAggregate(scan1, new int[] { 0, 1 }, new int[] { 2, 2, 2, 2, 2 },
+        new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.COUNT, Aggregator.Op.MIN,
+                              Aggregator.Op.MAX, Aggregator.Op.AVG });
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(7,
+        new int[] { 1, 1, 8, 2, 2, 6, 4,
+                    1, 2, 10, 2, 4, 6, 5,
+                    3, 1, -2, 2, -4, 2, -1,
+                    5, 5, 7, 1, 7, 7, 7 });
+    TestUtil.compareDbIterators(expected, op);
+
+    op.rewind();
+    expected.rewind();
+    TestUtil.compareDbIterators(expected, op);
+    op.close();
+  }
+
+  /**
+   * Unit test for HashAggregate without grouping
+   */
+  @Test public void noGrouping() throws Exception {
+    HashAggregate op = new HashAggregate(scan1, new int[0], new int[] { HashAggregate.COUNT_ALL, 1 },
+        new Aggregator.Op[] { Aggregator.Op.COUNT, Aggregator.Op.MAX });
+    op.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(2, new int[] { 7, 5 }), op);
+    op.close();
+  }
+
+  /**
+   * Unit test for HashAggregate grouped on a string and an int field
+   */
+  @Test public void stringAndIntGroups() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE });
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    String[] keys = { "a", "b", "a", "a", "b" };
+    int[] ints = { 1, 1, 2, 1, 1 };
+    for (int i = 0; i < keys.length; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField(keys[i], Type.STRING_LEN));
+      t.setField(1, new IntField(ints[i]));
+      t.setField(2, new IntField(i));
+      tuples.add(t);
+    }
+    HashAggregate op = new HashAggregate(new TupleIterator(td, tuples), new int[] { 0, 1 },
+        new int[] { 2, 0 }, new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.COUNT });
+    op.open();
+    String[] expectedKeys = { "a", "b", "a" };
+    int[][] expected = { { 1, 3, 2 }, { 1, 5, 2 }, { 2, 2, 1 } };
+    for (int i = 0; i < expectedKeys.length; i++) {
+      Tuple t = op.next();
+      assertEquals(new StringField(expectedKeys[i], Type.STRING_LEN), t.getField(0));
+      for (int j = 0; j < 3; j++) {
+        assertEquals(new IntField(expected[i][j]), t.getField(j + 1));
+      }
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    op.close();
+  }
+
+  /**
+   * Unit test for HashAggregate: only COUNT is allowed over a string field
+   */
+  @Test(expected = IllegalArgumentException.class) public void sumOfString() {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+    new HashAggregate(new TupleIterator(td, new ArrayList<Tuple>()), new int[0], new int[] { 0 },
+        new Aggregator.Op[] { Aggregator.Op.SUM });
+  }
+
+  /**
+   * Unit test for HashAggregate over more groups than its budget: it
+   * spills, partitions again, and returns the same groups as Aggregate,
+   * also after rewind
+   */
+  @Test public void spillsUnderBudget() throws Exception {
+    TupleDesc td = Utility.getTupleDesc(2);
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    for (int i = 0; i < 30000; i++) {
+      tuples.add(Utility.getHeapTuple(new int[] { (int) ((i * 7919L) % 20000), i }));
+    }
+    for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.MIN, Aggregator.Op.COUNT }) {
+      HashAggregate hash = new HashAggregate(new TupleIterator(td, tuples), new int[] { 0 },
+          new int[] { 1 }, new Aggregator.Op[] { op }, 1);
+      Aggregate expected = new Aggregate(new TupleIterator(td, tuples), 1, 0, op);
+      hash.open();
+      expected.open();
+      assertTrue(hash.spilled());
+      ArrayList<String> actual = TestUtil.drainSorted(hash);
+      assertEquals(TestUtil.drainSorted(expected), actual);
+      hash.rewind();
+      assertEquals(actual, TestUtil.drainSorted(hash));
+      hash.close();
+      expected.close();
+    }
+  }
+
+  /**
+   * Unit test for HashAggregate grouped on a string field over more groups
+   * than its budget
+   */
+  @Test public void spillsStringGroups() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    for (int i = 0; i < 3000; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField("g" + (i * 7919L) % 1000, Type.STRING_LEN));
+      t.setField(1, new IntField(i));
+      tuples.add(t);
+    }
+    HashAggregate hash = new HashAggregate(new TupleIterator(td, tuples), new int[] { 0 },
+        new int[] { 0 }, new Aggregator.Op[] { Aggregator.Op.COUNT }, 1);
+    Aggregate expected = new Aggregate(new TupleIterator(td, tuples), 0, 0, Aggregator.Op.COUNT);
+    hash.open();
+    expected.open();
+    assertTrue(hash.spilled());
+    assertEquals(TestUtil.drainSorted(expected), TestUtil.drainSorted(hash));
+    hash.close();
+    expected.close();
+  }
+
+  /**
+   * Unit test for Parser.generateLogicalPlan() with two GROUP BY fields and
+   * several aggregates, including COUNT(*)
+   */
+  @Test public void parseGroupBy() throws Exception {
+    ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+    File f = SystemTestUtil.createRandomHeapFileUnopened(3, 2000, 5, null, rows);
+    HeapFile table = new HeapFile(f, Utility.getTupleDesc(3, "f"));
+    Database.getCatalog().addTable(table, "grouped");
+
+    // b, a -> sum, count, max
+    HashMap<List<Integer>, int[]> expected = new HashMap<List<Integer>, int[]>();
+    for (ArrayList<Integer> row : rows) {
+      int[] aggs = expected.computeIfAbsent(Arrays.asList(row.get(1), row.get(0)),
+          k -> new int[] { 0, 0, Integer.MIN_VALUE });
+      aggs[0] += row.get(2);
+      aggs[1]++;
+      aggs[2] = Math.max(aggs[2], row.get(2));
+    }
+
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = Parser.generateLogicalPlan(tid,
+        "SELECT g.f1, g.f0, SUM(g.f2), COUNT(*), MAX(g.f2) FROM grouped g GROUP BY g.f0, g.f1;");
+    DbIterator plan = lp.physicalPlan(tid, new HashMap<String, TableStats>(), false);
+    assertEquals(5, plan.getTupleDesc().numFields());
+    plan.open();
+    int groups = 0;
+    while (plan.hasNext()) {
+      Tuple t = plan.next();
+      int[] aggs = expected.get(Arrays.asList(((IntField) t.getField(0)).getValue(),
+          ((IntField) t.getField(1)).getValue()));
+      for (int j = 0; j < 3; j++) {
+        assertEquals(aggs[j], ((IntField) t.getField(j + 2)).getValue());
+      }
+      groups++;
+    }
+    plan.close();
+    Database.getBufferPool().transactionComplete(tid);
+    assertEquals(expected.size(), groups);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HashAggregateTest.class);
+  }
+}
@@ -0,0 +1,156 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HashEquiJoinTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int width2 = 3;
+  DbIterator scan1;
+  DbIterator scan2;
+  DbIterator eqJoin;
+  DbIterator dupJoin;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 1, 2,
+                    3, 4,
+                    5, 6,
+                    7, 8 });
+    this.scan2 = TestUtil.createTupleList(width2,
+        new int[] { 1, 2, 3,
+                    2, 3, 4,
+                    3, 4, 5,
+                    4, 5, 6,
+                    5, 6, 7 });
+    this.eqJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 1, 2, 1, 2, 3,
+                    3, 4, 3, 4, 5,
+                    5, 6, 5, 6, 7 });
+    // the second field of scan1 joined with the third field of scan2
+    this.dupJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 3, 4, 2, 3, 4,
+                    5, 6, 4, 5, 6 });
+  }
+
+  /**
+   * Unit test for HashEquiJoin.getTupleDesc()
+   */
+  @Test public void getTupleDesc() {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin op = new HashEquiJoin(pred, scan1, scan2);
+    TupleDesc expected = Utility.getTupleDesc(width1 + width2);
+    TupleDesc actual = op.getTupleDesc();
+    assertEquals(expected, actual);
+  }
+
+  /**
+   * Unit test for HashEquiJoin.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin op = new HashEquiJoin(pred, scan1, scan2);
+    op.open();
+    while (op.hasNext()) {
+      assertNotNull(op.next());
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    op.rewind();
+
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+  }
+
+  /**
+   * Unit test for HashEquiJoin.getNext()
+   */
+  @Test public void eqJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin op = new HashEquiJoin(pred, scan1, scan2);
+    op.open();
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+  }
+
+  /**
+   * Unit test for HashEquiJoin.getNext() on fields other than the first,
+   * with outer tuples that match nothing
+   */
+  @Test public void otherFields() throws Exception {
+    JoinPredicate pred = new JoinPredicate(1, Predicate.Op.EQUALS, 2);
+    HashEquiJoin op = new HashEquiJoin(pred, scan1, scan2);
+    op.open();
+    dupJoin.open();
+    TestUtil.matchAllTuples(dupJoin, op);
+  }
+
+  /**
+   * Unit test for the HashEquiJoin constructor: only equality can be hashed
+   */
+  @Test public void rejectsInequality() {
+    try {
+      new HashEquiJoin(new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0), scan1, scan2);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Unit test for HashEquiJoin under a memory budget the inner child does
+   * not fit in: the spilled join returns the same tuples, also after a
+   * rewind
+   */
+  @Test public void spillsUnderBudget() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin inMemory = new HashEquiJoin(pred, TestUtil.createPairIterator(3000, 7, 900), TestUtil.createPairIterator(5000, 3, 1000));
+    inMemory.open();
+    ArrayList<String> expected = TestUtil.drainSorted(inMemory);
+    assertTrue(!inMemory.spilled());
+    inMemory.close();
+
+    HashEquiJoin op = new HashEquiJoin(pred, TestUtil.createPairIterator(3000, 7, 900), TestUtil.createPairIterator(5000, 3, 1000), 2);
+    op.open();
+    assertTrue(op.spilled());
+    assertEquals(15000, expected.size());
+    assertEquals(expected, TestUtil.drainSorted(op));
+    op.rewind();
+    assertEquals(expected, TestUtil.drainSorted(op));
+    op.close();
+  }
+
+  /**
+   * Unit test for HashEquiJoin with an inner child whose tuples all share
+   * one key, which partitioning cannot divide
+   */
+  @Test public void spillsSkewedKey() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    HashEquiJoin op = new HashEquiJoin(pred, TestUtil.createPairIterator(20, 1, 4), TestUtil.createPairIterator(3000, 0, 1), 1);
+    op.open();
+    assertTrue(op.spilled());
+    assertEquals(5 * 3000, TestUtil.drainSorted(op).size());
+    op.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HashEquiJoinTest.class);
+  }
+}
@@ -0,0 +1,275 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HashIndexFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 20000;
+    private static final int KEYS = 2000;
+
+    /** Counts the pages read from disk. */
+    private static class CountingHashIndexFile extends HashIndexFile {
+        int reads;
+
+        CountingHashIndexFile(File f, int keyField, TupleDesc td) {
+            super(f, keyField, td);
+        }
+
+        public Page readPage(PageId pid) {
+            this.reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    /** Counts the pages read from disk. */
+    private static class CountingHeapFile extends HeapFile {
+        int reads;
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        public Page readPage(PageId pid) {
+            this.reads++;
+            return super.readPage(pid);
+        }
+
+        public List<Page> readPages(int firstPageNo, int count) throws IOException {
+            this.reads += count;
+            return super.readPages(firstPageNo, count);
+        }
+    }
+
+    private CountingHashIndexFile hash;
+    private int[] keyCounts;
+
+    private static CountingHashIndexFile createHashIndexFile(TupleDesc td) throws Exception {
+        File f = File.createTempFile("hash", ".dat");
+        f.deleteOnExit();
+        CountingHashIndexFile hash = new CountingHashIndexFile(f, 0, td);
+        Database.getCatalog().addTable(hash, UUID.randomUUID().toString());
+        return hash;
+    }
+
+    /**
+     * Set up initial resources for each unit test: a hash table of ROWS
+     * two-int tuples, keyed on the first field, with about ROWS / KEYS tuples
+     * per key
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        Database.resetBufferPool(500);
+        this.hash = createHashIndexFile(Utility.getTupleDesc(2));
+        this.keyCounts = new int[KEYS];
+
+        Random random = new Random(7);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            int key = random.nextInt(KEYS);
+            this.keyCounts[key]++;
+            Database.getBufferPool().insertTuple(tid, this.hash.getId(), Utility.getHeapTuple(new int[] { key, i }));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static ArrayList<Tuple> drain(DbFileIterator it) throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        it.close();
+        return tuples;
+    }
+
+    private static int key(Tuple t) {
+        return ((IntField) t.getField(0)).getValue();
+    }
+
+    private int numBuckets(TransactionId tid) throws Exception {
+        HashHeaderPage header = (HashHeaderPage) Database.getBufferPool().getPage(
+                tid, this.hash.headerId(), Permissions.READ_ONLY);
+        return header.numBuckets();
+    }
+
+    /**
+     * Unit test for HashIndexFile.addTuple(): the table grows by splitting
+     * buckets, and a scan still returns every tuple exactly once
+     */
+    @Test public void growsAndKeepsEveryTuple() throws Exception {
+        TransactionId tid = new TransactionId();
+        assertTrue(numBuckets(tid) > 8);
+        ArrayList<Tuple> tuples = drain(this.hash.iterator(tid));
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(ROWS, tuples.size());
+        int[] counts = new int[KEYS];
+        boolean[] seen = new boolean[ROWS];
+        for (Tuple t : tuples) {
+            counts[key(t)]++;
+            int value = ((IntField) t.getField(1)).getValue();
+            assertFalse(seen[value]);
+            seen[value] = true;
+        }
+        assertArrayEquals(this.keyCounts, counts);
+    }
+
+    /**
+     * Unit test for HashIndexFile.indexIterator(): equality finds exactly
+     * the tuples with the key, and other predicates fall back to a scan
+     */
+    @Test public void indexPredicates() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int key = 0; key < KEYS; key += 37) {
+            ArrayList<Tuple> found = drain(this.hash.indexIterator(tid,
+                    new IndexPredicate(Predicate.Op.EQUALS, new IntField(key))));
+            assertEquals(this.keyCounts[key], found.size());
+            for (Tuple t : found) {
+                assertEquals(key, key(t));
+            }
+        }
+
+        int probe = KEYS / 3;
+        int below = 0;
+        for (int key = 0; key < probe; key++) below += this.keyCounts[key];
+        assertEquals(below, drain(this.hash.indexIterator(tid,
+                new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(probe)))).size());
+        assertEquals(0, drain(this.hash.indexIterator(tid,
+                new IndexPredicate(Predicate.Op.EQUALS, new IntField(KEYS + 1)))).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for HashIndexFile.indexIterator(): an equality lookup reads
+     * the header and one bucket, not the table
+     */
+    @Test public void pointLookupReadsFewPages() throws Exception {
+        Database.resetBufferPool(500);
+        this.hash.reads = 0;
+
+        TransactionId tid = new TransactionId();
+        int probe = KEYS / 2;
+        ArrayList<Tuple> found = drain(this.hash.indexIterator(tid,
+                new IndexPredicate(Predicate.Op.EQUALS, new IntField(probe))));
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(this.keyCounts[probe], found.size());
+        assertTrue("read " + this.hash.reads + " pages", this.hash.reads <= 3);
+    }
+
+    /**
+     * Unit test for HashIndexFile.deleteTuple()
+     */
+    @Test public void deleteTuple() throws Exception {
+        TransactionId tid = new TransactionId();
+        int probe = 17;
+        IndexPredicate ipred = new IndexPredicate(Predicate.Op.EQUALS, new IntField(probe));
+        ArrayList<Tuple> found = drain(this.hash.indexIterator(tid, ipred));
+        assertTrue(found.size() > 1);
+        for (Tuple t : found) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        assertEquals(0, drain(this.hash.indexIterator(tid, ipred)).size());
+        try {
+            Database.getBufferPool().deleteTuple(tid, found.get(0));
+            fail("deleted a tuple that is not in the file");
+        } catch (DbException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        assertEquals(ROWS - found.size(), drain(this.hash.iterator(tid)).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for HashIndexFile under abort: the splits and overflow
+     * pages of an aborted transaction are undone
+     */
+    @Test public void abortUndoesSplits() throws Exception {
+        TransactionId tid = new TransactionId();
+        int buckets = numBuckets(tid);
+        for (int i = 0; i < ROWS / 2; i++) {
+            Database.getBufferPool().insertTuple(tid, this.hash.getId(),
+                    Utility.getHeapTuple(new int[] { KEYS + i, -i }));
+        }
+        assertTrue(numBuckets(tid) > buckets);
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        assertEquals(buckets, numBuckets(tid));
+        assertEquals(ROWS, drain(this.hash.iterator(tid)).size());
+        assertEquals(0, drain(this.hash.indexIterator(tid,
+                new IndexPredicate(Predicate.Op.EQUALS, new IntField(KEYS + 1)))).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for LogicalPlan.physicalPlan(): an equality filter on a
+     * field with a hash index becomes an IndexScan that reads a few table
+     * pages instead of all of them
+     */
+    @Test public void plannerProbesHashIndex() throws Exception {
+        ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, ROWS, ROWS, null, rows);
+        CountingHeapFile table = new CountingHeapFile(f, Utility.getTupleDesc(2, "f"));
+        String name = UUID.randomUUID().toString();
+        Database.getCatalog().addTable(table, name);
+        IndexDescriptor index = new IndexDescriptor(name + ".f0.hash", table.getId(), 0,
+                createHashIndexFile(IndexDescriptor.entryDesc(Type.INT_TYPE)));
+        Database.getCatalog().addIndex(index);
+        index.build();
+
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(name, new TableStats(table.getId(), 1000));
+
+        int probe = rows.get(ROWS / 2).get(0);
+        int expected = 0;
+        for (ArrayList<Integer> row : rows) {
+            if (row.get(0) == probe) expected++;
+        }
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.f0", Predicate.Op.EQUALS, Integer.toString(probe));
+        lp.addProjectField("null.*", null);
+
+        Database.resetBufferPool(500);
+        table.reads = 0;
+        TransactionId tid = new TransactionId();
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        int found = 0;
+        plan.open();
+        while (plan.hasNext()) {
+            assertEquals(probe, ((IntField) plan.next().getField(0)).getValue());
+            found++;
+        }
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(expected, found);
+        assertTrue("read " + table.reads + " of " + table.numPages() + " pages",
+                table.reads <= expected && table.reads < table.numPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashIndexFileTest.class);
+    }
+}
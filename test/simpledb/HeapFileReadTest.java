@@ -77,6 +77,22 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.getSlot(20));
     }
 
+    /**
+     * Unit test for HeapFile.close(): a closed file reopens its channel on
+     * the next read
+     */
+    @Test
+    public void readPageAfterClose() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        hf.readPage(pid);
+        hf.close();
+        // closing twice is harmless
+        hf.close();
+
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        assertEquals(484, page.getNumEmptySlots());
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
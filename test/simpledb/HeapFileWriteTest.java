@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.util.ArrayList;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -69,6 +71,46 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.addTuple(): an insert goes to the page the
+     * free-space map points at, and the map follows commits, aborts and a
+     * reopened table
+     */
+    @Test public void addTupleUsesFreeSpaceMap() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 3, null, null);
+        assertEquals(3, hf.numPages());
+        assertEquals(-1, hf.getFreeSpaceMap().nextPageWithSpace(0));
+
+        // free a slot on page 1 and commit
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int i = 0; i < 505; i++) {
+            it.next();
+        }
+        Database.getBufferPool().deleteTuple(tid, it.next());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(1, hf.getFreeSpaceMap().nextPageWithSpace(0));
+
+        // an aborted insert leaves the slot free
+        TransactionId aborted = new TransactionId();
+        Database.getBufferPool().insertTuple(aborted, hf.getId(), Utility.getHeapTuple(1, 2));
+        assertEquals(-1, hf.getFreeSpaceMap().nextPageWithSpace(0));
+        Database.getBufferPool().transactionComplete(aborted, false);
+        assertEquals(1, hf.getFreeSpaceMap().nextPageWithSpace(0));
+
+        // the map is read back from its sidecar
+        HeapFile reopened = new HeapFile(hf.getFile(), hf.getTupleDesc());
+        assertTrue(reopened.getFreeSpaceMap().getFile().exists());
+        assertEquals(1, reopened.getFreeSpaceMap().nextPageWithSpace(0));
+        reopened.close();
+
+        tid = new TransactionId();
+        ArrayList<Page> pages = hf.addTuple(tid, Utility.getHeapTuple(1, 2));
+        assertEquals(1, pages.get(0).getId().pageno());
+        assertEquals(3, hf.numPages());
+    }
+
     /**
      * JUnit suite target
      */
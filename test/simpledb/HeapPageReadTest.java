@@ -6,13 +6,15 @@ import simpledb.systemtest.SystemTestUtil;
 
 import java.io.File;
 import java.io.IOException;
-import java.time.Instant;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import junit.framework.JUnit4TestAdapter;
 
@@ -123,16 +125,36 @@ public class HeapPageReadTest extends SimpleDbTestBase {
         }
     }
 
-    @Test public void getLastAccessTimestamp() throws Exception {
+    /**
+     * Unit test for HeapPage.getField() and HeapPage.getTuple()
+     */
+    @Test public void getField() throws Exception {
         HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
-        assertTrue(Instant.now().toEpochMilli() >= page.getLastAccessTimestamp());
+
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(EXAMPLE_VALUES[i][1], ((IntField) page.getField(i, 1)).getValue());
+            Tuple tup = page.getTuple(i);
+            assertEquals(EXAMPLE_VALUES[i][0], ((IntField) tup.getField(0)).getValue());
+            assertEquals(i, tup.getRecordId().tupleno());
+        }
+        assertNull(page.getField(20, 0));
+        assertNull(page.getTuple(20));
     }
 
-    @Test public void updateLastAccessTimestamp() throws Exception {
-        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
-        long originalTimestamp = page.getLastAccessTimestamp();
-        page.updateLastAccessTimestamp();
-        assertTrue(originalTimestamp <= page.getLastAccessTimestamp());
+    /**
+     * Unit test for HeapPage read in place from a slice of a larger direct
+     * buffer
+     */
+    @Test public void readFromBufferSlice() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(2 * BufferPool.PAGE_SIZE);
+        buffer.position(BufferPool.PAGE_SIZE);
+        buffer.put(EXAMPLE_DATA);
+        buffer.position(BufferPool.PAGE_SIZE);
+
+        HeapPage page = new HeapPage(pid, buffer);
+        assertEquals(BufferPool.PAGE_SIZE, buffer.position());
+        assertEquals(484, page.getNumEmptySlots());
+        assertArrayEquals(EXAMPLE_DATA, page.getPageData());
     }
 
     /**
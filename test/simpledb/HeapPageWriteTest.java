@@ -1,6 +1,8 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -126,6 +128,32 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage copy-on-write: modifying a page changes neither
+     * the array it was built from nor its before image
+     */
+    @Test public void modifyDoesNotChangeSource() throws Exception {
+        byte[] source = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, source);
+        Iterator<Tuple> it = page.iterator();
+
+        page.addTuple(Utility.getHeapTuple(1, 2));
+        page.deleteTuple(page.getTuple(0));
+
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, source);
+        assertEquals(484, page.getBeforeImage().getNumEmptySlots());
+        assertTrue(page.getBeforeImage().getSlot(0));
+        assertFalse(page.getSlot(0));
+
+        // an iterator sees the page as it was when it was created
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        assertEquals(20, count);
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,155 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class IndexMaintenanceTest extends SimpleDbTestBase {
+    private static final int MAX_VALUE = 64;
+
+    private HeapFile hf;
+    private IndexDescriptor index;
+
+    /**
+     * Set up initial resources for each unit test: a table of random two-int
+     * tuples with an index on the second field, built from the table
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        Database.resetBufferPool(500);
+        this.hf = SystemTestUtil.createRandomHeapFile(2, 2000, MAX_VALUE, null, null);
+        File f = File.createTempFile("index", ".idx");
+        f.deleteOnExit();
+        BTreeFile btree = new BTreeFile(f, 0, IndexDescriptor.entryDesc(Type.INT_TYPE));
+        this.index = new IndexDescriptor("t.f1", this.hf.getId(), 1, btree);
+        Database.getCatalog().addIndex(this.index);
+        this.index.build();
+    }
+
+    /** @return the values of the tuples the index finds for each key */
+    private static ArrayList<ArrayList<Integer>> lookup(TransactionId tid, int tableid, int key)
+        throws Exception {
+        IndexScan scan = new IndexScan(tid, tableid, "t", 1,
+                new IndexPredicate(Predicate.Op.EQUALS, new IntField(key)));
+        return drain(scan);
+    }
+
+    /** @return the values of the tuples a filtered sequential scan finds */
+    private static ArrayList<ArrayList<Integer>> scan(TransactionId tid, int tableid, int key)
+        throws Exception {
+        Filter filter = new Filter(new Predicate(1, Predicate.Op.EQUALS, new IntField(key)),
+                new SeqScan(tid, tableid, "t"));
+        return drain(filter);
+    }
+
+    private static ArrayList<ArrayList<Integer>> drain(DbIterator it) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        it.open();
+        while (it.hasNext()) {
+            tuples.add(SystemTestUtil.tupleToList(it.next()));
+        }
+        it.close();
+        Collections.sort(tuples, (a, b) -> a.toString().compareTo(b.toString()));
+        return tuples;
+    }
+
+    /** Checks that the index finds exactly the tuples a scan finds. */
+    private void assertIndexMatchesTable() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int key = 0; key < MAX_VALUE; key++) {
+            assertEquals(scan(tid, this.hf.getId(), key), lookup(tid, this.hf.getId(), key));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static TupleIterator rows(int count, int key) {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < count; i++) {
+            tuples.add(Utility.getHeapTuple(new int[] { -i, key + i % 3 }));
+        }
+        return new TupleIterator(Utility.getTupleDesc(2), tuples);
+    }
+
+    /**
+     * Unit test for IndexDescriptor.build(): the index covers the tuples
+     * already in the table
+     */
+    @Test public void build() throws Exception {
+        assertIndexMatchesTable();
+    }
+
+    /**
+     * Unit test for BufferPool index maintenance: tuples inserted and
+     * deleted through the Insert and Delete operators, one at a time and in
+     * bulk, are added to and removed from the index
+     */
+    @Test public void insertAndDelete() throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        Insert insert = new Insert(t.getId(), rows(300, 5), this.hf.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+        Insert bulk = new Insert(t.getId(), rows(3000, 9), this.hf.getId(), true);
+        bulk.open();
+        bulk.next();
+        bulk.close();
+        Delete delete = new Delete(t.getId(), new Filter(
+                new Predicate(1, Predicate.Op.EQUALS, new IntField(7)), new SeqScan(t.getId(), this.hf.getId(), "t")));
+        delete.open();
+        delete.next();
+        delete.close();
+        t.commit();
+
+        assertIndexMatchesTable();
+        TransactionId tid = new TransactionId();
+        assertEquals(0, lookup(tid, this.hf.getId(), 7).size());
+        assertTrue(lookup(tid, this.hf.getId(), 10).size() >= 1000);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for index maintenance under LogFile.rollback: an aborted
+     * transaction's index changes are undone along with the table's
+     */
+    @Test public void abortRollsBackIndex() throws Exception {
+        TransactionId before = new TransactionId();
+        ArrayList<ArrayList<Integer>> expected = lookup(before, this.hf.getId(), 5);
+        Database.getBufferPool().transactionComplete(before);
+
+        Transaction t = new Transaction();
+        t.start();
+        Insert insert = new Insert(t.getId(), rows(300, 5), this.hf.getId());
+        insert.open();
+        insert.next();
+        insert.close();
+        Delete delete = new Delete(t.getId(), new Filter(
+                new Predicate(1, Predicate.Op.EQUALS, new IntField(6)), new SeqScan(t.getId(), this.hf.getId(), "t")));
+        delete.open();
+        delete.next();
+        delete.close();
+        // write the dirty pages so that the abort has to undo them from the log
+        Database.getBufferPool().flushAllPages();
+        t.transactionComplete(true);
+
+        TransactionId tid = new TransactionId();
+        assertEquals(expected, lookup(tid, this.hf.getId(), 5));
+        Database.getBufferPool().transactionComplete(tid);
+        assertIndexMatchesTable();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexMaintenanceTest.class);
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.NoSuchElementException;
 
@@ -179,6 +180,109 @@ public class IntAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * Test IntAggregator over many groups, with negative keys, so that its
+   * group table grows
+   */
+  @Test public void manyGroups() throws Exception {
+    int groups = 5000;
+    IntAggregator count = new IntAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.COUNT);
+    IntAggregator max = new IntAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.MAX);
+    for (int i = 0; i < 3 * groups; i++) {
+      Tuple t = Utility.getHeapTuple(new int[] { (i % groups) - groups / 2, i });
+      count.merge(t);
+      max.merge(t);
+    }
+
+    int[] expectedCount = new int[2 * groups];
+    int[] expectedMax = new int[2 * groups];
+    for (int g = 0; g < groups; g++) {
+      expectedCount[2 * g] = g - groups / 2;
+      expectedCount[2 * g + 1] = 3;
+      expectedMax[2 * g] = g - groups / 2;
+      expectedMax[2 * g + 1] = 2 * groups + g;
+    }
+    DbIterator it = count.iterator();
+    it.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1, expectedCount), it);
+    it = max.iterator();
+    it.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(width1, expectedMax), it);
+  }
+
+  /**
+   * Test IntAggregator over an avg whose sum does not fit in an int
+   */
+  @Test public void avgLargeValues() throws Exception {
+    IntAggregator agg = new IntAggregator(Aggregator.NO_GROUPING, null, 1, Aggregator.Op.AVG);
+    for (int i = 0; i < 4; i++) {
+      agg.merge(Utility.getHeapTuple(new int[] { 0, Integer.MAX_VALUE - i }));
+    }
+    DbIterator it = agg.iterator();
+    it.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(1, new int[] { Integer.MAX_VALUE - 2 }), it);
+  }
+
+  /**
+   * Test IntAggregator grouped on a string field
+   */
+  @Test public void stringGroups() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+    IntAggregator agg = new IntAggregator(0, Type.STRING_TYPE, 1, Aggregator.Op.SUM);
+    String[] keys = { "b", "a", "b", "c", "a" };
+    for (int i = 0; i < keys.length; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField(keys[i], Type.STRING_LEN));
+      t.setField(1, new IntField(i));
+      agg.merge(t);
+    }
+    DbIterator it = agg.iterator();
+    it.open();
+    String[] expectedKeys = { "b", "a", "c" };
+    int[] expectedSums = { 2, 5, 3 };
+    for (int i = 0; i < expectedKeys.length; i++) {
+      Tuple t = it.next();
+      assertEquals(new StringField(expectedKeys[i], Type.STRING_LEN), t.getField(0));
+      assertEquals(new IntField(expectedSums[i]), t.getField(1));
+    }
+    assertTrue(TestUtil.checkExhausted(it));
+  }
+
+  /**
+   * Test IntAggregator.combine() of two aggregators that merged halves of
+   * the tuples, for every operator; an avg combines its sums and counts
+   */
+  @Test public void combine() throws Exception {
+    int[][] expected = { sum[3], min[3], max[3], avg[3] };
+    Aggregator.Op[] ops = { Aggregator.Op.SUM, Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG };
+    for (int i = 0; i < ops.length; i++) {
+      IntAggregator first = new IntAggregator(0, Type.INT_TYPE, 1, ops[i]);
+      IntAggregator second = new IntAggregator(0, Type.INT_TYPE, 1, ops[i]);
+      scan1.open();
+      // { 1, 2 }, { 3, 2 } and { 1, 4 }, { 1, 6 }, { 3, 4 }, ...
+      for (int j = 0; j < 6; j++) {
+        Tuple t = scan1.next();
+        if (j == 0 || j == 3) first.merge(t);
+        else if (j < 3) second.merge(t);
+      }
+      scan1.close();
+      first.combine(second);
+      DbIterator it = first.iterator();
+      it.open();
+      TestUtil.matchAllTuples(TestUtil.createTupleList(width1, expected[i]), it);
+    }
+
+    IntAggregator empty = new IntAggregator(Aggregator.NO_GROUPING, null, 1, Aggregator.Op.AVG);
+    IntAggregator other = new IntAggregator(Aggregator.NO_GROUPING, null, 1, Aggregator.Op.AVG);
+    other.merge(Utility.getHeapTuple(new int[] { 0, 3 }));
+    other.merge(Utility.getHeapTuple(new int[] { 0, 6 }));
+    empty.combine(other);
+    empty.combine(new IntAggregator(Aggregator.NO_GROUPING, null, 1, Aggregator.Op.AVG));
+    DbIterator it = empty.iterator();
+    it.open();
+    TestUtil.compareDbIterators(TestUtil.createTupleList(1, new int[] { 4 }), it);
+  }
+
   /**
    * JUnit suite target
    */
@@ -78,6 +78,79 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
 		return ret;
 	}
 	
+	/**
+	 * Verify that instantiateJoin() hashes equi-joins, sorts and merges range
+	 * joins, and falls back to block nested loops for any other predicate
+	 */
+	@Test public void instantiateJoinTest() throws Exception {
+		TransactionId tid = new TransactionId();
+		JoinOptimizer jo = new JoinOptimizer(Parser.generateLogicalPlan(tid, "SELECT * FROM " + tableName1 + " t1, " + tableName2 + " t2 WHERE t1.c1 = t2.c2;"),
+				new Vector<LogicalJoinNode>());
+		HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+
+		LogicalJoinNode equals = new LogicalJoinNode("t1", "t2", "t1.c1", "t2.c2", Predicate.Op.EQUALS);
+		DbIterator hashed = jo.instantiateJoin(equals, new SeqScan(tid, tableId1, "t1"), new SeqScan(tid, tableId2, "t2"), stats);
+		Assert.assertTrue(hashed instanceof HashEquiJoin);
+
+		LogicalJoinNode less = new LogicalJoinNode("t1", "t2", "t1.c1", "t2.c2", Predicate.Op.LESS_THAN);
+		Assert.assertTrue(jo.instantiateJoin(less, new SeqScan(tid, tableId1, "t1"), new SeqScan(tid, tableId2, "t2"), stats) instanceof SortMergeJoin);
+
+		LogicalJoinNode notEquals = new LogicalJoinNode("t1", "t2", "t1.c1", "t2.c2", Predicate.Op.NOT_EQUALS);
+		Assert.assertTrue(jo.instantiateJoin(notEquals, new SeqScan(tid, tableId1, "t1"), new SeqScan(tid, tableId2, "t2"), stats) instanceof BlockNestedLoopJoin);
+
+		// inputs already sorted on the join fields are merged, not hashed
+		DbIterator merged = jo.instantiateJoin(equals, new OrderBy(1, true, new SeqScan(tid, tableId1, "t1")),
+				new OrderBy(2, true, new SeqScan(tid, tableId2, "t2")), stats);
+		Assert.assertTrue(merged instanceof SortMergeJoin);
+
+		int expected = 0;
+		for (ArrayList<Integer> t1 : tuples1) {
+			for (ArrayList<Integer> t2 : tuples2) {
+				if (t1.get(1).equals(t2.get(2))) expected++;
+			}
+		}
+		int count = 0;
+		hashed.open();
+		while (hashed.hasNext()) {
+			Tuple t = hashed.next();
+			Assert.assertEquals(t.getField(1), t.getField(10 + 2));
+			count++;
+		}
+		hashed.close();
+		Database.getBufferPool().transactionComplete(tid);
+		Assert.assertEquals(expected, count);
+	}
+
+	/**
+	 * Verify that an equi-join is costed as a merge when its sides are
+	 * already sorted, and that instantiateJoin() then takes the cheaper of
+	 * merging and hashing
+	 */
+	@Test public void sortedJoinCostTest() throws Exception {
+		TransactionId tid = new TransactionId();
+		JoinOptimizer jo = new JoinOptimizer(Parser.generateLogicalPlan(tid, "SELECT * FROM " + tableName1 + " t1, " + tableName2 + " t2 WHERE t1.c1 = t2.c2;"),
+				new Vector<LogicalJoinNode>());
+		LogicalJoinNode equals = new LogicalJoinNode("t1", "t2", "t1.c1", "t2.c2", Predicate.Op.EQUALS);
+
+		double unsorted = jo.estimateJoinCost(equals, 1000, 10000, 100, 1000, false, false);
+		double sorted = jo.estimateJoinCost(equals, 1000, 10000, 100, 1000, true, true);
+		Assert.assertTrue(sorted < unsorted);
+		Assert.assertEquals(jo.estimateHashJoinCost(equals, 1000, 10000, 100, 1000), unsorted, 0.0);
+		Assert.assertEquals(jo.estimateSortMergeJoinCost(equals, 1000, 10000, 100, 1000, true, true), sorted, 0.0);
+
+		HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+		stats.put("t1", stats1);
+		stats.put("t2", stats2);
+		Assert.assertTrue(jo.instantiateJoin(equals, new OrderBy(1, true, new SeqScan(tid, tableId1, "t1")),
+				new OrderBy(2, true, new SeqScan(tid, tableId2, "t2")), stats) instanceof SortMergeJoin);
+		// sorting the larger side costs more than hashing it
+		Assert.assertTrue(jo.instantiateJoin(equals, new OrderBy(1, true, new SeqScan(tid, tableId1, "t1")),
+				new SeqScan(tid, tableId2, "t2"), stats) instanceof HashEquiJoin);
+		Assert.assertTrue(jo.instantiateJoin(equals, new SeqScan(tid, tableId1, "t1"),
+				new SeqScan(tid, tableId2, "t2"), stats) instanceof HashEquiJoin);
+		Database.getBufferPool().transactionComplete(tid);
+	}
+
 	/**
 	 * Verify that the estimated join costs from estimateJoinCost() are reasonable
 	 * we check various order requirements for the output of estimateJoinCost.
@@ -0,0 +1,78 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LimitTest extends SimpleDbTestBase {
+
+  int testWidth = 3;
+  DbIterator scan;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createScan() {
+    this.scan = new TestUtil.MockScan(-5, 5, testWidth);
+  }
+
+  /**
+   * Unit test for Limit.getTupleDesc()
+   */
+  @Test public void getTupleDesc() {
+    Limit op = new Limit(3, scan);
+    assertEquals(Utility.getTupleDesc(testWidth), op.getTupleDesc());
+  }
+
+  /**
+   * Unit test for Limit.getNext(): returns the first tuples of the child
+   */
+  @Test public void firstTuples() throws Exception {
+    Limit op = new Limit(3, scan);
+    op.open();
+    TestUtil.compareDbIterators(new TestUtil.MockScan(-5, -2, testWidth), op);
+    op.close();
+  }
+
+  /**
+   * Unit test for Limit.getNext() with a limit past the end of the child,
+   * and with a limit of 0
+   */
+  @Test public void shortChild() throws Exception {
+    Limit op = new Limit(100, scan);
+    op.open();
+    TestUtil.compareDbIterators(new TestUtil.MockScan(-5, 5, testWidth), op);
+    op.close();
+
+    op = new Limit(0, new TestUtil.MockScan(-5, 5, testWidth));
+    op.open();
+    assertTrue(TestUtil.checkExhausted(op));
+    op.close();
+  }
+
+  /**
+   * Unit test for Limit.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    Limit op = new Limit(2, scan);
+    op.open();
+    op.next();
+    op.next();
+    assertTrue(TestUtil.checkExhausted(op));
+    op.rewind();
+    TestUtil.compareDbIterators(new TestUtil.MockScan(-5, -3, testWidth), op);
+    op.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LimitTest.class);
+  }
+}
@@ -0,0 +1,122 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private File file;
+    private MappedHeapFile mhf;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        file = SystemTestUtil.createRandomHeapFileUnopened(2, 1000, 1 << 16, null, null);
+        mhf = new MappedHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(mhf, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Unit test for MappedHeapFile.readPage(): pages read from the mapping
+     * match the pages HeapFile reads
+     */
+    @Test public void readPage() throws Exception {
+        HeapFile hf = new HeapFile(file, Utility.getTupleDesc(2));
+        assertEquals(2, mhf.numPages());
+
+        for (int i = 0; i < mhf.numPages(); i++) {
+            HeapPageId pid = new HeapPageId(mhf.getId(), i);
+            assertArrayEquals(hf.readPage(pid).getPageData(), mhf.readPage(pid).getPageData());
+        }
+        hf.close();
+    }
+
+    /**
+     * Unit test for MappedHeapFile: pages appended through addTuple are
+     * visible once written, which requires remapping the grown file
+     */
+    @Test public void remapsWhenFileGrows() throws Exception {
+        TransactionId tid = new TransactionId();
+        // fill both existing pages and spill onto a third one
+        for (int i = 0; i < 2 * 504 - 1000 + 10; i++) {
+            Database.getBufferPool().insertTuple(tid, mhf.getId(), Utility.getHeapTuple(i, 2));
+        }
+        assertEquals(3, mhf.numPages());
+        Database.getBufferPool().flushPages(tid);
+        Database.getBufferPool().transactionComplete(tid);
+
+        HeapPage page = (HeapPage) mhf.readPage(new HeapPageId(mhf.getId(), 2));
+        assertEquals(504 - 10, page.getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for MappedHeapFile: flushing a modified page writes the file
+     * under the mapping, but the page's before image and an iterator opened
+     * before the change keep the bytes the page was read with
+     */
+    @Test public void beforeImageSurvivesFlush() throws Exception {
+        TransactionId tid = new TransactionId();
+        HeapPageId pid = new HeapPageId(mhf.getId(), 0);
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        byte[] before = page.getBeforeImage().getPageData().clone();
+        int used = page.numSlots() - page.getNumEmptySlots();
+        Iterator<Tuple> it = page.iterator();
+
+        Database.getBufferPool().deleteTuple(tid, page.getTuple(0));
+        Database.getBufferPool().flushPages(tid);
+        assertFalse(Arrays.equals(before, mhf.readPage(pid).getPageData()));
+
+        assertArrayEquals(before, page.getBeforeImage().getPageData());
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        assertEquals(used, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for MappedHeapFile: a scan through the BufferPool sees every
+     * tuple, before and after the file is closed
+     */
+    @Test public void scanAfterClose() throws Exception {
+        ArrayList<Tuple> before = scan();
+        mhf.close();
+        assertEquals(1000, before.size());
+        assertEquals(1000, scan().size());
+    }
+
+    private ArrayList<Tuple> scan() throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = mhf.iterator(tid);
+        ArrayList<Tuple> tuples = new ArrayList<>();
+        it.open();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return tuples;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,157 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+  DbIterator scan;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleList() throws Exception {
+    this.scan = TestUtil.createTupleList(2,
+        new int[] { 3, 1,
+                    1, 2,
+                    2, 3,
+                    1, 4,
+                    3, 5,
+                    2, 6 });
+  }
+
+  /**
+   * Unit test for OrderBy on one descending field
+   */
+  @Test public void descending() throws Exception {
+    OrderBy op = new OrderBy(0, false, scan);
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(2,
+        new int[] { 3, 1, 3, 5, 2, 3, 2, 6, 1, 2, 1, 4 });
+    TestUtil.matchAllTuples(expected, op);
+    assertEquals(-1, op.sortedField());
+  }
+
+  /**
+   * Unit test for OrderBy on two fields, the second descending
+   */
+  @Test public void twoFields() throws Exception {
+    OrderBy op = new OrderBy(new int[] { 0, 1 }, new boolean[] { true, false }, scan);
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(2,
+        new int[] { 1, 4, 1, 2, 2, 6, 2, 3, 3, 5, 3, 1 });
+    TestUtil.matchAllTuples(expected, op);
+    assertFalse(op.spilled());
+    assertEquals(0, op.sortedField());
+  }
+
+  /**
+   * Unit test for OrderBy on a descending string field and an ascending
+   * int field
+   */
+  @Test public void stringField() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE });
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+    String[] keys = { "b", "ab", "b", "a", "ab" };
+    for (int i = 0; i < keys.length; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField(keys[i], Type.STRING_LEN));
+      t.setField(1, new IntField(keys.length - i));
+      tuples.add(t);
+    }
+    OrderBy op = new OrderBy(new int[] { 0, 1 }, new boolean[] { false, true }, new TupleIterator(td, tuples));
+    op.open();
+    String[] expectedKeys = { "b", "b", "ab", "ab", "a" };
+    int[] expectedInts = { 3, 5, 1, 4, 2 };
+    for (int i = 0; i < expectedKeys.length; i++) {
+      Tuple t = op.next();
+      assertEquals(new StringField(expectedKeys[i], Type.STRING_LEN), t.getField(0));
+      assertEquals(new IntField(expectedInts[i]), t.getField(1));
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    op.close();
+  }
+
+  /**
+   * Unit test for OrderBy over more tuples than its budget: the runs are
+   * merged in more than one pass, and the sort is stable
+   */
+  @Test public void externalSort() throws Exception {
+    TupleDesc td = Utility.getTupleDesc(2);
+    int count = (int) (9 * MemoryBudget.tupleCapacity(2, td) + 17);
+    OrderBy op = new OrderBy(new int[] { 0 }, new boolean[] { true },
+        new TupleIterator(td, TestUtil.createPairs(count, 7919, 1000)), 2);
+    op.open();
+    assertTrue(op.spilled());
+    for (int pass = 0; pass < 2; pass++) {
+      int last = -1;
+      int lastId = -1;
+      int n = 0;
+      while (op.hasNext()) {
+        Tuple t = op.next();
+        int key = ((IntField) t.getField(0)).getValue();
+        int id = ((IntField) t.getField(1)).getValue();
+        assertTrue(key > last || (key == last && id > lastId));
+        last = key;
+        lastId = id;
+        n++;
+      }
+      assertEquals(count, n);
+      op.rewind();
+    }
+    op.close();
+  }
+
+  /**
+   * Unit test for LogicalPlan.physicalPlan() with an ORDER BY of two fields
+   */
+  @Test public void planTwoFields() throws Exception {
+    ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+    HeapFile table = SystemTestUtil.createRandomHeapFile(2, 500, 10, null, rows, "f");
+
+    LogicalPlan lp = new LogicalPlan();
+    lp.addScan(table.getId(), "t");
+    lp.addOrderBy("t.f0", false);
+    lp.addOrderBy("t.f1", true);
+    lp.addProjectField("null.*", null);
+
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    TransactionId tid = new TransactionId();
+    DbIterator plan = lp.physicalPlan(tid, stats, false);
+    int found = 0;
+    int last0 = Integer.MAX_VALUE;
+    int last1 = Integer.MIN_VALUE;
+    plan.open();
+    while (plan.hasNext()) {
+      Tuple t = plan.next();
+      int f0 = ((IntField) t.getField(0)).getValue();
+      int f1 = ((IntField) t.getField(1)).getValue();
+      assertTrue(f0 < last0 || (f0 == last0 && f1 >= last1));
+      last0 = f0;
+      last1 = f1;
+      found++;
+    }
+    plan.close();
+    Database.getBufferPool().transactionComplete(tid);
+    assertEquals(rows.size(), found);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(OrderByTest.class);
+  }
+}
@@ -0,0 +1,149 @@
+package simpledb;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParallelHeapFileEncoderTest extends SimpleDbTestBase {
+
+    private static File writeLines(ArrayList<ArrayList<Integer>> tuples) throws IOException {
+        File f = File.createTempFile("encoder", ".txt");
+        f.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(f));
+        for (ArrayList<Integer> tuple : tuples) {
+            bw.write(Utility.listToString(tuple).replace('\t', ','));
+            bw.write('\n');
+            // blank lines are skipped
+            if (tuple.get(0) % 100 == 0) bw.write("\r\n");
+        }
+        bw.close();
+        return f;
+    }
+
+    private static ArrayList<ArrayList<Integer>> randomTuples(int rows, int columns) {
+        Random random = new Random(42);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < rows; i++) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>();
+            tuple.add(i);
+            for (int j = 1; j < columns; j++) {
+                tuple.add(random.nextInt() >> random.nextInt(32));
+            }
+            tuples.add(tuple);
+        }
+        return tuples;
+    }
+
+    /**
+     * Unit test for ParallelHeapFileEncoder.convert(): many small chunks
+     * encoded on several threads produce every tuple
+     */
+    @Test public void convertInChunks() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = randomTuples(5000, 3);
+        File in = writeLines(tuples);
+        File out = File.createTempFile("encoder", ".dat");
+        out.deleteOnExit();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ParallelHeapFileEncoder encoder = new ParallelHeapFileEncoder(
+                new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE }, BufferPool.PAGE_SIZE, pool, 4096);
+        assertEquals(5000, encoder.convert(in, out));
+        pool.shutdown();
+
+        HeapFile hf = Utility.openHeapFile(3, out);
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Unit test for ParallelHeapFileEncoder.convert(): string fields are
+     * trimmed and cut to STRING_LEN bytes
+     */
+    @Test public void convertStrings() throws Exception {
+        File in = File.createTempFile("encoder", ".txt");
+        in.deleteOnExit();
+        char[] longString = new char[Type.STRING_LEN + 10];
+        java.util.Arrays.fill(longString, 'x');
+        BufferedWriter bw = new BufferedWriter(new FileWriter(in));
+        bw.write("1, hello \n2,\n3," + new String(longString) + "\n");
+        bw.close();
+        File out = File.createTempFile("encoder", ".dat");
+        out.deleteOnExit();
+
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE };
+        assertEquals(3, ParallelHeapFileEncoder.convert(in, out, BufferPool.PAGE_SIZE, types));
+
+        HeapFile hf = new HeapFile(out, new TupleDesc(types));
+        Database.getCatalog().addTable(hf, UUID.randomUUID().toString());
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        assertEquals(new StringField("hello", Type.STRING_LEN), it.next().getField(1));
+        assertEquals(new StringField("", Type.STRING_LEN), it.next().getField(1));
+        assertEquals(Type.STRING_LEN, ((StringField) it.next().getField(1)).getValue().length());
+        assertFalse(it.hasNext());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for ParallelHeapFileEncoder.convert(): a malformed line
+     * fails the conversion
+     */
+    @Test(expected = IOException.class) public void convertMalformed() throws Exception {
+        File in = File.createTempFile("encoder", ".txt");
+        in.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(in));
+        bw.write("1,2\n3,four\n");
+        bw.close();
+        File out = File.createTempFile("encoder", ".dat");
+        out.deleteOnExit();
+
+        ParallelHeapFileEncoder.convert(in, out, BufferPool.PAGE_SIZE, new Type[] { Type.INT_TYPE, Type.INT_TYPE });
+    }
+
+    /**
+     * Unit test for Parser's COPY statement: the file is appended to the
+     * table, after the rows already in it
+     */
+    @Test public void copyStatement() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        String name = Database.getCatalog().getTableName(hf.getId());
+        ArrayList<ArrayList<Integer>> tuples = randomTuples(1200, 2);
+        File in = writeLines(tuples);
+
+        Transaction t = new Transaction();
+        t.start();
+        Parser.setTransaction(t);
+        Parser.processNextStatement("copy " + name + " from '" + in.getAbsolutePath() + "';");
+        t.commit();
+        Parser.setTransaction(null);
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(10 + 1200, count);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParallelHeapFileEncoderTest.class);
+    }
+}
@@ -0,0 +1,189 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ParallelSeqScanTest extends SimpleDbTestBase {
+
+  HeapFile table;
+  ArrayList<ArrayList<Integer>> rows;
+  TransactionId tid;
+
+  /**
+   * Initialize each unit test with a table of about 90 pages
+   */
+  @Before public void createTable() throws Exception {
+    this.rows = new ArrayList<ArrayList<Integer>>();
+    this.table = SystemTestUtil.createRandomHeapFile(3, 30000, 1000, null, rows);
+    this.tid = new TransactionId();
+  }
+
+  @After public void resetParallelism() throws Exception {
+    ParallelSeqScan.resetDefaultParallelism();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Unit test for ParallelSeqScan, which returns every tuple once, with
+   * page locks taken under the scan's transaction
+   */
+  @Test public void scan() throws Exception {
+    ParallelSeqScan scan = new ParallelSeqScan(tid, table.getId(), "t", 4);
+    assertEquals(4, scan.parallelism());
+    assertEquals(new SeqScan(tid, table.getId(), "t").getTupleDesc(), scan.getTupleDesc());
+    SystemTestUtil.matchTuples(scan, rows);
+    for (int pageno = 0; pageno < table.numPages(); pageno++) {
+      assertTrue(Database.getBufferPool().holdsLock(tid, new HeapPageId(table.getId(), pageno)));
+    }
+
+    scan.open();
+    scan.rewind();
+    int count = 0;
+    while (scan.hasNext()) {
+      scan.next();
+      count++;
+    }
+    scan.close();
+    assertEquals(rows.size(), count);
+  }
+
+  /**
+   * Unit test for ParallelSeqScan.partitions(), which divides the pages
+   * without gaps or overlaps, and ParallelSeqScan.workersFor()
+   */
+  @Test public void partitions() throws Exception {
+    SeqScan[] scans = ParallelSeqScan.partitions(tid, table.getId(), "t", 3);
+    assertEquals(3, scans.length);
+    ArrayList<ArrayList<Integer>> seen = new ArrayList<ArrayList<Integer>>();
+    for (SeqScan scan : scans) {
+      scan.open();
+      while (scan.hasNext()) {
+        seen.add(SystemTestUtil.tupleToList(scan.next()));
+      }
+      scan.close();
+    }
+    // in page order
+    assertEquals(rows, seen);
+
+    assertEquals(table.numPages() / ParallelSeqScan.MIN_PAGES_PER_WORKER,
+        ParallelSeqScan.workersFor(table.getId(), 64));
+    assertEquals(2, ParallelSeqScan.workersFor(table.getId(), 2));
+    HeapFile small = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+    assertEquals(1, ParallelSeqScan.workersFor(small.getId(), 8));
+    SystemTestUtil.matchTuples(new ParallelSeqScan(tid, small.getId(), "s", 8),
+        new ArrayList<ArrayList<Integer>>(rowsOf(small)));
+  }
+
+  private ArrayList<ArrayList<Integer>> rowsOf(HeapFile f) throws Exception {
+    ArrayList<ArrayList<Integer>> list = new ArrayList<ArrayList<Integer>>();
+    SeqScan scan = new SeqScan(tid, f.getId(), "");
+    scan.open();
+    while (scan.hasNext()) {
+      list.add(SystemTestUtil.tupleToList(scan.next()));
+    }
+    scan.close();
+    return list;
+  }
+
+  /**
+   * Unit test for Exchange over filtered partitions
+   */
+  @Test public void filterInWorkers() throws Exception {
+    Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(100));
+    SeqScan[] scans = ParallelSeqScan.partitions(tid, table.getId(), "t", 4);
+    DbIterator[] children = new DbIterator[scans.length];
+    for (int i = 0; i < scans.length; i++) {
+      children[i] = new Filter(p, scans[i]);
+    }
+    ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+    for (ArrayList<Integer> row : rows) {
+      if (row.get(1) < 100) expected.add(row);
+    }
+    SystemTestUtil.matchTuples(new Exchange(children), expected);
+  }
+
+  /**
+   * Unit test for closing an Exchange before its workers are done
+   */
+  @Test public void closeEarly() throws Exception {
+    Exchange scan = new ParallelSeqScan(tid, table.getId(), "t", 4);
+    scan.open();
+    for (int i = 0; i < 10; i++) {
+      scan.next();
+    }
+    scan.close();
+  }
+
+  /**
+   * Unit test for an Exchange whose worker fails
+   */
+  @Test public void workerFails() throws Exception {
+    DbIterator failing = new AbstractDbIterator() {
+      public void open() {}
+      public TupleDesc getTupleDesc() { return Utility.getTupleDesc(3); }
+      public void rewind() {}
+      protected Tuple readNext() throws DbException {
+        throw new DbException("worker failed");
+      }
+    };
+    Exchange exchange = new Exchange(new DbIterator[] {
+        ParallelSeqScan.partitions(tid, table.getId(), "t", 2)[0], failing });
+    exchange.open();
+    try {
+      while (exchange.hasNext()) {
+        exchange.next();
+      }
+      fail("expected the worker's exception");
+    } catch (DbException e) {
+      assertEquals("worker failed", e.getMessage());
+    }
+    exchange.close();
+  }
+
+  /**
+   * Unit test for LogicalPlan.physicalPlan() with a default parallelism:
+   * a filter and aggregate over a table scanned by several workers
+   */
+  @Test public void planParallelScan() throws Exception {
+    File f = SystemTestUtil.createRandomHeapFileUnopened(3, 30000, 1000, null, rows);
+    HeapFile t = new HeapFile(f, Utility.getTupleDesc(3, "f"));
+    Database.getCatalog().addTable(t, "big");
+    int expected = 0;
+    for (ArrayList<Integer> row : rows) {
+      if (row.get(1) < 100) expected++;
+    }
+
+    ParallelSeqScan.setDefaultParallelism(4);
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    stats.put("big", new TableStats(t.getId(), 1000));
+    LogicalPlan lp = Parser.generateLogicalPlan(tid, "SELECT COUNT(b.f0) FROM big b WHERE b.f1 < 100;");
+    DbIterator plan = lp.physicalPlan(tid, stats, false);
+    plan.open();
+    assertTrue(plan.hasNext());
+    assertEquals(expected, ((IntField) plan.next().getField(0)).getValue());
+    assertFalse(plan.hasNext());
+    plan.close();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelSeqScanTest.class);
+  }
+}
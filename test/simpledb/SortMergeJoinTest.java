@@ -0,0 +1,199 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.UUID;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+  int width1 = 2;
+  int width2 = 3;
+  DbIterator scan1;
+  DbIterator scan2;
+  DbIterator eqJoin;
+  DbIterator gtJoin;
+
+  /**
+   * Initialize each unit test
+   */
+  @Before public void createTupleLists() throws Exception {
+    this.scan1 = TestUtil.createTupleList(width1,
+        new int[] { 7, 8,
+                    3, 4,
+                    1, 2,
+                    5, 6 });
+    this.scan2 = TestUtil.createTupleList(width2,
+        new int[] { 4, 5, 6,
+                    2, 3, 4,
+                    5, 6, 7,
+                    1, 2, 3,
+                    3, 4, 5 });
+    this.eqJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] { 1, 2, 1, 2, 3,
+                    3, 4, 3, 4, 5,
+                    5, 6, 5, 6, 7 });
+    this.gtJoin = TestUtil.createTupleList(width1 + width2,
+        new int[] {
+                    3, 4, 1, 2, 3, // 1, 2 < 3
+                    3, 4, 2, 3, 4,
+                    5, 6, 1, 2, 3, // 1, 2, 3, 4 < 5
+                    5, 6, 2, 3, 4,
+                    5, 6, 3, 4, 5,
+                    5, 6, 4, 5, 6,
+                    7, 8, 1, 2, 3, // 1, 2, 3, 4, 5 < 7
+                    7, 8, 2, 3, 4,
+                    7, 8, 3, 4, 5,
+                    7, 8, 4, 5, 6,
+                    7, 8, 5, 6, 7 });
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getTupleDesc()
+   */
+  @Test public void getTupleDesc() {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    TupleDesc expected = Utility.getTupleDesc(width1 + width2);
+    TupleDesc actual = op.getTupleDesc();
+    assertEquals(expected, actual);
+  }
+
+  /**
+   * Unit test for SortMergeJoin.rewind()
+   */
+  @Test public void rewind() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    while (op.hasNext()) {
+      assertNotNull(op.next());
+    }
+    assertTrue(TestUtil.checkExhausted(op));
+    op.rewind();
+
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() using a &gt; predicate
+   */
+  @Test public void gtJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    gtJoin.open();
+    TestUtil.matchAllTuples(gtJoin, op);
+    op.rewind();
+    assertEquals(11, TestUtil.drainSorted(op).size());
+  }
+
+  /**
+   * Unit test for SortMergeJoin.getNext() using an = predicate
+   */
+  @Test public void eqJoin() throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    SortMergeJoin op = new SortMergeJoin(pred, scan1, scan2);
+    op.open();
+    eqJoin.open();
+    TestUtil.matchAllTuples(eqJoin, op);
+    op.rewind();
+    assertEquals(3, TestUtil.drainSorted(op).size());
+  }
+
+  /**
+   * Unit test for SortMergeJoin with runs of duplicate keys on both sides:
+   * every predicate returns the same tuples as the nested loops Join
+   */
+  @Test public void duplicateRuns() throws Exception {
+    Predicate.Op[] ops = { Predicate.Op.EQUALS, Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ,
+        Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ };
+    for (Predicate.Op op : ops) {
+      JoinPredicate pred = new JoinPredicate(0, op, 0);
+      Join expected = new Join(pred, TestUtil.createRandomPairIterator(new Random(1), 200, 20), TestUtil.createRandomPairIterator(new Random(2), 150, 25));
+      expected.open();
+      SortMergeJoin actual = new SortMergeJoin(pred, TestUtil.createRandomPairIterator(new Random(1), 200, 20), TestUtil.createRandomPairIterator(new Random(2), 150, 25));
+      actual.open();
+      ArrayList<String> tuples = TestUtil.drainSorted(actual);
+      assertFalse(tuples.isEmpty());
+      assertEquals(op.toString(), TestUtil.drainSorted(expected), tuples);
+      actual.close();
+    }
+  }
+
+  /**
+   * Unit test for a range SortMergeJoin whose inner child does not fit in
+   * a one-page budget: it is read back in chunks, and returns the same
+   * tuples as the nested loops Join, in outer key order
+   */
+  @Test public void spilledRanges() throws Exception {
+    Predicate.Op[] ops = { Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ,
+        Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ };
+    for (Predicate.Op op : ops) {
+      JoinPredicate pred = new JoinPredicate(0, op, 0);
+      Join expected = new Join(pred, TestUtil.createRandomPairIterator(new Random(1), 60, 100), TestUtil.createRandomPairIterator(new Random(2), 2000, 100));
+      expected.open();
+      SortMergeJoin actual = new SortMergeJoin(pred, TestUtil.createRandomPairIterator(new Random(1), 60, 100),
+          TestUtil.createRandomPairIterator(new Random(2), 2000, 100), 1);
+      actual.open();
+      assertTrue(actual.spilled());
+      int last = Integer.MIN_VALUE;
+      while (actual.hasNext()) {
+        int key = ((IntField) actual.next().getField(0)).getValue();
+        assertTrue(key >= last);
+        last = key;
+      }
+      actual.rewind();
+      assertEquals(op.toString(), TestUtil.drainSorted(expected), TestUtil.drainSorted(actual));
+      actual.close();
+      assertFalse(actual.spilled());
+    }
+  }
+
+  /**
+   * Unit test for SortMergeJoin.isSortedOn(): a scan of a B+tree is
+   * already in key order and is merged without a sort
+   */
+  @Test public void sortedInputs() throws Exception {
+    File f = File.createTempFile("btree", ".dat");
+    f.deleteOnExit();
+    BTreeFile btree = new BTreeFile(f, 1, Utility.getTupleDesc(2));
+    Database.getCatalog().addTable(btree, UUID.randomUUID().toString());
+    TransactionId tid = new TransactionId();
+    for (int i = 0; i < 100; i++) {
+      Database.getBufferPool().insertTuple(tid, btree.getId(), Utility.getHeapTuple(new int[] { i, i % 10 }));
+    }
+
+    DbIterator scan = new SeqScan(tid, btree.getId(), "b");
+    assertTrue(SortMergeJoin.isSortedOn(scan, 1));
+    assertFalse(SortMergeJoin.isSortedOn(scan, 0));
+    assertFalse(SortMergeJoin.isSortedOn(scan1, 0));
+
+    SortMergeJoin op = new SortMergeJoin(new JoinPredicate(1, Predicate.Op.EQUALS, 0), scan, scan2);
+    op.open();
+    // keys 1 to 5 of scan2 each match the 10 tuples with that key
+    assertEquals(50, TestUtil.drainSorted(op).size());
+    op.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SortMergeJoinTest.class);
+  }
+}
@@ -0,0 +1,57 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SpillFileTest extends SimpleDbTestBase {
+
+  /**
+   * Unit test for SpillFile: tuples come back in the order they were added,
+   * over several pages, and the added tuples keep their record ids
+   */
+  @Test public void roundTrip() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+    SpillFile file = new SpillFile(td);
+    RecordId rid = new RecordId(new HeapPageId(1, 2), 3);
+    int count = 1000;
+    for (int i = 0; i < count; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new IntField(i));
+      t.setField(1, new StringField("s" + i, Type.STRING_LEN));
+      t.setRecordId(rid);
+      file.add(t);
+      assertEquals(rid, t.getRecordId());
+    }
+    file.finish();
+    assertEquals(count, file.numTuples());
+    long perPage = MemoryBudget.tupleCapacity(1, td);
+    assertEquals((count + perPage - 1) / perPage, file.numPages());
+
+    DbIterator it = file.iterator();
+    for (int pass = 0; pass < 2; pass++) {
+      it.open();
+      for (int i = 0; i < count; i++) {
+        Tuple t = it.next();
+        assertEquals(new IntField(i), t.getField(0));
+        assertEquals(new StringField("s" + i, Type.STRING_LEN), t.getField(1));
+        assertNull(t.getRecordId());
+      }
+      assertFalse(it.hasNext());
+      it.close();
+    }
+    file.delete();
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(SpillFileTest.class);
+  }
+}
@@ -101,6 +101,66 @@ public class TestUtil {
         return true;
     }
 
+    /**
+     * @return n tuples of two IntFields, (a * i % m, i) for i from 0 to
+     *   n - 1, so that keys repeat with a period of at most m
+     */
+    public static ArrayList<Tuple> createPairs(int n, long a, int m) {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < n; i++) {
+            tuples.add(Utility.getHeapTuple(new int[] { (int) (a * i % m), i }));
+        }
+        return tuples;
+    }
+
+    /**
+     * @return an open DbIterator over createPairs(n, a, m)
+     */
+    public static TupleIterator createPairIterator(int n, long a, int m) {
+        TupleIterator it = new TupleIterator(Utility.getTupleDesc(2), createPairs(n, a, m));
+        it.open();
+        return it;
+    }
+
+    /**
+     * @return an open DbIterator over n tuples of two IntFields, (a random
+     *   int below m, i) for i from 0 to n - 1
+     */
+    public static TupleIterator createRandomPairIterator(Random random, int n, int m) {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < n; i++) {
+            tuples.add(Utility.getHeapTuple(new int[] { random.nextInt(m), i }));
+        }
+        TupleIterator it = new TupleIterator(Utility.getTupleDesc(2), tuples);
+        it.open();
+        return it;
+    }
+
+    /**
+     * @return the remaining tuples of an open DbIterator, as strings, in
+     *   the order it returns them
+     */
+    public static ArrayList<String> drain(DbIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<String> tuples = new ArrayList<String>();
+        while (it.hasNext()) {
+            tuples.add(it.next().toString());
+        }
+        return tuples;
+    }
+
+    /**
+     * @return the remaining tuples of an open DbIterator, as sorted
+     *   strings, to compare iterators that return the same tuples in
+     *   different orders
+     */
+    public static ArrayList<String> drainSorted(DbIterator it)
+            throws DbException, TransactionAbortedException {
+        ArrayList<String> tuples = drain(it);
+        Collections.sort(tuples);
+        return tuples;
+    }
+
     /**
      * Check to see if the DbIterators have the same number of tuples and
      *   each tuple pair in parallel iteration satisfies compareTuples .
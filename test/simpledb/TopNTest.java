@@ -0,0 +1,99 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class TopNTest extends SimpleDbTestBase {
+
+  /**
+   * Unit test for TopN: returns the same tuples as OrderBy followed by
+   * Limit, ties included, and again after rewind
+   */
+  @Test public void matchesOrderByLimit() throws Exception {
+    TupleDesc td = Utility.getTupleDesc(2);
+    int[] fields = new int[] { 0 };
+    for (boolean asc : new boolean[] { true, false }) {
+      for (int k : new int[] { 0, 1, 20, 1000, 5000 }) {
+        TopN op = new TopN(fields, new boolean[] { asc }, k, new TupleIterator(td, TestUtil.createPairs(2000, 7919, 97)));
+        DbIterator expected = new Limit(k,
+            new OrderBy(fields, new boolean[] { asc }, new TupleIterator(td, TestUtil.createPairs(2000, 7919, 97))));
+        expected.open();
+        op.open();
+        ArrayList<String> top = TestUtil.drain(op);
+        assertEquals(TestUtil.drain(expected), top);
+        op.rewind();
+        assertEquals(top, TestUtil.drain(op));
+        op.close();
+        expected.close();
+      }
+    }
+  }
+
+  /**
+   * Unit test for TopN on two fields, the second descending
+   */
+  @Test public void twoFields() throws Exception {
+    DbIterator scan = TestUtil.createTupleList(2,
+        new int[] { 3, 1, 1, 2, 2, 3, 1, 4, 3, 5, 2, 6 });
+    TopN op = new TopN(new int[] { 0, 1 }, new boolean[] { true, false }, 3, scan);
+    op.open();
+    DbIterator expected = TestUtil.createTupleList(2, new int[] { 1, 4, 1, 2, 2, 6 });
+    TestUtil.compareDbIterators(expected, op);
+    op.close();
+  }
+
+  /**
+   * Unit test for Parser.generateLogicalPlan() with ORDER BY ... LIMIT,
+   * which plans a TopN, and with LIMIT alone, which plans a Limit
+   */
+  @Test public void parseLimit() throws Exception {
+    ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+    File f = SystemTestUtil.createRandomHeapFileUnopened(2, 1000, 100, null, rows);
+    HeapFile table = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+    Database.getCatalog().addTable(table, "topn");
+
+    ArrayList<Integer> values = new ArrayList<Integer>();
+    for (ArrayList<Integer> row : rows) {
+      values.add(row.get(0));
+    }
+    Collections.sort(values, Collections.reverseOrder());
+
+    HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = Parser.generateLogicalPlan(tid,
+        "SELECT * FROM topn t ORDER BY t.f0 DESC LIMIT 20;");
+    DbIterator plan = lp.physicalPlan(tid, stats, false);
+    plan.open();
+    for (int i = 0; i < 20; i++) {
+      assertEquals((int) values.get(i), ((IntField) plan.next().getField(0)).getValue());
+    }
+    assertTrue(TestUtil.checkExhausted(plan));
+    plan.close();
+
+    lp = Parser.generateLogicalPlan(tid, "select * from topn t limit 7");
+    plan = lp.physicalPlan(tid, stats, false);
+    plan.open();
+    assertEquals(7, TestUtil.drain(plan).size());
+    plan.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TopNTest.class);
+  }
+}
@@ -0,0 +1,125 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import simpledb.*;
+
+/**
+ * Measures GROUP BY aggregation of in-memory tuples with IntAggregator and
+ * with the HashMap&lt;Field, Integer&gt; aggregation IntAggregator used to
+ * do, for each aggregate, grouped on an int field and on a string field.
+ * The tuples are (group, value) pairs with the given number of distinct
+ * groups.
+ * <p>
+ * Each workload is warmed up first and then measured over several
+ * iterations, and the best time is reported.
+ * <p>
+ * Usage: AggregateBenchmark [tuples] [groups] [iterations]
+ */
+public class AggregateBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+
+    /** The aggregation IntAggregator did before it used a GroupTable. */
+    static class BoxedAggregator implements Aggregator {
+        private final int gbField;
+        private final int aggField;
+        private final Op aggOp;
+        private final HashMap<Field, Integer> groupCounts = new HashMap<Field, Integer>();
+        private final HashMap<Field, Integer> groupAggregates = new HashMap<Field, Integer>();
+
+        BoxedAggregator(int gbfield, int afield, Op what) {
+            this.gbField = gbfield;
+            this.aggField = afield;
+            this.aggOp = what;
+        }
+
+        public void merge(Tuple tup) {
+            Field group = tup.getField(this.gbField);
+            groupCounts.put(group, groupCounts.getOrDefault(group, 0) + 1);
+
+            int value = ((IntField) tup.getField(this.aggField)).getValue();
+            Integer defaultValue = (aggOp == Op.MIN || aggOp == Op.MAX) ? value : 0;
+            Integer current = groupAggregates.getOrDefault(group, defaultValue);
+            switch (aggOp) {
+            case AVG:
+            case SUM:
+                current = current + value;
+                break;
+            case MAX:
+                current = Math.max(current, value);
+                break;
+            case MIN:
+                current = Math.min(current, value);
+                break;
+            default:
+                break;
+            }
+            groupAggregates.put(group, current);
+        }
+
+        public boolean mergeExisting(Tuple tup) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void combine(Aggregator other) {
+            throw new UnsupportedOperationException();
+        }
+
+        public DbIterator iterator() {
+            throw new UnsupportedOperationException();
+        }
+
+        public int numGroups() {
+            return groupCounts.size();
+        }
+    }
+
+    static ArrayList<Tuple> tuples(int n, int groups, boolean strings) {
+        Type groupType = strings ? Type.STRING_TYPE : Type.INT_TYPE;
+        TupleDesc td = new TupleDesc(new Type[] { groupType, Type.INT_TYPE });
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>(n);
+        for (int i = 0; i < n; i++) {
+            int group = (int) ((i * 7919L) % groups);
+            Tuple t = new Tuple(td);
+            t.setField(0, strings ? new StringField("group" + group, Type.STRING_LEN) : new IntField(group));
+            t.setField(1, new IntField(i % 1000));
+            tuples.add(t);
+        }
+        return tuples;
+    }
+
+    static long run(ArrayList<Tuple> tuples, boolean boxed, Aggregator.Op op) {
+        Type groupType = tuples.get(0).getField(0).getType();
+        Aggregator agg = boxed ? new BoxedAggregator(0, 1, op) : new IntAggregator(0, groupType, 1, op);
+        long start = System.nanoTime();
+        for (Tuple t : tuples) {
+            agg.merge(t);
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int groups = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        for (boolean strings : new boolean[] { false, true }) {
+            ArrayList<Tuple> tuples = tuples(n, groups, strings);
+            for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.MIN }) {
+                for (boolean boxed : new boolean[] { true, false }) {
+                    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                        run(tuples, boxed, op);
+                    }
+                    long best = Long.MAX_VALUE;
+                    for (int i = 0; i < iterations; i++) {
+                        best = Math.min(best, run(tuples, boxed, op));
+                    }
+                    System.out.printf("%-6s keys %-5s %-14s %8.1f ns/tuple%n",
+                            strings ? "string" : "int", op, boxed ? "HashMap" : "IntAggregator",
+                            (double) best / n);
+                }
+            }
+        }
+    }
+}
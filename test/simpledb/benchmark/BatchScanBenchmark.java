@@ -0,0 +1,166 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.Iterator;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures a scan, filter and grouped aggregate, as in
+ * SELECT f0, SUM(f2), COUNT(*) FROM t WHERE f1 &lt; bound GROUP BY f0,
+ * with the tuple operators (Filter, HashAggregate) and with the batch
+ * operators (BatchFilter, BatchAggregate), at a few filter selectivities.
+ * <p>
+ * The scans read pages that are already decoded into HeapPages, the tuple
+ * scan through HeapPage.iterator and the batch scan through
+ * HeapPage.readRows, rather than going through the BufferPool, whose page
+ * locks would cost more than the operators being compared.
+ * <p>
+ * Each workload is warmed up first and then measured over several
+ * iterations, and the best time is reported.
+ * <p>
+ * Usage: BatchScanBenchmark [rows] [groups] [iterations]
+ */
+public class BatchScanBenchmark {
+    private static final int WARMUP_ITERATIONS = 5;
+
+    /** A SeqScan of pages in memory. */
+    static class PageScan extends AbstractDbIterator {
+        private final TupleDesc td;
+        private final HeapPage[] pages;
+        private int nextPage;
+        private Iterator<Tuple> tuples;
+
+        PageScan(TupleDesc td, HeapPage[] pages) {
+            this.td = td;
+            this.pages = pages;
+        }
+
+        public void open() {
+            this.nextPage = 0;
+            this.tuples = null;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return this.td;
+        }
+
+        public void rewind() {
+            super.close();
+            this.open();
+        }
+
+        protected Tuple readNext() {
+            while (this.tuples == null || !this.tuples.hasNext()) {
+                if (this.nextPage == this.pages.length) return null;
+                this.tuples = this.pages[this.nextPage++].iterator();
+            }
+            return this.tuples.next();
+        }
+    }
+
+    /** A BatchSeqScan of pages in memory. */
+    static class BatchPageScan implements BatchIterator {
+        private final TupleDesc td;
+        private final HeapPage[] pages;
+        private VectorBatch batch;
+        private int nextPage;
+        private int nextSlot;
+
+        BatchPageScan(TupleDesc td, HeapPage[] pages) {
+            this.td = td;
+            this.pages = pages;
+        }
+
+        public void open() {
+            this.batch = new VectorBatch(this.getTupleDesc());
+            this.nextPage = 0;
+            this.nextSlot = 0;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return this.td;
+        }
+
+        public VectorBatch nextBatch() {
+            this.batch.clear();
+            while (!this.batch.isFull() && this.nextPage < this.pages.length) {
+                this.nextSlot = this.pages[this.nextPage].readRows(this.nextSlot, this.batch);
+                if (this.nextSlot == this.pages[this.nextPage].numSlots()) {
+                    this.nextPage++;
+                    this.nextSlot = 0;
+                }
+            }
+            return this.batch.size() == 0 ? null : this.batch;
+        }
+
+        public void rewind() {
+            this.open();
+        }
+
+        public void close() {
+            this.batch = null;
+        }
+    }
+
+    interface Plan {
+        DbIterator build();
+    }
+
+    static long run(Plan plan) throws Exception {
+        DbIterator it = plan.build();
+        it.open();
+        long checksum = 0;
+        while (it.hasNext()) {
+            checksum += ((IntField) it.next().getField(1)).getValue();
+        }
+        it.close();
+        return checksum;
+    }
+
+    static void measure(String name, Plan plan, int rows, int iterations) throws Exception {
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            checksum += run(plan);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            checksum += run(plan);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-24s %10.1f   (checksum %d)%n", name, (double) best / rows, checksum);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int groups = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        Database.reset();
+        // every field takes values below groups
+        File f = SystemTestUtil.createRandomHeapFileUnopened(3, rows, groups, null, null);
+        HeapFile table = Utility.openHeapFile(3, f);
+        TupleDesc td = table.getTupleDesc();
+        HeapPage[] pages = new HeapPage[table.numPages()];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = (HeapPage) table.readPage(new HeapPageId(table.getId(), i));
+        }
+
+        int[] gfields = { 0 };
+        int[] afields = { 2, HashAggregate.COUNT_ALL };
+        Aggregator.Op[] ops = { Aggregator.Op.SUM, Aggregator.Op.COUNT };
+
+        System.out.printf("%d rows, %d groups, %d pages, %d iterations%n",
+                rows, groups, pages.length, iterations);
+        System.out.printf("%-24s %10s%n", "workload", "ns/row");
+        for (int percent : new int[] { 1, 50, 100 }) {
+            Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(groups * percent / 100));
+            measure("tuple, " + percent + "% filter", () -> new HashAggregate(
+                    new Filter(p, new PageScan(td, pages)), gfields, afields, ops), rows, iterations);
+            measure("batch, " + percent + "% filter", () -> new BatchTupleIterator(new BatchAggregate(
+                    new BatchFilter(p, new BatchPageScan(td, pages)), gfields, afields, ops)), rows, iterations);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures how BufferPool throughput scales with the number of client
+ * threads, with an unsharded page table (one shard) and with a sharded one
+ * (at least 8 shards).
+ * <p>
+ * In the scan workload every thread repeatedly scans the same table, which
+ * fits in the buffer pool, so it measures the cost of buffer pool hits.  In
+ * the insert workload every thread inserts into a table of its own, so
+ * threads never wait for each other's page locks.
+ * <p>
+ * Usage: BufferPoolConcurrencyBenchmark [maxThreads] [seconds]
+ */
+public class BufferPoolConcurrencyBenchmark {
+    private static final int POOL_PAGES = 2000;
+    private static final int TABLE_PAGES = 500;
+    private static final int TUPLES_PER_INSERT = 100;
+
+    interface Workload {
+        /** Runs one transaction and returns the number of tuples it handled. */
+        long run(int thread) throws Exception;
+    }
+
+    static double measure(int threads, int seconds, Workload workload) throws Exception {
+        AtomicLong tuples = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        List<Throwable> errors = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        tuples.addAndGet(workload.run(thread));
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        if (!errors.isEmpty()) throw new RuntimeException(errors.get(0));
+        return tuples.get() / (double) seconds;
+    }
+
+    static long scan(int tableId) throws Exception {
+        Transaction t = new Transaction();
+        t.start();
+        SeqScan scan = new SeqScan(t.getId(), tableId, "");
+        scan.open();
+        long count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        t.commit();
+        return count;
+    }
+
+    static long insert(int tableId) throws Exception {
+        TupleDesc td = Utility.getTupleDesc(2);
+        ArrayList<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < TUPLES_PER_INSERT; i++) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+
+        Transaction t = new Transaction();
+        t.start();
+        Insert insert = new Insert(t.getId(), new TupleIterator(td, tuples), tableId);
+        insert.open();
+        insert.next();
+        insert.close();
+        t.commit();
+        return TUPLES_PER_INSERT;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int manyShards = Math.max(8, Runtime.getRuntime().availableProcessors());
+        int tuplesPerPage = 504;
+
+        System.out.printf("pool = %d pages, scanned table = %d pages, %d s per run%n",
+                POOL_PAGES, TABLE_PAGES, seconds);
+        System.out.printf("%-8s %-8s %16s %16s%n", "shards", "threads", "scan tuples/s", "insert tuples/s");
+
+        for (int shards : new int[] {1, manyShards}) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                System.setProperty("simpledb.BufferPool.shards", Integer.toString(shards));
+                Database.reset();
+                Database.resetBufferPool(POOL_PAGES);
+
+                HeapFile scanned = SystemTestUtil.createRandomHeapFile(2, TABLE_PAGES * tuplesPerPage, null, null);
+                int[] insertTables = new int[threads];
+                for (int i = 0; i < threads; i++) {
+                    File f = File.createTempFile("bench", ".dat");
+                    f.deleteOnExit();
+                    insertTables[i] = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2).getId();
+                }
+
+                // warm the pool so that the scan runs only hit the page table
+                scan(scanned.getId());
+
+                double scanRate = measure(threads, seconds, thread -> scan(scanned.getId()));
+                double insertRate = measure(threads, seconds, thread -> insert(insertTables[thread]));
+                System.out.printf("%-8d %-8d %16.0f %16.0f%n",
+                        Database.getBufferPool().numShards(), threads, scanRate, insertRate);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import simpledb.*;
+
+/**
+ * Measures loading rows into an empty table through Insert, one tuple at a
+ * time and in bulk mode, including the commit.
+ * <p>
+ * Usage: BulkInsertBenchmark [rows] [tupleAtATimeRows]
+ */
+public class BulkInsertBenchmark {
+
+    static ArrayList<Tuple> rows(int count) {
+        TupleDesc td = Utility.getTupleDesc(2);
+        ArrayList<Tuple> tuples = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new IntField(i * 31));
+            tuples.add(t);
+        }
+        return tuples;
+    }
+
+    static double load(int rows, boolean bulk) throws Exception {
+        Database.reset();
+        File f = File.createTempFile("bulk", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+        ArrayList<Tuple> tuples = rows(rows);
+
+        long start = System.nanoTime();
+        Transaction t = new Transaction();
+        t.start();
+        Insert insert = new Insert(t.getId(), new TupleIterator(Utility.getTupleDesc(2), tuples), hf.getId(), bulk);
+        insert.open();
+        insert.next();
+        insert.close();
+        t.commit();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-16s %9d rows %7d pages %8.2f s %10.0f rows/s %8.1f MB/s%n",
+                bulk ? "bulk" : "tuple at a time", rows, hf.numPages(), seconds, rows / seconds,
+                (double) hf.numPages() * BufferPool.PAGE_SIZE / (1 << 20) / seconds);
+        Database.getCatalog().clear();
+        return seconds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        // every tuple-at-a-time page stays dirty in the pool until the commit
+        int tupleRows = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        load(tupleRows, false);
+        load(tupleRows, true);
+        load(rows, true);
+    }
+}
@@ -0,0 +1,149 @@
+package simpledb.benchmark;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import simpledb.EvictionPolicy;
+import simpledb.HeapPageId;
+import simpledb.PageId;
+
+/**
+ * Compares the hit ratio and the eviction latency of the buffer pool
+ * replacement policies on synthetic page reference traces.  The pool is
+ * simulated, so the numbers are not skewed by disk I/O.
+ * <p>
+ * "timestamp-scan" is the policy the BufferPool used before the pluggable
+ * policies: it stamps every hit with the wall clock and scans all resident
+ * pages for the oldest stamp on each eviction.
+ * <p>
+ * Usage: EvictionPolicyBenchmark [poolPages] [tablePages] [references]
+ */
+public class EvictionPolicyBenchmark {
+
+    /** The replacement policy BufferPool used to implement, kept as a baseline. */
+    static class TimestampScanPolicy implements EvictionPolicy {
+        private Map<PageId, Long> timestamps = new HashMap<>();
+
+        public void pageAdded(PageId pid) {
+            timestamps.put(pid, Instant.now().toEpochMilli());
+        }
+
+        public void pageAccessed(PageId pid) {
+            timestamps.put(pid, Instant.now().toEpochMilli());
+        }
+
+        public void pageRemoved(PageId pid) {
+            timestamps.remove(pid);
+        }
+
+        public PageId chooseVictim(Predicate<PageId> evictable) {
+            PageId victim = null;
+            long oldest = Long.MAX_VALUE;
+            for (Map.Entry<PageId, Long> entry : timestamps.entrySet()) {
+                if (evictable.test(entry.getKey()) && entry.getValue() < oldest) {
+                    victim = entry.getKey();
+                    oldest = entry.getValue();
+                }
+            }
+            return victim;
+        }
+    }
+
+    /** The result of replaying one trace against one policy. */
+    static class Result {
+        long hits;
+        long misses;
+        long evictions;
+        long evictionNanos;
+    }
+
+    static Result replay(EvictionPolicy policy, int poolPages, int[] trace) {
+        Result result = new Result();
+        Set<PageId> resident = new HashSet<>();
+        Predicate<PageId> evictable = pid -> true;
+
+        for (int pageno : trace) {
+            PageId pid = new HeapPageId(0, pageno);
+            if (resident.contains(pid)) {
+                result.hits++;
+                policy.pageAccessed(pid);
+                continue;
+            }
+
+            result.misses++;
+            if (resident.size() >= poolPages) {
+                long start = System.nanoTime();
+                PageId victim = policy.chooseVictim(evictable);
+                policy.pageRemoved(victim);
+                result.evictionNanos += System.nanoTime() - start;
+                result.evictions++;
+                resident.remove(victim);
+            }
+            resident.add(pid);
+            policy.pageAdded(pid);
+        }
+        return result;
+    }
+
+    /** 80% of the references go to a hot set of a tenth of the table. */
+    static int[] skewedTrace(int tablePages, int references, Random random) {
+        int hotPages = Math.max(1, tablePages / 10);
+        int[] trace = new int[references];
+        for (int i = 0; i < references; i++) {
+            trace[i] = random.nextInt(100) < 80 ? random.nextInt(hotPages) : random.nextInt(tablePages);
+        }
+        return trace;
+    }
+
+    /** A skewed OLTP workload interleaved with full sequential scans. */
+    static int[] scanMixTrace(int tablePages, int references, Random random) {
+        int[] trace = new int[references];
+        int hotPages = Math.max(1, tablePages / 20);
+        int i = 0;
+        while (i < references) {
+            for (int j = 0; j < 4 * tablePages && i < references; j++) {
+                trace[i++] = random.nextInt(hotPages);
+            }
+            for (int pageno = 0; pageno < tablePages && i < references; pageno++) {
+                trace[i++] = pageno;
+            }
+        }
+        return trace;
+    }
+
+    static void run(String workload, int poolPages, int[] trace) {
+        System.out.println(workload + ":");
+        System.out.printf("  %-16s %10s %18s%n", "policy", "hit ratio", "ns per eviction");
+
+        Map<String, EvictionPolicy> policies = new java.util.LinkedHashMap<>();
+        policies.put("timestamp-scan", new TimestampScanPolicy());
+        for (EvictionPolicy.Kind kind : EvictionPolicy.Kind.values()) {
+            policies.put(kind.name(), kind.create(poolPages));
+        }
+
+        for (Map.Entry<String, EvictionPolicy> entry : policies.entrySet()) {
+            Result result = replay(entry.getValue(), poolPages, trace);
+            double hitRatio = (double) result.hits / (result.hits + result.misses);
+            double nanosPerEviction = result.evictions == 0 ? 0 : (double) result.evictionNanos / result.evictions;
+            System.out.printf("  %-16s %10.4f %18.1f%n", entry.getKey(), hitRatio, nanosPerEviction);
+        }
+    }
+
+    public static void main(String[] args) {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int tablePages = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int references = args.length > 2 ? Integer.parseInt(args[2]) : 2000000;
+
+        System.out.printf("pool = %d pages, table = %d pages, %d references%n",
+                poolPages, tablePages, references);
+
+        Random random = new Random(6830);
+        run("skewed (80/10)", poolPages, skewedTrace(tablePages, references, random));
+        run("skewed with sequential scans", poolPages, scanMixTrace(tablePages, references, random));
+    }
+}
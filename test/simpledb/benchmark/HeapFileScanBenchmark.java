@@ -0,0 +1,114 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.NoSuchElementException;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures sequential scan throughput on a table that is much larger than
+ * the buffer pool, so that every page is a miss and goes through
+ * HeapFile.readPage, and the cost of readPage alone.
+ * <p>
+ * "RandomAccessFile per read" is the I/O path HeapFile used to have: it
+ * opens, seeks, reads and closes the file for every page.  "mapped" is a
+ * MappedHeapFile over the same file.
+ * <p>
+ * Usage: HeapFileScanBenchmark [tablePages] [poolPages] [scans]
+ */
+public class HeapFileScanBenchmark {
+
+    /** A HeapFile that reads pages the way HeapFile used to. */
+    static class RandomAccessHeapFile extends HeapFile {
+        RandomAccessHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) throws NoSuchElementException {
+            if (pid.pageno() >= this.numPages()) {
+                return super.readPage(pid);
+            }
+            try {
+                byte[] data = new byte[BufferPool.PAGE_SIZE];
+                RandomAccessFile randomAccessFile = new RandomAccessFile(this.getFile(), "r");
+                randomAccessFile.seek((long) pid.pageno() * BufferPool.PAGE_SIZE);
+                randomAccessFile.read(data);
+                randomAccessFile.close();
+                return new HeapPage((HeapPageId) pid, data);
+            } catch (IOException e) {
+                throw new NoSuchElementException();
+            }
+        }
+    }
+
+    static double pagesPerSecond(HeapFile file, int poolPages, int scans) throws Exception {
+        Database.resetBufferPool(poolPages);
+        long tuples = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            TransactionId tid = new TransactionId();
+            SeqScan scan = new SeqScan(tid, file.getId(), "");
+            scan.open();
+            while (scan.hasNext()) {
+                scan.next();
+                tuples++;
+            }
+            scan.close();
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (tuples == 0) throw new IllegalStateException("scanned no tuples");
+        return (double) file.numPages() * scans / seconds;
+    }
+
+    /** Reads every page straight from the file, bypassing the buffer pool. */
+    static double readPagesPerSecond(HeapFile file, int scans) {
+        int tableId = file.getId();
+        long start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            for (int pageno = 0; pageno < file.numPages(); pageno++) {
+                file.readPage(new HeapPageId(tableId, pageno));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return (double) file.numPages() * scans / seconds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int poolPages = args.length > 1 ? Integer.parseInt(args[1]) : BufferPool.DEFAULT_PAGES;
+        int scans = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int tuplesPerPage = 504;
+
+        Database.reset();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, tablePages * tuplesPerPage,
+                1 << 16, null, null);
+        TupleDesc td = Utility.getTupleDesc(2);
+
+        HeapFile baseline = new RandomAccessHeapFile(f, td);
+        HeapFile channel = new HeapFile(f, td);
+        HeapFile mapped = new MappedHeapFile(f, td);
+
+        System.out.printf("table = %d pages, pool = %d pages, %d scans%n", tablePages, poolPages, scans);
+        for (int round = 0; round < 2; round++) {
+            // both files share a table id; the catalog maps it to the one being measured
+            Database.getCatalog().addTable(baseline, "bench");
+            double baselineRate = pagesPerSecond(baseline, poolPages, scans);
+            Database.getCatalog().addTable(channel, "bench");
+            double channelRate = pagesPerSecond(channel, poolPages, scans);
+            Database.getCatalog().addTable(mapped, "bench");
+            double mappedRate = pagesPerSecond(mapped, poolPages, scans);
+
+            System.out.printf("round %d SeqScan:   RandomAccessFile per read %10.0f pages/s, FileChannel %10.0f pages/s, mapped %10.0f pages/s%n",
+                    round, baselineRate, channelRate, mappedRate);
+            System.out.printf("round %d readPage:  RandomAccessFile per read %10.0f pages/s, FileChannel %10.0f pages/s, mapped %10.0f pages/s%n",
+                    round, readPagesPerSecond(baseline, scans), readPagesPerSecond(channel, scans),
+                    readPagesPerSecond(mapped, scans));
+        }
+        Database.getCatalog().clear();
+    }
+}
@@ -0,0 +1,182 @@
+package simpledb.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures the time and the memory allocated to decode heap pages, with the
+ * eager decoding HeapPage used to do (every slot turned into a Tuple when
+ * the page is built) and with the lazy HeapPage, for a scan that reads
+ * whole tuples, one that reads a single column, and a selective filter.
+ * <p>
+ * Each workload is warmed up first and then measured over several
+ * iterations, in the manner of JMH.  Allocation is read from the HotSpot
+ * ThreadMXBean, and GC counts from the GarbageCollectorMXBeans.
+ * <p>
+ * Usage: HeapPageDecodeBenchmark [pages] [iterations]
+ */
+public class HeapPageDecodeBenchmark {
+    private static final int WARMUP_ITERATIONS = 5;
+
+    interface Workload {
+        /** Decodes every page once and returns a checksum. */
+        long run(HeapPageId[] pids, byte[][] pages) throws Exception;
+    }
+
+    /** The page decoding HeapPage did before it became lazy. */
+    static Tuple[] decodeEagerly(HeapPageId pid, byte[] data, TupleDesc td) throws Exception {
+        int numSlots = (BufferPool.PAGE_SIZE * 8) / (td.getSize() * 8 + 1);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        byte[] header = new byte[(numSlots + 7) / 8];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = dis.readByte();
+        }
+
+        Tuple[] tuples = new Tuple[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            if ((header[i / 8] & (1 << (i % 8))) == 0) {
+                dis.skipBytes(td.getSize());
+                continue;
+            }
+            Tuple t = new Tuple(td);
+            t.setRecordId(new RecordId(pid, i));
+            for (int j = 0; j < td.numFields(); j++) {
+                t.setField(j, td.getType(j).parse(dis));
+            }
+            tuples[i] = t;
+        }
+        return tuples;
+    }
+
+    static long totalGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    static void measure(String name, Workload workload, HeapPageId[] pids, byte[][] pages, int iterations)
+            throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            checksum += workload.run(pids, pages);
+        }
+
+        long gcBefore = totalGcCount();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += workload.run(pids, pages);
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        long gcs = totalGcCount() - gcBefore;
+
+        long decoded = (long) pages.length * iterations;
+        System.out.printf("%-24s %12.0f %16.0f %8d   (checksum %d)%n",
+                name, (double) nanos / decoded, (double) bytes / decoded, gcs, checksum);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numPages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int tuplesPerPage = 504;
+
+        Database.reset();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, numPages * tuplesPerPage, 1 << 16, null, null);
+        HeapFile file = Utility.openHeapFile(2, f);
+        TupleDesc td = file.getTupleDesc();
+
+        HeapPageId[] pids = new HeapPageId[numPages];
+        byte[][] pages = new byte[numPages][];
+        for (int i = 0; i < numPages; i++) {
+            pids[i] = new HeapPageId(file.getId(), i);
+            pages[i] = file.readPage(pids[i]).getPageData();
+        }
+
+        System.out.printf("%d pages, %d iterations%n", numPages, iterations);
+        System.out.printf("%-24s %12s %16s %8s%n", "workload", "ns/page", "bytes alloc/page", "GCs");
+
+        measure("eager, all tuples", (p, d) -> {
+            long sum = 0;
+            for (int i = 0; i < d.length; i++) {
+                for (Tuple t : decodeEagerly(p[i], d[i], td)) {
+                    if (t != null) sum += ((IntField) t.getField(0)).getValue();
+                }
+            }
+            return sum;
+        }, pids, pages, iterations);
+
+        measure("lazy, all tuples", (p, d) -> {
+            long sum = 0;
+            for (int i = 0; i < d.length; i++) {
+                Iterator<Tuple> it = new HeapPage(p[i], d[i]).iterator();
+                while (it.hasNext()) {
+                    sum += ((IntField) it.next().getField(0)).getValue();
+                }
+            }
+            return sum;
+        }, pids, pages, iterations);
+
+        measure("eager, one column", (p, d) -> {
+            long sum = 0;
+            for (int i = 0; i < d.length; i++) {
+                for (Tuple t : decodeEagerly(p[i], d[i], td)) {
+                    if (t != null) sum += ((IntField) t.getField(1)).getValue();
+                }
+            }
+            return sum;
+        }, pids, pages, iterations);
+
+        measure("lazy, one column", (p, d) -> {
+            long sum = 0;
+            for (int i = 0; i < d.length; i++) {
+                HeapPage page = new HeapPage(p[i], d[i]);
+                for (int slot = 0; slot < page.numSlots(); slot++) {
+                    Field field = page.getField(slot, 1);
+                    if (field != null) sum += ((IntField) field).getValue();
+                }
+            }
+            return sum;
+        }, pids, pages, iterations);
+
+        // about 1% of the rows pass the filter
+        IntField bound = new IntField((1 << 16) / 100);
+        measure("eager, 1% filter", (p, d) -> {
+            long matches = 0;
+            for (int i = 0; i < d.length; i++) {
+                for (Tuple t : decodeEagerly(p[i], d[i], td)) {
+                    if (t != null && t.getField(0).compare(Predicate.Op.LESS_THAN, bound)) matches++;
+                }
+            }
+            return matches;
+        }, pids, pages, iterations);
+
+        measure("lazy, 1% filter", (p, d) -> {
+            long matches = 0;
+            for (int i = 0; i < d.length; i++) {
+                HeapPage page = new HeapPage(p[i], d[i]);
+                for (int slot = 0; slot < page.numSlots(); slot++) {
+                    Field field = page.getField(slot, 0);
+                    if (field != null && field.compare(Predicate.Op.LESS_THAN, bound)) {
+                        page.getTuple(slot);
+                        matches++;
+                    }
+                }
+            }
+            return matches;
+        }, pids, pages, iterations);
+    }
+}
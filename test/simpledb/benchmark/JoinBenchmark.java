@@ -0,0 +1,77 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import simpledb.*;
+
+/**
+ * Measures a 3-way equi-join, a JOIN b ON a.f1 = b.f0 JOIN c ON b.f1 =
+ * c.f0, with HashEquiJoin and, for a smaller size, with the nested loops
+ * Join.  Every table has the same number of rows, and each join key matches
+ * one row, so the join returns one row per row of a.  With a memoryPages
+ * argument, the hash joins run under that MemoryBudget, and spill if the
+ * inner table does not fit.
+ * <p>
+ * Usage: JoinBenchmark [rows] [nestedLoopsRows] [memoryPages]
+ */
+public class JoinBenchmark {
+
+    static HeapFile table(int rows) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>(2);
+            tuple.add(i);
+            tuple.add((int) ((i * 7919L) % rows));
+            tuples.add(tuple);
+        }
+        File f = File.createTempFile("join", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        return Utility.openHeapFile(2, f);
+    }
+
+    static DbIterator join(boolean hash, JoinPredicate p, DbIterator outer, DbIterator inner) {
+        return hash ? new HashEquiJoin(p, outer, inner) : new Join(p, outer, inner);
+    }
+
+    static void run(int rows, boolean hash) throws Exception {
+        Database.reset();
+        HeapFile a = table(rows);
+        HeapFile b = table(rows);
+        HeapFile c = table(rows);
+
+        long start = System.nanoTime();
+        TransactionId tid = new TransactionId();
+        DbIterator ab = join(hash, new JoinPredicate(1, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, a.getId(), "a"), new SeqScan(tid, b.getId(), "b"));
+        DbIterator abc = join(hash, new JoinPredicate(3, Predicate.Op.EQUALS, 0),
+                ab, new SeqScan(tid, c.getId(), "c"));
+        int count = 0;
+        abc.open();
+        while (abc.hasNext()) {
+            abc.next();
+            count++;
+        }
+        abc.close();
+        Database.getBufferPool().transactionComplete(tid);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-13s %9d rows per table %9d results %8.2f s%n",
+                hash ? "hash" : "nested loops", rows, count, seconds);
+        Database.getCatalog().clear();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        // nested loops grows with the square of the table size
+        int nestedRows = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        if (args.length > 2) {
+            MemoryBudget.setDefaultPages(Integer.parseInt(args[2]));
+        }
+
+        run(nestedRows, false);
+        run(nestedRows, true);
+        run(rows, true);
+    }
+}
@@ -0,0 +1,71 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures a filtered aggregate over a cached table, as in
+ * SELECT f0, COUNT(f2) FROM t WHERE f1 &lt; bound GROUP BY f0, with the scan
+ * and filter run by an Exchange of 1, 2, 4 and 8 workers, each over its own
+ * page range, and the aggregate on the calling thread.
+ * <p>
+ * Each run is a transaction of its own, so every page is locked again.
+ * Each workload is warmed up first and then measured over several
+ * iterations, and the best time is reported.
+ * <p>
+ * Usage: ParallelScanBenchmark [rows] [iterations]
+ */
+public class ParallelScanBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+
+    static long run(HeapFile table, int workers) throws Exception {
+        TransactionId tid = new TransactionId();
+        Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(500));
+        SeqScan[] scans = ParallelSeqScan.partitions(tid, table.getId(), "t", workers);
+        DbIterator[] children = new DbIterator[workers];
+        for (int i = 0; i < workers; i++) {
+            children[i] = new Filter(p, scans[i]);
+        }
+        DbIterator plan = new Aggregate(new Exchange(children), 2, 0, Aggregator.Op.COUNT);
+        plan.open();
+        long checksum = 0;
+        while (plan.hasNext()) {
+            checksum += ((IntField) plan.next().getField(1)).getValue();
+        }
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return checksum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Database.reset();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(3, rows, 1000, null, null);
+        HeapFile table = Utility.openHeapFile(3, f);
+        Database.resetBufferPool(4 * table.numPages());
+
+        System.out.printf("%d rows, %d pages, %d processors, %d iterations%n",
+                rows, table.numPages(), Runtime.getRuntime().availableProcessors(), iterations);
+        System.out.printf("%-8s %10s %8s%n", "workers", "ms", "speedup");
+        double serial = 0;
+        for (int workers : new int[] { 1, 2, 4, 8 }) {
+            long checksum = 0;
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                checksum += run(table, workers);
+            }
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                checksum += run(table, workers);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            double ms = best / 1e6;
+            if (workers == 1) serial = ms;
+            System.out.printf("%-8d %10.1f %8.2f   (checksum %d)%n", workers, ms, serial / ms, checksum);
+        }
+    }
+}
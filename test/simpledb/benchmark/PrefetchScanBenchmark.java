@@ -0,0 +1,59 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures full table scans with and without BufferPool read-ahead, on a
+ * table much larger than the pool.  Every scan starts with an empty pool,
+ * but the table file may well be in the operating system's page cache; to
+ * measure scans that are cold on disk too, drop the page cache between runs
+ * (e.g. with "echo 3 > /proc/sys/vm/drop_caches" as root) and run one scan
+ * per invocation.
+ * <p>
+ * Usage: PrefetchScanBenchmark [tablePages] [poolPages] [scans]
+ */
+public class PrefetchScanBenchmark {
+
+    static double scanMegabytesPerSecond(HeapFile file, int poolPages, int scans, boolean prefetch)
+            throws Exception {
+        long nanos = 0;
+        for (int i = 0; i < scans; i++) {
+            Database.resetBufferPool(poolPages).setPrefetchEnabled(prefetch);
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            DbFileIterator it = file.iterator(tid);
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+            }
+            it.close();
+            nanos += System.nanoTime() - start;
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        double megabytes = (double) file.numPages() * BufferPool.PAGE_SIZE * scans / (1 << 20);
+        return megabytes / (nanos / 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tablePages = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int poolPages = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int scans = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int tuplesPerPage = 504;
+
+        Database.reset();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, tablePages * tuplesPerPage,
+                1 << 16, null, null);
+        HeapFile file = Utility.openHeapFile(2, f);
+
+        System.out.printf("table = %d pages, pool = %d pages, %d scans%n", tablePages, poolPages, scans);
+        for (int round = 0; round < 2; round++) {
+            double without = scanMegabytesPerSecond(file, poolPages, scans, false);
+            double with = scanMegabytesPerSecond(file, poolPages, scans, true);
+            System.out.printf("round %d: no read-ahead %8.1f MB/s, read-ahead %8.1f MB/s%n", round, without, with);
+        }
+        Database.getCatalog().clear();
+    }
+}
@@ -37,6 +37,26 @@ public class LogTest extends SimpleDbTestBase {
         insert.close();
     }
 
+    // bulk insert count rows, with first field values from v1 on
+    void bulkInsertRows(HeapFile hf, Transaction t, int v1, int count)
+        throws DbException, TransactionAbortedException {
+        TupleDesc twoIntColumns = Utility.getTupleDesc(2);
+        ArrayList<Tuple> values = new ArrayList<Tuple>();
+        for (int i = 0; i < count; i++) {
+            Tuple value = new Tuple(twoIntColumns);
+            value.setField(0, new IntField(v1 + i));
+            value.setField(1, new IntField(0));
+            values.add(value);
+        }
+        TupleIterator rows = new TupleIterator(twoIntColumns, values);
+
+        Insert insert = new Insert(t.getId(), rows, hf.getId(), true);
+        insert.open();
+        Tuple result = insert.next();
+        assertEquals(count, ((IntField)result.getField(0)).getValue());
+        insert.close();
+    }
+
     // check that the specified tuple is, or is not, present
     void look(HeapFile hf, Transaction t, int v1, boolean present)
         throws DbException, TransactionAbortedException {
@@ -454,6 +474,62 @@ public class LogTest extends SimpleDbTestBase {
         look(hf2, t, 29, false);
         t.commit();
     }
+    @Test public void TestBulkInsertAbort()
+            throws IOException, DbException, TransactionAbortedException {
+        setup();
+        doInsert(hf1, 1, 2);
+
+        // *** Test:
+        // T1 bulk inserts, then aborts: the appended pages are emptied
+
+        Transaction t1 = new Transaction();
+        t1.start();
+        bulkInsertRows(hf1, t1, 100, 1200);
+        look(hf1, t1, 100, true);
+        look(hf1, t1, 1299, true);
+        abort(t1);
+
+        Transaction t = new Transaction();
+        t.start();
+        look(hf1, t, 1, true);
+        look(hf1, t, 2, true);
+        look(hf1, t, 100, false);
+        look(hf1, t, 1299, false);
+        t.commit();
+    }
+
+    @Test public void TestBulkInsertCommitOpenCrash()
+            throws IOException, DbException, TransactionAbortedException {
+        setup();
+        doInsert(hf1, 1, 2);
+
+        // *** Test:
+        // T1 bulk inserts and commits
+        // T2 bulk inserts but does not commit
+        // crash
+        // only T1 data should be there
+
+        Transaction t1 = new Transaction();
+        t1.start();
+        bulkInsertRows(hf1, t1, 100, 1200);
+        t1.commit();
+
+        Transaction t2 = new Transaction();
+        t2.start();
+        bulkInsertRows(hf1, t2, 2000, 600);
+
+        crash();
+
+        Transaction t = new Transaction();
+        t.start();
+        look(hf1, t, 1, true);
+        look(hf1, t, 100, true);
+        look(hf1, t, 1299, true);
+        look(hf1, t, 2000, false);
+        look(hf1, t, 2599, false);
+        t.commit();
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(LogTest.class);
@@ -7,6 +7,7 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
@@ -72,7 +73,7 @@ public class ScanTest extends SimpleDbTestBase {
      * @throws TransactionAbortedException
      * @throws DbException */
     @Test public void testCache() throws IOException, DbException, TransactionAbortedException {
-        /** Counts the number of readPage operations. */
+        /** Counts the number of pages read, one by one or prefetched. */
         class InstrumentedHeapFile extends HeapFile {
             public InstrumentedHeapFile(File f, TupleDesc td) {
                 super(f, td);
@@ -84,6 +85,12 @@ public class ScanTest extends SimpleDbTestBase {
                 return super.readPage(pid);
             }
 
+            @Override
+            public List<Page> readPages(int firstPageNo, int count) throws IOException {
+                readCount += count;
+                return super.readPages(firstPageNo, count);
+            }
+
             public int readCount = 0;
         }
 